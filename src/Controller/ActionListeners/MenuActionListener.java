@@ -5,9 +5,7 @@ import Model.Address.Address;
 import Model.Address.AddressParser;
 import Model.Exceptions.RouteNotPossibleException;
 import Model.Graph.TravelType;
-import Model.KDTree.KDFriendlyShape;
-import Model.KDTree.KDSearchRect;
-import Model.KDTree.KDTree;
+import Model.KDTree.SegmentIndex;
 import Model.MapDrawStyle.MapDrawStyle;
 import View.MenuElements.MenuPanel;
 import View.Window;
@@ -72,23 +70,20 @@ public class MenuActionListener {
                         model.setDestinationMarker(destinationCoords);
                     }
 
-                    Point2D point;
-                    KDFriendlyShape way;
+                    SegmentIndex.Snap snap;
                     int from = -1;
                     int to = -1;
                     TravelType travelType = (TravelType)menupanel.getTravelMethod().getSelectedItem();
                     try {
-                        point = KDTree.getNearestWayAsPoint(departureCoords, model.getKdTree(), travelType);
-                        way = KDTree.getNearestWay(departureCoords, new KDSearchRect(departureCoords, departureCoords), model.getKdTree(), travelType);
-                        from = model.getGraph().addVertex(point, way);
+                        snap = model.getGraph().nearestSegment(departureCoords, travelType);
+                        from = model.getGraph().addVertex(snap);
                     } catch (NullPointerException ex) {
                         JOptionPane.showMessageDialog(new JFrame(), Model.getString("exception-not-found-point-departure"), Model.getString("error"), JOptionPane.WARNING_MESSAGE);
                     }
 
                     try {
-                        point = KDTree.getNearestWayAsPoint(destinationCoords, model.getKdTree(), travelType);
-                        way = KDTree.getNearestWay(destinationCoords, new KDSearchRect(destinationCoords, destinationCoords), model.getKdTree(), travelType);
-                        to = model.getGraph().addVertex(point, way);
+                        snap = model.getGraph().nearestSegment(destinationCoords, travelType);
+                        to = model.getGraph().addVertex(snap);
                     } catch (NullPointerException ex) {
                         JOptionPane.showMessageDialog(new JFrame(), Model.getString("exception-not-found-point-destination"), Model.getString("error"), JOptionPane.WARNING_MESSAGE);
                     }
@@ -43,7 +43,7 @@ public class MenuBarActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
             JFileChooser load = new JFileChooser();
-            FileNameExtensionFilter filter = new FileNameExtensionFilter(Model.getString("supported-file-extensions"), "osm", "bin", "zip");
+            FileNameExtensionFilter filter = new FileNameExtensionFilter(Model.getString("supported-file-extensions"), "osm", "pbf", "bin", "zip");
             load.setFileFilter(filter);
             if (load.showOpenDialog(new JFrame()) == JFileChooser.APPROVE_OPTION) {
                 model.load(load.getSelectedFile().getAbsolutePath(), true);
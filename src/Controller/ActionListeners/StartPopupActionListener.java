@@ -30,7 +30,7 @@ public class StartPopupActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
             JFileChooser fileChooser = new JFileChooser();
-            FileNameExtensionFilter filter = new FileNameExtensionFilter(Model.getString("supported-file-extensions"), "osm", "bin", "zip");
+            FileNameExtensionFilter filter = new FileNameExtensionFilter(Model.getString("supported-file-extensions"), "osm", "pbf", "bin", "zip");
             fileChooser.setFileFilter(filter);
             if (fileChooser.showOpenDialog(new JFrame()) == JFileChooser.APPROVE_OPTION) {
                 startPopup.dispose();
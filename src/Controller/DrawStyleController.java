@@ -8,11 +8,16 @@ import Model.OSM.WayType;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.io.Serializable;
+import java.util.EnumMap;
 
 /**
  * Controller for drawstyles
  */
 public class DrawStyleController implements Serializable {
+    private static final long serialVersionUID = -4300057186336057940L;
+
+    //The square roots of the determinants of the transform where zoom level 2 to 8 begin, when zooming out
+    private static final double[] ZOOM_LEVEL_DETERMINANTS = {81875.0, 30000.0, 14000.0, 8000.0, 1500.0, 800.0, 500.0};
 
     private MapDrawStyle currentMapDrawStyle;
     private MapDrawStyleList mapDrawStyles;
@@ -68,24 +73,38 @@ public class DrawStyleController implements Serializable {
      */
     public int getCurrentZoomLevel(AffineTransform at) {
         double determinant = Math.sqrt(at.getDeterminant());
-        int zoomlevel;
-        if(determinant < 500.0){
-            zoomlevel = 8;
-        } else if (determinant > 500.0 && determinant < 800.0){
-            zoomlevel = 7;
-        } else if (determinant > 800.0 && determinant < 1500) {
-            zoomlevel = 6;
-        } else if (determinant > 1500 && determinant < 8000.0){
-            zoomlevel = 5;
-        } else if (determinant > 8000.0 && determinant < 14000.0){
-            zoomlevel = 4;
-        } else if (determinant > 14000.0 && determinant < 30000.0){
-            zoomlevel = 3;
-        } else if (determinant > 30000.0 && determinant < 81875.0){
-            zoomlevel = 2;
-        } else {
-            zoomlevel = 1;
+        int zoomlevel = 1;
+        for (double zoomLevelDeterminant : ZOOM_LEVEL_DETERMINANTS) {
+            if (determinant < zoomLevelDeterminant) zoomlevel++;
         }
         return zoomlevel;
     }
+
+    /**
+     * This method finds the highest zoom level that every WayType is shown at in any of the drawstyles, so shapes
+     * can be left out of the zoom levels where no drawstyle shows them
+     * @return the highest zoom level of every WayType with a drawstyle
+     */
+    public EnumMap<WayType, Integer> getMaximumZoomLevels() {
+        EnumMap<WayType, Integer> zoomLevels = new EnumMap<>(WayType.class);
+        for (MapDrawStyle mapDrawStyle : mapDrawStyles) {
+            mapDrawStyle.getDrawStyles().forEach((type, drawStyle) -> {
+                if (drawStyle != null) zoomLevels.merge(type, drawStyle.getZoomLevel(), Math::max);
+            });
+        }
+        return zoomLevels;
+    }
+
+    /**
+     * This method calculates the size of a pixel in model coordinates at the closest zoom of every zoom level. Points
+     * closer than that can not be told apart anywhere in the zoom level
+     * @return the pixel sizes, where index 0 is zoom level 1, which has no closest zoom and therefore size 0
+     */
+    public static double[] getZoomLevelPixelSizes() {
+        double[] pixelSizes = new double[ZOOM_LEVEL_DETERMINANTS.length + 1];
+        for (int i = 0; i < ZOOM_LEVEL_DETERMINANTS.length; i++) {
+            pixelSizes[i + 1] = 1 / ZOOM_LEVEL_DETERMINANTS[i];
+        }
+        return pixelSizes;
+    }
 }
@@ -12,10 +12,11 @@ import java.io.IOException;
 
 public class Main {
     private static final String STRING_DIRECTORY = "resources/languages";
+    private static final String SAX_ARGUMENT = "-sax"; //Parses osm files with SAX instead of the OSMXMLScanner
 
     /**
      * En main metode som bruges til at teste
-     * @param args
+     * @param args -sax to parse osm files with SAX
      */
     public static void main(String[] args) throws IOException, SAXException {
         try {
@@ -29,6 +30,10 @@ public class Main {
             //Do nothing
         }
 
+        for (String arg : args) {
+            if (arg.equals(SAX_ARGUMENT)) Model.setUseSAXParser(true);
+        }
+
         StartPopup sp = new StartPopup();
     }
 
@@ -1,74 +1,53 @@
 package Controller;
 
-import Model.Address.Address;
 import Model.*;
-import Model.Graph.RoadGraph;
 import Model.OSM.*;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
-import java.awt.geom.Point2D;
+import java.io.IOException;
 import java.util.*;
-import lib.TST;
 
 /**
- * This class is an XMLHandler that handles OSM file types
+ * This class is an XMLHandler that handles OSM file types.
+ * It runs on the parser thread of an OSMImportPipeline, where it collects the points of the ways and the tags of every
+ * element and passes the element on to the pipeline as a record. The tags are read by the workers of the pipeline
  */
 public class OSMHandler implements ContentHandler {
+    private static final int INITIAL_TAG_CAPACITY = 32;
 
     private Model model;
     private float minlat, minlon, maxlat,maxlon, currentLat, currentLon;
 
-    private LongToPointMap points;
+    private NodeStore points;
     private Map<Long, List<SimpleOSMNode>> ways;
-    private List<OSMHighway> highways;
-    private Map<Long, OSMHighway> highwayMap;
-    private Map<SimpleOSMNode, SimpleOSMWay> coastlines;
+    private OSMImportPipeline pipeline;
 
     private long id;
     private SimpleOSMWay way;
     private SimpleOSMRelation relation;
-    private WayType type;
-    public MapData mapdata;
-    private boolean isArea;
-    private String wayStreetName;
-    private Integer waySpeedLimit;
-    private boolean wayIsOneway;
-    private boolean wayIsRoundabout;
-
-    private String nodeName;
+
+    //The keys and values of the tags of the current element
+    private String[] tags = new String[INITIAL_TAG_CAPACITY];
+    private int tagCount;
+
     private boolean nodeStarted;
 
-    private boolean relationIsRestriction;
     private long restrictionFrom;
     private long restrictionTo;
+    private SimpleOSMNode restrictionVia;
 
-    //For addresses
-    private String streetName, streetNumber, city, postcode;
-
-    //For autocompleter
-    private TST<String>
-            cities = new TST<>(),
-            postcodes = new TST<>(),
-            streetNames = new TST<>();
-
-    private boolean cyclingAllowed = true;
-    private boolean walkingAllowed = true;
-    private boolean drivingAllowed = true;
-    private boolean wayIsReverseOneway = false;
-
-    private float lat;
-    private float lon;
-
-    public OSMHandler(Model model){
+    public OSMHandler(Model model, OSMImportPipeline pipeline){
         this.model = model;
-        points = new LongToPointMap(22);
+        this.pipeline = pipeline;
+        try {
+            points = new MappedNodeStore();
+        } catch (IOException e) {
+            //Without a temporary file the nodes are kept on the heap
+            points = new LongToPointMap();
+        }
         ways = new HashMap<>();
-        mapdata = model.getMapData();
-        coastlines = new HashMap<>();
-        highways = new ArrayList<>();
-        highwayMap = new HashMap<>();
     }
 
 
@@ -80,14 +59,8 @@ public class OSMHandler implements ContentHandler {
 
     @Override
     public void endDocument() throws SAXException {
-        model.setCities(cities);
-        model.setPostcodes(postcodes);
-        model.setStreetNames(streetNames);
-        model.maxlat = maxlat;
-        model.maxlon = maxlon;
-        model.minlat = minlat;
-        model.minlon = minlon;
-        model.setGraph(new RoadGraph(model, highways));
+        points.close();
+        pipeline.submit(new OSMRecord.EndDocument(minlat, minlon, maxlat, maxlon));
     }
 
     @Override
@@ -100,25 +73,26 @@ public class OSMHandler implements ContentHandler {
     public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
         switch (qName) {
             case "bounds":
-                parseBounds(atts);
+                parseBounds(Float.parseFloat(atts.getValue("minlat")), Float.parseFloat(atts.getValue("minlon")),
+                        Float.parseFloat(atts.getValue("maxlat")), Float.parseFloat(atts.getValue("maxlon")));
                 break;
             case "node":
-                parseNodes(atts);
+                parseNodes(Long.parseLong(atts.getValue("id")), Float.parseFloat(atts.getValue("lat")), Float.parseFloat(atts.getValue("lon")));
                 break;
             case "way":
-                parseWay(atts);
+                parseWay(Long.parseLong(atts.getValue("id")));
                 break;
             case "relation":
-                parseRelation(atts);
+                parseRelation();
                 break;
             case "nd":
-                parseND(atts);
+                parseND(Long.parseLong(atts.getValue("ref")));
                 break;
             case "tag":
-                parseTag(atts);
+                parseTag(atts.getValue("k"), atts.getValue("v"));
                 break;
             case "member":
-                parseMember(atts);
+                parseMember(atts.getValue("type"), Long.parseLong(atts.getValue("ref")), atts.getValue("role"));
                 break;
         }
     }
@@ -127,130 +101,66 @@ public class OSMHandler implements ContentHandler {
     public void endElement(String uri, String localName, String qName) throws SAXException {
         switch (qName) {
             case "way":
-                if (type == WayType.NATURAL_COASTLINE || type == WayType.BORDER_TYPE_NATION && !model.isCoastlinesLoaded()) {
-                    SimpleOSMWay before = coastlines.remove(way.getFirstNode());
-                    SimpleOSMWay after = coastlines.remove(way.getLastNode());
-                    SimpleOSMWay merged = new SimpleOSMWay();
-                    if (before != null){
-                        merged.addAll(before.subList(0,before.size() - 1));
-                    }
-
-                    merged.addAll(way);
-
-                    if(after != null && after != before) {
-                        merged.addAll(after.subList(1,after.size()));
-                    }
-
-                    coastlines.put(merged.getFirstNode(), merged);
-                    coastlines.put(merged.getLastNode(), merged);
-                } else if (type.toString().toUpperCase().startsWith("HIGHWAY")) {
-                    OSMHighway highwayToAdd = new OSMHighway(way);
-                    highwayToAdd.setWayType(type);
-                    highwayToAdd.setName(wayStreetName);
-                    if (waySpeedLimit == null) {
-                        if (type.toString().startsWith("HIGHWAY_RESIDENTIAL") || type.toString().startsWith("HIGHWAY_LIVING_STREET") ||
-                                type.toString().startsWith("HIGHWAY_SERVICE") || type.toString().startsWith("HIGHWAY_TERTIARY")) {
-                            highwayToAdd.setSpeedLimit(50);
-                        } else if (type.toString().startsWith("HIGHWAY_MOTORWAY") || type.toString().startsWith("HIGHWAY_TRUNK")) {
-                            highwayToAdd.setSpeedLimit(130);
-                        } else {
-                            //for road and proposed roads ? not enough info about raods and
-                            //proposed roads shouldn't be used
-                            //should be extended
-                            highwayToAdd.setSpeedLimit(80);
-                        }
-                    } else {
-                        highwayToAdd.setSpeedLimit(waySpeedLimit);
-                    }
-
-                    if (wayIsOneway) highwayToAdd.setOneWay();
-
-                    if (type == WayType.HIGHWAY_MOTORWAY || type == WayType.HIGHWAY_MOTORWAY_LINK) {
-                        walkingAllowed = false;
-                        cyclingAllowed = false;
-                    }
-                    if (type == WayType.HIGHWAY_FOOTWAY || type == WayType.HIGHWAY_PEDESTRIAN || type == WayType.HIGHWAY_CYCLEWAY || type == WayType.HIGHWAY_PEDESTRIAN_AREA || type == WayType.HIGHWAY_PATH) {
-                        drivingAllowed = false;
-                    }
-
-                    highwayToAdd.setWalkingAllowed(walkingAllowed);
-                    highwayToAdd.setCyclingAllowed(cyclingAllowed);
-                    highwayToAdd.setDrivingAllowed(drivingAllowed);
-                    highwayToAdd.setIsRoundabout(wayIsRoundabout);
-                    if (wayIsReverseOneway) Collections.reverse(highwayToAdd.getPoints());
-                    model.add(highwayToAdd);
-                    highways.add(highwayToAdd);
-                    highwayMap.put(id, highwayToAdd);
-
-                } else {
-                    OSMWay shapeToAdd = new OSMWay(way);
-                    shapeToAdd.setWayType(type);
-                    shapeToAdd.setName(wayStreetName);
-                    model.add(shapeToAdd);
-                }
-                wayStreetName = null;
-                walkingAllowed = true;
-                cyclingAllowed = true;
-                drivingAllowed = true;
-                wayIsReverseOneway = false;
-                type = null;
-                waySpeedLimit = null;
-                wayIsOneway = false;
-                wayIsRoundabout = false;
-
+                endWay();
                 break;
             case "relation":
-                if (relationIsRestriction && highwayMap.get(restrictionFrom) != null && highwayMap.get(restrictionTo) != null) {
-                    highwayMap.get(restrictionFrom).addRestrictedHighway(highwayMap.get(restrictionTo));
-
-                } else {
-                    if (relation.get(0) != null) {
-                        OSMRelation shapeToAdd = new OSMRelation(relation);
-                        shapeToAdd.setWayType(type);
-                        model.add(shapeToAdd);
-                    }
-                }
-
-                relationIsRestriction = false;
+                endRelation();
                 break;
-
-
             case "osm":
-                if (!model.isCoastlinesLoaded()) {
-                    coastlines.forEach((key, way) -> {
-                        if (key == way.getFirstNode()) {
-                            OSMWay shapeToAdd = new OSMWay(way);
-                            shapeToAdd.setWayType(WayType.NATURAL_COASTLINE);
-                            model.add(shapeToAdd);
-                        }
-                    });
-                }
+                endOSM();
                 break;
-
             case "node":
-                if (streetName != null && streetNumber != null && city != null && postcode != null) {
-                    model.getMapData().putAddress(new Address(streetName.toLowerCase(), streetNumber.toLowerCase(), null, null, postcode.toLowerCase(), city.toLowerCase()), new OnePointMapMarker(currentLon*model.getLonfactor(), -currentLat));
-                    streetNames.put(streetName, "");
-                    postcodes.put(postcode, "");
-                    postcodes.put(postcode+" "+city, "");
-                    cities.put(city, "");
-                }
-
-                if (nodeStarted && type != null) {
-                    model.add(new OSMNode(new Point2D.Float(model.getLonfactor() * lon, -lat), type, nodeName));
-                    type = null;
-                    nodeName = null;
-                }
-                nodeStarted = false;
-
-                streetName = null;
-                streetNumber = null;
-                city = null;
-                postcode = null;
+                endNode();
                 break;
         }
     }
 
+    /**
+     * Passes the way on to the pipeline
+     * @throws SAXException If the parser thread was interrupted
+     */
+    void endWay() throws SAXException {
+        pipeline.submit(new OSMRecord.Way(id, way, takeTags()));
+    }
+
+    /**
+     * Passes the relation on to the pipeline
+     * @throws SAXException If the parser thread was interrupted
+     */
+    void endRelation() throws SAXException {
+        pipeline.submit(new OSMRecord.Relation(relation, takeTags(), restrictionFrom, restrictionTo, restrictionVia));
+        restrictionVia = null;
+    }
+
+    /**
+     * Passes the end of the osm element on to the pipeline
+     * @throws SAXException If the parser thread was interrupted
+     */
+    void endOSM() throws SAXException {
+        pipeline.submit(new OSMRecord.EndOSM());
+    }
+
+    /**
+     * Passes the node on to the pipeline if it has tags, as only a node with tags can be a shape or an address
+     * @throws SAXException If the parser thread was interrupted
+     */
+    void endNode() throws SAXException {
+        if (nodeStarted && tagCount > 0) {
+            pipeline.submit(new OSMRecord.Node(currentLat, currentLon, takeTags()));
+        }
+        tagCount = 0;
+        nodeStarted = false;
+    }
+
+    /**
+     * @return the keys and values of the tags of the current element, which are then cleared for the next element
+     */
+    private String[] takeTags() {
+        String[] elementTags = Arrays.copyOf(tags, tagCount);
+        tagCount = 0;
+        return elementTags;
+    }
+
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException {
 
@@ -274,35 +184,38 @@ public class OSMHandler implements ContentHandler {
     /**
      * Parses bounds for canvas
      * sets MapData
-     * @param atts
+     * @param minlat the minimum latitude
+     * @param minlon the minimum longitude
+     * @param maxlat the maximum latitude
+     * @param maxlon the maximum longitude
      */
-    private void parseBounds(Attributes atts){
-        minlat = Float.parseFloat(atts.getValue("minlat"));
-        minlon = Float.parseFloat(atts.getValue("minlon"));
-        maxlat = Float.parseFloat(atts.getValue("maxlat"));
-        maxlon = Float.parseFloat(atts.getValue("maxlon"));
+    void parseBounds(float minlat, float minlon, float maxlat, float maxlon){
+        this.minlat = minlat;
+        this.minlon = minlon;
+        this.maxlat = maxlat;
+        this.maxlon = maxlon;
         float avglat = minlat + (maxlat - minlat) / 2;
         //Checks if coastlines are already loaded for a .bin
         if (!model.isCoastlinesLoaded()) {
             model.initCoastlines(new CoastLines((float) Math.cos(avglat / 180 *Math.PI)));
         }
-        minlon *= model.getLonfactor();
-        maxlon *= model.getLonfactor();
-        minlat = -minlat;
-        maxlat = -maxlat;
-        model.setMapData(new MapData(minlat, minlon,maxlat,maxlon));
+        this.minlon *= model.getLonfactor();
+        this.maxlon *= model.getLonfactor();
+        this.minlat = -minlat;
+        this.maxlat = -maxlat;
+        model.setMapData(new MapData(this.minlat, this.minlon, this.maxlat, this.maxlon));
     }
 
     /**
      * Parses nodes
      * Adds node to HashMap points
      * sets currentLat and currentLon
-     * @param atts
+     * @param id the id of the node
+     * @param lat the latitude of the node
+     * @param lon the longitude of the node
      */
-    private void parseNodes(Attributes atts) {
-        id = Long.parseLong(atts.getValue("id"));
-        lat = Float.parseFloat(atts.getValue("lat"));
-        lon = Float.parseFloat(atts.getValue("lon"));
+    void parseNodes(long id, float lat, float lon) {
+        this.id = id;
         currentLat = lat;
         currentLon = lon;
         points.put(id,model.getLonfactor() * lon, -lat);
@@ -312,150 +225,50 @@ public class OSMHandler implements ContentHandler {
     /**
      * Parses way
      * Adds way to HashMap ways
-     * @param atts
+     * @param id the id of the way
      */
-    private void parseWay(Attributes atts) {
+    void parseWay(long id) {
         way = new SimpleOSMWay();
-        id = Long.parseLong(atts.getValue("id"));
-        type = WayType.UNKNOWN;
+        this.id = id;
         ways.put(id, way);
     }
 
     /**
      * Parses relations
-     * @param atts
      */
-    private void parseRelation(Attributes atts) {
+    void parseRelation() {
         relation = new SimpleOSMRelation();
-        type = WayType.UNKNOWN;
     }
 
     /**
      * Parses a node which is a member of a way
-     * @param atts
+     * @param ref the id of the node
      */
-    private void parseND(Attributes atts) {
-        long ref = Long.parseLong(atts.getValue("ref"));
+    void parseND(long ref) {
         way.add(points.get(ref));
     }
 
     /**
-     * Parses a tag
-     * @param atts
+     * Parses a tag by adding it to the tags of the current element
+     * @param k the key of the tag
+     * @param v the value of the tag
      */
-    private void parseTag(Attributes atts) {
-        String k = atts.getValue("k");
-        String v = atts.getValue("v");
-        String stringToCompare = k.toUpperCase() + "_" + v.toUpperCase();
-
-        if (k.equals("name")) {
-            wayStreetName = v;
-        }
-        if (dummyTagsCather(k)) return;
-
-        if (k.equals("type") && v.equals("restriction")) relationIsRestriction = true;
-
-        if (isArea) {
-            stringToCompare = stringToCompare + "_AREA";
-            isArea = false;
-        }
-        if (stringToCompare.equals("AREA_YES")) isArea = true;
-
-        //Check for all valid WayTypes if key and value equals one of them
-        for (WayType _type : WayType.values()) {
-            if (stringToCompare.equals(_type.toString())) {
-                type = _type;
-                isArea = false;
-                break;
-            }
-        }
-
-        //Adding speedlimit and oneway info to OSMWays that are roads
-        if ( type != null && type.toString().startsWith("HIGHWAY_")) {
-
-            if(k.equals("maxspeed")) {
-                if(isNumeric(v)) {
-                    waySpeedLimit = Integer.parseInt(v);
-                }
-                else if (v.equals("DK:urban")){
-                    waySpeedLimit = 50;
-                }
-                else if (v.equals("DK:rural")){
-                    waySpeedLimit = 80;
-                }
-            } else if((k.equals("oneway") && v.equals("yes"))) {
-                wayIsOneway = true;
-            } else if(k.equals("oneway") && v.equals("-1")) {
-                wayIsOneway = true;
-                wayIsReverseOneway = true;
-            } else if(k.equals("bicycle") && v.equals("no")) {
-                cyclingAllowed = false;
-            } else if(k.equals("foot") && v.equals("no")) {
-                walkingAllowed = false;
-            } else if(k.equals("motor_vehicle") && v.equals("no")) {
-                drivingAllowed = false;
-            } else if(k.equals("junction") && v.equals("roundabout")) {
-                wayIsOneway = true;
-                wayIsRoundabout = true;
-            }
-        }
-
-        //Address & completer related:
-        if (k.equals("addr:street")) {
-            streetName = v;
-        }
-        if (k.equals("addr:city")) {
-            city = v;
-        }
-        if (k.equals("addr:postcode")) {
-            postcode = v;
-        }
-        if (k.equals("addr:housenumber")){
-            streetNumber = v;
-        }
-    }
-    private boolean isNumeric(String v) {
-        try {
-            Integer.parseInt(v);
-        } catch (NumberFormatException e) {
-            return false;
-        }
-        return true;
-    }
-    /**
-     * Method that catches stupid tags with no use
-     * @param k is the key
-     * @return true if a tag is caught and otherwise false
-     */
-    private boolean dummyTagsCather(String k) {
-        switch (k) {
-            case "architect":
-                return true;
-            case "level":
-                return true;
-            case "note":
-                return true;
-            case "covered":
-                return true;
-            case "surface":
-                return true;
-            case "lit":
-                return true;
-            case "access":
-                return true;
-        }
-        return false;
+    void parseTag(String k, String v) {
+        if (tagCount + 2 > tags.length) tags = Arrays.copyOf(tags, tags.length * 2);
+        tags[tagCount++] = k;
+        tags[tagCount++] = v;
     }
 
     /**
      * Parse member
-     * @param atts
+     * @param memberType the type of the member, node or way
+     * @param ref the id of the member
+     * @param role the role of the member in the relation
      */
-    private void parseMember(Attributes atts) {
-        long ref = Long.parseLong(atts.getValue("ref"));
-        String role = atts.getValue("role");
+    void parseMember(String memberType, long ref, String role) {
         if (role.equals("from")) restrictionFrom = ref;
         if (role.equals("to")) restrictionTo = ref;
+        if (role.equals("via") && memberType.equals("node")) restrictionVia = points.get(ref);
 
         relation.add(ways.get(ref));
     }
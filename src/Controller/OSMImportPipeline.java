@@ -0,0 +1,157 @@
+package Controller;
+
+import Model.Model;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Imports an OSM file on several threads.
+ * A dedicated parser thread reads the file and passes batches of records through a bounded queue. A pool of workers
+ * reads the tags and builds the shapes and addresses of the batches, and the thread that runs the import adds them to
+ * the model in the order of the file, so the map data is the same as when everything is done on a single thread.
+ * Interning the names and putting the addresses in the autocompleter is left to the thread that adds the records, as
+ * the ids of the strings depend on the order of the file
+ */
+public class OSMImportPipeline {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 64; //How many batches the parser may be ahead of the model
+    private static final Future<Batch> END = CompletableFuture.completedFuture(null);
+
+    private final Model model;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<Batch>> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private Batch currentBatch;
+    private volatile Throwable parserError;
+
+    /**
+     * A reader that parses the file and passes its elements to the handler
+     */
+    public interface Parser {
+        void parse(OSMHandler handler) throws IOException, SAXException;
+    }
+
+    /**
+     * Creates a pipeline with a worker for every core that is not used by the parser
+     * @param model the model to be built
+     */
+    public OSMImportPipeline(Model model) {
+        this(model, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Creates a pipeline with a given number of workers
+     * @param model the model to be built
+     * @param workerCount the number of threads that build shapes
+     */
+    public OSMImportPipeline(Model model, int workerCount) {
+        this.model = model;
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "OSM import worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the parser on its own thread and adds the records to the model on this thread until the file is parsed
+     * @param parser the parser of the file
+     * @throws IOException If the parser could not read the file
+     * @throws SAXException If the parsing went wrong
+     */
+    public void run(Parser parser) throws IOException, SAXException {
+        OSMModelBuilder builder = new OSMModelBuilder(model);
+        Thread parserThread = new Thread(() -> {
+            try {
+                parser.parse(new OSMHandler(model, this));
+                flush();
+            } catch (Throwable e) {
+                parserError = e;
+            } finally {
+                try {
+                    batches.put(END);
+                } catch (InterruptedException e) {
+                    //The import has been stopped, so nobody is waiting for the end
+                }
+            }
+        }, "OSM parser");
+        parserThread.start();
+
+        try {
+            for (Future<Batch> batch = batches.take(); batch != END; batch = batches.take()) {
+                for (OSMRecord record : batch.get().records) {
+                    record.apply(builder);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
+        } catch (ExecutionException e) {
+            rethrow(e.getCause());
+        } finally {
+            parserThread.interrupt();
+            workers.shutdownNow();
+        }
+        if (parserError != null) rethrow(parserError);
+    }
+
+    /**
+     * Adds a record to the current batch. A batch only holds one kind of record, so nodes, ways and relations are
+     * passed on in separate batches
+     * @param record the record
+     * @throws SAXException If the parser thread is interrupted while waiting for the queue
+     */
+    void submit(OSMRecord record) throws SAXException {
+        if (currentBatch != null && (currentBatch.records.size() >= BATCH_SIZE || currentBatch.records.get(0).getClass() != record.getClass())) {
+            flush();
+        }
+        if (currentBatch == null) currentBatch = new Batch();
+        currentBatch.records.add(record);
+    }
+
+    /**
+     * Passes the current batch on to the workers
+     * @throws SAXException If the parser thread is interrupted while waiting for the queue
+     */
+    private void flush() throws SAXException {
+        if (currentBatch == null) return;
+        try {
+            batches.put(workers.submit(currentBatch));
+        } catch (InterruptedException e) {
+            throw new SAXException(e);
+        }
+        currentBatch = null;
+    }
+
+    /**
+     * Throws an exception from another thread as the exception the import may throw
+     * @param e the exception
+     * @throws IOException If e is an IOException
+     * @throws SAXException If e is a SAXException or another checked exception
+     */
+    private static void rethrow(Throwable e) throws IOException, SAXException {
+        if (e instanceof IOException) throw (IOException) e;
+        if (e instanceof SAXException) throw (SAXException) e;
+        if (e instanceof RuntimeException) throw (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        throw new SAXException((Exception) e);
+    }
+
+    /**
+     * A batch of records that is built by one worker
+     */
+    private class Batch implements Callable<Batch> {
+        private final List<OSMRecord> records = new ArrayList<>(BATCH_SIZE);
+
+        @Override
+        public Batch call() {
+            for (OSMRecord record : records) {
+                record.build(model);
+            }
+            return this;
+        }
+    }
+}
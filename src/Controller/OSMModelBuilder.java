@@ -0,0 +1,179 @@
+package Controller;
+
+import Model.Address.Address;
+import Model.Graph.RoadGraph;
+import Model.KDTree.CoordinateArena;
+import Model.KDTree.KDFriendlyShape;
+import Model.Model;
+import Model.OSM.*;
+import Model.OnePointMapMarker;
+import Model.StringTable;
+import lib.TST;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the records from the OSM import to the model. Every method is called in the order of the file from a single
+ * thread, so the map data is the same no matter how many threads built the shapes
+ */
+class OSMModelBuilder {
+    private Model model;
+    private List<OSMHighway> highways;
+    private Map<Long, OSMHighway> highwayMap;
+    private List<OSMRestriction> restrictions;
+    private Map<SimpleOSMNode, SimpleOSMWay> coastlines;
+
+    //For autocompleter
+    private TST<String>
+            cities = new TST<>(),
+            postcodes = new TST<>(),
+            streetNames = new TST<>();
+    //The ids of the names in the autocompleter, so a name shared by many addresses is only put once
+    private BitSet cityIds = new BitSet(), postcodeIds = new BitSet(), streetNameIds = new BitSet();
+    private Set<Long> postcodeCityIds = new HashSet<>();
+
+    OSMModelBuilder(Model model) {
+        this.model = model;
+        highways = new ArrayList<>();
+        highwayMap = new HashMap<>();
+        restrictions = new ArrayList<>();
+        coastlines = new HashMap<>();
+    }
+
+    /**
+     * @param name a name of the map, may be null
+     * @return the id of the name in the string table of the map, which every way or node of the same name shares
+     */
+    int nameId(String name) {
+        return model.getMapData().getStrings().id(name);
+    }
+
+    /**
+     * Adds a shape to the model
+     * @param shape the shape
+     */
+    void addShape(KDFriendlyShape shape) {
+        model.add(shape);
+    }
+
+    /**
+     * Adds a highway to the model and to the highways of the road graph
+     * @param id the osm id of the highway
+     * @param highway the highway
+     */
+    void addHighway(long id, OSMHighway highway) {
+        model.add(highway);
+        highways.add(highway);
+        highwayMap.put(id, highway);
+    }
+
+    /**
+     * Adds an address and its names to the autocompleter. The parts of the address and the names are interned, and a
+     * name is only put in the autocompleter the first time it is seen
+     * @param address the address
+     * @param marker the position of the address
+     * @param streetName the street name as it is written in the file
+     * @param postcode the postcode as it is written in the file
+     * @param city the city as it is written in the file
+     */
+    void addAddress(Address address, OnePointMapMarker marker, String streetName, String postcode, String city) {
+        StringTable strings = model.getMapData().getStrings();
+        model.getMapData().putAddress(address.intern(strings), marker);
+        int streetNameId = strings.id(streetName), postcodeId = strings.id(postcode), cityId = strings.id(city);
+        if (!streetNameIds.get(streetNameId)) {
+            streetNameIds.set(streetNameId);
+            streetNames.put(strings.get(streetNameId), "");
+        }
+        if (!postcodeIds.get(postcodeId)) {
+            postcodeIds.set(postcodeId);
+            postcodes.put(strings.get(postcodeId), "");
+        }
+        if (postcodeCityIds.add((long) postcodeId << 32 | cityId)) postcodes.put(postcode+" "+city, "");
+        if (!cityIds.get(cityId)) {
+            cityIds.set(cityId);
+            cities.put(strings.get(cityId), "");
+        }
+    }
+
+    /**
+     * Adds a turn restriction if both highways are known
+     * @param from the osm id of the highway the turn is made from
+     * @param to the osm id of the highway the turn is made on to
+     * @param via the node where the turn is made, null if the relation has no via node
+     * @param isOnly true for only_* restrictions
+     * @return true if the restriction was added
+     */
+    boolean addRestriction(long from, long to, SimpleOSMNode via, boolean isOnly) {
+        if (highwayMap.get(from) == null || highwayMap.get(to) == null) return false;
+        //The via node is compared to the points of the highways, which are read back from the arena
+        if (via != null) {
+            CoordinateArena coordinates = model.getMapData().getCoordinates();
+            via = new SimpleOSMNode(coordinates.nearestX((float) via.getX()), coordinates.nearestY((float) via.getY()));
+        }
+        restrictions.add(new OSMRestriction(highwayMap.get(from), highwayMap.get(to), via, isOnly));
+        return true;
+    }
+
+    /**
+     * Merges a part of a coastline with the parts it shares end nodes with
+     * @param way the part of the coastline
+     */
+    void addCoastline(SimpleOSMWay way) {
+        SimpleOSMWay before = coastlines.remove(way.getFirstNode());
+        SimpleOSMWay after = coastlines.remove(way.getLastNode());
+        SimpleOSMWay merged = new SimpleOSMWay();
+        if (before != null){
+            merged.addAll(before.subList(0,before.size() - 1));
+        }
+
+        merged.addAll(way);
+
+        if(after != null && after != before) {
+            merged.addAll(after.subList(1,after.size()));
+        }
+
+        coastlines.put(merged.getFirstNode(), merged);
+        coastlines.put(merged.getLastNode(), merged);
+    }
+
+    /**
+     * Adds the merged coastlines to the model
+     */
+    void endOSM() {
+        if (!model.isCoastlinesLoaded()) {
+            coastlines.forEach((key, way) -> {
+                if (key == way.getFirstNode()) {
+                    OSMWay shapeToAdd = new OSMWay(model.getMapData().getCoordinates(), way);
+                    shapeToAdd.setWayType(WayType.NATURAL_COASTLINE);
+                    model.add(shapeToAdd);
+                }
+            });
+        }
+    }
+
+    /**
+     * Finishes the model with the bounds, the autocompleter and the road graph
+     * @param minlat the minimum latitude
+     * @param minlon the minimum longitude
+     * @param maxlat the maximum latitude
+     * @param maxlon the maximum longitude
+     */
+    void endDocument(float minlat, float minlon, float maxlat, float maxlon) {
+        model.setCities(cities);
+        model.setPostcodes(postcodes);
+        model.setStreetNames(streetNames);
+        model.maxlat = maxlat;
+        model.maxlon = maxlon;
+        model.minlat = minlat;
+        model.minlon = minlon;
+        RoadGraph graph = new RoadGraph(model, highways, restrictions);
+        graph.buildContractionHierarchies();
+        model.setGraph(graph);
+    }
+}
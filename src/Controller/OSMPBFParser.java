@@ -0,0 +1,483 @@
+package Controller;
+
+import org.xml.sax.SAXException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A parser of OSM PBF files, that drives an OSMHandler the same way as an OSM XML file would.
+ * The file is a sequence of compressed blobs of protocol buffer messages. The blobs are inflated and their string
+ * tables decoded on several threads, while the elements are passed on to the handler in the order of the file
+ */
+public class OSMPBFParser {
+    private static final int MAX_BLOB_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private static final String[] MEMBER_TYPES = {"node", "way", "relation"};
+
+    private final DataInputStream in;
+    private final int threadCount;
+    private int blobSize; //The size of the blob after the last blob header
+
+    /**
+     * Creates a parser that inflates blobs on every core
+     * @param in the PBF file
+     */
+    public OSMPBFParser(InputStream in) {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a parser that inflates blobs on a given number of threads
+     * @param in the PBF file
+     * @param threadCount the number of threads that inflate blobs
+     */
+    public OSMPBFParser(InputStream in, int threadCount) {
+        this.in = new DataInputStream(in);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Parses the file and calls the handler for every element
+     * @param handler the handler of the elements
+     * @throws IOException If the file could not be read, or is not a valid PBF file
+     * @throws SAXException If the handler fails
+     */
+    public void parse(OSMHandler handler) throws IOException, SAXException {
+        ExecutorService inflaters = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "PBF inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //The blocks that are being inflated, in the order of the file
+        ArrayDeque<Future<PrimitiveBlock>> pending = new ArrayDeque<>();
+        handler.startDocument();
+        try {
+            boolean hasHeader = false;
+            String type;
+            while ((type = readBlobHeader()) != null) {
+                byte[] blob = readBlob();
+                if (type.equals("OSMHeader")) {
+                    parseHeader(new Message(inflate(blob)), handler);
+                    hasHeader = true;
+                } else if (type.equals("OSMData")) {
+                    if (!hasHeader) throw new IOException("PBF file has data before its header");
+                    pending.add(inflaters.submit(() -> new PrimitiveBlock(inflate(blob))));
+                    if (pending.size() > 2 * threadCount) parseBlock(next(pending), handler);
+                }
+                //Other blob types may be skipped
+            }
+            while (!pending.isEmpty()) parseBlock(next(pending), handler);
+        } finally {
+            inflaters.shutdownNow();
+        }
+        handler.endOSM();
+        handler.endDocument();
+    }
+
+    /**
+     * Waits for the first pending block to be inflated
+     * @param pending the pending blocks
+     * @return the first block
+     * @throws IOException If the block could not be inflated
+     * @throws SAXException If the parser thread was interrupted
+     */
+    private static PrimitiveBlock next(ArrayDeque<Future<PrimitiveBlock>> pending) throws IOException, SAXException {
+        try {
+            return pending.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads the header of the next blob
+     * @return the type of the blob, or null at the end of the file
+     * @throws IOException If the file could not be read
+     */
+    private String readBlobHeader() throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_BLOB_HEADER_SIZE) throw new IOException("Invalid PBF blob header size " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        Message header = new Message(bytes);
+        String type = null;
+        blobSize = -1;
+        while (header.hasNext()) {
+            switch (header.nextField()) {
+                case 1: type = header.readString(); break;
+                case 3: blobSize = (int) header.readVarint(); break;
+                default: header.skip();
+            }
+        }
+        if (type == null || blobSize < 0 || blobSize > MAX_BLOB_SIZE) throw new IOException("Invalid PBF blob header");
+        return type;
+    }
+
+    private byte[] readBlob() throws IOException {
+        byte[] bytes = new byte[blobSize];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decompresses a blob
+     * @param bytes the blob
+     * @return the message in the blob
+     * @throws IOException If the blob is not valid, or is compressed with anything but zlib
+     */
+    private static byte[] inflate(byte[] bytes) throws IOException {
+        Message blob = new Message(bytes);
+        byte[] raw = null;
+        int rawSize = -1;
+        int zlibStart = -1, zlibEnd = -1;
+        while (blob.hasNext()) {
+            switch (blob.nextField()) {
+                case 1: raw = blob.readBytes(); break;
+                case 2: rawSize = (int) blob.readVarint(); break;
+                case 3:
+                    zlibEnd = blob.readLength();
+                    zlibStart = blob.pos;
+                    blob.pos = zlibEnd;
+                    break;
+                case 4: case 5: case 6: case 7: throw new IOException("Unsupported PBF compression");
+                default: blob.skip();
+            }
+        }
+        if (raw != null) return raw;
+        if (zlibStart < 0 || rawSize < 0 || rawSize > MAX_BLOB_SIZE) throw new IOException("Invalid PBF blob");
+        byte[] inflated = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, zlibStart, zlibEnd - zlibStart);
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int count = inflater.inflate(inflated, length, rawSize - length);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += count;
+            }
+            if (length != rawSize) throw new IOException("Invalid PBF blob size");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        return inflated;
+    }
+
+    /**
+     * Parses the header block, which holds the bounds of the map
+     * @param header the header block
+     * @param handler the handler of the elements
+     * @throws IOException If the file needs features that are not supported, or has no bounds
+     */
+    private static void parseHeader(Message header, OSMHandler handler) throws IOException {
+        boolean hasBounds = false;
+        while (header.hasNext()) {
+            switch (header.nextField()) {
+                case 1:
+                    Message bbox = header.readMessage();
+                    long left = 0, right = 0, top = 0, bottom = 0;
+                    while (bbox.hasNext()) {
+                        switch (bbox.nextField()) {
+                            case 1: left = bbox.readSignedVarint(); break;
+                            case 2: right = bbox.readSignedVarint(); break;
+                            case 3: top = bbox.readSignedVarint(); break;
+                            case 4: bottom = bbox.readSignedVarint(); break;
+                            default: bbox.skip();
+                        }
+                    }
+                    handler.parseBounds(nanoToFloat(bottom), nanoToFloat(left), nanoToFloat(top), nanoToFloat(right));
+                    hasBounds = true;
+                    break;
+                case 4:
+                    String feature = header.readString();
+                    if (!feature.equals("OsmSchema-V0.6") && !feature.equals("DenseNodes")) {
+                        throw new IOException("Unsupported PBF feature " + feature);
+                    }
+                    break;
+                default: header.skip();
+            }
+        }
+        if (!hasBounds) throw new IOException("PBF file has no bounds");
+    }
+
+    /**
+     * Passes the elements of a block on to the handler
+     * @param block the block
+     * @param handler the handler of the elements
+     * @throws SAXException If the handler fails
+     */
+    private static void parseBlock(PrimitiveBlock block, OSMHandler handler) throws SAXException {
+        for (Message group : block.groups) {
+            while (group.hasNext()) {
+                switch (group.nextField()) {
+                    case 1: parseNode(group.readMessage(), block, handler); break;
+                    case 2: parseDenseNodes(group.readMessage(), block, handler); break;
+                    case 3: parseWay(group.readMessage(), block, handler); break;
+                    case 4: parseRelation(group.readMessage(), block, handler); break;
+                    default: group.skip();
+                }
+            }
+        }
+    }
+
+    private static void parseNode(Message node, PrimitiveBlock block, OSMHandler handler) throws SAXException {
+        long id = 0, lat = 0, lon = 0;
+        Message keys = null, values = null;
+        while (node.hasNext()) {
+            switch (node.nextField()) {
+                case 1: id = node.readSignedVarint(); break;
+                case 2: keys = node.readMessage(); break;
+                case 3: values = node.readMessage(); break;
+                case 8: lat = node.readSignedVarint(); break;
+                case 9: lon = node.readSignedVarint(); break;
+                default: node.skip();
+            }
+        }
+        handler.parseNodes(id, block.latitude(lat), block.longitude(lon));
+        parseTags(keys, values, block, handler);
+        handler.endNode();
+    }
+
+    private static void parseDenseNodes(Message dense, PrimitiveBlock block, OSMHandler handler) throws SAXException {
+        Message ids = null, lats = null, lons = null, keysValues = null;
+        while (dense.hasNext()) {
+            switch (dense.nextField()) {
+                case 1: ids = dense.readMessage(); break;
+                case 8: lats = dense.readMessage(); break;
+                case 9: lons = dense.readMessage(); break;
+                case 10: keysValues = dense.readMessage(); break;
+                default: dense.skip();
+            }
+        }
+        if (ids == null) return;
+        //Ids and coordinates are delta coded, and the tags of every node end with a 0
+        long id = 0, lat = 0, lon = 0;
+        while (ids.hasNext()) {
+            id += ids.readSignedVarint();
+            lat += lats.readSignedVarint();
+            lon += lons.readSignedVarint();
+            handler.parseNodes(id, block.latitude(lat), block.longitude(lon));
+            if (keysValues != null) {
+                for (int key = (int) keysValues.readVarint(); key != 0; key = (int) keysValues.readVarint()) {
+                    handler.parseTag(block.strings[key], block.strings[(int) keysValues.readVarint()]);
+                }
+            }
+            handler.endNode();
+        }
+    }
+
+    private static void parseWay(Message way, PrimitiveBlock block, OSMHandler handler) throws SAXException {
+        long id = 0;
+        Message keys = null, values = null, refs = null;
+        while (way.hasNext()) {
+            switch (way.nextField()) {
+                case 1: id = way.readVarint(); break;
+                case 2: keys = way.readMessage(); break;
+                case 3: values = way.readMessage(); break;
+                case 8: refs = way.readMessage(); break;
+                default: way.skip();
+            }
+        }
+        handler.parseWay(id);
+        long ref = 0;
+        while (refs != null && refs.hasNext()) {
+            ref += refs.readSignedVarint();
+            handler.parseND(ref);
+        }
+        parseTags(keys, values, block, handler);
+        handler.endWay();
+    }
+
+    private static void parseRelation(Message relation, PrimitiveBlock block, OSMHandler handler) throws SAXException {
+        Message keys = null, values = null, roles = null, memberIds = null, types = null;
+        while (relation.hasNext()) {
+            switch (relation.nextField()) {
+                case 2: keys = relation.readMessage(); break;
+                case 3: values = relation.readMessage(); break;
+                case 8: roles = relation.readMessage(); break;
+                case 9: memberIds = relation.readMessage(); break;
+                case 10: types = relation.readMessage(); break;
+                default: relation.skip();
+            }
+        }
+        handler.parseRelation();
+        long ref = 0;
+        while (memberIds != null && memberIds.hasNext()) {
+            ref += memberIds.readSignedVarint();
+            handler.parseMember(MEMBER_TYPES[(int) types.readVarint()], ref, block.strings[(int) roles.readVarint()]);
+        }
+        parseTags(keys, values, block, handler);
+        handler.endRelation();
+    }
+
+    private static void parseTags(Message keys, Message values, PrimitiveBlock block, OSMHandler handler) {
+        while (keys != null && keys.hasNext()) {
+            handler.parseTag(block.strings[(int) keys.readVarint()], block.strings[(int) values.readVarint()]);
+        }
+    }
+
+    /**
+     * @param nanodegrees a coordinate in nanodegrees
+     * @return the coordinate in degrees, rounded the same way as when it is parsed from an OSM XML file
+     */
+    private static float nanoToFloat(long nanodegrees) {
+        float value = OSMXMLScanner.decimalToFloat(Math.abs(nanodegrees), 9);
+        return nanodegrees < 0 ? -value : value;
+    }
+
+    /**
+     * An inflated block of elements, with its string table decoded
+     */
+    private static class PrimitiveBlock {
+        private String[] strings;
+        private List<Message> groups = new ArrayList<>();
+        private long granularity = 100, latOffset, lonOffset;
+
+        PrimitiveBlock(byte[] bytes) {
+            Message block = new Message(bytes);
+            while (block.hasNext()) {
+                switch (block.nextField()) {
+                    case 1:
+                        Message table = block.readMessage();
+                        List<String> list = new ArrayList<>();
+                        while (table.hasNext()) {
+                            if (table.nextField() == 1) list.add(table.readString());
+                            else table.skip();
+                        }
+                        strings = list.toArray(new String[0]);
+                        break;
+                    case 2: groups.add(block.readMessage()); break;
+                    case 17: granularity = block.readVarint(); break;
+                    case 19: latOffset = block.readVarint(); break;
+                    case 20: lonOffset = block.readVarint(); break;
+                    default: block.skip();
+                }
+            }
+        }
+
+        float latitude(long lat) {
+            return nanoToFloat(latOffset + granularity * lat);
+        }
+
+        float longitude(long lon) {
+            return nanoToFloat(lonOffset + granularity * lon);
+        }
+    }
+
+    /**
+     * A protocol buffer message, or the contents of a packed field, read from a range of a byte array
+     */
+    private static class Message {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+        private int wireType; //The wire type of the last field
+
+        Message(byte[] buf) {
+            this(buf, 0, buf.length);
+        }
+
+        Message(byte[] buf, int start, int end) {
+            this.buf = buf;
+            this.end = end;
+            pos = start;
+        }
+
+        boolean hasNext() {
+            return pos < end;
+        }
+
+        /**
+         * @return the number of the next field
+         */
+        int nextField() {
+            long key = readVarint();
+            wireType = (int) (key & 7);
+            return (int) (key >>> 3);
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+            throw new IllegalStateException("Malformed varint in PBF file");
+        }
+
+        long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads the length of a length delimited field
+         * @return the position after the field
+         */
+        int readLength() {
+            int length = (int) readVarint();
+            if (length < 0 || pos + length > end) throw new IllegalStateException("Malformed field in PBF file");
+            return pos + length;
+        }
+
+        Message readMessage() {
+            int fieldEnd = readLength();
+            Message message = new Message(buf, pos, fieldEnd);
+            pos = fieldEnd;
+            return message;
+        }
+
+        byte[] readBytes() {
+            int fieldEnd = readLength();
+            byte[] bytes = new byte[fieldEnd - pos];
+            System.arraycopy(buf, pos, bytes, 0, bytes.length);
+            pos = fieldEnd;
+            return bytes;
+        }
+
+        String readString() {
+            int fieldEnd = readLength();
+            String s = new String(buf, pos, fieldEnd - pos, StandardCharsets.UTF_8);
+            pos = fieldEnd;
+            return s;
+        }
+
+        /**
+         * Skips the value of the last field
+         */
+        void skip() {
+            switch (wireType) {
+                case 0: readVarint(); break;
+                case 1: pos += 8; break;
+                case 2: pos = readLength(); break;
+                case 5: pos += 4; break;
+                default: throw new IllegalStateException("Unsupported wire type in PBF file");
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package Controller;
+
+import Model.Address.Address;
+import Model.Model;
+import Model.OSM.*;
+import Model.OnePointMapMarker;
+
+import java.awt.geom.Point2D;
+import java.util.Collections;
+
+/**
+ * An element of an OSM file, as it is passed from the parser to the rest of the import.
+ * The parser only collects the points and the tags of the element. The tags are read and the shapes are built in
+ * parallel by build, while apply adds them to the model in the order of the file
+ */
+abstract class OSMRecord {
+
+    /**
+     * Builds the shapes and other objects of the record. May be called from any thread
+     * @param model the model, which is only used for the lonfactor, the coastlines and the coordinates of the map
+     */
+    void build(Model model) {}
+
+    /**
+     * Adds the record to the model. Called in the order of the file
+     * @param builder the builder of the model
+     */
+    abstract void apply(OSMModelBuilder builder);
+
+    /**
+     * A node, which can be a point on the map, an address or both
+     */
+    static class Node extends OSMRecord {
+        private float lat, lon;
+        private String[] tags;
+
+        private OSMTags nodeTags;
+        private Point2D point;
+        private Address address;
+        private OnePointMapMarker marker;
+
+        Node(float lat, float lon, String[] tags) {
+            this.lat = lat;
+            this.lon = lon;
+            this.tags = tags;
+        }
+
+        @Override
+        void build(Model model) {
+            nodeTags = new OSMTags(tags, null);
+            if (nodeTags.hasAddress()) {
+                address = new Address(nodeTags.getStreetName().toLowerCase(), nodeTags.getStreetNumber().toLowerCase(), null, null,
+                        nodeTags.getPostcode().toLowerCase(), nodeTags.getCity().toLowerCase());
+                marker = new OnePointMapMarker(lon*model.getLonfactor(), -lat);
+            }
+            if (nodeTags.getType() != null) {
+                point = new Point2D.Float(model.getLonfactor() * lon, -lat);
+            }
+        }
+
+        @Override
+        void apply(OSMModelBuilder builder) {
+            if (address != null) builder.addAddress(address, marker, nodeTags.getStreetName(), nodeTags.getPostcode(), nodeTags.getCity());
+            //Points on the map are not named
+            if (point != null) builder.addShape(new OSMNode(point, nodeTags.getType(), 0));
+        }
+    }
+
+    /**
+     * A way, which is either a highway, a part of a coastline or any other shape
+     */
+    static class Way extends OSMRecord {
+        private long id;
+        private SimpleOSMWay way;
+        private String[] tags;
+
+        private WayType type;
+        private boolean isCoastline;
+        private String name;
+        private OSMWay shape;
+
+        Way(long id, SimpleOSMWay way, String[] tags) {
+            this.id = id;
+            this.way = way;
+            this.tags = tags;
+        }
+
+        @Override
+        void build(Model model) {
+            OSMTags wayTags = new OSMTags(tags, WayType.UNKNOWN);
+            type = wayTags.getType();
+            name = wayTags.getName();
+            isCoastline = type == WayType.NATURAL_COASTLINE || type == WayType.BORDER_TYPE_NATION && !model.isCoastlinesLoaded();
+            if (isCoastline) return;
+            if (isHighway()) {
+                shape = buildHighway(model, wayTags);
+            } else {
+                shape = new OSMWay(model.getMapData().getCoordinates(), way);
+                shape.setWayType(type);
+            }
+        }
+
+        /**
+         * Builds the highway with speedlimit and the traveltypes allowed on it
+         * @param model the model whose map the points of the highway are stored in
+         * @param wayTags the tags of the way
+         * @return the highway
+         */
+        private OSMHighway buildHighway(Model model, OSMTags wayTags) {
+            Integer speedLimit = wayTags.getSpeedLimit();
+            boolean walkingAllowed = wayTags.isWalkingAllowed();
+            boolean cyclingAllowed = wayTags.isCyclingAllowed();
+            boolean drivingAllowed = wayTags.isDrivingAllowed();
+            OSMHighway highwayToAdd = new OSMHighway(model.getMapData().getCoordinates(), way);
+            highwayToAdd.setWayType(type);
+            if (speedLimit == null) {
+                if (type.toString().startsWith("HIGHWAY_RESIDENTIAL") || type.toString().startsWith("HIGHWAY_LIVING_STREET") ||
+                        type.toString().startsWith("HIGHWAY_SERVICE") || type.toString().startsWith("HIGHWAY_TERTIARY")) {
+                    highwayToAdd.setSpeedLimit(50);
+                } else if (type.toString().startsWith("HIGHWAY_MOTORWAY") || type.toString().startsWith("HIGHWAY_TRUNK")) {
+                    highwayToAdd.setSpeedLimit(130);
+                } else {
+                    //for road and proposed roads ? not enough info about raods and
+                    //proposed roads shouldn't be used
+                    //should be extended
+                    highwayToAdd.setSpeedLimit(80);
+                }
+            } else {
+                highwayToAdd.setSpeedLimit(speedLimit);
+            }
+
+            if (wayTags.isOneWay()) highwayToAdd.setOneWay();
+
+            if (type == WayType.HIGHWAY_MOTORWAY || type == WayType.HIGHWAY_MOTORWAY_LINK) {
+                walkingAllowed = false;
+                cyclingAllowed = false;
+            }
+            if (type == WayType.HIGHWAY_FOOTWAY || type == WayType.HIGHWAY_PEDESTRIAN || type == WayType.HIGHWAY_CYCLEWAY || type == WayType.HIGHWAY_PEDESTRIAN_AREA || type == WayType.HIGHWAY_PATH) {
+                drivingAllowed = false;
+            }
+
+            highwayToAdd.setWalkingAllowed(walkingAllowed);
+            highwayToAdd.setCyclingAllowed(cyclingAllowed);
+            highwayToAdd.setDrivingAllowed(drivingAllowed);
+            highwayToAdd.setIsRoundabout(wayTags.isRoundabout());
+            if (wayTags.isReverseOneWay()) Collections.reverse(highwayToAdd.getPoints());
+            return highwayToAdd;
+        }
+
+        private boolean isHighway() {
+            return type.toString().toUpperCase().startsWith("HIGHWAY");
+        }
+
+        @Override
+        void apply(OSMModelBuilder builder) {
+            if (shape != null) shape.setNameId(builder.nameId(name));
+            if (isCoastline) {
+                builder.addCoastline(way);
+            } else if (shape instanceof OSMHighway) {
+                builder.addHighway(id, (OSMHighway) shape);
+            } else if (shape != null) {
+                builder.addShape(shape);
+            }
+        }
+    }
+
+    /**
+     * A relation, which is either a turn restriction or a shape made of several ways
+     */
+    static class Relation extends OSMRecord {
+        private SimpleOSMRelation relation;
+        private String[] tags;
+        private long restrictionFrom, restrictionTo;
+        private SimpleOSMNode restrictionVia;
+
+        private boolean isRestriction;
+        private boolean restrictionIsOnly;
+        private OSMRelation shape;
+
+        Relation(SimpleOSMRelation relation, String[] tags, long restrictionFrom, long restrictionTo, SimpleOSMNode restrictionVia) {
+            this.relation = relation;
+            this.tags = tags;
+            this.restrictionFrom = restrictionFrom;
+            this.restrictionTo = restrictionTo;
+            this.restrictionVia = restrictionVia;
+        }
+
+        @Override
+        void build(Model model) {
+            OSMTags relationTags = new OSMTags(tags, WayType.UNKNOWN);
+            WayType type = relationTags.getType();
+            isRestriction = relationTags.isRestriction();
+            restrictionIsOnly = relationTags.isOnlyRestriction();
+            //Whether a restriction is used depends on the highways added before it, so the shape is always built
+            if (!relation.isEmpty() && relation.get(0) != null) {
+                shape = new OSMRelation(model.getMapData().getCoordinates(), relation);
+                shape.setWayType(type);
+            }
+        }
+
+        @Override
+        void apply(OSMModelBuilder builder) {
+            if (isRestriction && builder.addRestriction(restrictionFrom, restrictionTo, restrictionVia, restrictionIsOnly)) return;
+            if (shape != null) builder.addShape(shape);
+        }
+    }
+
+    /**
+     * The end of the osm element, after which the coastlines are complete
+     */
+    static class EndOSM extends OSMRecord {
+        @Override
+        void apply(OSMModelBuilder builder) {
+            builder.endOSM();
+        }
+    }
+
+    /**
+     * The end of the document, after which the road graph can be built
+     */
+    static class EndDocument extends OSMRecord {
+        private float minlat, minlon, maxlat, maxlon;
+
+        EndDocument(float minlat, float minlon, float maxlat, float maxlon) {
+            this.minlat = minlat;
+            this.minlon = minlon;
+            this.maxlat = maxlat;
+            this.maxlon = maxlon;
+        }
+
+        @Override
+        void apply(OSMModelBuilder builder) {
+            builder.endDocument(minlat, minlon, maxlat, maxlon);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package Controller;
+
+import Model.OSM.WayType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The tags of a node, way or relation, read in the order they were written in the file.
+ * The parser only collects the keys and values of an element, and the tags are read here when the record of the
+ * element is built, so matching them with the WayTypes is done by the workers of the import and not by the parser
+ */
+class OSMTags {
+    //The WayTypes by the tag they are matched with
+    private static final Map<String, WayType> wayTypes = new HashMap<>(); static {
+        for (WayType type : WayType.values()) {
+            wayTypes.putIfAbsent(type.toString(), type);
+        }
+    }
+
+    private WayType type;
+    private boolean isArea;
+    private String name;
+    private Integer speedLimit;
+    private boolean isOneWay;
+    private boolean isReverseOneWay;
+    private boolean isRoundabout;
+    private boolean walkingAllowed = true;
+    private boolean cyclingAllowed = true;
+    private boolean drivingAllowed = true;
+
+    private boolean isRestriction;
+    private boolean isOnlyRestriction;
+
+    //For addresses
+    private String streetName, streetNumber, city, postcode;
+
+    /**
+     * Reads the tags of an element
+     * @param keysAndValues the keys and values of the tags, as key, value, key, value and so on
+     * @param type the WayType of the element before its tags are read, UNKNOWN for ways and relations and null for nodes
+     */
+    OSMTags(String[] keysAndValues, WayType type) {
+        this.type = type;
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            parseTag(keysAndValues[i], keysAndValues[i + 1]);
+        }
+    }
+
+    /**
+     * Parses a tag
+     * @param k the key of the tag
+     * @param v the value of the tag
+     */
+    private void parseTag(String k, String v) {
+        String stringToCompare = k.toUpperCase() + "_" + v.toUpperCase();
+
+        if (k.equals("name")) {
+            name = v;
+        }
+        if (dummyTagsCather(k)) return;
+
+        if (k.equals("type") && v.equals("restriction")) isRestriction = true;
+        if ((k.equals("restriction") || k.equals("restriction:motorcar")) && v.startsWith("only_")) isOnlyRestriction = true;
+
+        if (isArea) {
+            stringToCompare = stringToCompare + "_AREA";
+            isArea = false;
+        }
+        if (stringToCompare.equals("AREA_YES")) isArea = true;
+
+        //Check for all valid WayTypes if key and value equals one of them
+        WayType _type = wayTypes.get(stringToCompare);
+        if (_type != null) {
+            type = _type;
+            isArea = false;
+        }
+
+        //Adding speedlimit and oneway info to OSMWays that are roads
+        if ( type != null && type.toString().startsWith("HIGHWAY_")) {
+
+            if(k.equals("maxspeed")) {
+                if(isNumeric(v)) {
+                    speedLimit = Integer.parseInt(v);
+                }
+                else if (v.equals("DK:urban")){
+                    speedLimit = 50;
+                }
+                else if (v.equals("DK:rural")){
+                    speedLimit = 80;
+                }
+            } else if((k.equals("oneway") && v.equals("yes"))) {
+                isOneWay = true;
+            } else if(k.equals("oneway") && v.equals("-1")) {
+                isOneWay = true;
+                isReverseOneWay = true;
+            } else if(k.equals("bicycle") && v.equals("no")) {
+                cyclingAllowed = false;
+            } else if(k.equals("foot") && v.equals("no")) {
+                walkingAllowed = false;
+            } else if(k.equals("motor_vehicle") && v.equals("no")) {
+                drivingAllowed = false;
+            } else if(k.equals("junction") && v.equals("roundabout")) {
+                isOneWay = true;
+                isRoundabout = true;
+            }
+        }
+
+        //Address & completer related:
+        if (k.equals("addr:street")) {
+            streetName = v;
+        }
+        if (k.equals("addr:city")) {
+            city = v;
+        }
+        if (k.equals("addr:postcode")) {
+            postcode = v;
+        }
+        if (k.equals("addr:housenumber")){
+            streetNumber = v;
+        }
+    }
+
+    private boolean isNumeric(String v) {
+        try {
+            Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Method that catches stupid tags with no use
+     * @param k is the key
+     * @return true if a tag is caught and otherwise false
+     */
+    private boolean dummyTagsCather(String k) {
+        switch (k) {
+            case "architect":
+                return true;
+            case "level":
+                return true;
+            case "note":
+                return true;
+            case "covered":
+                return true;
+            case "surface":
+                return true;
+            case "lit":
+                return true;
+            case "access":
+                return true;
+        }
+        return false;
+    }
+
+    WayType getType() {
+        return type;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Integer getSpeedLimit() {
+        return speedLimit;
+    }
+
+    boolean isOneWay() {
+        return isOneWay;
+    }
+
+    boolean isReverseOneWay() {
+        return isReverseOneWay;
+    }
+
+    boolean isRoundabout() {
+        return isRoundabout;
+    }
+
+    boolean isWalkingAllowed() {
+        return walkingAllowed;
+    }
+
+    boolean isCyclingAllowed() {
+        return cyclingAllowed;
+    }
+
+    boolean isDrivingAllowed() {
+        return drivingAllowed;
+    }
+
+    boolean isRestriction() {
+        return isRestriction;
+    }
+
+    boolean isOnlyRestriction() {
+        return isOnlyRestriction;
+    }
+
+    /**
+     * @return true if the tags have a street, a house number, a city and a postcode
+     */
+    boolean hasAddress() {
+        return streetName != null && streetNumber != null && city != null && postcode != null;
+    }
+
+    String getStreetName() {
+        return streetName;
+    }
+
+    String getStreetNumber() {
+        return streetNumber;
+    }
+
+    String getCity() {
+        return city;
+    }
+
+    String getPostcode() {
+        return postcode;
+    }
+}
@@ -0,0 +1,498 @@
+package Controller;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A scanner for the subset of XML used by OSM files, that drives an OSMHandler without going through SAX.
+ * Files are memory mapped in large windows and streams are read into a direct buffer, and ids and coordinates are
+ * parsed straight from the bytes. Names and values are decoded through a small cache, so the few distinct keys and
+ * the common values are only turned into strings once.
+ */
+public class OSMXMLScanner {
+    private static final int WINDOW_SIZE = 1 << 26;        //Size of the mapped windows of a file
+    private static final int STREAM_BUFFER_SIZE = 1 << 23; //Size of the buffer a stream is read into
+    private static final double[] POWERS_OF_TEN = new double[23]; static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+    }
+
+    private FileChannel file;           // the file to be mapped, null if a stream is read
+    private ReadableByteChannel stream; // the stream to be read, null if a file is mapped
+    private long windowStart;           // position in the file of the first byte in the buffer
+    private ByteBuffer buf;
+    private boolean endOfInput;         // true if the buffer holds the rest of the input
+
+    //The attributes of the current element
+    private int attributeCount;
+    private String[] attributeNames = new String[8];
+    private int[] valueStart = new int[8], valueEnd = new int[8];
+    private boolean[] valueNeedsDecoding = new boolean[8];
+
+    private final StringCache strings = new StringCache();
+
+    /**
+     * Creates a scanner that maps the file in windows
+     * @param file the channel of the file
+     */
+    public OSMXMLScanner(FileChannel file) {
+        this.file = file;
+    }
+
+    /**
+     * Creates a scanner that reads a stream into a buffer
+     * @param stream the channel of the stream
+     */
+    public OSMXMLScanner(ReadableByteChannel stream) {
+        this.stream = stream;
+        buf = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        buf.limit(0);
+    }
+
+    /**
+     * Scans the input and calls the handler for every element, in the same way as a SAX parser would
+     * @param handler the handler of the elements
+     * @throws IOException If the input could not be read
+     * @throws SAXException If the input is not well formed, or the handler fails
+     */
+    public void scan(OSMHandler handler) throws IOException, SAXException {
+        refill(0);
+        handler.startDocument();
+        int pos = 0;
+        while (true) {
+            int lt = indexOf('<', pos);
+            if (lt < 0) {
+                if (endOfInput) break;
+                pos = refill(buf.limit());
+                continue;
+            }
+            int end = scanMarkup(lt, handler);
+            if (end < 0) {
+                //The markup continues after the buffer, so it is scanned again when more is read
+                if (endOfInput) throw new SAXException("Unexpected end of OSM file");
+                pos = refill(lt);
+                continue;
+            }
+            pos = end;
+        }
+        handler.endDocument();
+    }
+
+    /**
+     * Reads more of the input, keeping the bytes from a given position
+     * @param keepFrom the position of the first byte that is still needed
+     * @return the new position of that byte
+     * @throws IOException If the input could not be read
+     */
+    private int refill(int keepFrom) throws IOException {
+        if (file != null) {
+            int size = buf == null ? WINDOW_SIZE : buf.limit();
+            if (buf != null && keepFrom == 0) size *= 2; //A single element is larger than the window
+            windowStart += keepFrom;
+            long length = Math.min(size, file.size() - windowStart);
+            buf = file.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            endOfInput = windowStart + length == file.size();
+            file.position(windowStart); //So the progress of the input stream can be followed
+        } else {
+            buf.position(keepFrom);
+            buf.compact();
+            if (!buf.hasRemaining()) {
+                //A single element is larger than the buffer
+                ByteBuffer larger = ByteBuffer.allocateDirect(buf.capacity() * 2);
+                buf.flip();
+                larger.put(buf);
+                buf = larger;
+            }
+            while (buf.hasRemaining()) {
+                if (stream.read(buf) < 0) {
+                    endOfInput = true;
+                    break;
+                }
+            }
+            buf.flip();
+        }
+        return 0;
+    }
+
+    /**
+     * Scans a single tag, declaration or comment
+     * @param lt the position of the '<' that starts the markup
+     * @param handler the handler of the elements
+     * @return the position after the markup, or -1 if the markup continues after the buffer
+     * @throws SAXException If the markup is not well formed, or the handler fails
+     */
+    private int scanMarkup(int lt, OSMHandler handler) throws SAXException {
+        int limit = buf.limit();
+        if (lt + 1 >= limit) return -1;
+        byte first = buf.get(lt + 1);
+        if (first == '?') return indexAfter("?>", lt + 2);
+        if (first == '!') {
+            if (startsWith("<!--", lt)) return indexAfter("-->", lt + 4);
+            return indexAfter(">", lt + 2);
+        }
+        if (first == '/') {
+            int nameEnd = nameEnd(lt + 2);
+            int gt = indexOf('>', nameEnd);
+            if (gt < 0) return -1;
+            endElement(strings.get(buf, lt + 2, nameEnd), handler);
+            return gt + 1;
+        }
+
+        int nameEnd = nameEnd(lt + 1);
+        if (nameEnd >= limit) return -1;
+        attributeCount = 0;
+        int pos = nameEnd;
+        while (true) {
+            pos = skipWhitespace(pos);
+            if (pos >= limit) return -1;
+            byte b = buf.get(pos);
+            if (b == '>' || b == '/') {
+                boolean isEmpty = b == '/';
+                if (isEmpty) {
+                    if (pos + 1 >= limit) return -1;
+                    if (buf.get(pos + 1) != '>') throw new SAXException("Expected '>' after '/' in OSM file");
+                    pos++;
+                }
+                String name = strings.get(buf, lt + 1, nameEnd);
+                startElement(name, handler);
+                if (isEmpty) endElement(name, handler);
+                return pos + 1;
+            }
+            pos = scanAttribute(pos);
+            if (pos < 0) return -1;
+        }
+    }
+
+    /**
+     * Scans an attribute and stores where its value is
+     * @param start the position of the attribute name
+     * @return the position after the attribute, or -1 if the attribute continues after the buffer
+     * @throws SAXException If the attribute is not well formed
+     */
+    private int scanAttribute(int start) throws SAXException {
+        int limit = buf.limit();
+        int nameEnd = start;
+        while (nameEnd < limit && buf.get(nameEnd) != '=' && !isWhitespace(buf.get(nameEnd))) nameEnd++;
+        int eq = skipWhitespace(nameEnd);
+        if (eq >= limit) return -1;
+        if (buf.get(eq) != '=') throw new SAXException("Expected '=' after attribute name in OSM file");
+        int quote = skipWhitespace(eq + 1);
+        if (quote >= limit) return -1;
+        byte quoteChar = buf.get(quote);
+        if (quoteChar != '"' && quoteChar != '\'') throw new SAXException("Expected quoted attribute value in OSM file");
+        boolean needsDecoding = false;
+        int end = quote + 1;
+        for (; end < limit; end++) {
+            byte b = buf.get(end);
+            if (b == quoteChar) break;
+            if (b == '&' || b == '\t' || b == '\n' || b == '\r') needsDecoding = true;
+        }
+        if (end >= limit) return -1;
+
+        if (attributeCount == attributeNames.length) {
+            attributeNames = Arrays.copyOf(attributeNames, attributeCount * 2);
+            valueStart = Arrays.copyOf(valueStart, attributeCount * 2);
+            valueEnd = Arrays.copyOf(valueEnd, attributeCount * 2);
+            valueNeedsDecoding = Arrays.copyOf(valueNeedsDecoding, attributeCount * 2);
+        }
+        attributeNames[attributeCount] = strings.get(buf, start, nameEnd);
+        valueStart[attributeCount] = quote + 1;
+        valueEnd[attributeCount] = end;
+        valueNeedsDecoding[attributeCount] = needsDecoding;
+        attributeCount++;
+        return end + 1;
+    }
+
+    /**
+     * Calls the handler for the start of an element, in the same way as OSMHandler.startElement
+     * @param name the name of the element
+     * @param handler the handler of the elements
+     * @throws SAXException If the handler fails
+     */
+    private void startElement(String name, OSMHandler handler) throws SAXException {
+        switch (name) {
+            case "bounds":
+                handler.parseBounds(floatValue("minlat"), floatValue("minlon"), floatValue("maxlat"), floatValue("maxlon"));
+                break;
+            case "node":
+                handler.parseNodes(longValue("id"), floatValue("lat"), floatValue("lon"));
+                break;
+            case "way":
+                handler.parseWay(longValue("id"));
+                break;
+            case "relation":
+                handler.parseRelation();
+                break;
+            case "nd":
+                handler.parseND(longValue("ref"));
+                break;
+            case "tag":
+                handler.parseTag(stringValue("k"), stringValue("v"));
+                break;
+            case "member":
+                handler.parseMember(stringValue("type"), longValue("ref"), stringValue("role"));
+                break;
+        }
+    }
+
+    /**
+     * Calls the handler for the end of an element, in the same way as OSMHandler.endElement
+     * @param name the name of the element
+     * @param handler the handler of the elements
+     * @throws SAXException If the handler fails
+     */
+    private void endElement(String name, OSMHandler handler) throws SAXException {
+        switch (name) {
+            case "way":
+                handler.endWay();
+                break;
+            case "relation":
+                handler.endRelation();
+                break;
+            case "osm":
+                handler.endOSM();
+                break;
+            case "node":
+                handler.endNode();
+                break;
+        }
+    }
+
+    /**
+     * @param name the name of an attribute of the current element
+     * @return the index of the attribute, or -1 if the element does not have it
+     */
+    private int attribute(String name) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (attributeNames[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param name the name of an attribute of the current element
+     * @return the value of the attribute, or null if the element does not have it
+     */
+    private String stringValue(String name) {
+        int i = attribute(name);
+        if (i < 0) return null;
+        if (valueNeedsDecoding[i]) return decode(valueStart[i], valueEnd[i]);
+        return strings.get(buf, valueStart[i], valueEnd[i]);
+    }
+
+    /**
+     * Parses the value of an attribute as a long, the same way as Long.parseLong
+     * @param name the name of an attribute of the current element
+     * @return the value of the attribute
+     */
+    private long longValue(String name) {
+        int i = attribute(name);
+        if (i < 0 || valueNeedsDecoding[i]) return Long.parseLong(stringValue(name));
+        int pos = valueStart[i], end = valueEnd[i];
+        boolean negative = pos < end && buf.get(pos) == '-';
+        if (negative) pos++;
+        if (pos == end || end - pos > 18) return Long.parseLong(stringValue(name));
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = buf.get(pos) - '0';
+            if (digit < 0 || digit > 9) return Long.parseLong(stringValue(name));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the value of an attribute as a float, with the same result as Float.parseFloat
+     * @param name the name of an attribute of the current element
+     * @return the value of the attribute
+     */
+    private float floatValue(String name) {
+        int i = attribute(name);
+        if (i < 0 || valueNeedsDecoding[i]) return Float.parseFloat(stringValue(name));
+        int pos = valueStart[i], end = valueEnd[i];
+        boolean negative = pos < end && buf.get(pos) == '-';
+        if (negative) pos++;
+        long mantissa = 0;
+        int digits = 0, decimals = 0;
+        boolean isDecimal = false;
+        for (; pos < end; pos++) {
+            byte b = buf.get(pos);
+            if (b == '.' && !isDecimal) {
+                isDecimal = true;
+            } else if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (isDecimal) decimals++;
+            } else {
+                return Float.parseFloat(stringValue(name));
+            }
+        }
+        if (digits == 0 || digits > 15 || decimals >= POWERS_OF_TEN.length) return Float.parseFloat(stringValue(name));
+        float value = decimalToFloat(mantissa, decimals);
+        return negative ? -value : value;
+    }
+
+    /**
+     * Rounds a decimal number to the nearest float, with the same result as Float.parseFloat
+     * @param mantissa the digits of the number, at most 15 of them
+     * @param decimals how many of the digits are after the decimal point
+     * @return the nearest float
+     */
+    static float decimalToFloat(long mantissa, int decimals) {
+        //Both numbers are exact doubles, so the division is correctly rounded
+        double value = mantissa / POWERS_OF_TEN[decimals];
+        float rounded = (float) value;
+        //Rounding the double to a float can differ from rounding the decimal if the double is close to the middle
+        //of two floats, so those few values are parsed the slow way
+        double halfUlp = Math.ulp(rounded) / 2;
+        double distance = Math.min(Math.abs(value - (rounded + halfUlp)), Math.min(Math.abs(value - (rounded - halfUlp)), Math.abs(value - (rounded - halfUlp / 2))));
+        if (distance <= 2 * Math.ulp(value)) return Float.parseFloat(BigDecimal.valueOf(mantissa, decimals).toString());
+        return rounded;
+    }
+
+    /**
+     * Decodes an attribute value with entities and normalized whitespace, the same way as an XML parser
+     * @param start the position of the first byte of the value
+     * @param end the position after the last byte of the value
+     * @return the decoded value
+     */
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int pos = start; pos < end; pos++) {
+            byte b = buf.get(pos);
+            if (b == '\r') {
+                if (pos + 1 < end && buf.get(pos + 1) == '\n') pos++;
+                bytes[length++] = ' ';
+            } else if (b == '\t' || b == '\n') {
+                bytes[length++] = ' ';
+            } else if (b == '&') {
+                int semicolon = pos + 1;
+                while (semicolon < end && buf.get(semicolon) != ';') semicolon++;
+                String entity = new String(copy(pos + 1, semicolon), StandardCharsets.UTF_8);
+                byte[] replacement;
+                switch (entity) {
+                    case "amp": replacement = new byte[]{'&'}; break;
+                    case "lt": replacement = new byte[]{'<'}; break;
+                    case "gt": replacement = new byte[]{'>'}; break;
+                    case "quot": replacement = new byte[]{'"'}; break;
+                    case "apos": replacement = new byte[]{'\''}; break;
+                    default:
+                        int codePoint = entity.startsWith("#x") ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+                        replacement = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                }
+                if (length + replacement.length > bytes.length) bytes = Arrays.copyOf(bytes, length + replacement.length + end - pos);
+                System.arraycopy(replacement, 0, bytes, length, replacement.length);
+                length += replacement.length;
+                pos = semicolon;
+            } else {
+                bytes[length++] = b;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private byte[] copy(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) bytes[i - start] = buf.get(i);
+        return bytes;
+    }
+
+    private int indexOf(char c, int from) {
+        for (int i = from; i < buf.limit(); i++) {
+            if (buf.get(i) == c) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @param s the string to find
+     * @param from the position to search from
+     * @return the position after the first occurrence of s, or -1 if it is not in the buffer
+     */
+    private int indexAfter(String s, int from) {
+        for (int i = from; i + s.length() <= buf.limit(); i++) {
+            if (startsWith(s, i)) return i + s.length();
+        }
+        return -1;
+    }
+
+    private boolean startsWith(String s, int pos) {
+        if (pos + s.length() > buf.limit()) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (buf.get(pos + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int nameEnd(int from) {
+        int i = from;
+        while (i < buf.limit()) {
+            byte b = buf.get(i);
+            if (b == '>' || b == '/' || isWhitespace(b)) break;
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWhitespace(int from) {
+        int i = from;
+        while (i < buf.limit() && isWhitespace(buf.get(i))) i++;
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * A direct mapped cache from byte sequences to strings. Short sequences that are seen again are returned as the
+     * same string without being decoded
+     */
+    private static class StringCache {
+        private static final int SIZE = 1 << 13;
+        private static final int MAX_LENGTH = 48;
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] values = new String[SIZE];
+
+        /**
+         * @param buf the buffer with the bytes
+         * @param start the position of the first byte
+         * @param end the position after the last byte
+         * @return the bytes decoded as UTF-8
+         */
+        String get(ByteBuffer buf, int start, int end) {
+            int length = end - start;
+            if (length > MAX_LENGTH) return new String(copy(buf, start, end), StandardCharsets.UTF_8);
+            int hash = 0;
+            for (int i = start; i < end; i++) hash = 31 * hash + buf.get(i);
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            byte[] key = keys[slot];
+            if (key != null && key.length == length && matches(buf, start, key)) return values[slot];
+            key = copy(buf, start, end);
+            keys[slot] = key;
+            values[slot] = new String(key, StandardCharsets.UTF_8);
+            return values[slot];
+        }
+
+        private static boolean matches(ByteBuffer buf, int start, byte[] key) {
+            for (int i = 0; i < key.length; i++) {
+                if (buf.get(start + i) != key[i]) return false;
+            }
+            return true;
+        }
+
+        private static byte[] copy(ByteBuffer buf, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i++) bytes[i - start] = buf.get(i);
+            return bytes;
+        }
+    }
+}
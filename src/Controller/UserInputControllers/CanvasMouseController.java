@@ -103,7 +103,7 @@ public class CanvasMouseController extends MouseAdapter {
         currentMousePosition = model.toModelCoords(currentMousePosition);
         KDFriendlyShape nearestWay = KDTree.getNearestWayWithName(currentMousePosition, model.getKdTree());
         if (nearestWay != null) {
-            canvas.setToolTipText(nearestWay.getName());
+            canvas.setToolTipText(model.getMapData().getStrings().get(nearestWay.getNameId()));
         }
     }
 }
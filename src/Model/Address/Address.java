@@ -1,11 +1,14 @@
 package Model.Address;
 
+import Model.StringTable;
+
 import java.io.Serializable;
 
 /**
  * Created by Matt on 27-03-2017.
  */
 public class Address implements Comparable<Address>, Serializable {
+    private static final long serialVersionUID = -7501597869663423744L;
 
     private final String street, house, postcode, city;
 
@@ -30,6 +33,14 @@ public class Address implements Comparable<Address>, Serializable {
     public String postcode() { return this.postcode; }
     public String city()     { return this.city; }
 
+    /**
+     * @param strings the string table of the map
+     * @return an address of the same parts, where every part is the instance of it in the string table
+     */
+    public Address intern(StringTable strings) {
+        return new Address(strings.intern(street), strings.intern(house), null, null, strings.intern(postcode), strings.intern(city));
+    }
+
     @Override
     public int compareTo(Address a) {
         if (postcode.compareTo(a.postcode()) != 0) return postcode.compareTo(a.postcode());
@@ -0,0 +1,311 @@
+package Model.Address;
+
+import Model.OnePointMapMarker;
+import Model.StringTable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The addresses of a map and their coordinates, where the parts of every address are ids in the string table of the map.
+ * A place is the pair of a postcode and a city, which is packed into a long and given a row in a hash table with open
+ * addressing. A street is the pair of the row of its place and a street name and an address is the pair of the row of its
+ * street and its house number, which are packed into longs in two more tables, so a lookup compares longs instead of the
+ * strings of the address. The coordinates are kept in a float array, so no object is created per address.
+ * For the completion of house numbers the addresses are sorted by street and house number the first time it is needed,
+ * which gives every street a range of addresses that can be searched by a prefix or a range of house numbers
+ */
+public class AddressIndex implements Serializable {
+    private static final long serialVersionUID = 7756818192823646221L;
+    private final StringTable strings;
+    private final LongIntTable places = new LongIntTable();     // postcode id and city id -> place row
+    private final LongIntTable streets = new LongIntTable();    // place row and street id -> street row
+    private final LongIntTable houses = new LongIntTable();     // street row and house id -> address
+    private int[] placePostcodeIds = new int[16], placeCityIds = new int[16];
+    private int placeCount;
+    private int[] streetPlaceRows = new int[16], streetNameIds = new int[16];
+    private int streetCount;
+
+    private int[] streetRows = new int[16], houseIds = new int[16];
+    private float[] coords = new float[32];     // coords[2*i] and coords[2*i+1] = x and y of address i
+    private int size;
+
+    private int[] sorted;                       // the addresses sorted by street row and house number
+    private int[] streetStarts;                 // the addresses of street row s are sorted[streetStarts[s]..streetStarts[s+1]]
+
+    /**
+     * Creates an empty index
+     * @param strings the string table of the map, which holds the parts of the addresses
+     */
+    public AddressIndex(StringTable strings) {
+        this.strings = strings;
+    }
+
+    /**
+     * Adds an address, or replaces the coordinates of it if it has already been added
+     * @param a the address, whose parts are added to the string table if they are not in it
+     * @param x x-coordinate of the address
+     * @param y y-coordinate of the address
+     */
+    public void put(Address a, float x, float y) {
+        put(strings.id(a.street()), strings.id(a.house()), strings.id(a.postcode()), strings.id(a.city()), x, y);
+    }
+
+    /**
+     * Adds an address by the ids of its parts in the string table
+     */
+    public synchronized void put(int streetId, int houseId, int postcodeId, int cityId, float x, float y) {
+        long placeKey = pack(postcodeId, cityId);
+        int place = places.get(placeKey);
+        if (place < 0) {
+            if (placeCount == placePostcodeIds.length) {
+                placePostcodeIds = Arrays.copyOf(placePostcodeIds, 2 * placeCount);
+                placeCityIds = Arrays.copyOf(placeCityIds, 2 * placeCount);
+            }
+            place = placeCount++;
+            placePostcodeIds[place] = postcodeId;
+            placeCityIds[place] = cityId;
+            places.put(placeKey, place);
+        }
+        long streetKey = pack(place, streetId);
+        int street = streets.get(streetKey);
+        if (street < 0) {
+            if (streetCount == streetPlaceRows.length) {
+                streetPlaceRows = Arrays.copyOf(streetPlaceRows, 2 * streetCount);
+                streetNameIds = Arrays.copyOf(streetNameIds, 2 * streetCount);
+            }
+            street = streetCount++;
+            streetPlaceRows[street] = place;
+            streetNameIds[street] = streetId;
+            streets.put(streetKey, street);
+        }
+        long houseKey = pack(street, houseId);
+        int i = houses.get(houseKey);
+        if (i < 0) {
+            if (size == streetRows.length) {
+                streetRows = Arrays.copyOf(streetRows, 2 * size);
+                houseIds = Arrays.copyOf(houseIds, 2 * size);
+                coords = Arrays.copyOf(coords, 4 * size);
+            }
+            i = size++;
+            streetRows[i] = street;
+            houseIds[i] = houseId;
+            houses.put(houseKey, i);
+            sorted = null;
+        }
+        coords[2 * i] = x;
+        coords[2 * i + 1] = y;
+    }
+
+    /**
+     * Finds an address without creating an object
+     * @param a the address
+     * @return the index of the address, or -1 if it has not been added
+     */
+    public synchronized int indexOf(Address a) {
+        int street = streetRow(a.street(), a.postcode(), a.city());
+        int houseId = strings.find(a.house());
+        if (street < 0 || houseId <= 0) return -1;
+        return houses.get(pack(street, houseId));
+    }
+
+    /**
+     * @param a the address
+     * @return a new marker at the coordinates of the address, or null if it has not been added
+     */
+    public OnePointMapMarker get(Address a) {
+        int i = indexOf(a);
+        if (i < 0) return null;
+        return new OnePointMapMarker(getX(i), getY(i));
+    }
+
+    /**
+     * Finds the house numbers of a street that start with a prefix, for the completion of the house number of an address
+     * @param street the street name
+     * @param postcode the postcode of the street
+     * @param city the city of the street
+     * @param prefix the start of the house numbers, where the empty string gives every house number of the street
+     * @return the house numbers in increasing order
+     */
+    public synchronized List<String> getHouseNumbers(String street, String postcode, String city, String prefix) {
+        List<String> result = new ArrayList<>();
+        int row = streetRow(street, postcode, city);
+        if (row < 0) return result;
+        sort();
+        for (int j = streetStarts[row]; j < streetStarts[row + 1]; j++) {
+            String house = strings.get(houseIds[sorted[j]]);
+            if (house.startsWith(prefix)) result.add(house);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the house numbers of a street whose number is in a range, where the letter of a house number like 12a is not
+     * part of its number
+     * @param street the street name
+     * @param postcode the postcode of the street
+     * @param city the city of the street
+     * @param from the smallest number
+     * @param to the largest number
+     * @return the house numbers in increasing order
+     */
+    public synchronized List<String> getHouseNumbers(String street, String postcode, String city, int from, int to) {
+        List<String> result = new ArrayList<>();
+        int row = streetRow(street, postcode, city);
+        if (row < 0) return result;
+        sort();
+        int lo = streetStarts[row], hi = streetStarts[row + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (number(strings.get(houseIds[sorted[mid]])) < from) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int j = lo; j < streetStarts[row + 1]; j++) {
+            String house = strings.get(houseIds[sorted[j]]);
+            if (number(house) > to) break;
+            result.add(house);
+        }
+        return result;
+    }
+
+    /**
+     * @param i the index of an address
+     * @return a new address of the parts of the address
+     */
+    public Address getAddress(int i) {
+        int street = streetRows[i], place = streetPlaceRows[street];
+        return new Address(strings.get(streetNameIds[street]), strings.get(houseIds[i]), null, null,
+                strings.get(placePostcodeIds[place]), strings.get(placeCityIds[place]));
+    }
+
+    /**
+     * @param i the index of an address
+     * @return the x-coordinate of the address
+     */
+    public float getX(int i) {
+        return coords[2 * i];
+    }
+
+    /**
+     * @param i the index of an address
+     * @return the y-coordinate of the address
+     */
+    public float getY(int i) {
+        return coords[2 * i + 1];
+    }
+
+    /**
+     * @return the number of addresses
+     */
+    public int size() {
+        return size;
+    }
+
+    private int streetRow(String street, String postcode, String city) {
+        int streetId = strings.find(street), postcodeId = strings.find(postcode), cityId = strings.find(city);
+        if (streetId <= 0 || postcodeId <= 0 || cityId <= 0) return -1;
+        int place = places.get(pack(postcodeId, cityId));
+        if (place < 0) return -1;
+        return streets.get(pack(place, streetId));
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << 32 | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Sorts the addresses by street row and house number, if they have changed since they were last sorted
+     */
+    private void sort() {
+        if (sorted != null) return;
+        int[] numbers = new int[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            numbers[i] = number(strings.get(houseIds[i]));
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> {
+            if (streetRows[i] != streetRows[j]) return Integer.compare(streetRows[i], streetRows[j]);
+            if (numbers[i] != numbers[j]) return Integer.compare(numbers[i], numbers[j]);
+            return strings.get(houseIds[i]).compareTo(strings.get(houseIds[j]));
+        });
+        streetStarts = new int[streetCount + 1];
+        for (int i = 0; i < size; i++) streetStarts[streetRows[i] + 1]++;
+        for (int s = 0; s < streetCount; s++) streetStarts[s + 1] += streetStarts[s];
+        sorted = new int[size];
+        for (int j = 0; j < size; j++) sorted[j] = order[j];
+    }
+
+    /**
+     * @param house a house number
+     * @return the number at the start of the house number, or Integer.MAX_VALUE if it does not start with a digit
+     */
+    private static int number(String house) {
+        long n = 0;
+        int i = 0;
+        while (i < house.length() && Character.isDigit(house.charAt(i)) && n < Integer.MAX_VALUE) {
+            n = 10 * n + Character.digit(house.charAt(i++), 10);
+        }
+        return i == 0 ? Integer.MAX_VALUE : (int) Math.min(n, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * A hash table with open addressing from long keys to non-negative ints.
+     * The key Long.MIN_VALUE is used to mark empty entries, which no packed pair of ids is
+     */
+    private static class LongIntTable implements Serializable {
+        private static final long serialVersionUID = -4663051737616276912L;
+        private static final long EMPTY = Long.MIN_VALUE;
+        private static final float MAX_LOAD = 0.6f;
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+        private int bits = 4;   // the table has 1 << bits entries
+
+        LongIntTable() {
+            keys = new long[1 << bits];
+            values = new int[1 << bits];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int get(long key) {
+            for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & ((1 << bits) - 1)) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        void put(long key, int value) {
+            if (size + 1 > (1 << bits) * MAX_LOAD) rehash(bits + 1);
+            int i = slot(key);
+            while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & ((1 << bits) - 1);
+            if (keys[i] == EMPTY) size++;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+        }
+
+        private void rehash(int newBits) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            bits = newBits;
+            keys = new long[1 << bits];
+            values = new int[1 << bits];
+            Arrays.fill(keys, EMPTY);
+            int mask = (1 << bits) - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == EMPTY) continue;
+                int i = slot(oldKeys[j]);
+                while (keys[i] != EMPTY) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
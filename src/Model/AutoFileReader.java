@@ -1,5 +1,9 @@
 package Model;
 
+import Controller.OSMHandler;
+import Controller.OSMPBFParser;
+import Controller.OSMXMLScanner;
+import Model.OSM.OSMNode;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -9,6 +13,8 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -17,6 +23,7 @@ import java.util.zip.ZipInputStream;
  */
 public class AutoFileReader {
     private BufferedInputStream inputStream;
+    private FileChannel fileChannel; //Only set if the file is read from the harddrive
 
     /**
      * Initiates the filereader. Looks inside jar-file automatically (if launched by jar)
@@ -38,7 +45,9 @@ public class AutoFileReader {
         if (allowJarSearch && getClass().getProtectionDomain().getCodeSource().getLocation().toString().endsWith(".jar")) {
             inputStream = new BufferedInputStream(AutoFileReader.class.getResourceAsStream("/"+filename)); //JAR runtime
         } else {
-            inputStream = new BufferedInputStream(new FileInputStream(filename)); //IDE runtime
+            FileInputStream fileInputStream = new FileInputStream(filename); //IDE runtime
+            fileChannel = fileInputStream.getChannel();
+            inputStream = new BufferedInputStream(fileInputStream);
         }
     }
 
@@ -71,6 +80,14 @@ public class AutoFileReader {
         return inputStream;
     }
 
+    /**
+     * Get the FileChannel of the file, which shares its position with the InputStream
+     * @return The FileChannel, or null if the file is not read from the harddrive
+     */
+    public FileChannel getFileChannel() {
+        return fileChannel;
+    }
+
     /**
      * Extract the corresponding InputSource
      * @return The InputSource
@@ -170,6 +187,103 @@ public class AutoFileReader {
         }
     }
 
+    /**
+     * Inner class to parse OSM files with the OSMXMLScanner instead of SAX, unless SAX is asked for
+     */
+    public static class OSMReader extends AutoFileReader {
+        private boolean useSAX;
+
+        /**
+         * Construction of the osm reader
+         * @param filename The relative path to the file to be loaded (relative to the root)
+         * @param allowJarSearch Whether to look inside potential jar or not
+         * @throws IOException If an I/O error occurs
+         */
+        public OSMReader(String filename, boolean allowJarSearch) throws IOException {
+            this(filename, allowJarSearch, false);
+        }
+
+        /**
+         * Construction of the osm reader
+         * @param filename The relative path to the file to be loaded (relative to the root)
+         * @param allowJarSearch Whether to look inside potential jar or not
+         * @param useSAX Whether the file is parsed by SAX instead of the OSMXMLScanner
+         * @throws IOException If an I/O error occurs
+         */
+        public OSMReader(String filename, boolean allowJarSearch, boolean useSAX) throws IOException {
+            super(filename, allowJarSearch);
+            this.useSAX = useSAX;
+        }
+
+        /**
+         * Constructor to use the functionality from the AutoFileReader.OSMReader, but the file is not loaded from the harddrive
+         * @param is The InputStream to be read
+         */
+        public OSMReader(InputStream is) {
+            this(is, false);
+        }
+
+        /**
+         * Constructor to use the functionality from the AutoFileReader.OSMReader, but the file is not loaded from the harddrive
+         * @param is The InputStream to be read
+         * @param useSAX Whether the stream is parsed by SAX instead of the OSMXMLScanner
+         */
+        public OSMReader(InputStream is, boolean useSAX) {
+            super(is);
+            this.useSAX = useSAX;
+        }
+
+        /**
+         * Method that parses the OSM file. A file on the harddrive is memory mapped, anything else is read as a stream.
+         * With SAX the file is read as a stream in either case
+         * @param handler The handler of the OSM elements
+         * @throws IOException If file is not found, or another I/O error
+         * @throws SAXException If the file is not well formed
+         */
+        public void parse(OSMHandler handler) throws IOException, SAXException {
+            if (useSAX) {
+                new XMLReader(getInputStream()).parse(handler);
+                return;
+            }
+            OSMXMLScanner scanner = getFileChannel() != null ? new OSMXMLScanner(getFileChannel()) : new OSMXMLScanner(Channels.newChannel(getInputStream()));
+            scanner.scan(handler);
+        }
+    }
+
+    /**
+     * Inner class to parse OSM PBF files
+     */
+    public static class PBFReader extends AutoFileReader {
+
+        /**
+         * Construction of the pbf reader
+         * @param filename The relative path to the file to be loaded (relative to the root)
+         * @param allowJarSearch Whether to look inside potential jar or not
+         * @throws IOException If an I/O error occurs
+         */
+        public PBFReader(String filename, boolean allowJarSearch) throws IOException {
+            super(filename, allowJarSearch);
+        }
+
+        /**
+         * Constructor to use the functionality from the AutoFileReader.PBFReader, but the file is not loaded from the harddrive
+         * @param is The InputStream to be read
+         */
+        public PBFReader(InputStream is) {
+            super(is);
+        }
+
+        /**
+         * Method that parses the PBF file, with the blobs inflated on every core
+         * @param handler The handler of the OSM elements
+         * @throws IOException If file is not found, is not a valid PBF file, or another I/O error
+         * @throws SAXException If the handler fails
+         */
+        public void parse(OSMHandler handler) throws IOException, SAXException {
+            new OSMPBFParser(getInputStream()).parse(handler);
+        }
+    }
+
     /**
      * An inner class that is able to read Zip files
      */
@@ -227,6 +341,52 @@ public class AutoFileReader {
         }
     }
 
+    /**
+     * An inner class to handle map files, which are bin-files in the format of MapFile
+     */
+    public static class MapFileReader extends AutoFileReader {
+
+        /**
+         * Construction of the map file reader
+         * @param filename The relative path to the file to be loaded (relative to the root)
+         * @param allowJarSearch Whether to look inside potential jar or not
+         * @throws IOException If an I/O error occurs
+         */
+        public MapFileReader(String filename, boolean allowJarSearch) throws IOException {
+            super(filename, allowJarSearch);
+        }
+
+        /**
+         * Constructor to use the functionality from the AutoFileReader.MapFileReader, but the file is not loaded from the harddrive
+         * @param is The InputStream to be read
+         */
+        public MapFileReader(InputStream is) {
+            super(is);
+        }
+
+        /**
+         * Checks if the file is a map file, or a bin-file of a serialized object
+         * @return true if the file is a map file
+         * @throws IOException If an I/O error occurs
+         */
+        public boolean isMapFile() throws IOException {
+            return MapFile.isMapFile(getInputStream());
+        }
+
+        /**
+         * Reads the map data of the map file. A file on the harddrive is memory mapped, anything else is first copied
+         * to a temporary file
+         * @param model The model that the road graph belongs to
+         * @return The map data
+         * @throws IOException If the file is not a valid map file, or another I/O error
+         */
+        public MapData getMapData(Model model) throws IOException {
+            if (getFileChannel() == null) return MapFile.read(getInputStream(), model);
+            getFileChannel().position(0);
+            return MapFile.read(getFileChannel(), model);
+        }
+    }
+
     /**
      * An inner class to handle bin-objects
      * @param <O> The class the object should be casted to
@@ -251,7 +411,7 @@ public class AutoFileReader {
          */
         public ObjectReader(String filename, boolean allowJarSearch) throws IOException {
             super(filename, allowJarSearch);
-            objectInputStream = new ObjectInputStream(getInputStream());
+            objectInputStream = new LegacyObjectInputStream(getInputStream());
         }
 
         /**
@@ -260,7 +420,7 @@ public class AutoFileReader {
          */
         public ObjectReader(InputStream is) throws IOException {
             super(is);
-            objectInputStream = new ObjectInputStream(getInputStream());
+            objectInputStream = new LegacyObjectInputStream(getInputStream());
         }
 
         /**
@@ -272,6 +432,27 @@ public class AutoFileReader {
         public O getObject() throws IOException, ClassNotFoundException {
             return (O) objectInputStream.readObject();
         }
+
+        /**
+         * An ObjectInputStream that reads classes whose serialized form has changed as the classes they used to be
+         */
+        private static class LegacyObjectInputStream extends ObjectInputStream {
+            private static final long LEGACY_NODE_UID = ObjectStreamClass.lookup(OSMNode.Legacy.class).getSerialVersionUID();
+
+            LegacyObjectInputStream(InputStream in) throws IOException {
+                super(in);
+            }
+
+            @Override
+            protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+                ObjectStreamClass desc = super.readClassDescriptor();
+                //An OSMNode that extended Point2D.Double has the serialVersionUID of OSMNode.Legacy
+                if (desc.getName().equals(OSMNode.class.getName()) && desc.getSerialVersionUID() == LEGACY_NODE_UID) {
+                    return ObjectStreamClass.lookup(OSMNode.Legacy.class);
+                }
+                return desc;
+            }
+        }
     }
 
     /**
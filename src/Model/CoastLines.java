@@ -1,14 +1,19 @@
 package Model;
 
 import Model.KDTree.KDFriendlyShape;
+import Model.KDTree.PolygonApprox;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A class that contains the coastlines and lonfactor
  */
 public class CoastLines extends ArrayList<KDFriendlyShape> {
+    private static final long serialVersionUID = -1431310983908735119L;
     float lonfactor;
+    private transient List<List<KDFriendlyShape>> levels; //The coastlines of every zoom level, where index 0 is zoom level 1
+    private transient int levelsSize;                      //The number of coastlines when the levels were made
 
     /**
      * A constructor that sets the lonfactor of the map
@@ -17,4 +22,29 @@ public class CoastLines extends ArrayList<KDFriendlyShape> {
     public CoastLines(float lonfactor) {
         this.lonfactor = lonfactor;
     }
+
+    /**
+     * Finds the coastlines of a zoom level, simplified to the size of a pixel at the closest zoom of the level like the
+     * shapes of a LevelOfDetailIndex. The levels are made the first time they are needed, and again if coastlines have
+     * been added since
+     * @param zoomLevel the zoom level
+     * @param pixelSizes the size of a pixel at the closest zoom of every zoom level, where index 0 is zoom level 1
+     * @return the coastlines of the zoom level
+     */
+    public synchronized List<KDFriendlyShape> getLevelOfDetail(int zoomLevel, double[] pixelSizes) {
+        if (levels == null || levelsSize != size()) {
+            levels = new ArrayList<>();
+            levels.add(this);
+            //Every level is simplified from the level before it, which has fewer points to look at
+            for (int level = 1; level < pixelSizes.length; level++) {
+                List<KDFriendlyShape> simplified = new ArrayList<>();
+                for (KDFriendlyShape shape : levels.get(level - 1)) {
+                    simplified.add(shape instanceof PolygonApprox ? ((PolygonApprox) shape).simplify(pixelSizes[level]) : shape);
+                }
+                levels.add(simplified);
+            }
+            levelsSize = size();
+        }
+        return levels.get(Math.max(1, Math.min(zoomLevel, levels.size())) - 1);
+    }
 }
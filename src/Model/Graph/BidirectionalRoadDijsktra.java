@@ -0,0 +1,183 @@
+package Model.Graph;
+
+import Model.Model;
+import lib.IndexMinDoublePQ;
+import lib.Queue;
+import lib.Stack;
+
+/**
+ * An implementation of bidirectional A*. It searches forward from s and backward from t at the same time and stops
+ * when the two searches can no longer find a shorter path where they meet.
+ * Both searches use the average of the forward and backward heuristic, so the potentials are consistent in both
+ * directions
+ */
+public class BidirectionalRoadDijsktra implements PathFinder {
+    private double[] distTo;            // distTo[v] = distance of shortest s->v path
+    private double[] distFrom;          // distFrom[v] = distance of shortest v->t path
+    private RoadGraph.Edge[] edgeTo;    // edgeTo[v] = last edge on shortest s->v path
+    private RoadGraph.Edge[] edgeFrom;  // edgeFrom[v] = first edge on shortest v->t path
+    private IndexMinDoublePQ forwardPQ, backwardPQ;
+    private final Model model;
+    private RoadGraph G;
+    private TravelType travelType;
+    private int s, t;
+    private double bestDistance = Double.POSITIVE_INFINITY;
+    private RoadGraph.Edge meetingEdge; // the edge connecting the forward and the backward search on the best path
+
+    /**
+     * A method that finds the fastest route from a given start point to an end point
+     * @param model a reference to the model
+     * @param G a graf that has to be analyzed
+     * @param s a given start vertex
+     * @param t an end vertex
+     * @param travelType which traveltype to take in consideration
+     */
+    public BidirectionalRoadDijsktra(Model model, RoadGraph G, int s, int t, TravelType travelType) {
+        this.model = model;
+        this.G = G;
+        this.travelType = travelType;
+        this.s = s;
+        this.t = t;
+        G.validateVertex(s);
+        G.validateVertex(t);
+
+        distTo = new double[G.getVertexCount()];
+        distFrom = new double[G.getVertexCount()];
+        edgeTo = new RoadGraph.Edge[G.getVertexCount()];
+        edgeFrom = new RoadGraph.Edge[G.getVertexCount()];
+        for (int v = 0; v < G.getVertexCount(); v++) {
+            distTo[v] = Double.POSITIVE_INFINITY;
+            distFrom[v] = Double.POSITIVE_INFINITY;
+        }
+        distTo[s] = 0.0;
+        distFrom[t] = 0.0;
+        if (s == t) {
+            bestDistance = 0.0;
+            return;
+        }
+
+        forwardPQ = new IndexMinDoublePQ(G.getVertexCount());
+        backwardPQ = new IndexMinDoublePQ(G.getVertexCount());
+        forwardPQ.insert(s, potential(s));
+        backwardPQ.insert(t, -potential(t));
+
+        // the keys are reduced by the potentials, so the sum of the two smallest keys is a lower bound of any path
+        // that has not been found yet
+        while (!forwardPQ.isEmpty() && !backwardPQ.isEmpty()) {
+            if (forwardPQ.minKey() + backwardPQ.minKey() >= bestDistance) break;
+            if (forwardPQ.size() <= backwardPQ.size()) {
+                int v = forwardPQ.delMin();
+                for (RoadGraph.Edge e : G.adj(v)) {
+                    if (RoadDijsktra.isAllowed(e, travelType)) relaxForward(e);
+                }
+            } else {
+                int v = backwardPQ.delMin();
+                for (RoadGraph.Edge e : G.reverseAdj(v)) {
+                    if (RoadDijsktra.isAllowed(e, travelType)) relaxBackward(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Relaxes an edge in the forward search and checks if it connects to the backward search
+     * @param e edge to be relaxed
+     */
+    private void relaxForward(RoadGraph.Edge e) {
+        int v = e.from(), w = e.to();
+        if (!turnAllowed(edgeTo[v], e)) return;
+        double dist = distTo[v] + RoadDijsktra.weight(e, travelType);
+        if (distTo[w] > dist) {
+            distTo[w] = dist;
+            edgeTo[w] = e;
+            if (forwardPQ.contains(w)) forwardPQ.decreaseKey(w, dist + potential(w));
+            else                       forwardPQ.insert(w, dist + potential(w));
+        }
+        checkMeeting(e, dist + distFrom[w]);
+    }
+
+    /**
+     * Relaxes an edge in the backward search and checks if it connects to the forward search
+     * @param e edge to be relaxed, it is followed from e.to() to e.from()
+     */
+    private void relaxBackward(RoadGraph.Edge e) {
+        int v = e.to(), w = e.from();
+        if (!turnAllowed(e, edgeFrom[v])) return;
+        double dist = distFrom[v] + RoadDijsktra.weight(e, travelType);
+        if (distFrom[w] > dist) {
+            distFrom[w] = dist;
+            edgeFrom[w] = e;
+            if (backwardPQ.contains(w)) backwardPQ.decreaseKey(w, dist - potential(w));
+            else                        backwardPQ.insert(w, dist - potential(w));
+        }
+        checkMeeting(e, distTo[w] + dist);
+    }
+
+    /**
+     * Updates the best path if the edge connects the forward and backward search to a shorter path.
+     * The path is the forward path to e.from(), e and the backward path from e.to()
+     * @param e the connecting edge
+     * @param pathDist the distance of the path from s to t through e
+     */
+    private void checkMeeting(RoadGraph.Edge e, double pathDist) {
+        if (pathDist >= bestDistance) return;
+        if (turnAllowed(edgeTo[e.from()], e) && turnAllowed(e, edgeFrom[e.to()])) {
+            bestDistance = pathDist;
+            meetingEdge = e;
+        }
+    }
+
+    /**
+     * Checks turn restrictions, which only apply to cars
+     * @param prevEdge the edge that is turned from
+     * @param nextEdge the edge to turn on to
+     * @return true if the turn is allowed
+     */
+    private boolean turnAllowed(RoadGraph.Edge prevEdge, RoadGraph.Edge nextEdge) {
+        return travelType != TravelType.CAR || G.isTurnAllowed(prevEdge, nextEdge);
+    }
+
+    /**
+     * The forward potential of a vertex, the backward potential is the negated value
+     * @param v the vertex
+     * @return half the difference between the heuristic towards t and the heuristic towards s
+     */
+    private double potential(int v) {
+        return (RoadDijsktra.h(model, G, v, t, travelType) - RoadDijsktra.h(model, G, s, v, travelType)) / 2;
+    }
+
+    /**
+     * Checks if there is a path to a given vertex. Only paths to t are found by the bidirectional search
+     * @param v vertex to check
+     * @return true if there is a path to the vertex
+     */
+    @Override
+    public boolean hasPathTo(int v) {
+        G.validateVertex(v);
+        return v == t && bestDistance < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the quickest path to t
+     * @param v vertex to find path to, has to be t
+     * @return an iterable of edges in the order they are travelled
+     */
+    @Override
+    public Iterable<RoadGraph.Edge> pathTo(int v) {
+        if (!hasPathTo(v)) return null;
+        Queue<RoadGraph.Edge> path = new Queue<RoadGraph.Edge>();
+        if (meetingEdge == null) return path;
+
+        // the edges before the meeting edge are found backwards through edgeTo
+        Stack<RoadGraph.Edge> forwardPath = new Stack<RoadGraph.Edge>();
+        for (RoadGraph.Edge e = edgeTo[meetingEdge.from()]; e != null; e = edgeTo[e.from()]) {
+            forwardPath.push(e);
+        }
+        for (RoadGraph.Edge e : forwardPath) path.enqueue(e);
+        path.enqueue(meetingEdge);
+        for (RoadGraph.Edge e = edgeFrom[meetingEdge.to()]; e != null; e = edgeFrom[e.to()]) {
+            path.enqueue(e);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,194 @@
+package Model.Graph;
+
+import java.util.Arrays;
+
+/**
+ * A compressed sparse row view of the adjacency lists in a RoadGraph, used by the searches.
+ * The edges leaving v are the indices from begin(v) to end(v), and everything a search needs is stored in primitive
+ * arrays, so the edges can be relaxed without following references or allocating iterators.
+ * The Edge objects with the name, waypoints and highway are kept in a side table and are only read when a path is built.
+ */
+public class CompactRoadGraph {
+    private static final int GROWTH_OVERHEAD = 10;
+
+    //Access flags packed in a byte per edge
+    private static final byte WALKING_ALLOWED = 1;
+    private static final byte CYCLING_ALLOWED = 1 << 1;
+    private static final byte DRIVING_ALLOWED = 1 << 2;
+
+    private int vertexCount;
+    private int edgeCount;
+    private int[] offset;      // offset[v] = index of the first edge leaving v, offset[vertexCount] = edgeCount
+    private int[] target;      // target[i] = the vertex edge i goes to
+    private float[] length;    // length[i] = the length of edge i in kilometers
+    private float[] speed;     // speed[i] = the speedlimit of edge i in km/t
+    private byte[] flags;      // flags[i] = the traveltypes allowed on edge i
+    private RoadGraph.Edge[] edges; // edges[i] = the edge object with the geometry and name of edge i
+
+    /**
+     * Builds the compact adjacency lists from the adjacency lists of the graph
+     * @param G the graph to be represented
+     */
+    public CompactRoadGraph(RoadGraph G) {
+        vertexCount = G.getVertexCount();
+        for (int v = 0; v < vertexCount; v++) {
+            for (RoadGraph.Edge e : G.adj(v)) edgeCount++;
+        }
+        offset = new int[vertexCount + 1 + GROWTH_OVERHEAD];
+        target = new int[edgeCount + GROWTH_OVERHEAD];
+        length = new float[edgeCount + GROWTH_OVERHEAD];
+        speed = new float[edgeCount + GROWTH_OVERHEAD];
+        flags = new byte[edgeCount + GROWTH_OVERHEAD];
+        edges = new RoadGraph.Edge[edgeCount + GROWTH_OVERHEAD];
+
+        int i = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            offset[v] = i;
+            for (RoadGraph.Edge e : G.adj(v)) {
+                setEdge(i++, e);
+            }
+        }
+        offset[vertexCount] = i;
+    }
+
+    /**
+     * Copies the search data of an edge object into the arrays
+     * @param i the index of the edge
+     * @param e the edge object
+     */
+    private void setEdge(int i, RoadGraph.Edge e) {
+        target[i] = e.to();
+        length[i] = e.getLength();
+        speed[i] = e.getSpeedLimit();
+        byte f = 0;
+        if (e.isWalkingAllowed()) f |= WALKING_ALLOWED;
+        if (e.isCyclingAllowed()) f |= CYCLING_ALLOWED;
+        if (e.isDrivingAllowed()) f |= DRIVING_ALLOWED;
+        flags[i] = f;
+        edges[i] = e;
+    }
+
+    /**
+     * Adds a new vertex without any edges after the last vertex
+     */
+    void addVertex() {
+        if (vertexCount + 2 > offset.length) offset = Arrays.copyOf(offset, offset.length * 2);
+        vertexCount++;
+        offset[vertexCount] = edgeCount;
+    }
+
+    /**
+     * Adds an edge to the end of the arrays. Only edges leaving the last vertex can be added, since the edges of the
+     * other vertices can not be moved
+     * @param e the edge to be added
+     * @return true if the edge was added, false if the view has to be rebuilt instead
+     */
+    boolean addEdge(RoadGraph.Edge e) {
+        if (e.from() != vertexCount - 1) return false;
+        if (edgeCount == target.length) {
+            int capacity = target.length * 2;
+            target = Arrays.copyOf(target, capacity);
+            length = Arrays.copyOf(length, capacity);
+            speed = Arrays.copyOf(speed, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            edges = Arrays.copyOf(edges, capacity);
+        }
+        setEdge(edgeCount++, e);
+        offset[vertexCount] = edgeCount;
+        return true;
+    }
+
+    /**
+     * Copies the search data of an edge object again after it has been changed
+     * @param e the changed edge, which must still leave the same vertex
+     * @return true if the edge was updated, false if the view has to be rebuilt instead
+     */
+    boolean updateEdge(RoadGraph.Edge e) {
+        if (e.from() >= vertexCount) return false;
+        for (int i = begin(e.from()); i < end(e.from()); i++) {
+            if (edges[i] == e) {
+                setEdge(i, e);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @param v a vertex
+     * @return the index of the first edge leaving v
+     */
+    public int begin(int v) {
+        return offset[v];
+    }
+
+    /**
+     * @param v a vertex
+     * @return the index after the last edge leaving v
+     */
+    public int end(int v) {
+        return offset[v + 1];
+    }
+
+    public int target(int i) {
+        return target[i];
+    }
+
+    public float length(int i) {
+        return length[i];
+    }
+
+    public float speed(int i) {
+        return speed[i];
+    }
+
+    public RoadGraph.Edge edge(int i) {
+        return edges[i];
+    }
+
+    /**
+     * Checks if the edge may be used with the given traveltype
+     * @param i the index of the edge
+     * @param travelType the traveltype to take in consideration
+     * @return true if the traveltype is allowed on the edge
+     */
+    public boolean isAllowed(int i, TravelType travelType) {
+        return (flags[i] & flag(travelType)) != 0;
+    }
+
+    /**
+     * Finds the weight of an edge for the given traveltype, the same way as RoadDijsktra.weight
+     * @param i the index of the edge
+     * @param travelType the traveltype to take in consideration
+     * @return the travel time for cars and the length for everything else
+     */
+    public double weight(int i, TravelType travelType) {
+        if (travelType == TravelType.CAR) {
+            return length[i]/speed[i];
+        } else {
+            return length[i];
+        }
+    }
+
+    /**
+     * @param travelType a traveltype
+     * @return the access flag of the traveltype
+     */
+    private static byte flag(TravelType travelType) {
+        if (travelType == TravelType.WALK) {
+            return WALKING_ALLOWED;
+        } else if (travelType == TravelType.BICYCLE) {
+            return CYCLING_ALLOWED;
+        } else {
+            return DRIVING_ALLOWED;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package Model.Graph;
+
+import Model.MapFile;
+import lib.IndexMinDoublePQ;
+import lib.IndexMinPQ;
+import lib.Stack;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A contraction hierarchy of the road graph for a single traveltype.
+ * Every vertex is given a rank and is contracted in that order. When a vertex is contracted, shortcut arcs are added
+ * between its neighbours if the path through the vertex is the only shortest path between them.
+ * A shortest path can then be found by searching upwards in rank from both s and t.
+ */
+public class ContractionHierarchy implements Serializable {
+    private static final long serialVersionUID = -6398014358672802359L;
+    private static final int WITNESS_SETTLE_LIMIT = 500; //How many vertices a witness search may settle
+    private static final int INITIAL_ARC_CAPACITY = 4;
+
+    private final TravelType travelType;
+    private int vertexCount;
+    private int[] rank;
+
+    //Arcs, both those from the road graph and the shortcuts
+    private int arcCount;
+    private int[] arcFrom;
+    private int[] arcTo;
+    private double[] arcWeight;
+    private RoadGraph.Edge[] arcEdge;   // arcEdge[a] = the road edge of an original arc, null for shortcuts
+    private int[] arcFirst, arcSecond;  // the two arcs that the shortcut a replaces, -1 for original arcs
+
+    //Search graph
+    private int[] upOffset, upArcs;     // arcs leaving v towards higher ranked vertices
+    private int[] downOffset, downArcs; // arcs entering v from higher ranked vertices
+
+    //Only used during the contraction
+    private transient int[][] outArcs, inArcs;
+    private transient int[] outSize, inSize;
+    private transient boolean[] contracted;
+    private transient int[] contractedNeighbours;
+    private transient double[] witnessDist;
+    private transient IndexMinDoublePQ witnessPQ;
+    private transient List<Integer> witnessTouched;
+
+    //The search space that is reused by the queries, null while a query is using it
+    private transient ContractionHierarchyDijsktra.SearchSpace searchSpace;
+
+    /**
+     * Contracts all vertices in the road graph for the given traveltype
+     * @param G the graph to be contracted
+     * @param travelType the traveltype which decides which edges are used and how they are weighted
+     */
+    public ContractionHierarchy(RoadGraph G, TravelType travelType) {
+        this.travelType = travelType;
+        vertexCount = G.getVertexCount();
+        rank = new int[vertexCount];
+
+        int edgeCount = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (RoadGraph.Edge e : G.adj(v)) edgeCount++;
+        }
+        arcFrom = new int[edgeCount];
+        arcTo = new int[edgeCount];
+        arcWeight = new double[edgeCount];
+        arcEdge = new RoadGraph.Edge[edgeCount];
+        arcFirst = new int[edgeCount];
+        arcSecond = new int[edgeCount];
+
+        outArcs = new int[vertexCount][];
+        inArcs = new int[vertexCount][];
+        outSize = new int[vertexCount];
+        inSize = new int[vertexCount];
+        contracted = new boolean[vertexCount];
+        contractedNeighbours = new int[vertexCount];
+        witnessDist = new double[vertexCount];
+        Arrays.fill(witnessDist, Double.POSITIVE_INFINITY);
+        witnessPQ = new IndexMinDoublePQ(Math.max(1, vertexCount));
+        witnessTouched = new ArrayList<>();
+
+        for (int v = 0; v < vertexCount; v++) {
+            for (RoadGraph.Edge e : G.adj(v)) {
+                if (e.from() != e.to() && RoadDijsktra.isAllowed(e, travelType)) {
+                    addArc(e.from(), e.to(), RoadDijsktra.weight(e, travelType), e, -1, -1);
+                }
+            }
+        }
+
+        contractAll();
+        buildSearchGraph();
+
+        outArcs = null;
+        inArcs = null;
+        outSize = null;
+        inSize = null;
+        contracted = null;
+        contractedNeighbours = null;
+        witnessDist = null;
+        witnessPQ = null;
+        witnessTouched = null;
+    }
+
+    /**
+     * Reads a contraction hierarchy that has been written to a map file
+     * @param in the map file
+     * @param edges the road edges of the graph, by the index they were written with
+     * @throws IOException If the map file could not be read
+     */
+    ContractionHierarchy(MapFile.Reader in, RoadGraph.Edge[] edges) throws IOException {
+        travelType = TravelType.valueOf(in.getUTF());
+        vertexCount = in.getInt();
+        rank = in.getInts(vertexCount);
+        arcCount = in.getInt();
+        arcFrom = in.getInts(arcCount);
+        arcTo = in.getInts(arcCount);
+        arcWeight = in.getDoubles(arcCount);
+        int[] arcEdgeIds = in.getInts(arcCount);
+        arcEdge = new RoadGraph.Edge[arcCount];
+        for (int a = 0; a < arcCount; a++) {
+            if (arcEdgeIds[a] >= 0) arcEdge[a] = edges[arcEdgeIds[a]];
+        }
+        arcFirst = in.getInts(arcCount);
+        arcSecond = in.getInts(arcCount);
+        upOffset = in.getInts(vertexCount + 1);
+        upArcs = in.getInts(upOffset[vertexCount]);
+        downOffset = in.getInts(vertexCount + 1);
+        downArcs = in.getInts(downOffset[vertexCount]);
+    }
+
+    /**
+     * Writes the contraction hierarchy to a map file
+     * @param out the map file
+     * @param edgeIds the index of every road edge of the graph
+     * @throws IOException If the map file could not be written
+     */
+    void write(MapFile.Writer out, Map<RoadGraph.Edge, Integer> edgeIds) throws IOException {
+        out.putUTF(travelType.name());
+        out.putInt(vertexCount);
+        out.putInts(rank, 0, vertexCount);
+        out.putInt(arcCount);
+        out.putInts(arcFrom, 0, arcCount);
+        out.putInts(arcTo, 0, arcCount);
+        out.putDoubles(arcWeight, 0, arcCount);
+        int[] arcEdgeIds = new int[arcCount];
+        for (int a = 0; a < arcCount; a++) {
+            arcEdgeIds[a] = arcEdge[a] == null ? -1 : edgeIds.get(arcEdge[a]);
+        }
+        out.putInts(arcEdgeIds, 0, arcCount);
+        out.putInts(arcFirst, 0, arcCount);
+        out.putInts(arcSecond, 0, arcCount);
+        out.putInts(upOffset, 0, vertexCount + 1);
+        out.putInts(upArcs, 0, upArcs.length);
+        out.putInts(downOffset, 0, vertexCount + 1);
+        out.putInts(downArcs, 0, downArcs.length);
+    }
+
+    /**
+     * Contracts the vertices one by one, the vertex with the lowest priority first.
+     * Priorities are updated lazily: a vertex is only contracted if its recomputed priority is still the lowest
+     */
+    private void contractAll() {
+        IndexMinPQ<Integer> queue = new IndexMinPQ<Integer>(Math.max(1, vertexCount));
+        for (int v = 0; v < vertexCount; v++) {
+            queue.insert(v, priority(v));
+        }
+        int order = 0;
+        while (!queue.isEmpty()) {
+            int v = queue.delMin();
+            int priority = priority(v);
+            if (!queue.isEmpty() && priority > queue.minKey()) {
+                queue.insert(v, priority);
+                continue;
+            }
+            contract(v, false);
+            contracted[v] = true;
+            rank[v] = order++;
+            for (int i = 0; i < outSize[v]; i++) contractedNeighbours[arcTo[outArcs[v][i]]]++;
+            for (int i = 0; i < inSize[v]; i++) contractedNeighbours[arcFrom[inArcs[v][i]]]++;
+        }
+    }
+
+    /**
+     * The priority of a vertex is its edge difference plus the number of neighbours that already are contracted
+     * @param v the vertex
+     * @return the priority, lower is contracted first
+     */
+    private int priority(int v) {
+        int shortcuts = contract(v, true);
+        int removedArcs = 0;
+        for (int i = 0; i < outSize[v]; i++) if (!contracted[arcTo[outArcs[v][i]]]) removedArcs++;
+        for (int i = 0; i < inSize[v]; i++) if (!contracted[arcFrom[inArcs[v][i]]]) removedArcs++;
+        return shortcuts - removedArcs + contractedNeighbours[v];
+    }
+
+    /**
+     * Finds the shortcuts needed when v is contracted
+     * @param v the vertex to be contracted
+     * @param simulate true if the shortcuts should only be counted and not added
+     * @return the number of shortcuts
+     */
+    private int contract(int v, boolean simulate) {
+        int shortcuts = 0;
+        for (int i = 0; i < inSize[v]; i++) {
+            int in = inArcs[v][i];
+            int u = arcFrom[in];
+            if (contracted[u]) continue;
+
+            double maxWeight = -1;
+            for (int j = 0; j < outSize[v]; j++) {
+                int out = outArcs[v][j];
+                int w = arcTo[out];
+                if (!contracted[w] && w != u) maxWeight = Math.max(maxWeight, arcWeight[out]);
+            }
+            if (maxWeight < 0) continue;
+            witnessSearch(u, v, arcWeight[in] + maxWeight);
+
+            for (int j = 0; j < outSize[v]; j++) {
+                int out = outArcs[v][j];
+                int w = arcTo[out];
+                if (contracted[w] || w == u) continue;
+                double weight = arcWeight[in] + arcWeight[out];
+                if (witnessDist[w] > weight) {
+                    shortcuts++;
+                    if (!simulate) {
+                        addArc(u, w, weight, null, in, out);
+                        //Parallel arcs out of v should not add the same shortcut twice
+                        if (witnessDist[w] == Double.POSITIVE_INFINITY) witnessTouched.add(w);
+                        witnessDist[w] = weight;
+                    }
+                }
+            }
+            clearWitnessSearch();
+        }
+        return shortcuts;
+    }
+
+    /**
+     * A limited dijsktra from u among the vertices that are not contracted, without going through v
+     * @param u the start vertex
+     * @param v the vertex that is being contracted
+     * @param maxWeight the search stops when the distances exceed this weight
+     */
+    private void witnessSearch(int u, int v, double maxWeight) {
+        witnessDist[u] = 0;
+        witnessTouched.add(u);
+        witnessPQ.insert(u, 0.0);
+        int settled = 0;
+        while (!witnessPQ.isEmpty()) {
+            double dist = witnessPQ.minKey();
+            int x = witnessPQ.delMin();
+            if (dist > maxWeight || ++settled > WITNESS_SETTLE_LIMIT) break;
+            for (int i = 0; i < outSize[x]; i++) {
+                int a = outArcs[x][i];
+                int y = arcTo[a];
+                if (y == v || contracted[y]) continue;
+                double newDist = dist + arcWeight[a];
+                if (newDist < witnessDist[y]) {
+                    if (witnessDist[y] == Double.POSITIVE_INFINITY) witnessTouched.add(y);
+                    witnessDist[y] = newDist;
+                    if (witnessPQ.contains(y)) witnessPQ.decreaseKey(y, newDist);
+                    else                       witnessPQ.insert(y, newDist);
+                }
+            }
+        }
+        witnessPQ.clear();
+    }
+
+    /**
+     * Resets the distances of the last witness search
+     */
+    private void clearWitnessSearch() {
+        for (int x : witnessTouched) witnessDist[x] = Double.POSITIVE_INFINITY;
+        witnessTouched.clear();
+    }
+
+    /**
+     * Adds an arc to the hierarchy
+     * @param from the vertex the arc goes from
+     * @param to the vertex the arc goes to
+     * @param weight the weight of the arc
+     * @param edge the road edge of the arc, null for a shortcut
+     * @param first the first arc that the shortcut replaces, -1 for an original arc
+     * @param second the second arc that the shortcut replaces, -1 for an original arc
+     */
+    private void addArc(int from, int to, double weight, RoadGraph.Edge edge, int first, int second) {
+        if (arcCount == arcFrom.length) {
+            int capacity = Math.max(INITIAL_ARC_CAPACITY, arcCount * 2);
+            arcFrom = Arrays.copyOf(arcFrom, capacity);
+            arcTo = Arrays.copyOf(arcTo, capacity);
+            arcWeight = Arrays.copyOf(arcWeight, capacity);
+            arcEdge = Arrays.copyOf(arcEdge, capacity);
+            arcFirst = Arrays.copyOf(arcFirst, capacity);
+            arcSecond = Arrays.copyOf(arcSecond, capacity);
+        }
+        int a = arcCount++;
+        arcFrom[a] = from;
+        arcTo[a] = to;
+        arcWeight[a] = weight;
+        arcEdge[a] = edge;
+        arcFirst[a] = first;
+        arcSecond[a] = second;
+
+        if (outArcs[from] == null || outSize[from] == outArcs[from].length) {
+            outArcs[from] = outArcs[from] == null ? new int[INITIAL_ARC_CAPACITY] : Arrays.copyOf(outArcs[from], outSize[from] * 2);
+        }
+        outArcs[from][outSize[from]++] = a;
+        if (inArcs[to] == null || inSize[to] == inArcs[to].length) {
+            inArcs[to] = inArcs[to] == null ? new int[INITIAL_ARC_CAPACITY] : Arrays.copyOf(inArcs[to], inSize[to] * 2);
+        }
+        inArcs[to][inSize[to]++] = a;
+    }
+
+    /**
+     * Sorts the arcs into the upward arcs of their from vertex or the downward arcs of their to vertex
+     */
+    private void buildSearchGraph() {
+        arcFrom = Arrays.copyOf(arcFrom, arcCount);
+        arcTo = Arrays.copyOf(arcTo, arcCount);
+        arcWeight = Arrays.copyOf(arcWeight, arcCount);
+        arcEdge = Arrays.copyOf(arcEdge, arcCount);
+        arcFirst = Arrays.copyOf(arcFirst, arcCount);
+        arcSecond = Arrays.copyOf(arcSecond, arcCount);
+
+        upOffset = new int[vertexCount + 1];
+        downOffset = new int[vertexCount + 1];
+        for (int a = 0; a < arcCount; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) upOffset[arcFrom[a] + 1]++;
+            else                                   downOffset[arcTo[a] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            upOffset[v + 1] += upOffset[v];
+            downOffset[v + 1] += downOffset[v];
+        }
+        upArcs = new int[upOffset[vertexCount]];
+        downArcs = new int[downOffset[vertexCount]];
+        int[] upNext = Arrays.copyOf(upOffset, vertexCount);
+        int[] downNext = Arrays.copyOf(downOffset, vertexCount);
+        for (int a = 0; a < arcCount; a++) {
+            if (rank[arcTo[a]] > rank[arcFrom[a]]) upArcs[upNext[arcFrom[a]]++] = a;
+            else                                   downArcs[downNext[arcTo[a]]++] = a;
+        }
+    }
+
+    /**
+     * Unpacks an arc into the road edges it consists of
+     * @param G the road graph the hierarchy was built from
+     * @param a the arc to be unpacked
+     * @param edges the list that the road edges are appended to, in the order they are travelled
+     */
+    void unpack(RoadGraph G, int a, List<RoadGraph.Edge> edges) {
+        Stack<Integer> arcs = new Stack<>();
+        arcs.push(a);
+        while (!arcs.isEmpty()) {
+            int arc = arcs.pop();
+            if (arcEdge[arc] != null) {
+                addRoadEdges(G, arcEdge[arc], arcTo[arc], edges);
+            } else {
+                arcs.push(arcSecond[arc]);
+                arcs.push(arcFirst[arc]);
+            }
+        }
+    }
+
+    /**
+     * Adds the road edges of an original arc. If a vertex has been interposed on the edge since the hierarchy was
+     * built, the edge now ends in the interposed vertex, and the edges after it are followed until the arc's to vertex
+     * @param G the road graph the hierarchy was built from
+     * @param edge the road edge of the arc
+     * @param to the vertex the arc goes to
+     * @param edges the list that the road edges are appended to
+     */
+    private void addRoadEdges(RoadGraph G, RoadGraph.Edge edge, int to, List<RoadGraph.Edge> edges) {
+        edges.add(edge);
+        RoadGraph.Edge current = edge;
+        while (current.to() != to && !contains(current.to())) {
+            RoadGraph.Edge next = null;
+            for (RoadGraph.Edge e : G.adj(current.to())) {
+                if (e.getHighway() == edge.getHighway() && e.to() != current.from()) {
+                    next = e;
+                    break;
+                }
+            }
+            if (next == null) return;
+            edges.add(next);
+            current = next;
+        }
+    }
+
+    /**
+     * Takes the search space of the queries. A query that runs while another query is using it gets a new one
+     * @return a search space where no vertex has been reached
+     */
+    synchronized ContractionHierarchyDijsktra.SearchSpace takeSearchSpace() {
+        ContractionHierarchyDijsktra.SearchSpace space = searchSpace;
+        searchSpace = null;
+        return space != null ? space : new ContractionHierarchyDijsktra.SearchSpace(vertexCount);
+    }
+
+    /**
+     * Gives a search space back to the hierarchy, so the next query can use it
+     * @param space a search space that has been reset
+     */
+    synchronized void giveBackSearchSpace(ContractionHierarchyDijsktra.SearchSpace space) {
+        searchSpace = space;
+    }
+
+    /**
+     * Checks if a vertex was part of the graph when the hierarchy was built
+     * @param v the vertex
+     * @return true if the vertex is contracted in the hierarchy
+     */
+    public boolean contains(int v) {
+        return v >= 0 && v < vertexCount;
+    }
+
+    public TravelType getTravelType() {
+        return travelType;
+    }
+
+    public int getArcCount() {
+        return arcCount;
+    }
+
+    int upBegin(int v) {
+        return upOffset[v];
+    }
+
+    int upEnd(int v) {
+        return upOffset[v + 1];
+    }
+
+    int upArc(int i) {
+        return upArcs[i];
+    }
+
+    int downBegin(int v) {
+        return downOffset[v];
+    }
+
+    int downEnd(int v) {
+        return downOffset[v + 1];
+    }
+
+    int downArc(int i) {
+        return downArcs[i];
+    }
+
+    int arcFrom(int a) {
+        return arcFrom[a];
+    }
+
+    int arcTo(int a) {
+        return arcTo[a];
+    }
+
+    double arcWeight(int a) {
+        return arcWeight[a];
+    }
+}
@@ -0,0 +1,352 @@
+package Model.Graph;
+
+import lib.IndexMinDoublePQ;
+import lib.Queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A bidirectional upward search in a contraction hierarchy.
+ * The forward search from s and the backward search from t only follow arcs towards higher ranked vertices, and the
+ * shortest path is the one through the vertex where the sum of both distances is lowest.
+ * Vertices interposed after the hierarchy was built are connected to it by a small dijsktra in the road graph.
+ */
+public class ContractionHierarchyDijsktra implements PathFinder {
+    private final ContractionHierarchy ch;
+    private final RoadGraph G;
+    private final TravelType travelType;
+    private final int s, t;
+    private double[] distTo;    // distTo[v] = distance of shortest upward s->v path
+    private double[] distFrom;  // distFrom[v] = distance of shortest upward v->t path
+    private int[] arcTo;        // arcTo[v] = last arc on the upward s->v path, -1 if v was reached from s in the road graph
+    private int[] arcFrom;      // arcFrom[v] = first arc on the upward v->t path, -1 if v reaches t in the road graph
+    private IndexMinDoublePQ forwardPQ, backwardPQ;
+    private SearchSpace space;  // the arrays above, which are given back to the hierarchy when the search is done
+
+    //Edges in the road graph between interposed vertices and the hierarchy
+    private Map<Integer, RoadGraph.Edge> localEdgeTo = new HashMap<>();
+    private Map<Integer, RoadGraph.Edge> localEdgeFrom = new HashMap<>();
+
+    private double bestDistance = Double.POSITIVE_INFINITY;
+    private int meetingVertex = -1;
+    private boolean meetsInRoadGraph; // true if the best path only uses interposed vertices
+    private List<RoadGraph.Edge> path;
+
+    /**
+     * A method that finds the fastest route from a given start point to an end point
+     * @param G a graf that has to be analyzed
+     * @param ch the contraction hierarchy of G for the traveltype
+     * @param s a given start vertex
+     * @param t an end vertex
+     */
+    public ContractionHierarchyDijsktra(RoadGraph G, ContractionHierarchy ch, int s, int t) {
+        this.G = G;
+        this.ch = ch;
+        this.travelType = ch.getTravelType();
+        this.s = s;
+        this.t = t;
+        G.validateVertex(s);
+        G.validateVertex(t);
+
+        if (s == t) {
+            bestDistance = 0;
+            meetsInRoadGraph = true;
+            path = new ArrayList<>();
+            return;
+        }
+
+        //The arrays of the search are shared by the queries of the hierarchy, and only the vertices the search
+        //touches are reset afterwards, so a query does not cost time or memory in the size of the whole graph
+        space = ch.takeSearchSpace();
+        distTo = space.distTo;
+        distFrom = space.distFrom;
+        arcTo = space.arcTo;
+        arcFrom = space.arcFrom;
+        forwardPQ = space.forwardPQ;
+        backwardPQ = space.backwardPQ;
+        try {
+            search();
+            if (bestDistance < Double.POSITIVE_INFINITY) buildPath();
+        } finally {
+            space.reset();
+            ch.giveBackSearchSpace(space);
+            distTo = distFrom = null;
+            arcTo = arcFrom = null;
+            forwardPQ = backwardPQ = null;
+            space = null;
+        }
+    }
+
+    /**
+     * Runs the forward and the backward search until neither can find a shorter path
+     */
+    private void search() {
+        enterHierarchy(s, true);
+        enterHierarchy(t, false);
+
+        boolean forwardDone = false, backwardDone = false;
+        while (!forwardDone || !backwardDone) {
+            forwardDone = forwardDone || forwardPQ.isEmpty() || forwardPQ.minKey() >= bestDistance;
+            if (!forwardDone) {
+                int v = forwardPQ.delMin();
+                for (int i = ch.upBegin(v); i < ch.upEnd(v); i++) {
+                    int a = ch.upArc(i);
+                    relax(a, ch.arcTo(a), distTo[v] + ch.arcWeight(a), true);
+                }
+            }
+            backwardDone = backwardDone || backwardPQ.isEmpty() || backwardPQ.minKey() >= bestDistance;
+            if (!backwardDone) {
+                int v = backwardPQ.delMin();
+                for (int i = ch.downBegin(v); i < ch.downEnd(v); i++) {
+                    int a = ch.downArc(i);
+                    relax(a, ch.arcFrom(a), distFrom[v] + ch.arcWeight(a), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Relaxes an arc in either the forward or the backward search
+     * @param a the arc
+     * @param w the vertex the arc leads to in the direction of the search
+     * @param dist the distance to w through the arc
+     * @param forward true if it is the forward search
+     */
+    private void relax(int a, int w, double dist, boolean forward) {
+        double[] dists = forward ? distTo : distFrom;
+        int[] arcs = forward ? arcTo : arcFrom;
+        if (dist < dists[w]) {
+            arcs[w] = a;
+            reach(w, dist, forward);
+        }
+    }
+
+    /**
+     * Updates the distance of a vertex in either search and checks if the two searches meet in it
+     * @param w the vertex
+     * @param dist the new distance of w
+     * @param forward true if it is the forward search
+     */
+    private void reach(int w, double dist, boolean forward) {
+        double[] dists = forward ? distTo : distFrom;
+        IndexMinDoublePQ pq = forward ? forwardPQ : backwardPQ;
+        if (distTo[w] == Double.POSITIVE_INFINITY && distFrom[w] == Double.POSITIVE_INFINITY) space.touch(w);
+        dists[w] = dist;
+        if (pq.contains(w)) pq.decreaseKey(w, dist);
+        else                pq.insert(w, dist);
+        double pathDist = distTo[w] + distFrom[w];
+        if (pathDist < bestDistance) {
+            bestDistance = pathDist;
+            meetingVertex = w;
+            meetsInRoadGraph = false;
+        }
+    }
+
+    /**
+     * Adds the start vertex of a search to its queue. A vertex that is not in the hierarchy is connected to the
+     * closest hierarchy vertices by a dijsktra in the road graph, that does not continue past hierarchy vertices.
+     * The dijsktra only touches a few vertices, so its distances are kept in a map and its queue is a heap of the
+     * vertices it has reached, where an entry is skipped if a shorter distance to its vertex has been found since
+     * @param v the start vertex
+     * @param forward true for s and the forward search, false for t and the backward search
+     */
+    private void enterHierarchy(int v, boolean forward) {
+        Map<Integer, RoadGraph.Edge> localEdges = forward ? localEdgeTo : localEdgeFrom;
+        if (ch.contains(v)) {
+            reach(v, 0.0, forward);
+            return;
+        }
+
+        Map<Integer, Double> localDist = new HashMap<>();
+        PriorityQueue<LocalEntry> localPQ = new PriorityQueue<>();
+        localDist.put(v, 0.0);
+        localPQ.add(new LocalEntry(v, 0.0));
+        while (!localPQ.isEmpty()) {
+            LocalEntry entry = localPQ.poll();
+            int x = entry.vertex;
+            double dist = entry.dist;
+            if (dist > localDist.get(x)) continue;
+            if (ch.contains(x)) {
+                reach(x, dist, forward);
+                continue;
+            }
+            if (forward && x == t && dist < bestDistance) {
+                bestDistance = dist;
+                meetsInRoadGraph = true;
+            }
+            for (RoadGraph.Edge e : forward ? G.adj(x) : G.reverseAdj(x)) {
+                if (!RoadDijsktra.isAllowed(e, travelType)) continue;
+                int y = forward ? e.to() : e.from();
+                double newDist = dist + RoadDijsktra.weight(e, travelType);
+                if (localDist.get(y) == null || newDist < localDist.get(y)) {
+                    localDist.put(y, newDist);
+                    localEdges.put(y, e);
+                    localPQ.add(new LocalEntry(y, newDist));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the path of road edges from s to t by unpacking the shortcuts on the best path
+     */
+    private void buildPath() {
+        path = new ArrayList<>();
+        if (meetsInRoadGraph) {
+            addLocalEdgesTo(t, path);
+            return;
+        }
+
+        //The upward path from s to the meeting vertex is found backwards, so the arcs are reversed afterwards
+        List<Integer> forwardArcs = new ArrayList<>();
+        int v = meetingVertex;
+        while (arcTo[v] != -1) {
+            forwardArcs.add(arcTo[v]);
+            v = ch.arcFrom(arcTo[v]);
+        }
+        addLocalEdgesTo(v, path);
+        for (int i = forwardArcs.size() - 1; i >= 0; i--) {
+            ch.unpack(G, forwardArcs.get(i), path);
+        }
+
+        v = meetingVertex;
+        while (arcFrom[v] != -1) {
+            ch.unpack(G, arcFrom[v], path);
+            v = ch.arcTo(arcFrom[v]);
+        }
+        for (RoadGraph.Edge e = localEdgeFrom.get(v); v != t && e != null; e = localEdgeFrom.get(v)) {
+            path.add(e);
+            v = e.to();
+        }
+    }
+
+    /**
+     * Adds the road graph edges from s to a vertex that was reached by the forward dijsktra in the road graph
+     * @param v the vertex reached from s
+     * @param edges the list that the edges are appended to
+     */
+    private void addLocalEdgesTo(int v, List<RoadGraph.Edge> edges) {
+        List<RoadGraph.Edge> reversed = new ArrayList<>();
+        for (RoadGraph.Edge e = localEdgeTo.get(v); v != s && e != null; e = localEdgeTo.get(v)) {
+            reversed.add(e);
+            v = e.from();
+        }
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            edges.add(reversed.get(i));
+        }
+    }
+
+    /**
+     * Checks if the found path breaks a turn restriction. The hierarchy does not know the restrictions, so a path
+     * that breaks one has to be found by another search instead
+     * @return true if all turns on the path are allowed
+     */
+    public boolean respectsTurnRestrictions() {
+        if (travelType != TravelType.CAR || !hasPathTo(t)) return true;
+        for (int i = 1; i < path.size(); i++) {
+            if (!G.isTurnAllowed(path.get(i-1), path.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if there is a path to a given vertex. Only paths to t are found by the search
+     * @param v vertex to check
+     * @return true if there is a path to the vertex
+     */
+    @Override
+    public boolean hasPathTo(int v) {
+        G.validateVertex(v);
+        return v == t && bestDistance < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the quickest path to t with all shortcuts unpacked
+     * @param v vertex to find path to, has to be t
+     * @return an iterable of edges in the order they are travelled
+     */
+    @Override
+    public Iterable<RoadGraph.Edge> pathTo(int v) {
+        if (!hasPathTo(v)) return null;
+        Queue<RoadGraph.Edge> edges = new Queue<RoadGraph.Edge>();
+        for (RoadGraph.Edge e : path) edges.enqueue(e);
+        return edges;
+    }
+
+    /**
+     * A vertex reached by the dijsktra in the road graph, ordered by its distance
+     */
+    private static class LocalEntry implements Comparable<LocalEntry> {
+        private final int vertex;
+        private final double dist;
+
+        LocalEntry(int vertex, double dist) {
+            this.vertex = vertex;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(LocalEntry other) {
+            return Double.compare(dist, other.dist);
+        }
+    }
+
+    /**
+     * The arrays and queues of a search in a contraction hierarchy. They are created once for the vertices of the
+     * hierarchy, and the vertices a search touches are remembered, so they can be reset for the next search
+     */
+    static class SearchSpace {
+        private final double[] distTo, distFrom;
+        private final int[] arcTo, arcFrom;
+        private final IndexMinDoublePQ forwardPQ, backwardPQ;
+        private final int[] touched;
+        private int touchedCount;
+
+        /**
+         * Creates the search space of a hierarchy
+         * @param vertexCount the number of vertices in the hierarchy
+         */
+        SearchSpace(int vertexCount) {
+            distTo = new double[vertexCount];
+            distFrom = new double[vertexCount];
+            arcTo = new int[vertexCount];
+            arcFrom = new int[vertexCount];
+            Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+            Arrays.fill(distFrom, Double.POSITIVE_INFINITY);
+            Arrays.fill(arcTo, -1);
+            Arrays.fill(arcFrom, -1);
+            forwardPQ = new IndexMinDoublePQ(vertexCount);
+            backwardPQ = new IndexMinDoublePQ(vertexCount);
+            touched = new int[vertexCount];
+        }
+
+        /**
+         * Remembers a vertex that is reached for the first time by either search
+         * @param v the vertex
+         */
+        private void touch(int v) {
+            touched[touchedCount++] = v;
+        }
+
+        /**
+         * Resets the vertices the last search touched and empties the queues
+         */
+        private void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                int v = touched[i];
+                distTo[v] = Double.POSITIVE_INFINITY;
+                distFrom[v] = Double.POSITIVE_INFINITY;
+                arcTo[v] = -1;
+                arcFrom[v] = -1;
+            }
+            touchedCount = 0;
+            forwardPQ.clear();
+            backwardPQ.clear();
+        }
+    }
+}
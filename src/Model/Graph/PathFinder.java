@@ -0,0 +1,10 @@
+package Model.Graph;
+
+/**
+ * Interface for the route searches that can be run on a RoadGraph
+ */
+public interface PathFinder {
+    boolean hasPathTo(int v);
+
+    Iterable<RoadGraph.Edge> pathTo(int v);
+}
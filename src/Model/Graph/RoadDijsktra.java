@@ -1,19 +1,19 @@
 package Model.Graph;
 
 import Model.*;
-import Model.OSM.OSMHighway;
-import lib.IndexMinPQ;
+import lib.IndexMinDoublePQ;
 import lib.Stack;
 import java.util.*;
 import java.util.List;
 
 /**
  * An implementation of dijsktra
+ * The search stops as soon as the end vertex is settled, so only paths to t are guaranteed to be shortest paths
  */
-public class RoadDijsktra {
+public class RoadDijsktra implements PathFinder {
     private double[] distTo;          // distTo[v] = distance  of shortest s->v path
     private RoadGraph.Edge[] edgeTo;    // edgeTo[v] = last edge on shortest s->v path
-    private IndexMinPQ<Double> pq;    // priority queue of vertices
+    private IndexMinDoublePQ pq;    // priority queue of vertices
     private final Model model;
     private RoadGraph G;
     private TravelType travelType;
@@ -40,71 +40,66 @@ public class RoadDijsktra {
         distTo[s] = 0.0;
 
         // relax vertices in order of distance from s
-        pq = new IndexMinPQ<Double>(G.getVertexCount());
+        pq = new IndexMinDoublePQ(G.getVertexCount());
         double h = h(s,t);
         pq.insert(s, distTo[s] + h);
+        CompactRoadGraph adj = G.compactAdj();
         while (!pq.isEmpty()) {
             int v = pq.delMin();
-            for (RoadGraph.Edge e : G.adj(v)) {
-                if (travelType == TravelType.WALK) {
-                    if (e.isWalkingAllowed()) {
-                        relax(e, t);
-                    }
-                } else if (travelType == TravelType.BICYCLE) {
-                    if (e.isCyclingAllowed()) {
-                        relax(e, t);
-                    }
-                } else {
-                    if (e.isDrivingAllowed()) {
-                        relax(e, t);
-                    }
+            if (v == t) break; //t is settled, so the rest of the graph can not give a shorter path
+            for (int i = adj.begin(v); i < adj.end(v); i++) {
+                if (adj.isAllowed(i, travelType)) {
+                    relax(adj, i, v, t);
                 }
             }
         }
     }
 
     /**
-     * A method that checks if the turn is allowed (based on restrictions in an intersection)
-     * @param nextEdge the edge to turn on to
-     * @return either true or false based on if the turn is allowed
+     * A method that checks if the edge may be used with the given traveltype
+     * @param e the edge to check
+     * @param travelType the traveltype to take in consideration
+     * @return true if the traveltype is allowed on the edge
      */
-    private boolean turnAllowed(RoadGraph.Edge nextEdge) {
-        if(edgeTo[nextEdge.from()] != null && edgeTo[nextEdge.from()].getHighway() != null) {
-            OSMHighway restrictedFromHighway = edgeTo[nextEdge.from()].getHighway();
-            if(restrictedFromHighway.getRestrictedHighways() != null) {
-                for (OSMHighway highway : restrictedFromHighway.getRestrictedHighways()) {
-                    if(highway.getAssociatedEdges() != null) {
-                        for (RoadGraph.Edge f : highway.getAssociatedEdges()) {
-                            if (f.equals(nextEdge)) {
-                                return false;
-                            }
-                        }
-                    }
-                }
-            }
+    static boolean isAllowed(RoadGraph.Edge e, TravelType travelType) {
+        if (travelType == TravelType.WALK) {
+            return e.isWalkingAllowed();
+        } else if (travelType == TravelType.BICYCLE) {
+            return e.isCyclingAllowed();
+        } else {
+            return e.isDrivingAllowed();
         }
-        return true;
     }
 
     /**
-     * A method that checks if a new edge weight would be a quicker way to a given vertex
-     * @param e edge to be relaxed
-     * @param t the end vertex
+     * A method that finds the weight of an edge for the given traveltype
+     * @param e the edge to be weighted
+     * @param travelType the traveltype to take in consideration
+     * @return the travel time for cars and the length for everything else
      */
-    private void relax(RoadGraph.Edge e, int t) {
-        double edgeWeight;
-        boolean turnAllowed = true;
+    static double weight(RoadGraph.Edge e, TravelType travelType) {
         if (travelType == TravelType.CAR) {
-            edgeWeight = e.getLength()/e.getSpeedLimit();
-            turnAllowed = turnAllowed(e);
-
+            return e.getLength()/e.getSpeedLimit();
         } else {
-            edgeWeight = e.getLength();
+            return e.getLength();
         }
-        int v = e.from(), w = e.to();
-        if (distTo[w] > distTo[v] + edgeWeight && turnAllowed) {
-            distTo[w] = distTo[v] + edgeWeight;
-            edgeTo[w] = e;
+    }
+
+    /**
+     * A method that checks if a new edge weight would be a quicker way to a given vertex.
+     * The edge object is only read if the edge is a quicker way, or if a turn restriction has to be checked
+     * @param adj the compact adjacency lists of the graph
+     * @param i index of the edge to be relaxed
+     * @param v the vertex the edge leaves
+     * @param t the end vertex
+     */
+    private void relax(CompactRoadGraph adj, int i, int v, int t) {
+        int w = adj.target(i);
+        double dist = distTo[v] + adj.weight(i, travelType);
+        if (distTo[w] > dist) {
+            if (travelType == TravelType.CAR && !G.isTurnAllowed(edgeTo[v], adj.edge(i))) return;
+            distTo[w] = dist;
+            edgeTo[w] = adj.edge(i);
             if (pq.contains(w)) pq.decreaseKey(w, distTo[w] + h(w,t));
             else                pq.insert(w, distTo[w] + h(w,t));
         }
@@ -117,6 +112,19 @@ public class RoadDijsktra {
      * @return the length from w to t
      */
     private double h(int w, int t) {
+        return h(model, G, w, t, travelType);
+    }
+
+    /**
+     * Gets the heuristic between two vertices. It never overestimates the weight of the path between them
+     * @param model a reference to the model
+     * @param G the graph the vertices belong to
+     * @param w some vertex along the path
+     * @param t the end vertex
+     * @param travelType which traveltype to take in consideration
+     * @return the length from w to t, or the time it takes at max speed for cars
+     */
+    static double h(Model model, RoadGraph G, int w, int t, TravelType travelType) {
         if (travelType == TravelType.CAR) {
             return EuclideanDistance.dist(model, G.getIntersectionPoints().get(w), G.getIntersectionPoints().get(t))/TravelType.CAR.getSpeed();
         } else {
@@ -129,6 +137,7 @@ public class RoadDijsktra {
      * @param v vertex to check
      * @return true if there is a path to the vertex
      */
+    @Override
     public boolean hasPathTo(int v) {
         G.validateVertex(v);
         return distTo[v] < Double.POSITIVE_INFINITY;
@@ -139,6 +148,7 @@ public class RoadDijsktra {
      * @param v vertex to find path to
      * @return an iterable of edges
      */
+    @Override
     public Iterable<RoadGraph.Edge> pathTo(int v) {
         G.validateVertex(v);
         if (!hasPathTo(v)) return null;
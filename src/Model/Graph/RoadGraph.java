@@ -2,44 +2,74 @@ package Model.Graph;
 
 import Model.Exceptions.RouteNotPossibleException;
 import Model.KDTree.KDFriendlyShape;
+import Model.KDTree.SegmentIndex;
+import Model.MapFile;
 import Model.Model;
+import Model.StringTable;
 import Model.OSM.OSMHighway;
+import Model.OSM.OSMRestriction;
 import Model.OSM.SimpleOSMNode;
 import View.MenuElements.DirectionsPanel;
 import lib.Bag;
 import Model.EuclideanDistance;
 
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A graph representation of the network of roads
  */
 public class RoadGraph implements Serializable {
+    private static final long serialVersionUID = -1400055553517067073L;
     private static final int VERTEX_OVERHEAD = 10;
+    //The flags of an edge in a map file
+    private static final byte ONE_WAY = 1, WALKING = 2, CYCLING = 4, DRIVING = 8, ROUNDABOUT = 16;
     //Fields from Sedgewick and Wayne
     private int vertexCount;
     private List<Bag<Edge>> adj;
+    private transient List<List<Edge>> reverseAdj; //Built on demand for searches running backwards from the end vertex
+    private transient CompactRoadGraph compactAdj; //Built on demand for the searches that relax edges by index
+    private transient SegmentIndex segmentIndex; //Built on demand from the highways of the edges for snapping points to the roads
+    private EnumMap<TravelType, ContractionHierarchy> contractionHierarchies;
+    private TurnRestrictions turnRestrictions;
 
     private ArrayList<SimpleOSMNode> intersectionPoints;
     private HashMap<SimpleOSMNode, Integer> reverseIntersectionPoints;
     private Model model;
+    private StringTable strings; //The names of the edges
     private Iterable<RoadGraph.Edge> path;
     private DirectionsPanel directionsPanel;
     private double routeLength;
 
     /**
-     * The initial construction of the graph
+     * The initial construction of the graph without turn restrictions
      * @param model The model to be represented
      * @param highways The highways to be represented
      */
     public RoadGraph(Model model, List<OSMHighway> highways) {
+        this(model, highways, Collections.emptyList());
+    }
+
+    /**
+     * The initial construction of the graph
+     * @param model The model to be represented
+     * @param highways The highways to be represented
+     * @param restrictions The turn restrictions between the highways
+     */
+    public RoadGraph(Model model, List<OSMHighway> highways, List<OSMRestriction> restrictions) {
         this.model = model;
+        strings = model.getMapData().getStrings();
 
         directionsPanel = new DirectionsPanel(); //TODO: FLYT MIG UD HER FRA
 
@@ -54,6 +84,159 @@ public class RoadGraph implements Serializable {
         }
 
         buildGraph(highways);
+        turnRestrictions = new TurnRestrictions(this, restrictions);
+    }
+
+    /**
+     * Reads a graph that has been written to a map file
+     * @param model The model to be represented
+     * @param in the map file, positioned at the graph
+     * @throws IOException If the map file could not be read
+     */
+    public RoadGraph(Model model, MapFile.Reader in) throws IOException {
+        this.model = model;
+        strings = in.getStrings();
+        directionsPanel = new DirectionsPanel();
+
+        vertexCount = in.getInt();
+        double[] points = in.getDoubles(2 * vertexCount);
+        intersectionPoints = new ArrayList<>(vertexCount);
+        reverseIntersectionPoints = new HashMap<>();
+        for (int v = 0; v < vertexCount; v++) {
+            SimpleOSMNode point = new SimpleOSMNode(points[2 * v], points[2 * v + 1]);
+            intersectionPoints.add(point);
+            reverseIntersectionPoints.put(point, v);
+        }
+
+        //The waypoints of the edges, where an edge and its reverse edge share the same list
+        int[] wayPointCounts = in.getInts(in.getInt());
+        double[] wayPointCoords = in.getDoubles(in.getInt());
+        List<List<SimpleOSMNode>> wayPointLists = new ArrayList<>(wayPointCounts.length);
+        for (int i = 0, coord = 0; i < wayPointCounts.length; i++) {
+            List<SimpleOSMNode> wayPoints = new ArrayList<>(wayPointCounts[i]);
+            for (int j = 0; j < wayPointCounts[i]; j++, coord += 2) {
+                wayPoints.add(new SimpleOSMNode(wayPointCoords[coord], wayPointCoords[coord + 1]));
+            }
+            wayPointLists.add(wayPoints);
+        }
+
+        int[] edgeCounts = in.getInts(vertexCount);
+        int edgeCount = in.getInt();
+        int[] to = in.getInts(edgeCount);
+        float[] length = in.getFloats(edgeCount);
+        int[] speedLimit = in.getInts(edgeCount);
+        int[] name = in.getInts(edgeCount);
+        int[] highway = in.getInts(edgeCount);
+        int[] wayPoints = in.getInts(edgeCount);
+        byte[] flags = in.getBytes(edgeCount);
+        Edge[] edges = new Edge[edgeCount];
+        adj = new ArrayList<Bag<Edge>>(vertexCount + VERTEX_OVERHEAD);
+        for (int v = 0, e = 0; v < vertexCount; v++) {
+            Bag<Edge> bag = new Bag<>();
+            for (int i = e; i < e + edgeCounts[v]; i++) {
+                edges[i] = new Edge(v, to[i], length[i], speedLimit[i], name[i], wayPoints[i] < 0 ? null : wayPointLists.get(wayPoints[i]),
+                        (OSMHighway) in.shape(highway[i]), (flags[i] & ONE_WAY) != 0, (flags[i] & WALKING) != 0, (flags[i] & CYCLING) != 0,
+                        (flags[i] & DRIVING) != 0, (flags[i] & ROUNDABOUT) != 0);
+            }
+            //A bag iterates in the opposite order of insertion, so the edges are added backwards to keep their order
+            for (int i = e + edgeCounts[v] - 1; i >= e; i--) bag.add(edges[i]);
+            adj.add(bag);
+            e += edgeCounts[v];
+        }
+
+        if (in.getBoolean()) turnRestrictions = new TurnRestrictions(in);
+        int hierarchies = in.getInt();
+        if (hierarchies > 0) contractionHierarchies = new EnumMap<>(TravelType.class);
+        for (int i = 0; i < hierarchies; i++) {
+            ContractionHierarchy hierarchy = new ContractionHierarchy(in, edges);
+            contractionHierarchies.put(hierarchy.getTravelType(), hierarchy);
+        }
+    }
+
+    /**
+     * Writes the graph to a map file, with the edges of every vertex stored after each other
+     * @param out the map file
+     * @throws IOException If the map file could not be written
+     */
+    public void write(MapFile.Writer out) throws IOException {
+        out.putInt(vertexCount);
+        double[] points = new double[2 * vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            points[2 * v] = intersectionPoints.get(v).getX();
+            points[2 * v + 1] = intersectionPoints.get(v).getY();
+        }
+        out.putDoubles(points, 0, points.length);
+
+        Map<Edge, Integer> edgeIds = new IdentityHashMap<>();
+        Map<List<SimpleOSMNode>, Integer> wayPointIds = new IdentityHashMap<>();
+        List<List<SimpleOSMNode>> wayPointLists = new ArrayList<>();
+        int wayPointCount = 0;
+        int[] edgeCounts = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            for (Edge e : adj.get(v)) {
+                edgeIds.put(e, edgeIds.size());
+                edgeCounts[v]++;
+                if (e.getWayPoints() != null && !wayPointIds.containsKey(e.getWayPoints())) {
+                    wayPointIds.put(e.getWayPoints(), wayPointLists.size());
+                    wayPointLists.add(e.getWayPoints());
+                    wayPointCount += e.getWayPoints().size();
+                }
+            }
+        }
+
+        int[] wayPointCounts = new int[wayPointLists.size()];
+        double[] wayPointCoords = new double[2 * wayPointCount];
+        int coord = 0;
+        for (int i = 0; i < wayPointCounts.length; i++) {
+            wayPointCounts[i] = wayPointLists.get(i).size();
+            for (SimpleOSMNode wayPoint : wayPointLists.get(i)) {
+                wayPointCoords[coord++] = wayPoint.getX();
+                wayPointCoords[coord++] = wayPoint.getY();
+            }
+        }
+        out.putInt(wayPointCounts.length);
+        out.putInts(wayPointCounts, 0, wayPointCounts.length);
+        out.putInt(wayPointCoords.length);
+        out.putDoubles(wayPointCoords, 0, wayPointCoords.length);
+
+        int edgeCount = edgeIds.size();
+        int[] to = new int[edgeCount];
+        float[] length = new float[edgeCount];
+        int[] speedLimit = new int[edgeCount];
+        int[] name = new int[edgeCount];
+        int[] highway = new int[edgeCount];
+        int[] wayPoints = new int[edgeCount];
+        byte[] flags = new byte[edgeCount];
+        int i = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            for (Edge e : adj.get(v)) {
+                to[i] = e.to();
+                length[i] = e.getLength();
+                speedLimit[i] = e.getSpeedLimit();
+                name[i] = out.stringId(getName(e));
+                highway[i] = out.shapeId(e.getHighway());
+                wayPoints[i] = e.getWayPoints() == null ? -1 : wayPointIds.get(e.getWayPoints());
+                flags[i] = (byte) ((e.isOneWay() ? ONE_WAY : 0) | (e.isWalkingAllowed() ? WALKING : 0) | (e.isCyclingAllowed() ? CYCLING : 0)
+                        | (e.isDrivingAllowed() ? DRIVING : 0) | (e.isRoundabout() ? ROUNDABOUT : 0));
+                i++;
+            }
+        }
+        out.putInts(edgeCounts, 0, vertexCount);
+        out.putInt(edgeCount);
+        out.putInts(to, 0, edgeCount);
+        out.putFloats(length, 0, edgeCount);
+        out.putInts(speedLimit, 0, edgeCount);
+        out.putInts(name, 0, edgeCount);
+        out.putInts(highway, 0, edgeCount);
+        out.putInts(wayPoints, 0, edgeCount);
+        out.putBytes(flags, 0, edgeCount);
+
+        out.putBoolean(turnRestrictions != null);
+        if (turnRestrictions != null) turnRestrictions.write(out);
+        out.putInt(contractionHierarchies == null ? 0 : contractionHierarchies.size());
+        if (contractionHierarchies != null) {
+            for (ContractionHierarchy hierarchy : contractionHierarchies.values()) hierarchy.write(out, edgeIds);
+        }
     }
 
     /**
@@ -84,9 +267,9 @@ public class RoadGraph implements Serializable {
                 wayPoints.add(intersection);
                 if (lastIntersection != null) {
                     RoadGraph.Edge newEdge = new RoadGraph.Edge(reverseIntersectionPoints.get(lastIntersection), reverseIntersectionPoints.get(intersection), lengthSinceLastIntersection,
-                            highway.getSpeedLimit(), highway.getName(), wayPoints, highway, highway.isOneWay(), highway.isWalkingAllowed(), highway.isCyclingAllowed(), highway.isDrivingAllowed(), highway.isRoundabout());
+                            highway.getSpeedLimit(), highway.getNameId(), wayPoints, highway, highway.isOneWay(), highway.isWalkingAllowed(), highway.isCyclingAllowed(), highway.isDrivingAllowed(), highway.isRoundabout());
 
-                    addDoubleEdge(newEdge, highway);
+                    addDoubleEdge(newEdge);
                     lengthSinceLastIntersection = 0;
                 }
                 lastIntersection = intersection;
@@ -141,6 +324,8 @@ public class RoadGraph implements Serializable {
      */
     public int addVertex() {
         adj.add(new Bag<>());
+        if (reverseAdj != null) reverseAdj.add(new ArrayList<>());
+        if (compactAdj != null) compactAdj.addVertex();
         return (++vertexCount)-1;
     }
 
@@ -164,29 +349,28 @@ public class RoadGraph implements Serializable {
     /**
      * Doubly links the two vertexes bound in the given edge
      * @param e the given edge
-     * @param highway the highway that the edge partially represents
      */
-    public void addDoubleEdge(Edge e, OSMHighway highway) {
-        addSingleEdge(e, highway);
+    public void addDoubleEdge(Edge e) {
+        addSingleEdge(e);
         Edge reverseEdge;
         if (!e.isOneWay()) {
-            reverseEdge = new Edge(e.to(), e.from(), e.getLength(), e.getSpeedLimit(), e.getName(), e.getWayPoints(), e.getHighway(), e.isOneWay(),
+            reverseEdge = new Edge(e.to(), e.from(), e.getLength(), e.getSpeedLimit(), e.getNameId(), e.getWayPoints(), e.getHighway(), e.isOneWay(),
                     e.isWalkingAllowed(), e.isCyclingAllowed(), e.isDrivingAllowed(), e.isRoundabout());
         } else {
-            reverseEdge = new Edge(e.to(), e.from(), e.getLength(), e.getSpeedLimit(), e.getName(), e.getWayPoints(), e.getHighway(), e.isOneWay(),
+            reverseEdge = new Edge(e.to(), e.from(), e.getLength(), e.getSpeedLimit(), e.getNameId(), e.getWayPoints(), e.getHighway(), e.isOneWay(),
                     e.isWalkingAllowed(), e.isCyclingAllowed(), false, e.isRoundabout());
         }
-        addSingleEdge(reverseEdge, highway);
+        addSingleEdge(reverseEdge);
     }
 
     /**
      * Adds the given edge as a single link between the vertices given in the edge
      * @param e the given edge
-     * @param highway the highway that the edge partially represents
      */
-    public void addSingleEdge(Edge e, OSMHighway highway) {
+    public void addSingleEdge(Edge e) {
         adj.get(e.from()).add(e);
-        highway.addAssociatedEdge(e);
+        if (reverseAdj != null) reverseAdj.get(e.to()).add(e);
+        if (compactAdj != null && !compactAdj.addEdge(e)) compactAdj = null;
     }
 
     /**
@@ -199,6 +383,53 @@ public class RoadGraph implements Serializable {
         return adj.get(v);
     }
 
+    /**
+     * Getter for all the edges going in to a given vertex
+     * @param v the given vertex
+     * @return An iterable object with all the edges that has v as their to vertex
+     */
+    public Iterable<Edge> reverseAdj(int v) {
+        validateVertex(v);
+        if (reverseAdj == null) buildReverseAdj();
+        return reverseAdj.get(v);
+    }
+
+    /**
+     * Checks if the turn from one edge to the next is allowed by the turn restrictions
+     * @param prevEdge the edge that is turned from, null if there is no previous edge
+     * @param nextEdge the edge to turn on to, null if there is no next edge
+     * @return true if the turn is allowed
+     */
+    public boolean isTurnAllowed(Edge prevEdge, Edge nextEdge) {
+        return turnRestrictions == null || turnRestrictions.isTurnAllowed(prevEdge, nextEdge);
+    }
+
+    /**
+     * Getter for the compressed sparse row view of the adjacency lists. The view is kept up to date when vertices are
+     * interposed, and is rebuilt if the graph is changed in a way it can not follow
+     * @return the compact adjacency lists
+     */
+    public CompactRoadGraph compactAdj() {
+        if (compactAdj == null) compactAdj = new CompactRoadGraph(this);
+        return compactAdj;
+    }
+
+    /**
+     * Builds the reverse adjacency lists from the adjacency lists
+     */
+    private void buildReverseAdj() {
+        List<List<Edge>> reverse = new ArrayList<>(vertexCount + VERTEX_OVERHEAD);
+        for (int v = 0; v < vertexCount; v++) {
+            reverse.add(new ArrayList<>());
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            for (Edge e : adj.get(v)) {
+                reverse.get(e.to()).add(e);
+            }
+        }
+        reverseAdj = reverse;
+    }
+
     /**
      * Getter for all the edges in the data structure
      * @return An iterable object with all the edges
@@ -213,6 +444,21 @@ public class RoadGraph implements Serializable {
         return list;
     }
 
+    /**
+     * @param e an edge of the graph
+     * @return the name of the edge, or null if it has no name
+     */
+    public String getName(Edge e) {
+        return strings.get(e.getNameId());
+    }
+
+    /**
+     * @return the string table that holds the names of the edges
+     */
+    public StringTable getStrings() {
+        return strings;
+    }
+
     /**
      * Calculates the angle between a startpoint and endpoint as a part of a series of (path) points via the centerpoint.
      * The calculation is based on the vectors spanning between the centerpoint and startpoint, and centerpoint and endpoint respectively
@@ -237,14 +483,48 @@ public class RoadGraph implements Serializable {
     }
 
     /**
-     * Find a path between the two given vertices and setting the path field to the result
+     * Contracts the graph separately for every traveltype, since they are allowed on different edges.
+     * Should be done before any vertices are interposed, so it is saved with the map
+     */
+    public void buildContractionHierarchies() {
+        contractionHierarchies = new EnumMap<>(TravelType.class);
+        for (TravelType travelType : TravelType.values()) {
+            contractionHierarchies.put(travelType, new ContractionHierarchy(this, travelType));
+        }
+    }
+
+    /**
+     * Getter for the contraction hierarchy of a traveltype
+     * @param travelType the traveltype
+     * @return the contraction hierarchy, or null if the graph has not been contracted
+     */
+    public ContractionHierarchy getContractionHierarchy(TravelType travelType) {
+        if (contractionHierarchies == null) return null;
+        return contractionHierarchies.get(travelType);
+    }
+
+    /**
+     * Find a path between the two given vertices and setting the path field to the result.
+     * Uses the contraction hierarchies, or A* if the graph has not been contracted
      * @param start Start vertex
      * @param end End vertex
      * @param travelType The selected method of traveling
      * @throws RouteNotPossibleException If the route is not possible
      */
     public void findPath(int start, int end, TravelType travelType) throws RouteNotPossibleException {
-        RoadDijsktra pathFinder = new RoadDijsktra(model, this, start, end, travelType);
+        findPath(start, end, travelType, SearchAlgorithm.CONTRACTION_HIERARCHY);
+    }
+
+    /**
+     * Find a path between the two given vertices and setting the path field to the result
+     * @param start Start vertex
+     * @param end End vertex
+     * @param travelType The selected method of traveling
+     * @param searchAlgorithm The search to be used for finding the path
+     * @throws RouteNotPossibleException If the route is not possible
+     */
+    public void findPath(int start, int end, TravelType travelType, SearchAlgorithm searchAlgorithm) throws RouteNotPossibleException {
+        PathFinder pathFinder = searchAlgorithm.search(model, this, start, end, travelType);
 
         directionsPanel = new DirectionsPanel();
         path = pathFinder.pathTo(end);
@@ -259,16 +539,18 @@ public class RoadGraph implements Serializable {
         if (path == null) throw new RouteNotPossibleException();
 
         //runs through all edges in the path
+        RoadGraph.Edge lastEdge = null;
         for (RoadGraph.Edge e : path) {
             routeLength += e.getLength();
             routeTime += calcTravelTime(travelType, e);
 
-            prevEdge= pathFinder.getPrevEdge(e);
+            prevEdge = lastEdge;
+            lastEdge = e;
             if (prevEdge != null) {
                 Point2D startPoint = getSpecificPoint(prevEdge.from());
                 Point2D centerPoint = getSpecificPoint(e.from());
                 Point2D endPoint = getSpecificPoint(e.to());
-                name = e.getName();
+                name = getName(e);
                 double angle = calcAngle(startPoint, centerPoint, endPoint);
 
                 //checks if it is a roundabout
@@ -279,9 +561,9 @@ public class RoadGraph implements Serializable {
                 } else if (inRoundabout && !e.isRoundabout()) {
                     roundaboutEndPoint = getSpecificPoint(e.to());
                     angle = calcAngle(roundaboutStartPoint, roundaboutCenterPoint, roundaboutEndPoint);
-                    directionsPanel.addDirectionBasedOnAngle(angle, e.getLength(), e.getName(), true);
+                    directionsPanel.addDirectionBasedOnAngle(angle, e.getLength(), name, true);
                     inRoundabout = false;
-                } else if (prevEdge.getName() != null && e.getName() != null && prevEdge.getName().equals(e.getName())) {
+                } else if (e.getNameId() != 0 && prevEdge.getNameId() == e.getNameId()) {
                     roadLength += e.getLength();
                 } else if (prevAngle != 0) {
                     if(path.iterator().hasNext()) {
@@ -364,6 +646,15 @@ public class RoadGraph implements Serializable {
         return intersectionPoints.get(key);
     }
 
+    /**
+     * Getter for the vertex at a given point
+     * @param p the point
+     * @return the id of the vertex, or null if there is no vertex at the point
+     */
+    public Integer getVertex(SimpleOSMNode p) {
+        return reverseIntersectionPoints.get(p);
+    }
+
     public DirectionsPanel getDirectionsPanel() {
         return directionsPanel;
     }
@@ -414,6 +705,112 @@ public class RoadGraph implements Serializable {
         return reverseIntersectionPoints.get(wayPointsSinceLastIntersection.get(wayPointsSinceLastIntersection.size()-1));
     }
 
+    /**
+     * Finds the nearest point on a highway of the graph
+     * @param p the point
+     * @param travelType the traveltype the highway must be legal for, or null for every highway
+     * @return the nearest point with its highway, segment and offset, or null if the graph has no legal highway
+     */
+    public SegmentIndex.Snap nearestSegment(Point2D p, TravelType travelType) {
+        if (segmentIndex == null) {
+            Set<OSMHighway> highways = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int v = 0; v < vertexCount; v++) {
+                for (Edge e : adj.get(v)) {
+                    if (e.getHighway() != null) highways.add(e.getHighway());
+                }
+            }
+            segmentIndex = new SegmentIndex(highways);
+        }
+        return segmentIndex.nearestSegment(p, Double.POSITIVE_INFINITY, travelType);
+    }
+
+    /**
+     * Adds a new vertex at a point found by nearestSegment. The edge of the point is found by walking from the nearest
+     * vertex before the segment in the highway, and it is split at the offset of the point, so the highway is not
+     * searched for the point
+     * @param snap the point on a highway of the graph
+     * @return the id of the vertex at the point, or -1 if the highway has no vertex
+     */
+    public int addVertex(SegmentIndex.Snap snap) {
+        float[] coords = snap.getWay().getCoords();
+        int pointCount = coords.length / 2;
+        double offset = snap.getSegment() + snap.getFraction();
+        SimpleOSMNode p = snap.getFraction() == 0 ? point(coords, snap.getSegment())
+                : snap.getFraction() == 1 ? point(coords, snap.getSegment() + 1)
+                : new SimpleOSMNode(snap.getPoint().getX(), snap.getPoint().getY());
+        if (reverseIntersectionPoints.containsKey(p)) return reverseIntersectionPoints.get(p);
+
+        int first = snap.getSegment();
+        while (first > 0 && !reverseIntersectionPoints.containsKey(point(coords, first))) first--;
+        int last = snap.getSegment() + 1;
+        while (last < pointCount - 1 && !reverseIntersectionPoints.containsKey(point(coords, last))) last++;
+        Integer before = reverseIntersectionPoints.get(point(coords, first));
+        Integer after = reverseIntersectionPoints.get(point(coords, last));
+        //The ends of a highway are only vertices if they are intersections, so there is no edge before the first one
+        if (before == null) return after == null ? -1 : after;
+        if (after == null) return before;
+
+        //Walks the edges from the vertex before, where vertices interposed earlier may have split the edge of the point
+        int vertex = before;
+        double vertexOffset = first;
+        while (vertexOffset < last) {
+            Edge e = nextEdge(vertex, snap.getWay(), coords, (int) vertexOffset);
+            if (e == null || e.to() == vertex) return before;
+            List<SimpleOSMNode> wayPoints = e.getWayPoints();
+            double wayPointOffset = vertexOffset;
+            for (int j = 1; j < wayPoints.size(); j++) {
+                int next = (int) wayPointOffset + 1;
+                wayPointOffset = next < pointCount && wayPoints.get(j).equals(point(coords, next)) ? next
+                        : (int) wayPointOffset + fraction(coords, (int) wayPointOffset, wayPoints.get(j));
+                if (wayPointOffset < offset) continue;
+                if (wayPointOffset == offset && j == wayPoints.size() - 1) return e.to();
+                List<SimpleOSMNode> toVertex = new ArrayList<>(wayPoints.subList(0, j));
+                List<SimpleOSMNode> fromVertex = new ArrayList<>(wayPoints.subList(wayPointOffset == offset ? j + 1 : j, wayPoints.size()));
+                toVertex.add(p);
+                fromVertex.add(0, p);
+                return interposeVertex(p, e.from(), e.to(), toVertex, fromVertex, intersectionPoints.get(e.from()), intersectionPoints.get(e.to()));
+            }
+            vertex = e.to();
+            vertexOffset = wayPointOffset;
+        }
+        return after;
+    }
+
+    /**
+     * Finds the edge along a highway from a vertex, in the direction of the points of the highway
+     * @param v the vertex
+     * @param highway the highway
+     * @param coords the coordinates of the highway
+     * @param index the index of the point in the highway that the vertex is at, or after if it has been interposed
+     * @return the edge, or null if the highway has no edge from the vertex
+     */
+    private Edge nextEdge(int v, KDFriendlyShape highway, float[] coords, int index) {
+        Edge found = null;
+        for (Edge e : adj.get(v)) {
+            List<SimpleOSMNode> wayPoints = e.getWayPoints();
+            if (e.getHighway() != highway || wayPoints == null || wayPoints.size() < 2 || !wayPoints.get(0).equals(intersectionPoints.get(v))) continue;
+            //A highway that passes the vertex twice has two edges from it, where the right one continues at the next point
+            if (index + 1 < coords.length / 2 && wayPoints.get(1).equals(point(coords, index + 1))) return e;
+            found = e;
+        }
+        return found;
+    }
+
+    private static SimpleOSMNode point(float[] coords, int i) {
+        return new SimpleOSMNode(coords[2 * i], coords[2 * i + 1]);
+    }
+
+    /**
+     * @return the offset from the start to the end of a segment of a highway of the projection of the point on it
+     */
+    private static double fraction(float[] coords, int segment, Point2D p) {
+        double x0 = coords[2 * segment], y0 = coords[2 * segment + 1];
+        double dx = coords[2 * segment + 2] - x0, dy = coords[2 * segment + 3] - y0;
+        double lengthSq = dx * dx + dy * dy;
+        if (lengthSq == 0) return 0;
+        return Math.max(0, Math.min(1, ((p.getX() - x0) * dx + (p.getY() - y0) * dy) / lengthSq));
+    }
+
     /**
      * Interposes a vertex between two existing vertices and their edges
      * @param vertexPosition The vertex position to be interposed
@@ -450,11 +847,16 @@ public class RoadGraph implements Serializable {
     private void splitEdgeWithInterposedVertex(int vertex, SimpleOSMNode vertexPosition, int intersectionBefore, int intersectionAfter, List<SimpleOSMNode> wayPointsFromIntersectionBeforeToVertex, List<SimpleOSMNode> wayPointsFromVertexToIntersectionAfter, SimpleOSMNode intersectionPointBefore, SimpleOSMNode intersectionPointAfter) {
         for (RoadGraph.Edge e : adj(intersectionAfter)) {
             if (e.to() == intersectionBefore) {
-                addSingleEdge(new RoadGraph.Edge(vertex, intersectionBefore, (float) EuclideanDistance.dist(model, vertexPosition, intersectionPointBefore), e.getSpeedLimit(), e.getName(), wayPointsFromIntersectionBeforeToVertex, e.getHighway(),
-                        e.isOneWay(), e.isWalkingAllowed(), e.isCyclingAllowed(), e.isDrivingAllowed(), e.isRoundabout()), e.getHighway());
+                addSingleEdge(new RoadGraph.Edge(vertex, intersectionBefore, (float) EuclideanDistance.dist(model, vertexPosition, intersectionPointBefore), e.getSpeedLimit(), e.getNameId(), wayPointsFromIntersectionBeforeToVertex, e.getHighway(),
+                        e.isOneWay(), e.isWalkingAllowed(), e.isCyclingAllowed(), e.isDrivingAllowed(), e.isRoundabout()));
+                if (reverseAdj != null) {
+                    reverseAdj.get(intersectionBefore).remove(e);
+                    reverseAdj.get(vertex).add(e);
+                }
                 e.setTo(vertex);
                 e.setLength((float) EuclideanDistance.dist(model,intersectionPointAfter, vertexPosition));
                 e.setWayPoints(wayPointsFromVertexToIntersectionAfter);
+                if (compactAdj != null && !compactAdj.updateEdge(e)) compactAdj = null;
                 break;
             }
         }
@@ -464,12 +866,24 @@ public class RoadGraph implements Serializable {
         this.model = model;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (strings == null) { //The edges of files saved before the string table hold their names
+            strings = new StringTable();
+            for (Edge e : edges()) {
+                e.nameId = strings.id(e.legacyName);
+                e.legacyName = null;
+            }
+        }
+    }
+
     public static class Edge implements Serializable {
+        private static final long serialVersionUID = 3232411202139931932L;
         private int fromVertex;
         private int toVertex;
         private float length;
         private int speedLimit;
-        private String name;
+        private int nameId;
         private List<SimpleOSMNode> wayPoints;
         private OSMHighway highway;
         private boolean isOneWay;
@@ -477,6 +891,7 @@ public class RoadGraph implements Serializable {
         private boolean cyclingAllowed;
         private boolean drivingAllowed;
         private boolean isRoundabout;
+        private transient String legacyName; //The name of an edge read from a file saved before the string table
 
         /**
          * Initializes the edge with all the relevant information
@@ -484,7 +899,7 @@ public class RoadGraph implements Serializable {
          * @param toVertex The vertex the edge goes to
          * @param length The length of the vertex in kilometers
          * @param speedLimit The speedlimit of the vertex in km/t
-         * @param name The name of the vertex
+         * @param nameId The id of the name of the edge in the string table of the map
          * @param wayPoints The waypoints to be drawn when the edge is to be drawn
          * @param highway The highway which is partially represented by the ede
          * @param isOneWay If the edge is oneway
@@ -493,13 +908,13 @@ public class RoadGraph implements Serializable {
          * @param drivingAllowed If driving is allowed along the edge
          * @param isRoundabout If the edge represents a part of a roundabout
          */
-        public Edge(int fromVertex, int toVertex, float length, int speedLimit, String name, List<SimpleOSMNode> wayPoints, OSMHighway highway, boolean isOneWay, boolean walkingAllowed,
+        public Edge(int fromVertex, int toVertex, float length, int speedLimit, int nameId, List<SimpleOSMNode> wayPoints, OSMHighway highway, boolean isOneWay, boolean walkingAllowed,
                     boolean cyclingAllowed, boolean drivingAllowed, boolean isRoundabout) {
             this.fromVertex = fromVertex;
             this.toVertex = toVertex;
             this.length = length;
             this.speedLimit = speedLimit;
-            this.name = name;
+            this.nameId = nameId;
             this.wayPoints = wayPoints;
             this.highway = highway;
             this.isOneWay = isOneWay;
@@ -539,7 +954,7 @@ public class RoadGraph implements Serializable {
 
         @Override
         public String toString() {
-            return fromVertex +"->"+ toVertex +": "+length+"km @ "+speedLimit+"km/t, "+name+(isOneWay?" is oneway":"")+" - is allowed: "+(cyclingAllowed?"cykler ":"")+(walkingAllowed?"gang ":"")+(drivingAllowed?"biler ":"");
+            return fromVertex +"->"+ toVertex +": "+length+"km @ "+speedLimit+"km/t, name "+nameId+(isOneWay?" is oneway":"")+" - is allowed: "+(cyclingAllowed?"cykler ":"")+(walkingAllowed?"gang ":"")+(drivingAllowed?"biler ":"");
         }
 
         public int getSpeedLimit() {
@@ -550,12 +965,11 @@ public class RoadGraph implements Serializable {
             this.speedLimit = speedLimit;
         }
 
-        public String getName() {
-            return name;
-        }
-
-        public void setName(String name) {
-            this.name = name;
+        /**
+         * @return the id of the name of the edge in the string table of the map, where 0 is no name
+         */
+        public int getNameId() {
+            return nameId;
         }
 
         public boolean isOneWay() {
@@ -591,5 +1005,26 @@ public class RoadGraph implements Serializable {
         public void setHighway(OSMHighway highway) {
             this.highway = highway;
         }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField fields = in.readFields();
+            fromVertex = fields.get("fromVertex", 0);
+            toVertex = fields.get("toVertex", 0);
+            length = fields.get("length", 0f);
+            speedLimit = fields.get("speedLimit", 0);
+            if (fields.getObjectStreamClass().getField("name") != null) {
+                legacyName = (String) fields.get("name", null);
+            } else {
+                nameId = fields.get("nameId", 0);
+            }
+            wayPoints = (List<SimpleOSMNode>) fields.get("wayPoints", null);
+            highway = (OSMHighway) fields.get("highway", null);
+            isOneWay = fields.get("isOneWay", false);
+            walkingAllowed = fields.get("walkingAllowed", false);
+            cyclingAllowed = fields.get("cyclingAllowed", false);
+            drivingAllowed = fields.get("drivingAllowed", false);
+            isRoundabout = fields.get("isRoundabout", false);
+        }
     }
 }
@@ -0,0 +1,38 @@
+package Model.Graph;
+
+import Model.Model;
+
+/**
+ * A enum of the route searches that RoadGraph.findPath can choose between
+ */
+public enum SearchAlgorithm {
+    ASTAR,
+    BIDIRECTIONAL_ASTAR,
+    CONTRACTION_HIERARCHY;
+
+    /**
+     * Creates the path finder belonging to the search algorithm
+     * @param model a reference to the model
+     * @param G the graph to be searched
+     * @param s the start vertex
+     * @param t the end vertex
+     * @param travelType which traveltype to take in consideration
+     * @return the path finder that has searched from s to t
+     */
+    public PathFinder search(Model model, RoadGraph G, int s, int t, TravelType travelType) {
+        switch (this) {
+            case BIDIRECTIONAL_ASTAR:
+                return new BidirectionalRoadDijsktra(model, G, s, t, travelType);
+            case CONTRACTION_HIERARCHY:
+                //Falls back to A* if the map has no hierarchy, or if the path breaks a turn restriction
+                ContractionHierarchy ch = G.getContractionHierarchy(travelType);
+                if (ch != null) {
+                    ContractionHierarchyDijsktra pathFinder = new ContractionHierarchyDijsktra(G, ch, s, t);
+                    if (pathFinder.respectsTurnRestrictions()) return pathFinder;
+                }
+                return new RoadDijsktra(model, G, s, t, travelType);
+            default:
+                return new RoadDijsktra(model, G, s, t, travelType);
+        }
+    }
+}
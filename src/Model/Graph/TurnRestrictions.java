@@ -0,0 +1,146 @@
+package Model.Graph;
+
+import Model.MapFile;
+import Model.OSM.OSMHighway;
+import Model.OSM.OSMRestriction;
+import Model.OSM.SimpleOSMNode;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The turn restrictions of a road graph, indexed by the vertex where the turn is made.
+ * A turn from one edge to the next is made in the vertex the next edge leaves, so only the few restrictions of that
+ * vertex have to be checked, and no objects are created while checking them.
+ */
+public class TurnRestrictions implements Serializable {
+    private static final long serialVersionUID = 6757339532725221389L;
+    private int vertexCount;
+    private int[] offset;                // offset[v] = index of the first restriction in vertex v
+    private OSMHighway[] fromHighway;    // fromHighway[i] = the highway restriction i turns from
+    private OSMHighway[] toHighway;      // toHighway[i] = the highway restriction i turns on to
+    private boolean[] isOnly;            // isOnly[i] = true if restriction i only allows the turn on to toHighway
+
+    /**
+     * Indexes the restrictions by the vertex of their via node. A restriction without a via node applies in every
+     * vertex where the two highways meet
+     * @param G the graph the restrictions apply to
+     * @param restrictions the restriction relations
+     */
+    public TurnRestrictions(RoadGraph G, List<OSMRestriction> restrictions) {
+        vertexCount = G.getVertexCount();
+        List<Integer> vertices = new ArrayList<>();
+        List<OSMRestriction> byVertex = new ArrayList<>();
+        for (OSMRestriction restriction : restrictions) {
+            if (restriction.getVia() != null) {
+                Integer v = G.getVertex(restriction.getVia());
+                if (v != null) {
+                    vertices.add(v);
+                    byVertex.add(restriction);
+                }
+            } else {
+                for (SimpleOSMNode point : restriction.getFrom().getPoints()) {
+                    Integer v = G.getVertex(point);
+                    if (v != null && restriction.getTo().getPoints().contains(point)) {
+                        vertices.add(v);
+                        byVertex.add(restriction);
+                    }
+                }
+            }
+        }
+
+        //Counting sort of the restrictions by vertex
+        offset = new int[vertexCount + 1];
+        for (int v : vertices) offset[v + 1]++;
+        for (int v = 0; v < vertexCount; v++) offset[v + 1] += offset[v];
+        int[] next = new int[vertexCount];
+        System.arraycopy(offset, 0, next, 0, vertexCount);
+        fromHighway = new OSMHighway[vertices.size()];
+        toHighway = new OSMHighway[vertices.size()];
+        isOnly = new boolean[vertices.size()];
+        for (int j = 0; j < vertices.size(); j++) {
+            int i = next[vertices.get(j)]++;
+            fromHighway[i] = byVertex.get(j).getFrom();
+            toHighway[i] = byVertex.get(j).getTo();
+            isOnly[i] = byVertex.get(j).isOnly();
+        }
+    }
+
+    /**
+     * Reads turn restrictions that have been written to a map file
+     * @param in the map file
+     * @throws IOException If the map file could not be read
+     */
+    TurnRestrictions(MapFile.Reader in) throws IOException {
+        vertexCount = in.getInt();
+        offset = in.getInts(vertexCount + 1);
+        int n = offset[vertexCount];
+        int[] fromIds = in.getInts(n);
+        int[] toIds = in.getInts(n);
+        byte[] only = in.getBytes(n);
+        fromHighway = new OSMHighway[n];
+        toHighway = new OSMHighway[n];
+        isOnly = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            fromHighway[i] = (OSMHighway) in.shape(fromIds[i]);
+            toHighway[i] = (OSMHighway) in.shape(toIds[i]);
+            isOnly[i] = only[i] != 0;
+        }
+    }
+
+    /**
+     * Writes the turn restrictions to a map file. A highway that is not in the map file is written as null, which
+     * like the highway itself is never the highway of an edge
+     * @param out the map file
+     * @throws IOException If the map file could not be written
+     */
+    void write(MapFile.Writer out) throws IOException {
+        int n = isOnly.length;
+        int[] fromIds = new int[n];
+        int[] toIds = new int[n];
+        byte[] only = new byte[n];
+        for (int i = 0; i < n; i++) {
+            fromIds[i] = out.shapeId(fromHighway[i]);
+            toIds[i] = out.shapeId(toHighway[i]);
+            only[i] = (byte) (isOnly[i] ? 1 : 0);
+        }
+        out.putInt(vertexCount);
+        out.putInts(offset, 0, vertexCount + 1);
+        out.putInts(fromIds, 0, n);
+        out.putInts(toIds, 0, n);
+        out.putBytes(only, 0, n);
+    }
+
+    /**
+     * Checks if the turn from one edge to the next is allowed.
+     * A no_* restriction forbids the turn from its from highway on to its to highway, and an only_* restriction
+     * forbids every turn from its from highway except the one on to its to highway.
+     * If both highways of a no_* restriction are the same, it only forbids turning back the way you came
+     * @param prevEdge the edge that is turned from, null if there is no previous edge
+     * @param nextEdge the edge to turn on to, null if there is no next edge
+     * @return true if the turn is allowed
+     */
+    public boolean isTurnAllowed(RoadGraph.Edge prevEdge, RoadGraph.Edge nextEdge) {
+        if (prevEdge == null || nextEdge == null) return true;
+        int v = nextEdge.from();
+        if (v >= vertexCount) return true; //Interposed vertices are not intersections, so they have no restrictions
+        for (int i = offset[v]; i < offset[v + 1]; i++) {
+            if (fromHighway[i] != prevEdge.getHighway()) continue;
+            if (isOnly[i]) {
+                if (toHighway[i] != nextEdge.getHighway()) return false;
+            } else if (toHighway[i] == nextEdge.getHighway()) {
+                if (fromHighway[i] != toHighway[i] || nextEdge.to() == prevEdge.from()) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of indexed restrictions
+     */
+    public int size() {
+        return isOnly.length;
+    }
+}
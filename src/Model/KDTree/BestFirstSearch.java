@@ -0,0 +1,141 @@
+package Model.KDTree;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * A best first search for the nearest shapes of a spatial index. Nodes, bounding boxes of shapes and shapes are
+ * visited from a priority queue in the order of their distance to the query point. The distance to a node or a box is
+ * never longer than the distance to the shapes within it, so the shapes are found in the order of their real distance,
+ * and the search stops as soon as k shapes are found or everything left is further away than the max distance.
+ * Nothing further away than the k'th nearest shape added so far is added to the queue, so it stays small
+ */
+abstract class BestFirstSearch {
+    private static final byte SHAPE = 0, BOX = 1, NODE = 2;
+
+    final Point2D queryPoint;
+    private final double maxDistance;
+    private final Predicate<KDFriendlyShape> isShape;
+    private final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+    private final PriorityQueue<Double> nearestAdded = new PriorityQueue<>(Collections.reverseOrder()); //The distances of the k nearest shapes added
+    private int k;
+
+    /**
+     * @param queryPoint the query point
+     * @param maxDistance the longest distance to a shape that is found
+     * @param isShape tests a shape after it is loaded
+     */
+    BestFirstSearch(Point2D queryPoint, double maxDistance, Predicate<KDFriendlyShape> isShape) {
+        this.queryPoint = queryPoint;
+        this.maxDistance = maxDistance;
+        this.isShape = isShape;
+    }
+
+    /**
+     * @param root the root node of the index
+     * @param k the largest number of shapes to find
+     * @return the nearest shapes, nearest first
+     */
+    List<KDFriendlyShape> search(int root, int k) {
+        this.k = k;
+        List<KDFriendlyShape> found = new ArrayList<>();
+        addNode(root, 0);
+        while (found.size() < k && !queue.isEmpty()) {
+            Candidate c = queue.poll();
+            if (c.kind == SHAPE) {
+                found.add(getShape(c.item));
+            } else if (c.kind == BOX) {
+                addShape(c.item, getShape(c.item));
+            } else {
+                expand(c.item);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds the children of a node with addNode, or the shapes of a leaf with addBox or addShape
+     * @param node the node
+     */
+    abstract void expand(int node);
+
+    /**
+     * @param id the index of a shape
+     * @return the shape, which is loaded if it has not been used before
+     */
+    abstract KDFriendlyShape getShape(int id);
+
+    void addNode(int node, double dist) {
+        add(dist, node, NODE);
+    }
+
+    void addBox(int shape, double dist) {
+        add(dist, shape, BOX);
+    }
+
+    /**
+     * Adds a shape that is already loaded with its real distance, if it passes the test
+     * @param id the index of the shape
+     * @param shape the shape
+     */
+    void addShape(int id, KDFriendlyShape shape) {
+        if (!isShape.test(shape)) return;
+        double dist = shape.distTo(queryPoint);
+        if (dist > bound()) return;
+        queue.add(new Candidate(dist, id, SHAPE));
+        nearestAdded.add(dist);
+        if (nearestAdded.size() > k) nearestAdded.poll();
+    }
+
+    /**
+     * @return the distance that nothing further away than is added, which is the max distance or the distance to the
+     * k'th nearest shape added so far
+     */
+    double bound() {
+        return nearestAdded.size() < k ? maxDistance : Math.min(maxDistance, nearestAdded.peek());
+    }
+
+    private void add(double dist, int item, byte kind) {
+        if (dist <= bound()) queue.add(new Candidate(dist, item, kind));
+    }
+
+    /**
+     * @param bounds the min x, min y, max x and max y of boxes after each other
+     * @param i the index of a box
+     * @param p the point
+     * @return the distance from the point to the box, which is 0 if the point is inside it
+     */
+    static double distTo(float[] bounds, int i, Point2D p) {
+        double dx = Math.max(0, Math.max(bounds[4 * i] - p.getX(), p.getX() - bounds[4 * i + 2]));
+        double dy = Math.max(0, Math.max(bounds[4 * i + 1] - p.getY(), p.getY() - bounds[4 * i + 3]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * A node, a bounding box of a shape or a shape in the queue. Candidates at the same distance are ordered with
+     * shapes first, so a shape is found before the boxes and nodes that can not be nearer
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        private final double dist;
+        private final int item;
+        private final byte kind;
+
+        Candidate(double dist, int item, byte kind) {
+            this.dist = dist;
+            this.item = item;
+            this.kind = kind;
+        }
+
+        @Override
+        public int compareTo(Candidate o) {
+            int c = Double.compare(dist, o.dist);
+            if (c == 0) c = Byte.compare(kind, o.kind);
+            if (c == 0) c = Integer.compare(item, o.item);
+            return c;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package Model.KDTree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A store of the points of many shapes in one arena of bytes. The coordinates are quantized to fixed point numbers
+ * relative to the bounds of the map, and a shape is stored as its first point followed by the difference from every
+ * point to the point before it, written as zigzag encoded variable length integers. The points of a way are close to
+ * each other, so most differences take one or two bytes instead of the four bytes of a float. A shape only keeps the
+ * offset of its first byte and its number of points.
+ * The resolution of the fixed point numbers is the precision of a float at the edge of the bounds furthest from 0, so
+ * the coordinates of that magnitude or larger are stored exactly, and a coordinate read from the arena is the same
+ * float when it is stored again
+ */
+public class CoordinateArena implements Serializable {
+    private static final long serialVersionUID = -3028448332900243856L;
+    private static final int CHUNK_BITS = 20;
+    private static final int MAX_CHUNK_SIZE = 1 << CHUNK_BITS; //Offsets are the chunk and the position in it
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+    private static CoordinateArena shared;
+
+    private final double originX, originY;
+    private final double resolutionX, resolutionY;
+    private volatile byte[][] chunks = new byte[0][];
+    private int chunkCount;
+    private int position; //The first free byte of the last chunk
+    private long size;
+
+    /**
+     * Creates an empty arena for the shapes of a map
+     * @param minX the smallest x coordinate of the map
+     * @param minY the smallest y coordinate of the map
+     * @param maxX the largest x coordinate of the map
+     * @param maxY the largest y coordinate of the map
+     */
+    public CoordinateArena(float minX, float minY, float maxX, float maxY) {
+        resolutionX = resolution(minX, maxX);
+        resolutionY = resolution(minY, maxY);
+        originX = Math.floor(Math.min(minX, maxX) / resolutionX) * resolutionX;
+        originY = Math.floor(Math.min(minY, maxY) / resolutionY) * resolutionY;
+    }
+
+    /**
+     * @return the arena of the shapes that are not part of a map, like the coastlines read from files that were
+     * serialized before the points of shapes were kept in an arena
+     */
+    public static synchronized CoordinateArena getShared() {
+        if (shared == null) shared = new CoordinateArena(0, 0, 0, 0);
+        return shared;
+    }
+
+    /**
+     * @return the precision of a float at the bound furthest from 0, and at least the precision of a float at 1
+     */
+    private static double resolution(float min, float max) {
+        return Math.ulp(Math.max(1f, Math.max(Math.abs(min), Math.abs(max))));
+    }
+
+    /**
+     * Stores the points of a shape
+     * @param coords the x and y coordinates of the points after each other
+     * @return the offset of the shape in the arena
+     */
+    public int add(float[] coords) {
+        byte[] encoded = new byte[10 * coords.length]; //A variable length long takes at most 10 bytes
+        int length = 0;
+        long lastX = 0, lastY = 0;
+        for (int i = 0; i < coords.length; i += 2) {
+            long x = Math.round((coords[i] - originX) / resolutionX);
+            long y = Math.round((coords[i + 1] - originY) / resolutionY);
+            length = putVarLong(encoded, length, x - lastX);
+            length = putVarLong(encoded, length, y - lastY);
+            lastX = x;
+            lastY = y;
+        }
+        return append(encoded, length);
+    }
+
+    /**
+     * Copies bytes to the end of the last chunk, or to a new chunk if they do not fit. Shapes are built by several
+     * threads at once while a map is imported or decoded from a map file
+     * @return the offset of the bytes in the arena
+     */
+    private synchronized int append(byte[] bytes, int length) {
+        byte[][] current = chunks;
+        if (chunkCount == 0 || position + length > current[chunkCount - 1].length) {
+            if (chunkCount == 1 << (31 - CHUNK_BITS)) throw new IllegalStateException("The coordinate arena is full");
+            int chunkSize = chunkCount == 0 ? MIN_CHUNK_SIZE : Math.min(MAX_CHUNK_SIZE, 2 * current[chunkCount - 1].length);
+            if (chunkCount == current.length) current = Arrays.copyOf(current, Math.max(8, 2 * current.length));
+            current[chunkCount++] = new byte[Math.max(chunkSize, length)];
+            position = 0;
+            chunks = current;
+        }
+        System.arraycopy(bytes, 0, current[chunkCount - 1], position, length);
+        int offset = (chunkCount - 1) << CHUNK_BITS | position;
+        position += length;
+        size += length;
+        return offset;
+    }
+
+    /**
+     * Reads the points of a shape
+     * @param offset the offset of the shape in the arena
+     * @param npoints the number of points of the shape
+     * @return the x and y coordinates of the points after each other
+     */
+    public float[] get(int offset, int npoints) {
+        float[] coords = new float[npoints << 1];
+        PointReader reader = new PointReader();
+        reader.start(offset);
+        for (int i = 0; i < coords.length; i += 2) {
+            reader.next();
+            coords[i] = reader.getX();
+            coords[i + 1] = reader.getY();
+        }
+        return coords;
+    }
+
+    /**
+     * @return the x coordinate that a point at x is read back as from the arena
+     */
+    public float nearestX(float x) {
+        return (float) (originX + Math.round((x - originX) / resolutionX) * resolutionX);
+    }
+
+    /**
+     * @return the y coordinate that a point at y is read back as from the arena
+     */
+    public float nearestY(float y) {
+        return (float) (originY + Math.round((y - originY) / resolutionY) * resolutionY);
+    }
+
+    /**
+     * @return the number of bytes that the points of the shapes take up
+     */
+    public long getSize() {
+        return size;
+    }
+
+    private static int putVarLong(byte[] bytes, int position, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            bytes[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        bytes[position++] = (byte) zigzag;
+        return position;
+    }
+
+    /**
+     * Reads the points of a shape one at a time without creating an array of them, so a path iterator can decode a
+     * shape while it is drawn. A reader can be started again on another shape of the same arena
+     */
+    public class PointReader {
+        private byte[] chunk;
+        private int position;
+        private long x, y;
+
+        /**
+         * Moves the reader to before the first point of a shape
+         * @param offset the offset of the shape in the arena
+         */
+        public void start(int offset) {
+            chunk = chunks[offset >>> CHUNK_BITS];
+            position = offset & (MAX_CHUNK_SIZE - 1);
+            x = 0;
+            y = 0;
+        }
+
+        /**
+         * Moves the reader to the next point of the shape
+         */
+        public void next() {
+            x += getVarLong();
+            y += getVarLong();
+        }
+
+        public float getX() {
+            return (float) (originX + x * resolutionX);
+        }
+
+        public float getY() {
+            return (float) (originY + y * resolutionY);
+        }
+
+        private long getVarLong() {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = chunk[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+    }
+}
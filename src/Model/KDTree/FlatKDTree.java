@@ -0,0 +1,485 @@
+package Model.KDTree;
+
+import Model.Graph.TravelType;
+import Model.OSM.WayType;
+import Model.StringTable;
+
+import java.awt.geom.Point2D;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A KDTree stored in arrays instead of objects.
+ * The nodes are stored implicitly like a heap, so the children of node i are 2i+1 and 2i+2, and only the split values
+ * and the leaf numbers of the nodes are stored. The shapes of all leaves are stored as indices in one array, where
+ * the shapes of a leaf are grouped by WayType: leaf l has the groups leafGroups[l] to leafGroups[l+1], and group g
+ * has the WayType groupTypes[g] and the shapes stored in entries[groupStarts[g]] to entries[groupStarts[g+1]].
+ * A shape that is in several leaves is only stored once in the ShapeTable, and the entries of the leaves are only the
+ * rows of their shapes, which are loaded the first time an entry of them is visited.
+ * A long shape is in every leaf it crosses, so there are many more entries than shapes. The rows of a group are
+ * sorted and stored as the variable length encoded differences between them, which takes one or two bytes for most
+ * entries instead of four
+ */
+public class FlatKDTree implements SpatialIndex {
+    private static final long serialVersionUID = -1659258704856752441L;
+    private static final WayType[] WAY_TYPES = WayType.values();
+
+    private float[] splits;         // splits[i] = the split value of node i
+    private int[] leaves;           // leaves[i] = the number of the leaf at node i, or -1 if node i is not a leaf
+    private int[] leafGroups;
+    private short[] groupTypes;
+    private int[] groupStarts;      // groupStarts[g] = the first byte of the entries of group g
+    private byte[] entries;
+    private transient int groupBufferSize; // the bytes of the largest group, or 0 until it is needed
+    private ShapeTable shapes;
+
+    /**
+     * Flattens a KDTree of KDNodes and LeafNodes
+     * @param root the root of the KDTree
+     * @param names the string table of the map, which the names of the shapes are stored in
+     */
+    public FlatKDTree(KDTreeNode root, StringTable names) {
+        int capacity = (1 << (depth(root) + 1)) - 1;
+        splits = new float[capacity];
+        leaves = new int[capacity];
+        Arrays.fill(leaves, -1);
+
+        List<KDTreeNode> leafNodes = new ArrayList<>();
+        flatten(root, 0, leafNodes);
+
+        Map<KDFriendlyShape, Integer> ids = new IdentityHashMap<>();
+        List<KDFriendlyShape> shapeList = new ArrayList<>();
+        int groupCount = 0, entryCount = 0;
+        for (KDTreeNode leaf : leafNodes) {
+            for (List<KDFriendlyShape> list : leaf.getShapes().values()) {
+                if (!list.isEmpty()) groupCount++;
+                entryCount += list.size();
+            }
+        }
+        leafGroups = new int[leafNodes.size() + 1];
+        groupTypes = new short[groupCount];
+        groupStarts = new int[groupCount + 1];
+        int[] shapeIds = new int[entryCount];
+        int group = 0, entry = 0;
+        for (int l = 0; l < leafNodes.size(); l++) {
+            for (Map.Entry<WayType, List<KDFriendlyShape>> e : leafNodes.get(l).getShapes().entrySet()) {
+                if (e.getValue().isEmpty()) continue;
+                groupTypes[group] = (short) e.getKey().ordinal();
+                groupStarts[group] = entry;
+                for (KDFriendlyShape shape : e.getValue()) {
+                    Integer id = ids.get(shape);
+                    if (id == null) {
+                        id = shapeList.size();
+                        ids.put(shape, id);
+                        shapeList.add(shape);
+                    }
+                    shapeIds[entry++] = id;
+                }
+                group++;
+            }
+            leafGroups[l + 1] = group;
+        }
+        groupStarts[group] = entry;
+        encodeEntries(shapeIds);
+        shapes = new ShapeTable(shapeList.toArray(new KDFriendlyShape[shapeList.size()]), names);
+    }
+
+    /**
+     * Creates a KDTree from its arrays, where the shapes are loaded the first time they are needed
+     * @param splits the split values of the nodes
+     * @param leaves the leaf numbers of the nodes, -1 for nodes that are not leaves
+     * @param leafGroups the first group of every leaf, followed by the number of groups
+     * @param groupTypes the WayType ordinal of every group
+     * @param groupStarts the first byte of the entries of every group, followed by the number of bytes
+     * @param entries the encoded shape indices of the groups
+     * @param shapeCount the number of shapes
+     * @param names the string table of the map, which the names of the shapes are stored in
+     * @param arena the arena that the points of the loaded shapes are stored in
+     * @param shapeLoader loads a shape from its index
+     */
+    public FlatKDTree(float[] splits, int[] leaves, int[] leafGroups, short[] groupTypes, int[] groupStarts, byte[] entries,
+                      int shapeCount, StringTable names, CoordinateArena arena, IntFunction<KDFriendlyShape> shapeLoader) {
+        this.splits = splits;
+        this.leaves = leaves;
+        this.leafGroups = leafGroups;
+        this.groupTypes = groupTypes;
+        this.groupStarts = groupStarts;
+        this.entries = entries;
+        this.shapes = new ShapeTable(shapeCount, names, arena, shapeLoader);
+    }
+
+    /**
+     * Sorts the shape indices of every group and encodes them as the differences between them
+     * @param shapeIds the shape indices of the entries, where the groups start at groupStarts
+     */
+    private void encodeEntries(int[] shapeIds) {
+        int size = 0;
+        for (int g = 0; g + 1 < groupStarts.length; g++) {
+            Arrays.sort(shapeIds, groupStarts[g], groupStarts[g + 1]);
+            for (int e = groupStarts[g], previous = 0; e < groupStarts[g + 1]; previous = shapeIds[e++]) {
+                size += varIntSize(shapeIds[e] - previous);
+            }
+        }
+        entries = new byte[size];
+        int position = 0;
+        for (int g = 0; g + 1 < groupStarts.length; g++) {
+            int start = groupStarts[g];
+            groupStarts[g] = position;
+            for (int e = start, previous = 0; e < groupStarts[g + 1]; previous = shapeIds[e++]) {
+                position = putVarInt(entries, position, shapeIds[e] - previous);
+            }
+        }
+        groupStarts[groupStarts.length - 1] = position;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int putVarInt(byte[] bytes, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * Finds the number of shapes in a group, which is the number of bytes that end an encoded index
+     */
+    private int groupSize(int g) {
+        int size = 0;
+        for (int e = groupStarts[g]; e < groupStarts[g + 1]; e++) {
+            if (entries[e] >= 0) size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return an array that the shape indices of any group can be decoded into
+     */
+    private int[] newGroupBuffer() {
+        if (groupBufferSize == 0) {
+            for (int g = 0; g + 1 < groupStarts.length; g++) groupBufferSize = Math.max(groupBufferSize, groupStarts[g + 1] - groupStarts[g]);
+        }
+        return new int[groupBufferSize];
+    }
+
+    /**
+     * Decodes the shape indices of a group
+     * @param g the group
+     * @param ids the array to decode the indices into, from newGroupBuffer
+     * @return the number of shapes in the group, whose indices are decoded in increasing order
+     */
+    private int decodeGroup(int g, int[] ids) {
+        int id = 0, count = 0;
+        for (int e = groupStarts[g]; e < groupStarts[g + 1]; ) {
+            int delta = 0, shift = 0;
+            byte b;
+            do {
+                b = entries[e++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            id += delta;
+            ids[count++] = id;
+        }
+        return count;
+    }
+
+    private static int depth(KDTreeNode node) {
+        if (node.getValue() == Float.MIN_VALUE) return 0;
+        return 1 + Math.max(depth(node.getLeft()), depth(node.getRight()));
+    }
+
+    /**
+     * Stores a node at index i and its children below it, and numbers the leaves from left to right
+     */
+    private void flatten(KDTreeNode node, int i, List<KDTreeNode> leafNodes) {
+        if (node.getValue() == Float.MIN_VALUE) {
+            leaves[i] = leafNodes.size();
+            leafNodes.add(node);
+            return;
+        }
+        splits[i] = node.getValue();
+        flatten(node.getLeft(), 2 * i + 1, leafNodes);
+        flatten(node.getRight(), 2 * i + 2, leafNodes);
+    }
+
+    /**
+     * Searches for the shapes of every leaf within the search rectangle
+     * @param searchRect the search rectangle
+     * @return the shapes by WayType, where a shape is included once for every leaf it is in. The lists are fixed-size
+     */
+    @Override
+    public EnumMap<WayType, List<KDFriendlyShape>> search(KDSearchRect searchRect) {
+        int[] leavesInRange = leavesInRange(searchRect);
+        int[] counts = new int[WAY_TYPES.length];
+        for (int l : leavesInRange) {
+            for (int g = leafGroups[l]; g < leafGroups[l + 1]; g++) counts[groupTypes[g]] += groupSize(g);
+        }
+        KDFriendlyShape[][] arrays = new KDFriendlyShape[WAY_TYPES.length][];
+        for (int t = 0; t < arrays.length; t++) arrays[t] = new KDFriendlyShape[counts[t]];
+        Arrays.fill(counts, 0);
+        int[] ids = newGroupBuffer();
+        for (int l : leavesInRange) {
+            for (int g = leafGroups[l]; g < leafGroups[l + 1]; g++) {
+                KDFriendlyShape[] array = arrays[groupTypes[g]];
+                for (int e = 0, size = decodeGroup(g, ids); e < size; e++) array[counts[groupTypes[g]]++] = shapes.getShape(ids[e]);
+            }
+        }
+        EnumMap<WayType, List<KDFriendlyShape>> shapesToReturn = new EnumMap<>(WayType.class);
+        for (WayType type : WAY_TYPES) {
+            shapesToReturn.put(type, Arrays.asList(arrays[type.ordinal()]));
+        }
+        return shapesToReturn;
+    }
+
+    @Override
+    public RangeQuery newRangeQuery() {
+        return new KDRangeQuery(this);
+    }
+
+    /**
+     * Finds the nearest highway with a name
+     * @param queryPoint the query point
+     * @return the nearest highway with a name, or null if there is none
+     */
+    @Override
+    public KDFriendlyShape nearestWayWithName(Point2D queryPoint) {
+        List<KDFriendlyShape> nearest = nearest(queryPoint, 1, Double.POSITIVE_INFINITY,
+                type -> KDTree.isLegalHighway(WAY_TYPES[type], null), shape -> shape.getNameId() != 0);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Finds the k nearest highways that are legal for the traveltype with a best first search of the KDTree
+     * @param queryPoint the query point
+     * @param k the largest number of highways to find
+     * @param maxDistance the longest distance to a highway that is found
+     * @param travelType the traveltype, or null for highways of every traveltype
+     * @return the highways, nearest first
+     */
+    @Override
+    public List<KDFriendlyShape> nearestWays(Point2D queryPoint, int k, double maxDistance, TravelType travelType) {
+        return nearest(queryPoint, k, maxDistance, type -> KDTree.isLegalHighway(WAY_TYPES[type], travelType), shape -> true);
+    }
+
+    /**
+     * Finds the nearest shapes with a best first search, where the children of a node are the regions of its two
+     * child nodes, or the shapes of it if it is a leaf. Every shape is in every leaf that its bounds touch, so the
+     * distance to the region of a node is never longer than the distance to the shapes found below it. The shapes of a
+     * leaf are loaded with its groups, so their real distance is found right away if their bounding box is near enough.
+     * A shape that is in several leaves is only added the first time
+     * @param queryPoint the query point
+     * @param k the largest number of shapes to find
+     * @param maxDistance the longest distance to a shape that is found
+     * @param isType tests the WayType ordinal of a group before its shapes are loaded
+     * @param isShape tests a shape after it is loaded
+     * @return the nearest shapes that pass both tests, nearest first
+     */
+    private List<KDFriendlyShape> nearest(Point2D queryPoint, int k, double maxDistance, IntPredicate isType, Predicate<KDFriendlyShape> isShape) {
+        Set<Integer> added = new HashSet<>();
+        return new BestFirstSearch(queryPoint, maxDistance, isShape) {
+            private final int[] ids = newGroupBuffer();
+
+            @Override
+            void expand(int node) {
+                int l = leaves[node];
+                if (l < 0) {
+                    addNode(2 * node + 1, distToRegion(2 * node + 1, queryPoint));
+                    addNode(2 * node + 2, distToRegion(2 * node + 2, queryPoint));
+                    return;
+                }
+                for (int g = leafGroups[l]; g < leafGroups[l + 1]; g++) {
+                    if (!isType.test(groupTypes[g])) continue;
+                    for (int e = 0, size = decodeGroup(g, ids); e < size; e++) {
+                        int id = ids[e];
+                        KDFriendlyShape shape = shapes.getShape(id);
+                        if (distTo(shapes.getBounds(), id, queryPoint) <= bound() && added.add(id)) addShape(id, shape);
+                    }
+                }
+            }
+
+            @Override
+            KDFriendlyShape getShape(int id) {
+                return FlatKDTree.this.getShape(id);
+            }
+        }.search(0, k);
+    }
+
+    /**
+     * Finds the distance from a point to the region of a node, which is bounded by the split values of its ancestors.
+     * The root splits by x, and the axis alternates with every level
+     * @param node the node
+     * @param p the point
+     * @return the distance, which is 0 if the point is inside the region
+     */
+    private double distToRegion(int node, Point2D p) {
+        double minX = Double.NEGATIVE_INFINITY, minY = Double.NEGATIVE_INFINITY;
+        double maxX = Double.POSITIVE_INFINITY, maxY = Double.POSITIVE_INFINITY;
+        for (int child = node; child > 0; child = (child - 1) / 2) {
+            int parent = (child - 1) / 2;
+            boolean isX = (31 - Integer.numberOfLeadingZeros(parent + 1)) % 2 == 0;
+            boolean isLeft = child == 2 * parent + 1;
+            float split = splits[parent];
+            if (isX && isLeft) maxX = Math.min(maxX, split);
+            else if (isX) minX = Math.max(minX, split);
+            else if (isLeft) maxY = Math.min(maxY, split);
+            else minY = Math.max(minY, split);
+        }
+        double dx = Math.max(0, Math.max(minX - p.getX(), p.getX() - maxX));
+        double dy = Math.max(0, Math.max(minY - p.getY(), p.getY() - maxY));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Finds the leaves within the search rectangle, from left to right
+     * @param searchRect the search rectangle
+     * @return the numbers of the leaves
+     */
+    private int[] leavesInRange(KDSearchRect searchRect) {
+        KDRangeQuery query = new KDRangeQuery(this);
+        query.findLeaves(searchRect);
+        return Arrays.copyOf(query.leaves, query.leafCount);
+    }
+
+    @Override
+    public KDFriendlyShape getShape(int id) {
+        return shapes.getShape(id);
+    }
+
+    @Override
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+    @Override
+    public ShapeTable getShapeTable() {
+        return shapes;
+    }
+
+    public float[] getSplits() {
+        return splits;
+    }
+
+    public int[] getLeaves() {
+        return leaves;
+    }
+
+    public int[] getLeafGroups() {
+        return leafGroups;
+    }
+
+    public short[] getGroupTypes() {
+        return groupTypes;
+    }
+
+    public int[] getGroupStarts() {
+        return groupStarts;
+    }
+
+    public byte[] getEntries() {
+        return entries;
+    }
+
+    /**
+     * A search finds the leaves within the search rectangle and sorts their groups by WayType. The shapes of a WayType
+     * are then visited in the order of the leaves, where a shape is skipped if its bounding box is outside the search
+     * rectangle, or if it has already been visited in the same pass because it is in several leaves. A shape is
+     * marked as visited by stamping its index with the number of the pass, so the marks never have to be cleared
+     */
+    private static class KDRangeQuery implements RangeQuery {
+        private final FlatKDTree tree;
+        private int[] leaves = new int[64];
+        private int leafCount;
+        private int[] stack = new int[64];
+        private final int[] typeStarts = new int[WAY_TYPES.length + 1]; // the groups of type t are typeStarts[t] to typeStarts[t+1]
+        private final int[] typeNext = new int[WAY_TYPES.length];
+        private int[] groups = new int[256];
+        private final int[] ids;
+        private int[] stamps;
+        private int pass;
+        private double minX, minY, maxX, maxY;
+
+        KDRangeQuery(FlatKDTree tree) {
+            this.tree = tree;
+            this.ids = tree.newGroupBuffer();
+        }
+
+        @Override
+        public void search(KDSearchRect searchRect) {
+            minX = searchRect.getBotLeft().getX();
+            minY = searchRect.getBotLeft().getY();
+            maxX = searchRect.getTopRight().getX();
+            maxY = searchRect.getTopRight().getY();
+            findLeaves(searchRect);
+
+            //Sort the groups of the leaves by WayType, keeping the order of the leaves
+            Arrays.fill(typeStarts, 0);
+            for (int k = 0; k < leafCount; k++) {
+                for (int g = tree.leafGroups[leaves[k]]; g < tree.leafGroups[leaves[k] + 1]; g++) typeStarts[tree.groupTypes[g] + 1]++;
+            }
+            for (int t = 0; t < WAY_TYPES.length; t++) {
+                typeStarts[t + 1] += typeStarts[t];
+                typeNext[t] = typeStarts[t];
+            }
+            if (groups.length < typeStarts[WAY_TYPES.length]) groups = new int[Math.max(typeStarts[WAY_TYPES.length], 2 * groups.length)];
+            for (int k = 0; k < leafCount; k++) {
+                for (int g = tree.leafGroups[leaves[k]]; g < tree.leafGroups[leaves[k] + 1]; g++) groups[typeNext[tree.groupTypes[g]]++] = g;
+            }
+        }
+
+        @Override
+        public void forEach(WayType type, IntConsumer visitor) {
+            ShapeTable shapes = tree.shapes;
+            if (stamps == null || stamps.length != shapes.size()) stamps = new int[shapes.size()];
+            if (++pass == 0) { //The pass number has wrapped around, so old stamps could be mistaken for this pass
+                Arrays.fill(stamps, 0);
+                pass = 1;
+            }
+            for (int k = typeStarts[type.ordinal()]; k < typeStarts[type.ordinal() + 1]; k++) {
+                int g = groups[k];
+                for (int e = 0, size = tree.decodeGroup(g, ids); e < size; e++) {
+                    int id = ids[e];
+                    if (stamps[id] == pass) continue;
+                    stamps[id] = pass;
+                    shapes.load(id);
+                    float[] bounds = shapes.getBounds();
+                    if (bounds[4 * id] > maxX || bounds[4 * id + 1] > maxY || bounds[4 * id + 2] < minX || bounds[4 * id + 3] < minY) continue;
+                    visitor.accept(id);
+                }
+            }
+        }
+
+        /**
+         * Finds the leaves within the search rectangle, from left to right
+         */
+        private void findLeaves(KDSearchRect searchRect) {
+            leafCount = 0;
+            int size = 0;
+            stack[size++] = 0;
+            while (size > 0) {
+                int i = stack[--size];
+                if (tree.leaves[i] >= 0) {
+                    if (leafCount == leaves.length) leaves = Arrays.copyOf(leaves, leafCount * 2);
+                    leaves[leafCount++] = tree.leaves[i];
+                    continue;
+                }
+                boolean isX = (31 - Integer.numberOfLeadingZeros(i + 1)) % 2 == 0; //The depth of node i is even
+                double min = isX ? searchRect.getBotLeft().getX() : searchRect.getBotLeft().getY();
+                double max = isX ? searchRect.getTopRight().getX() : searchRect.getTopRight().getY();
+                if (size + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                //The right child is pushed first, so the left child is visited first
+                if (tree.splits[i] < max) stack[size++] = 2 * i + 2;
+                if (tree.splits[i] > min) stack[size++] = 2 * i + 1;
+            }
+        }
+    }
+}
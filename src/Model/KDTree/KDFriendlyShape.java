@@ -25,5 +25,8 @@ public interface KDFriendlyShape extends Shape {
 
     List<SimpleOSMNode> getPoints();
 
-    String getName();
+    /**
+     * @return the id of the name of the shape in the string table of its map, where 0 is no name
+     */
+    int getNameId();
 }
@@ -10,6 +10,7 @@ import java.util.List;
  * node class for KDTree with left and right children and a splitValue
  */
 public class KDNode implements KDTreeNode, Serializable {
+    private static final long serialVersionUID = 7419866975724772178L;
     private KDTreeNode left, right;
     private float value;
 
@@ -0,0 +1,183 @@
+package Model.KDTree;
+
+import java.awt.geom.Rectangle2D;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task that builds a KDTree, where the left and right subtree of every node are built as tasks of their own, so
+ * the tree is built in parallel by a ForkJoinPool.
+ * The centers and bounds of the shapes are read once into arrays, so the median is found on primitives, and every
+ * task places the shapes of its node in its children while it builds them, instead of descending the finished tree
+ * once for every shape
+ */
+class KDTreeBuilder extends RecursiveTask<KDTreeNode> {
+    private static final long serialVersionUID = 313057220486818952L;
+    //Nodes with fewer shapes than this build both subtrees in the same task, as forking costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private final KDFriendlyShape[] shapes;
+    private final double[] centers; //The x and y center of every shape
+    private final double[] bounds; //The minimum x and y and the maximum x and y of every shape
+    private final int[] order; //The shapes ordered so the shapes of a node come before the shapes of its right sibling
+    private final AtomicInteger size;
+    private final int lo, hi;
+    private final boolean sortX;
+    private final int[] placed; //The shapes whose bounds are in the area of the node
+    private final int placedCount;
+
+    private KDTreeBuilder(KDTreeBuilder parent, int lo, int hi, int[] placed, int placedCount) {
+        this.shapes = parent.shapes;
+        this.centers = parent.centers;
+        this.bounds = parent.bounds;
+        this.order = parent.order;
+        this.size = parent.size;
+        this.lo = lo;
+        this.hi = hi;
+        this.sortX = !parent.sortX;
+        this.placed = placed;
+        this.placedCount = placedCount;
+    }
+
+    private KDTreeBuilder(KDFriendlyShape[] shapes, AtomicInteger size) {
+        int n = shapes.length;
+        this.shapes = shapes;
+        this.size = size;
+        centers = new double[2 * n];
+        bounds = new double[4 * n];
+        order = new int[n];
+        for (int i = 0; i < n; i++) {
+            centers[2 * i] = shapes[i].getCenter(true);
+            centers[2 * i + 1] = shapes[i].getCenter(false);
+            Rectangle2D b = shapes[i].getBounds2D();
+            bounds[4 * i] = b.getMinX();
+            bounds[4 * i + 1] = b.getMinY();
+            bounds[4 * i + 2] = b.getMaxX();
+            bounds[4 * i + 3] = b.getMaxY();
+            order[i] = i;
+        }
+        lo = 0;
+        hi = n - 1;
+        sortX = true;
+        placed = order.clone();
+        placedCount = n;
+    }
+
+    /**
+     * Builds a KDTree in the common ForkJoinPool
+     * @param shapes the shapes of the tree, which are not reordered
+     * @param size is set to the number of nodes of the tree
+     * @return the root of the tree
+     */
+    static KDTreeNode build(KDFriendlyShape[] shapes, AtomicInteger size) {
+        return ForkJoinPool.commonPool().invoke(new KDTreeBuilder(shapes, size));
+    }
+
+    @Override
+    protected KDTreeNode compute() {
+        size.incrementAndGet();
+        if (hi - lo <= KDTree.getLeafArraySize()) {
+            LeafNode leaf = new LeafNode();
+            for (int i = 0; i < placedCount; i++) leaf.add(shapes[placed[i]]);
+            return leaf;
+        }
+        int axis = sortX ? 0 : 1;
+        int medianIndex = lo + (hi - lo) / 2;
+        select(medianIndex, axis);
+        float splitValue = (float) centers[2 * order[medianIndex] + axis];
+
+        //Shapes that cross the split are placed in both children
+        int leftCount = 0, rightCount = 0;
+        for (int i = 0; i < placedCount; i++) {
+            int id = placed[i];
+            if (intersectsSplit(id, splitValue, axis)) {
+                leftCount++;
+                rightCount++;
+            } else if (bounds[4 * id + axis] < splitValue) {
+                leftCount++;
+            } else {
+                rightCount++;
+            }
+        }
+        int[] left = new int[leftCount], right = new int[rightCount];
+        leftCount = 0;
+        rightCount = 0;
+        for (int i = 0; i < placedCount; i++) {
+            int id = placed[i];
+            if (intersectsSplit(id, splitValue, axis)) {
+                left[leftCount++] = id;
+                right[rightCount++] = id;
+            } else if (bounds[4 * id + axis] < splitValue) {
+                left[leftCount++] = id;
+            } else {
+                right[rightCount++] = id;
+            }
+        }
+
+        KDTreeBuilder leftTask = new KDTreeBuilder(this, lo, medianIndex, left, leftCount);
+        KDTreeBuilder rightTask = new KDTreeBuilder(this, medianIndex + 1, hi, right, rightCount);
+        KDTreeNode leftNode, rightNode;
+        if (hi - lo > PARALLEL_THRESHOLD) {
+            leftTask.fork();
+            rightNode = rightTask.compute();
+            leftNode = leftTask.join();
+        } else {
+            leftNode = leftTask.compute();
+            rightNode = rightTask.compute();
+        }
+        return new KDNode(leftNode, rightNode, splitValue);
+    }
+
+    /**
+     * Checks if the bounds of a shape touch the split line, so the shape is in both children. Bounds without an area
+     * count too, as a horizontal way that crosses a vertical split has points on both sides of it
+     */
+    private boolean intersectsSplit(int id, float splitValue, int axis) {
+        return bounds[4 * id + axis] <= splitValue && splitValue <= bounds[4 * id + 2 + axis];
+    }
+
+    /**
+     * Reorders the shapes of the node, so the shape at index k has the k'th smallest center on the axis, the shapes
+     * before it have smaller or equal centers, and the shapes after it larger or equal centers.
+     * The partitions are three way with a median of three pivot, so equal and sorted centers stay linear
+     */
+    private void select(int k, int axis) {
+        int left = lo, right = hi;
+        while (left < right) {
+            double pivot = medianOfThree(center(left, axis), center(left + (right - left) / 2, axis), center(right, axis));
+            int lt = left, i = left, gt = right;
+            while (i <= gt) {
+                double c = center(i, axis);
+                if (c < pivot) {
+                    swap(lt++, i++);
+                } else if (c > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                right = lt - 1;
+            } else if (k > gt) {
+                left = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double center(int index, int axis) {
+        return centers[2 * order[index] + axis];
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void swap(int i, int j) {
+        int temp = order[i];
+        order[i] = order[j];
+        order[j] = temp;
+    }
+}
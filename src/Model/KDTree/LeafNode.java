@@ -10,6 +10,7 @@ import java.util.*;
  * Node class for a leaf node in the KDTree which contains an array of shapes to be drawn
  */
 public class LeafNode implements KDTreeNode, Serializable {
+    private static final long serialVersionUID = 709853408638264179L;
     private EnumMap<WayType, List<KDFriendlyShape>> shapes;
 
     public LeafNode() {
@@ -0,0 +1,120 @@
+package Model.KDTree;
+
+import Model.Graph.TravelType;
+import Model.OSM.WayType;
+
+import java.awt.geom.Point2D;
+import java.util.*;
+
+/**
+ * A spatial index with an index of its own for every band of zoom levels that show the same WayTypes. The index of a
+ * band only has the shapes of the WayTypes shown in the band, and their points are simplified to the size of a pixel
+ * in the band, so zoomed out frames visit a small part of the shapes. Zoom level 1 and every search other than drawing
+ * use the full index
+ */
+public class LevelOfDetailIndex implements SpatialIndex {
+    private static final long serialVersionUID = -8140013364315003996L;
+    private SpatialIndex base;
+    private SpatialIndex[] levels;
+
+    /**
+     * Creates the index of every band of zoom levels from the shapes of the full index. The bands are R-trees, as they
+     * are only drawn from and are faster to build than KD-trees
+     * @param base the full index
+     * @param maximumZoomLevels the highest zoom level every WayType is shown at, where WayTypes without a zoom level
+     *                          are only in the full index
+     * @param pixelSizes the size of a pixel at the closest zoom of every zoom level, where index 0 is zoom level 1
+     */
+    public LevelOfDetailIndex(SpatialIndex base, EnumMap<WayType, Integer> maximumZoomLevels, double[] pixelSizes) {
+        this.base = base;
+        levels = new SpatialIndex[pixelSizes.length];
+        levels[0] = base;
+        List<KDFriendlyShape> shapes = new ArrayList<>();
+        for (int i = 0; i < base.getShapeCount(); i++) shapes.add(base.getShape(i));
+        EnumSet<WayType> bandTypes = null;
+        for (int zoomLevel = 2; zoomLevel <= levels.length; zoomLevel++) {
+            EnumSet<WayType> types = EnumSet.noneOf(WayType.class);
+            for (Map.Entry<WayType, Integer> entry : maximumZoomLevels.entrySet()) {
+                if (entry.getValue() >= zoomLevel) types.add(entry.getKey());
+            }
+            if (types.equals(bandTypes)) {
+                levels[zoomLevel - 1] = levels[zoomLevel - 2];
+                continue;
+            }
+            //The shapes of a band are simplified from the band before it, which has fewer points to look at
+            List<KDFriendlyShape> bandShapes = new ArrayList<>();
+            for (KDFriendlyShape shape : shapes) {
+                if (!types.contains(shape.getWayType())) continue;
+                if (shape instanceof PolygonApprox) {
+                    bandShapes.add(((PolygonApprox) shape).simplify(pixelSizes[zoomLevel - 1]));
+                } else {
+                    bandShapes.add(shape);
+                }
+            }
+            levels[zoomLevel - 1] = SpatialIndexType.R_TREE.build(bandShapes.toArray(new KDFriendlyShape[]{}), base.getShapeTable().getNames());
+            bandTypes = types;
+            shapes = bandShapes;
+        }
+    }
+
+    /**
+     * Creates the index from indexes that are already built, as they are stored in a map file
+     * @param base the full index
+     * @param levels the index of every zoom level, where index 0 is zoom level 1
+     */
+    public LevelOfDetailIndex(SpatialIndex base, SpatialIndex[] levels) {
+        this.base = base;
+        this.levels = levels;
+    }
+
+    @Override
+    public SpatialIndex getLevelOfDetail(int zoomLevel) {
+        return levels[Math.max(1, Math.min(zoomLevel, levels.length)) - 1];
+    }
+
+    public SpatialIndex getBase() {
+        return base;
+    }
+
+    /**
+     * @return the index of every zoom level, where index 0 is zoom level 1 and zoom levels of the same band share it
+     */
+    public SpatialIndex[] getLevels() {
+        return levels;
+    }
+
+    @Override
+    public EnumMap<WayType, List<KDFriendlyShape>> search(KDSearchRect searchRect) {
+        return base.search(searchRect);
+    }
+
+    @Override
+    public RangeQuery newRangeQuery() {
+        return base.newRangeQuery();
+    }
+
+    @Override
+    public List<KDFriendlyShape> nearestWays(Point2D queryPoint, int k, double maxDistance, TravelType travelType) {
+        return base.nearestWays(queryPoint, k, maxDistance, travelType);
+    }
+
+    @Override
+    public KDFriendlyShape nearestWayWithName(Point2D queryPoint) {
+        return base.nearestWayWithName(queryPoint);
+    }
+
+    @Override
+    public int getShapeCount() {
+        return base.getShapeCount();
+    }
+
+    @Override
+    public KDFriendlyShape getShape(int id) {
+        return base.getShape(id);
+    }
+
+    @Override
+    public ShapeTable getShapeTable() {
+        return base.getShapeTable();
+    }
+}
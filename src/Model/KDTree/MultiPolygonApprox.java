@@ -1,16 +1,16 @@
 package Model.KDTree;
 
-import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.util.*;
 
 public class MultiPolygonApprox extends PolygonApprox {
+	private static final long serialVersionUID = 4698371495151946131L;
 	byte[] pointtypes;
 	Map<Point2D, List<Point2D>> ways;
 	
-	public MultiPolygonApprox(List<? extends List<? extends Point2D>> rel) {
+	public MultiPolygonApprox(CoordinateArena arena, List<? extends List<? extends Point2D>> rel) {
 		ways = new HashMap<>();
 		List<List<Point2D>> mergedRel = new ArrayList<>();
 		mergeWays(rel);
@@ -21,7 +21,7 @@ public class MultiPolygonApprox extends PolygonApprox {
 		});
 		int npoints = 0;
 		for (List<?> l : mergedRel) npoints += l.size();
-		coords = new float[npoints << 1];
+		float[] coords = new float[npoints << 1];
 		pointtypes = new byte[npoints];
 		Arrays.fill(pointtypes, (byte) PathIterator.SEG_LINETO);
 		int coord = 0;
@@ -34,29 +34,74 @@ public class MultiPolygonApprox extends PolygonApprox {
 				coords[coord++] = (float) p.getY();
 			}
 		}
-		init();
+		ways = null; //The merged ways are only needed while they are merged
+		store(arena, coords);
 	}
 	
+	/**
+	 * Creates a multipolygon from its coordinates and the types of its points, as they are stored in a map file
+	 * @param arena the arena that the points are stored in
+	 * @param coords the x and y coordinates of the points after each other
+	 * @param pointtypes the PathIterator segment type of every point
+	 */
+	public MultiPolygonApprox(CoordinateArena arena, float[] coords, byte[] pointtypes) {
+		super(arena, coords);
+		this.pointtypes = pointtypes;
+	}
+
+	@Override
+	public byte[] getPointTypes() {
+		return pointtypes;
+	}
+
+	@Override
+	protected PolygonApprox copy(float[] coords, boolean[] kept) {
+		return new MultiPolygonApprox(arena, coords, keptPointTypes(kept));
+	}
+
+	/**
+	 * @param kept whether every point of this shape is kept
+	 * @return the types of the kept points
+	 */
+	protected byte[] keptPointTypes(boolean[] kept) {
+		int npoints = 0;
+		for (boolean k : kept) if (k) npoints++;
+		byte[] keptTypes = new byte[npoints];
+		int point = 0;
+		for (int i = 0 ; i < kept.length ; i++) {
+			if (kept[i]) keptTypes[point++] = pointtypes[i];
+		}
+		return keptTypes;
+	}
+
+	@Override
+	boolean isPathEnd(int point) {
+		return point == pointtypes.length - 1 || pointtypes[point + 1] == PathIterator.SEG_MOVETO;
+	}
+
+	@Override
+	boolean isLineTo(int point) {
+		return pointtypes[point] == PathIterator.SEG_LINETO;
+	}
+
 	public double distTo(Point2D p) {
 		double dist = Double.MAX_VALUE;
 		double px = p.getX();
 		double py = p.getY();
-		for (int i = 2 ; i < coords.length ; i += 2) {
-			if (pointtypes[i/2] != PathIterator.SEG_MOVETO) {
-				dist = Math.min(dist, Line2D.ptSegDist(coords[i - 2], coords[i - 1], coords[i], coords[i + 1], px, py));
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		reader.next();
+		for (int i = 1 ; i < npoints ; i++) {
+			float fx = reader.getX();
+			float fy = reader.getY();
+			reader.next();
+			if (pointtypes[i] != PathIterator.SEG_MOVETO) {
+				dist = Math.min(dist, Line2D.ptSegDist(fx, fy, reader.getX(), reader.getY(), px, py));
 			}
 		}
 		return dist;
 	}
 
-	public PathIterator getPathIterator(AffineTransform at, float pixelsq) {
-		return new MultiPolygonApproxIterator(at, pixelsq);
-	}
-	
-	public PathIterator getPathIterator(AffineTransform at, double flatness) {
-		return new MultiPolygonApproxIterator(at, (float) (flatness * flatness));
-	}
-
 	private void mergeWays(List<? extends List<? extends Point2D>> list) {
 		for (List<? extends Point2D> way : list) {
 			if (way != null) {
@@ -83,34 +128,4 @@ public class MultiPolygonApprox extends PolygonApprox {
 			}
 		}
 	}
-	
-	class MultiPolygonApproxIterator extends PolygonApproxIterator {
-		public MultiPolygonApproxIterator(AffineTransform _at, float _pixelsq) {
-			super(_at, _pixelsq);
-		}
-
-		public void next() {
-			float fx = coords[index];
-			float fy = coords[index+1];
-			index += 2;
-			while (index < coords.length - 2 && pointtypes[(index >> 1) + 1] == PathIterator.SEG_LINETO &&
-				distSq(fx, fy, coords[index], coords[index+1]) < approx) index += 2;
-		}
-
-		public int currentSegment(float[] c) {
-			if (isDone()) {
-	            throw new NoSuchElementException("poly approx iterator out of bounds");
-	        }
-	        c[0] = coords[index];
-	        c[1] = coords[index+1];
-	        if (at != null) {
-	            at.transform(c, 0, c, 0, 1);
-	        }
-	        return pointtypes[index >> 1];
-		}
-
-		public int currentSegment(double[] coords) {
-			throw new UnsupportedOperationException("Unexpected call to PolygonApprox.contains(Rectangle2D)");
-		}
-	}
 }
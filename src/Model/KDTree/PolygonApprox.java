@@ -2,48 +2,103 @@ package Model.KDTree;
 
 import Model.OSM.SimpleOSMNode;
 import Model.OSM.WayType;
+import Model.StringTable;
 
 import java.awt.Shape;
 import java.awt.Rectangle;
 import java.awt.geom.*;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 
 public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
-	float[] coords;
+	private static final long serialVersionUID = -1742139832701158860L;
+	CoordinateArena arena;
+	int offset, npoints; //The points are stored in the arena from the offset
 	float bx, by, bw, bh;
-	static double PIXEL = 1;
 	private WayType type;
-	protected String name;
+	protected int nameId; //The id of the name in the string table of the map
+	private transient String legacyName; //The name of a shape read from a file saved before the string table
 
 	protected PolygonApprox() {}
+
+	/**
+	 * Creates a polygon from its coordinates, as they are stored in a map file
+	 * @param arena the arena that the points are stored in
+	 * @param coords the x and y coordinates of the points after each other
+	 */
+	public PolygonApprox(CoordinateArena arena, float[] coords) {
+		store(arena, coords);
+	}
 	
-	public PolygonApprox(List<? extends Point2D> points) {
+	public PolygonApprox(CoordinateArena arena, List<? extends Point2D> points) {
 		int npoints = points.size();
-		coords = new float[npoints << 1];
+		float[] coords = new float[npoints << 1];
 		for (int i = 0 ; i < npoints ; i++) {
 			Point2D p = points.get(i);
 			coords[(i << 1)] = (float)p.getX();
 			coords[(i << 1)+1] = (float)p.getY();
 		}
+		store(arena, coords);
+	}
+
+	/**
+	 * Stores the points in the arena and finds the bounds of the points read back from it
+	 * @param arena the arena that the points are stored in
+	 * @param coords the x and y coordinates of the points after each other
+	 */
+	protected void store(CoordinateArena arena, float[] coords) {
+		this.arena = arena;
+		offset = arena.add(coords);
+		npoints = coords.length >> 1;
 		init();
 	}
 	
 	protected void init() {
-		bx = coords[0];
-		by = coords[1];
-		bw = coords[0];
-		bh = coords[1];
-		for (int i = 2 ; i < coords.length ; i += 2) {
-			bx = Math.min(bx, coords[i]);
-			bw = Math.max(bw, coords[i]);
-			by = Math.min(by, coords[i+1]);
-			bh = Math.max(bh, coords[i+1]);
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		reader.next();
+		bx = reader.getX();
+		by = reader.getY();
+		bw = bx;
+		bh = by;
+		for (int i = 1 ; i < npoints ; i++) {
+			reader.next();
+			bx = Math.min(bx, reader.getX());
+			bw = Math.max(bw, reader.getX());
+			by = Math.min(by, reader.getY());
+			bh = Math.max(bh, reader.getY());
 		}
 		bw -= bx;
 		bh -= by;
 	}
 
+	/**
+	 * Reads a shape, where the coordinates of shapes serialized before the points were kept in an arena, like the
+	 * coastlines of the resources, are stored in the shared arena
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		type = (WayType) fields.get("type", null);
+		if (fields.getObjectStreamClass().getField("name") != null) {
+			legacyName = (String) fields.get("name", null);
+		} else {
+			nameId = fields.get("nameId", 0);
+		}
+		arena = (CoordinateArena) fields.get("arena", null);
+		if (arena == null) {
+			store(CoordinateArena.getShared(), (float[]) fields.get("coords", null));
+		} else {
+			offset = fields.get("offset", 0);
+			npoints = fields.get("npoints", 0);
+			bx = fields.get("bx", 0f);
+			by = fields.get("by", 0f);
+			bw = fields.get("bw", 0f);
+			bh = fields.get("bh", 0f);
+		}
+	}
+
 	/**
 	 * This method calculates the shortest distance the point p
 	 * @param p is the point which is the distance is compared to
@@ -53,8 +108,14 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 		double dist = Double.MAX_VALUE;
 		double px = p.getX();
 		double py = p.getY();
-		for (int i = 2 ; i < coords.length ; i += 2) {
-			dist = Math.min(dist, Line2D.ptSegDist(coords[i-2], coords[i-1], coords[i], coords[i+1], px, py));
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		reader.next();
+		for (int i = 1 ; i < npoints ; i++) {
+			float fx = reader.getX();
+			float fy = reader.getY();
+			reader.next();
+			dist = Math.min(dist, Line2D.ptSegDist(fx, fy, reader.getX(), reader.getY(), px, py));
 		}
 		return dist;
 	}
@@ -66,14 +127,18 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 	 * @return it returns the point on this object nearest to the point p
 	 */
 	public Point2D nearestPoint(Point2D p) {
-		Point2D pointToReturn = new Point2D.Double(coords[0], coords[1]);
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		reader.next();
+		Point2D pointToReturn = new Point2D.Double(reader.getX(), reader.getY());
 		double dist = Double.MAX_VALUE;
-		for (int i = 2 ; i < coords.length ; i += 2) {
-			double tempDist = Math.min(dist, p.distance(coords[i-2], coords[i-1]));
+		for (int i = 1 ; i < npoints ; i++) {
+			double tempDist = Math.min(dist, p.distance(reader.getX(), reader.getY()));
 			if (tempDist < dist) {
 				dist = tempDist;
-				pointToReturn = new Point2D.Float(coords[i-2], coords[i-1]);
+				pointToReturn = new Point2D.Float(reader.getX(), reader.getY());
 			}
+			reader.next();
 		}
 		return pointToReturn;
 	}
@@ -107,16 +172,110 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 	}
 
 	public PathIterator getPathIterator(AffineTransform at) {
-		float pixelsq = (float) (PIXEL/Math.abs(at.getDeterminant()));
-		return getPathIterator(at, pixelsq);
+		return new PolygonApproxIterator(arena, offset, npoints, getPointTypes(), at);
 	}
 
-	public PathIterator getPathIterator(AffineTransform at, float pixelsq) {
-		return new PolygonApproxIterator(at, pixelsq);
-	}
-	
 	public PathIterator getPathIterator(AffineTransform at, double flatness) {
-		return new PolygonApproxIterator(at, (float) (flatness * flatness));
+		return getPathIterator(at);
+	}
+
+	/**
+	 * Creates a copy of this shape simplified with the Douglas-Peucker algorithm, which keeps the point of a line
+	 * furthest from the segment between its ends when it is further away than the tolerance, and simplifies the two
+	 * halves the same way. The points that begin and end a line are always kept
+	 * @param tolerance the distance in model coordinates that the simplified lines may be from the points left out
+	 * @return the copy, or this shape if every point is kept
+	 */
+	public PolygonApprox simplify(double tolerance) {
+		float[] coords = getCoords();
+		boolean[] kept = new boolean[npoints];
+		int start = 0;
+		for (int point = 0 ; point < npoints ; point++) {
+			if (!isLineTo(point)) start = point;
+			if (isPathEnd(point)) {
+				kept[start] = true;
+				kept[point] = true;
+				keepFurthestPoints(coords, start, point, tolerance, kept);
+			}
+		}
+		int keptPoints = 0;
+		for (boolean k : kept) if (k) keptPoints++;
+		if (keptPoints == npoints) return this;
+		float[] simplified = new float[keptPoints << 1];
+		int coord = 0;
+		for (int point = 0 ; point < npoints ; point++) {
+			if (kept[point]) {
+				simplified[coord++] = coords[point << 1];
+				simplified[coord++] = coords[(point << 1)+1];
+			}
+		}
+		PolygonApprox copy = copy(simplified, kept);
+		copy.setWayType(type);
+		copy.setNameId(nameId);
+		return copy;
+	}
+
+	/**
+	 * Marks the points between the ends of a line that the Douglas-Peucker algorithm keeps. The parts of the line left
+	 * to simplify are kept on a stack, as lines of coastlines have too many points to recurse on
+	 * @param coords the x and y coordinates of the points of this shape after each other
+	 * @param first the index of the first point of the line
+	 * @param last the index of the last point of the line
+	 * @param tolerance the distance in model coordinates that the simplified line may be from the points left out
+	 * @param kept whether every point of this shape is kept
+	 */
+	private static void keepFurthestPoints(float[] coords, int first, int last, double tolerance, boolean[] kept) {
+		int[] stack = new int[64];
+		int size = 0;
+		stack[size++] = first;
+		stack[size++] = last;
+		while (size > 0) {
+			int to = stack[--size];
+			int from = stack[--size];
+			double furthest = tolerance;
+			int split = -1;
+			for (int point = from + 1 ; point < to ; point++) {
+				double dist = Line2D.ptSegDist(coords[from << 1], coords[(from << 1)+1], coords[to << 1], coords[(to << 1)+1],
+						coords[point << 1], coords[(point << 1)+1]);
+				if (dist > furthest) {
+					furthest = dist;
+					split = point;
+				}
+			}
+			if (split < 0) continue;
+			kept[split] = true;
+			if (size + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length << 1);
+			stack[size++] = from;
+			stack[size++] = split;
+			stack[size++] = split;
+			stack[size++] = to;
+		}
+	}
+
+	/**
+	 * Creates a shape of the same kind as this, which is only drawn
+	 * @param coords the coordinates of the kept points
+	 * @param kept whether every point of this shape is kept
+	 * @return the shape
+	 */
+	protected PolygonApprox copy(float[] coords, boolean[] kept) {
+		return new PolygonApprox(arena, coords);
+	}
+
+	/**
+	 * @param point the index of a point
+	 * @return true if the point ends a line of the shape
+	 */
+	boolean isPathEnd(int point) {
+		return point == npoints - 1;
+	}
+
+	/**
+	 * @param point the index of a point
+	 * @return true if the point continues the line from the point before it
+	 */
+	boolean isLineTo(int point) {
+		return point > 0;
 	}
 
 	/**
@@ -124,18 +283,27 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 	 */
 	public List<SimpleOSMNode> getPoints() {
 		List<SimpleOSMNode> points = new ArrayList<>();
-		for (int i = 0 ; i < coords.length ; i+=2) {
-			points.add(new SimpleOSMNode(coords[i], coords[i+1]));
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		for (int i = 0 ; i < npoints ; i++) {
+			reader.next();
+			points.add(new SimpleOSMNode(reader.getX(), reader.getY()));
 		}
 		return points;
 	}
 
 	public Point2D getFromNode() {
-		return new Point2D.Float(coords[0], coords[1]);
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		reader.next();
+		return new Point2D.Float(reader.getX(), reader.getY());
 	}
 
 	public Point2D getToNode() {
-		return new Point2D.Float(coords[coords.length-2], coords[coords.length-1]);
+		CoordinateArena.PointReader reader = arena.new PointReader();
+		reader.start(offset);
+		for (int i = 0 ; i < npoints ; i++) reader.next();
+		return new Point2D.Float(reader.getX(), reader.getY());
 	}
 
 	@Override
@@ -152,14 +320,33 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 		return new Point2D.Float(getCenterX(), getCenterY());
 	}
 
-	class PolygonApproxIterator implements PathIterator {
+	/**
+	 * Decodes the points from the arena while the shape is drawn, so the points of a shape are never in an array.
+	 * Every point is drawn, as the shapes are simplified to the size of a pixel before they are drawn, by the band of
+	 * the LevelOfDetailIndex or the level of the CoastLines that is picked from the zoom level of the transform. The
+	 * iterator only holds the offset of the points, so it also draws the rows of a ShapeTable
+	 */
+	static class PolygonApproxIterator implements PathIterator {
 		AffineTransform at;
 		int index;
-		float approx;
-		
-		public PolygonApproxIterator(AffineTransform at, float pixelsq) {
+		final int npoints;
+		final byte[] pointtypes; //The segment type of every point, or null if the points are one line
+		CoordinateArena.PointReader reader;
+		float x, y; //The point at the index
+
+		PolygonApproxIterator(CoordinateArena arena, int offset, int npoints, byte[] pointtypes, AffineTransform at) {
 			this.at = at;
-			this.approx = pixelsq;
+			this.npoints = npoints;
+			this.pointtypes = pointtypes;
+			reader = arena.new PointReader();
+			reader.start(offset);
+			if (npoints > 0) readPoint();
+		}
+
+		void readPoint() {
+			reader.next();
+			x = reader.getX();
+			y = reader.getY();
 		}
 		
 		public int getWindingRule() {
@@ -167,37 +354,20 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 		}
 
 		public boolean isDone() {
-			return index >= coords.length;
-		}
-		
-		float distSq(float x1, float y1, float x2, float y2) {
-			float dx = x1 - x2;
-			float dy = y1 - y2;
-			return dx * dx + dy * dy;
+			return index >= npoints;
 		}
 
 		public void next() {
-			float fx = coords[index];
-			float fy = coords[index+1];
-			index += 2;
-			while (index < coords.length - 2 &&
-				distSq(fx, fy, coords[index], coords[index+1]) < approx) index += 2;
+			if (++index < npoints) readPoint();
 		}
 
 		public int currentSegment(float[] c) {
 			if (isDone()) {
 	            throw new NoSuchElementException("poly approx iterator out of bounds");
 	        }
-	        int type;
-			if (index == 0) {
-				c[0] = coords[0];
-				c[1] = coords[1];
-	            type = SEG_MOVETO;
-			} else {
-				c[0] = coords[index];
-				c[1] = coords[index+1];
-	            type = SEG_LINETO;
-			}
+			c[0] = x;
+			c[1] = y;
+	        int type = pointtypes != null ? pointtypes[index] : index == 0 ? SEG_MOVETO : SEG_LINETO;
 	        if (at != null) {
 	            at.transform(c, 0, c, 0, 1);
 	        }
@@ -259,9 +429,48 @@ public class PolygonApprox implements Shape, KDFriendlyShape, Serializable {
 
 	public WayType getWayType(){ return type;}
 
-	public void setName(String name) {
-		this.name = name;
+	public void setNameId(int nameId) {
+		this.nameId = nameId;
 	}
 
-	public String getName(){ return name;}
+	public int getNameId(){ return nameId;}
+
+	/**
+	 * Sets the name of a shape read from a file saved before the string table, by adding it to the string table of
+	 * its map
+	 * @param strings the string table of the map
+	 */
+	public void internLegacyName(StringTable strings) {
+		if (legacyName != null) nameId = strings.id(legacyName);
+		legacyName = null;
+	}
+
+	/**
+	 * @return the x and y coordinates of the points after each other, decoded from the arena into a new array
+	 */
+	public float[] getCoords() {
+		return arena.get(offset, npoints);
+	}
+
+	public int getPointCount() {
+		return npoints;
+	}
+
+	/**
+	 * @return the PathIterator segment type of every point, or null if the points are one line
+	 */
+	public byte[] getPointTypes() {
+		return null;
+	}
+
+	/**
+	 * @return the offset of the points in the arena
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	public CoordinateArena getArena() {
+		return arena;
+	}
 }
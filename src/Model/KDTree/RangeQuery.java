@@ -0,0 +1,25 @@
+package Model.KDTree;
+
+import Model.OSM.WayType;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A range query of a SpatialIndex that can be reused for every frame, so searching does not create new collections
+ */
+public interface RangeQuery {
+    /**
+     * Finds the shapes within the search rectangle, which can then be visited by their WayType
+     * @param searchRect the search rectangle
+     */
+    void search(KDSearchRect searchRect);
+
+    /**
+     * Visits every shape of a WayType that was found by the last search once, in the order they should be drawn.
+     * Shapes whose bounding box is outside the search rectangle are skipped. The rows of the visited shapes in the
+     * ShapeTable of the index are filled before they are visited
+     * @param type the WayType
+     * @param visitor is called with the index of every shape
+     */
+    void forEach(WayType type, IntConsumer visitor);
+}
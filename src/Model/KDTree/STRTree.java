@@ -0,0 +1,400 @@
+package Model.KDTree;
+
+import Model.Graph.TravelType;
+import Model.OSM.WayType;
+import Model.StringTable;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A R-tree of KDFriendlyShapes that is bulk loaded with the Sort-Tile-Recursive algorithm.
+ * Unlike the KDTree, every shape is stored in exactly one leaf, so long shapes like motorways and large forests are not
+ * copied into every leaf their bounding box crosses, and a search does not find the same shape twice. Instead the
+ * bounding boxes of the nodes can overlap, so a search may have to visit several nodes for the same area.
+ * The nodes are stored in arrays level by level from the root, and the shapes are stored in the order of the leaves,
+ * so node i has the children childStarts[i] to childEnds[i], which are nodes if i is less than leafStart and shapes
+ * otherwise
+ */
+public class STRTree implements SpatialIndex {
+    private static final long serialVersionUID = 2280802796631817502L;
+    private static final WayType[] WAY_TYPES = WayType.values();
+    private static final int NODE_CAPACITY = 16;
+
+    private float[] nodeBounds;         // the min x, min y, max x and max y of every node
+    private int[] childStarts, childEnds;
+    private int leafStart;
+    private ShapeTable shapes;          // the shapes in the order of the leaves
+
+    /**
+     * Creates a R-tree from an array of KDFriendlyShapes. The shapes are sorted into leaves by the Sort-Tile-Recursive
+     * algorithm, and then the leaves are sorted into nodes the same way, until there is only one node
+     * @param input the shapes to be stored in the R-tree
+     * @param names the string table of the map, which the names of the shapes are stored in
+     */
+    public STRTree(KDFriendlyShape[] input, StringTable names) {
+        int n = input.length;
+        float[] inputBounds = new float[4 * n];
+        for (int i = 0; i < n; i++) setBounds(inputBounds, i, input[i].getBounds2D());
+        Packing packing = new Packing(inputBounds, n);
+        KDFriendlyShape[] sorted = new KDFriendlyShape[n];
+        for (int k = 0; k < n; k++) sorted[k] = input[packing.order[k]];
+        shapes = new ShapeTable(sorted, names);
+        nodeBounds = packing.nodeBounds;
+        childStarts = packing.childStarts;
+        childEnds = packing.childEnds;
+        leafStart = packing.leafStart;
+    }
+
+    /**
+     * Creates a R-tree from its arrays, where the shapes are loaded the first time they are needed
+     * @param nodeBounds the bounding boxes of the nodes
+     * @param childStarts the first child of every node
+     * @param childEnds the end of the children of every node
+     * @param leafStart the first leaf
+     * @param shapeTypes the WayType ordinal of every shape
+     * @param shapeBounds the bounding boxes of the shapes
+     * @param names the string table of the map, which the names of the shapes are stored in
+     * @param arena the arena that the points of the loaded shapes are stored in
+     * @param shapeLoader loads a shape from its index
+     */
+    public STRTree(float[] nodeBounds, int[] childStarts, int[] childEnds, int leafStart, short[] shapeTypes,
+                   float[] shapeBounds, StringTable names, CoordinateArena arena, IntFunction<KDFriendlyShape> shapeLoader) {
+        this.nodeBounds = nodeBounds;
+        this.childStarts = childStarts;
+        this.childEnds = childEnds;
+        this.leafStart = leafStart;
+        this.shapes = new ShapeTable(shapeTypes, shapeBounds, names, arena, shapeLoader);
+    }
+
+    /**
+     * Sorts boxes by the Sort-Tile-Recursive algorithm: the boxes are sorted by the x-coordinate of their center and
+     * cut into vertical slices, which are sorted by the y-coordinate of their center, so every run of NODE_CAPACITY
+     * boxes is a tile
+     * @param bounds the min x, min y, max x and max y of the boxes
+     * @param n the number of boxes
+     * @return the indices of the boxes in sorted order
+     */
+    private static int[] sortTileRecursive(float[] bounds, int n) {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingDouble(i -> bounds[4 * i] + bounds[4 * i + 2]));
+        int tiles = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int sliceSize = (int) Math.ceil(Math.sqrt(tiles)) * NODE_CAPACITY;
+        for (int start = 0; start < n; start += sliceSize) {
+            Arrays.sort(order, start, Math.min(n, start + sliceSize), Comparator.comparingDouble(i -> bounds[4 * i + 1] + bounds[4 * i + 3]));
+        }
+        int[] result = new int[n];
+        for (int i = 0; i < n; i++) result[i] = order[i];
+        return result;
+    }
+
+    private static int[] permute(int[] a, int[] order) {
+        int[] result = new int[a.length];
+        for (int k = 0; k < a.length; k++) result[k] = a[order[k]];
+        return result;
+    }
+
+    /**
+     * @return the bounding box of every range of boxes. An empty range gets a box that contains nothing
+     */
+    private static float[] unionBounds(float[] bounds, int[] starts, int[] ends) {
+        float[] result = new float[4 * starts.length];
+        for (int k = 0; k < starts.length; k++) {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for (int i = starts[k]; i < ends[k]; i++) {
+                minX = Math.min(minX, bounds[4 * i]);
+                minY = Math.min(minY, bounds[4 * i + 1]);
+                maxX = Math.max(maxX, bounds[4 * i + 2]);
+                maxY = Math.max(maxY, bounds[4 * i + 3]);
+            }
+            result[4 * k] = minX;
+            result[4 * k + 1] = minY;
+            result[4 * k + 2] = maxX;
+            result[4 * k + 3] = maxY;
+        }
+        return result;
+    }
+
+    private static void setBounds(float[] bounds, int i, Rectangle2D rect) {
+        bounds[4 * i] = (float) rect.getMinX();
+        bounds[4 * i + 1] = (float) rect.getMinY();
+        bounds[4 * i + 2] = (float) rect.getMaxX();
+        bounds[4 * i + 3] = (float) rect.getMaxY();
+    }
+
+    /**
+     * Searches for the shapes whose bounding box is within the search rectangle
+     * @param searchRect the search rectangle
+     * @return the shapes by WayType. The lists are fixed-size
+     */
+    @Override
+    public EnumMap<WayType, List<KDFriendlyShape>> search(KDSearchRect searchRect) {
+        STRRangeQuery query = new STRRangeQuery(this);
+        query.search(searchRect);
+        EnumMap<WayType, List<KDFriendlyShape>> shapesToReturn = new EnumMap<>(WayType.class);
+        for (WayType type : WAY_TYPES) {
+            KDFriendlyShape[] array = new KDFriendlyShape[query.typeStarts[type.ordinal() + 1] - query.typeStarts[type.ordinal()]];
+            for (int k = 0; k < array.length; k++) array[k] = getShape(query.sorted[query.typeStarts[type.ordinal()] + k]);
+            shapesToReturn.put(type, Arrays.asList(array));
+        }
+        return shapesToReturn;
+    }
+
+    @Override
+    public RangeQuery newRangeQuery() {
+        return new STRRangeQuery(this);
+    }
+
+    /**
+     * Finds the k nearest highways that are legal for the traveltype with a best first search of the R-tree
+     * @param queryPoint the query point
+     * @param k the largest number of highways to find
+     * @param maxDistance the longest distance to a highway that is found
+     * @param travelType the traveltype, or null for highways of every traveltype
+     * @return the highways, nearest first
+     */
+    @Override
+    public List<KDFriendlyShape> nearestWays(Point2D queryPoint, int k, double maxDistance, TravelType travelType) {
+        return nearest(queryPoint, k, maxDistance, type -> KDTree.isLegalHighway(WAY_TYPES[type], travelType), shape -> true);
+    }
+
+    /**
+     * Finds the nearest highway with a name
+     * @param queryPoint the query point
+     * @return the nearest highway with a name, or null if there is none
+     */
+    @Override
+    public KDFriendlyShape nearestWayWithName(Point2D queryPoint) {
+        List<KDFriendlyShape> nearest = nearest(queryPoint, 1, Double.POSITIVE_INFINITY,
+                type -> KDTree.isLegalHighway(WAY_TYPES[type], null), shape -> shape.getNameId() != 0);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Finds the nearest shapes with a best first search, where the children of a node are its child nodes, or the
+     * bounding boxes of its shapes if it is a leaf
+     * @param queryPoint the query point
+     * @param k the largest number of shapes to find
+     * @param maxDistance the longest distance to a shape that is found
+     * @param isType tests the WayType ordinal of a shape before it is loaded
+     * @param isShape tests a shape after it is loaded
+     * @return the nearest shapes that pass both tests, nearest first
+     */
+    private List<KDFriendlyShape> nearest(Point2D queryPoint, int k, double maxDistance, IntPredicate isType, Predicate<KDFriendlyShape> isShape) {
+        short[] shapeTypes = shapes.getTypes();
+        float[] shapeBounds = shapes.getBounds();
+        return new BestFirstSearch(queryPoint, maxDistance, isShape) {
+            @Override
+            void expand(int node) {
+                if (node >= leafStart) {
+                    for (int s = childStarts[node]; s < childEnds[node]; s++) {
+                        if (isType.test(shapeTypes[s])) addBox(s, distTo(shapeBounds, s, queryPoint));
+                    }
+                } else {
+                    for (int child = childStarts[node]; child < childEnds[node]; child++) {
+                        addNode(child, distTo(nodeBounds, child, queryPoint));
+                    }
+                }
+            }
+
+            @Override
+            KDFriendlyShape getShape(int id) {
+                return STRTree.this.getShape(id);
+            }
+        }.search(0, k);
+    }
+
+    @Override
+    public KDFriendlyShape getShape(int id) {
+        return shapes.getShape(id);
+    }
+
+    @Override
+    public int getShapeCount() {
+        return shapes.size();
+    }
+
+    @Override
+    public ShapeTable getShapeTable() {
+        return shapes;
+    }
+
+    public float[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public int[] getChildStarts() {
+        return childStarts;
+    }
+
+    public int[] getChildEnds() {
+        return childEnds;
+    }
+
+    public int getLeafStart() {
+        return leafStart;
+    }
+
+    public short[] getShapeTypes() {
+        return shapes.getTypes();
+    }
+
+    public float[] getShapeBounds() {
+        return shapes.getBounds();
+    }
+
+    /**
+     * The nodes of a R-tree over a number of boxes. The boxes are sorted into leaves by the Sort-Tile-Recursive
+     * algorithm, and then the leaves are sorted into nodes the same way, until there is only one node
+     */
+    static class Packing {
+        final int[] order;          // the boxes in the order of the leaves
+        final float[] nodeBounds;
+        final int[] childStarts, childEnds;
+        final int leafStart;
+
+        /**
+         * @param bounds the min x, min y, max x and max y of the boxes
+         * @param n the number of boxes
+         */
+        Packing(float[] bounds, int n) {
+            order = sortTileRecursive(bounds, n);
+            float[] sortedBounds = new float[4 * n];
+            for (int k = 0; k < n; k++) System.arraycopy(bounds, 4 * order[k], sortedBounds, 4 * k, 4);
+
+            //The levels of the tree from the leaves and up, where the children of a node are local to the level below
+            List<int[]> levelStarts = new ArrayList<>(), levelEnds = new ArrayList<>();
+            List<float[]> levelBounds = new ArrayList<>();
+            int count = Math.max(1, (n + NODE_CAPACITY - 1) / NODE_CAPACITY);
+            int[] starts = new int[count], ends = new int[count];
+            for (int k = 0; k < count; k++) {
+                starts[k] = Math.min(n, k * NODE_CAPACITY);
+                ends[k] = Math.min(n, (k + 1) * NODE_CAPACITY);
+            }
+            levelStarts.add(starts);
+            levelEnds.add(ends);
+            levelBounds.add(unionBounds(sortedBounds, starts, ends));
+            while (count > 1) {
+                int level = levelStarts.size() - 1;
+                //Sort the nodes of the level, so the children of every node above are next to each other
+                int[] levelOrder = sortTileRecursive(levelBounds.get(level), count);
+                levelStarts.set(level, permute(levelStarts.get(level), levelOrder));
+                levelEnds.set(level, permute(levelEnds.get(level), levelOrder));
+                float[] sortedLevel = new float[4 * count];
+                for (int k = 0; k < count; k++) System.arraycopy(levelBounds.get(level), 4 * levelOrder[k], sortedLevel, 4 * k, 4);
+                levelBounds.set(level, sortedLevel);
+
+                int parents = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+                starts = new int[parents];
+                ends = new int[parents];
+                for (int k = 0; k < parents; k++) {
+                    starts[k] = k * NODE_CAPACITY;
+                    ends[k] = Math.min(count, (k + 1) * NODE_CAPACITY);
+                }
+                levelStarts.add(starts);
+                levelEnds.add(ends);
+                levelBounds.add(unionBounds(sortedLevel, starts, ends));
+                count = parents;
+            }
+
+            //Number the nodes from the root and down
+            int nodes = 0;
+            for (int[] s : levelStarts) nodes += s.length;
+            float[] nodeBounds = new float[4 * nodes];
+            int[] childStarts = new int[nodes], childEnds = new int[nodes];
+            int leafStart = 0;
+            int offset = 0;
+            for (int level = levelStarts.size() - 1; level >= 0; level--) {
+                int size = levelStarts.get(level).length;
+                int childOffset = level == 0 ? 0 : offset + size;
+                for (int k = 0; k < size; k++) {
+                    childStarts[offset + k] = childOffset + levelStarts.get(level)[k];
+                    childEnds[offset + k] = childOffset + levelEnds.get(level)[k];
+                }
+                System.arraycopy(levelBounds.get(level), 0, nodeBounds, 4 * offset, 4 * size);
+                if (level == 0) leafStart = offset;
+                offset += size;
+            }
+            this.nodeBounds = nodeBounds;
+            this.childStarts = childStarts;
+            this.childEnds = childEnds;
+            this.leafStart = leafStart;
+        }
+    }
+
+    /**
+     * A search finds the shapes whose bounding box is within the search rectangle, in the order of the leaves, and
+     * sorts them by WayType into reused arrays
+     */
+    private static class STRRangeQuery implements RangeQuery {
+        private final STRTree tree;
+        private int[] found = new int[256];
+        private int[] sorted = new int[256];
+        private int[] stack = new int[64];
+        private final int[] typeStarts = new int[WAY_TYPES.length + 1]; // the shapes of type t are typeStarts[t] to typeStarts[t+1]
+        private final int[] typeNext = new int[WAY_TYPES.length];
+
+        STRRangeQuery(STRTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public void search(KDSearchRect searchRect) {
+            double minX = searchRect.getBotLeft().getX(), minY = searchRect.getBotLeft().getY();
+            double maxX = searchRect.getTopRight().getX(), maxY = searchRect.getTopRight().getY();
+            short[] shapeTypes = tree.shapes.getTypes();
+            float[] shapeBounds = tree.shapes.getBounds();
+            int foundCount = 0;
+            int size = 0;
+            stack[size++] = 0;
+            while (size > 0) {
+                int i = stack[--size];
+                if (!intersects(tree.nodeBounds, i, minX, minY, maxX, maxY)) continue;
+                if (i >= tree.leafStart) {
+                    boolean isInside = isInside(tree.nodeBounds, i, minX, minY, maxX, maxY);
+                    for (int s = tree.childStarts[i]; s < tree.childEnds[i]; s++) {
+                        if (!isInside && !intersects(shapeBounds, s, minX, minY, maxX, maxY)) continue;
+                        if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                        found[foundCount++] = s;
+                    }
+                    continue;
+                }
+                if (size + NODE_CAPACITY > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                //The children are pushed in reverse, so they are visited in order
+                for (int child = tree.childEnds[i] - 1; child >= tree.childStarts[i]; child--) stack[size++] = child;
+            }
+
+            Arrays.fill(typeStarts, 0);
+            for (int k = 0; k < foundCount; k++) typeStarts[shapeTypes[found[k]] + 1]++;
+            for (int t = 0; t < WAY_TYPES.length; t++) {
+                typeStarts[t + 1] += typeStarts[t];
+                typeNext[t] = typeStarts[t];
+            }
+            if (sorted.length < foundCount) sorted = new int[found.length];
+            for (int k = 0; k < foundCount; k++) sorted[typeNext[shapeTypes[found[k]]]++] = found[k];
+        }
+
+        @Override
+        public void forEach(WayType type, IntConsumer visitor) {
+            for (int k = typeStarts[type.ordinal()]; k < typeStarts[type.ordinal() + 1]; k++) {
+                tree.shapes.load(sorted[k]);
+                visitor.accept(sorted[k]);
+            }
+        }
+
+        private static boolean isInside(float[] bounds, int i, double minX, double minY, double maxX, double maxY) {
+            return bounds[4 * i] >= minX && bounds[4 * i + 1] >= minY && bounds[4 * i + 2] <= maxX && bounds[4 * i + 3] <= maxY;
+        }
+
+        private static boolean intersects(float[] bounds, int i, double minX, double minY, double maxX, double maxY) {
+            return !(bounds[4 * i] > maxX || bounds[4 * i + 1] > maxY || bounds[4 * i + 2] < minX || bounds[4 * i + 3] < minY);
+        }
+    }
+}
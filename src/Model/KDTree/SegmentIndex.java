@@ -0,0 +1,180 @@
+package Model.KDTree;
+
+import Model.Graph.TravelType;
+
+import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.PriorityQueue;
+
+/**
+ * A R-tree of the single segments of a set of ways, so a point can be snapped to the nearest point on a way instead of
+ * the nearest point of a way. The segments are packed with the Sort-Tile-Recursive algorithm like the STRTree, and
+ * every segment is stored as its two end points, the way it belongs to and its index in the way
+ */
+public class SegmentIndex {
+    private final PolygonApprox[] ways;
+    private final float[] nodeBounds;
+    private final int[] childStarts, childEnds;
+    private final int leafStart;
+    private final float[] segments;     // the x and y of the start and end of every segment
+    private final int[] segmentWays;    // the index of the way of every segment
+    private final int[] segmentIndices; // the index of the first point of every segment in its way
+
+    /**
+     * Creates a R-tree of all the segments of the ways
+     * @param input the ways
+     */
+    public SegmentIndex(Collection<? extends PolygonApprox> input) {
+        ways = input.toArray(new PolygonApprox[input.size()]);
+        int n = 0;
+        for (PolygonApprox way : ways) n += Math.max(0, way.getCoords().length / 2 - 1);
+        float[] bounds = new float[4 * n];
+        int[] way = new int[n], index = new int[n];
+        for (int w = 0, s = 0; w < ways.length; w++) {
+            float[] coords = ways[w].getCoords();
+            for (int i = 0; i + 3 < coords.length; i += 2, s++) {
+                bounds[4 * s] = Math.min(coords[i], coords[i + 2]);
+                bounds[4 * s + 1] = Math.min(coords[i + 1], coords[i + 3]);
+                bounds[4 * s + 2] = Math.max(coords[i], coords[i + 2]);
+                bounds[4 * s + 3] = Math.max(coords[i + 1], coords[i + 3]);
+                way[s] = w;
+                index[s] = i / 2;
+            }
+        }
+        STRTree.Packing packing = new STRTree.Packing(bounds, n);
+        segments = new float[4 * n];
+        segmentWays = new int[n];
+        segmentIndices = new int[n];
+        for (int k = 0; k < n; k++) {
+            int s = packing.order[k];
+            float[] coords = ways[way[s]].getCoords();
+            System.arraycopy(coords, 2 * index[s], segments, 4 * k, 4);
+            segmentWays[k] = way[s];
+            segmentIndices[k] = index[s];
+        }
+        nodeBounds = packing.nodeBounds;
+        childStarts = packing.childStarts;
+        childEnds = packing.childEnds;
+        leafStart = packing.leafStart;
+    }
+
+    /**
+     * Finds the nearest point on a highway that is legal for the traveltype, with a best first search of the nodes.
+     * The segments of a leaf are measured when the leaf is reached, and the search stops when the nearest node left is
+     * further away than the nearest segment found
+     * @param queryPoint the query point
+     * @param maxDistance the longest distance to a segment that is found
+     * @param travelType the traveltype, or null for highways of every traveltype
+     * @return the nearest point, or null if there is no segment within the max distance
+     */
+    public Snap nearestSegment(Point2D queryPoint, double maxDistance, TravelType travelType) {
+        double x = queryPoint.getX(), y = queryPoint.getY();
+        double bestDist = maxDistance;
+        int best = -1;
+        double bestFraction = 0;
+        PriorityQueue<NodeCandidate> queue = new PriorityQueue<>();
+        if (segmentWays.length > 0) queue.add(new NodeCandidate(0, BestFirstSearch.distTo(nodeBounds, 0, queryPoint)));
+        while (!queue.isEmpty() && queue.peek().dist <= bestDist) {
+            int node = queue.poll().node;
+            if (node < leafStart) {
+                for (int child = childStarts[node]; child < childEnds[node]; child++) {
+                    double dist = BestFirstSearch.distTo(nodeBounds, child, queryPoint);
+                    if (dist <= bestDist) queue.add(new NodeCandidate(child, dist));
+                }
+                continue;
+            }
+            for (int s = childStarts[node]; s < childEnds[node]; s++) {
+                if (!KDTree.isLegalHighway(ways[segmentWays[s]].getWayType(), travelType)) continue;
+                double fraction = fraction(s, x, y);
+                double dx = x - (segments[4 * s] + fraction * (segments[4 * s + 2] - segments[4 * s]));
+                double dy = y - (segments[4 * s + 1] + fraction * (segments[4 * s + 3] - segments[4 * s + 1]));
+                double dist = Math.sqrt(dx * dx + dy * dy);
+                if (dist < bestDist || (dist == bestDist && best < 0)) {
+                    bestDist = dist;
+                    best = s;
+                    bestFraction = fraction;
+                }
+            }
+        }
+        if (best < 0) return null;
+        Point2D point = new Point2D.Double(segments[4 * best] + bestFraction * (segments[4 * best + 2] - segments[4 * best]),
+                segments[4 * best + 1] + bestFraction * (segments[4 * best + 3] - segments[4 * best + 1]));
+        return new Snap(ways[segmentWays[best]], segmentIndices[best], bestFraction, point, bestDist);
+    }
+
+    /**
+     * @return the offset from the start to the end of a segment of the projection of the point on it, between 0 and 1
+     */
+    private double fraction(int s, double x, double y) {
+        double dx = segments[4 * s + 2] - segments[4 * s], dy = segments[4 * s + 3] - segments[4 * s + 1];
+        double lengthSq = dx * dx + dy * dy;
+        if (lengthSq == 0) return 0;
+        double t = ((x - segments[4 * s]) * dx + (y - segments[4 * s + 1]) * dy) / lengthSq;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    public int getSegmentCount() {
+        return segmentWays.length;
+    }
+
+    /**
+     * The nearest point on a way, given both as a point and as an offset into the way
+     */
+    public static class Snap {
+        private final PolygonApprox way;
+        private final int segment;
+        private final double fraction;
+        private final Point2D point;
+        private final double distance;
+
+        /**
+         * @param way the way of the point
+         * @param segment the index of the point in the way that the segment of the point starts at
+         * @param fraction the offset of the point from the start to the end of the segment, between 0 and 1
+         * @param point the point
+         * @param distance the distance from the query point to the point
+         */
+        public Snap(PolygonApprox way, int segment, double fraction, Point2D point, double distance) {
+            this.way = way;
+            this.segment = segment;
+            this.fraction = fraction;
+            this.point = point;
+            this.distance = distance;
+        }
+
+        public PolygonApprox getWay() {
+            return way;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        public double getFraction() {
+            return fraction;
+        }
+
+        public Point2D getPoint() {
+            return point;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    private static class NodeCandidate implements Comparable<NodeCandidate> {
+        private final int node;
+        private final double dist;
+
+        NodeCandidate(int node, double dist) {
+            this.node = node;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(NodeCandidate o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
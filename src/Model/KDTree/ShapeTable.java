@@ -0,0 +1,289 @@
+package Model.KDTree;
+
+import Model.OSM.SimpleOSMNode;
+import Model.OSM.WayType;
+import Model.StringTable;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * The shapes of a spatial index stored by column, where shape i is row i of parallel arrays of its bounds, WayType
+ * ordinal, name id and the offset and number of its points in a CoordinateArena. The index and the renderer address
+ * shapes by their row, so a search reads the bounds and types of the shapes from a few arrays instead of from an
+ * object for every shape, and drawing reads the points straight from the arena through a FlyweightShape that is
+ * pointed at one row after another.
+ * The objects of the shapes are still kept for the road graph and for the searches that return shapes, and are
+ * loaded the first time a row is needed when the index is read from a map file. Shapes whose points are not in the
+ * arena of the table, like nodes, are drawn from their objects.
+ * A row is published to other threads by setting its object in an AtomicReferenceArray after its columns are filled,
+ * so a thread that sees the object of a row also sees the columns of the row
+ */
+public class ShapeTable implements Serializable {
+    private static final long serialVersionUID = 8844532828139862500L;
+    private static final WayType[] WAY_TYPES = WayType.values();
+
+    private final AtomicReferenceArray<KDFriendlyShape> shapes;
+    private final float[] bounds;       // the min x, min y, max x and max y of every shape
+    private final short[] types;        // the WayType ordinal of every shape
+    private final int[] nameIds;        // the id of the name of every shape in names, where 0 is no name
+    private final int[] offsets;        // the offset of the points of every shape in the arena, or -1 if they are not in it
+    private final int[] pointCounts;
+    private final byte[][] pointTypes;  // the segment types of the points of multipolygons, and null for other shapes
+    private final StringTable names;    // the string table of the map, which the shapes of every index share
+    private final CoordinateArena arena;
+    private transient IntFunction<KDFriendlyShape> shapeLoader; //Loads the shapes of the rows that are not filled yet
+
+    /**
+     * Creates a table of shapes, where every row is filled from its shape
+     * @param shapes the shapes in the order of their rows
+     * @param names the string table that the names of the shapes are stored in
+     */
+    public ShapeTable(KDFriendlyShape[] shapes, StringTable names) {
+        this(shapes.length, names, arenaOf(shapes), null);
+        for (int id = 0; id < shapes.length; id++) setRow(id, shapes[id]);
+    }
+
+    /**
+     * Creates a table of shapes that are loaded the first time their row is needed
+     * @param shapeCount the number of shapes
+     * @param names the string table that the names of the shapes are stored in
+     * @param arena the arena that the points of the loaded shapes are stored in
+     * @param shapeLoader loads a shape from its row
+     */
+    public ShapeTable(int shapeCount, StringTable names, CoordinateArena arena, IntFunction<KDFriendlyShape> shapeLoader) {
+        this(new short[shapeCount], new float[4 * shapeCount], names, arena, shapeLoader);
+    }
+
+    /**
+     * Creates a table of shapes whose bounds and types are known before they are loaded, as they are stored in a map
+     * file. The rest of the columns are filled the first time a row is needed
+     * @param types the WayType ordinal of every shape
+     * @param bounds the min x, min y, max x and max y of every shape
+     * @param names the string table that the names of the shapes are stored in
+     * @param arena the arena that the points of the loaded shapes are stored in
+     * @param shapeLoader loads a shape from its row
+     */
+    public ShapeTable(short[] types, float[] bounds, StringTable names, CoordinateArena arena, IntFunction<KDFriendlyShape> shapeLoader) {
+        int shapeCount = types.length;
+        this.types = types;
+        this.bounds = bounds;
+        this.names = names;
+        this.arena = arena;
+        this.shapeLoader = shapeLoader;
+        shapes = new AtomicReferenceArray<>(shapeCount);
+        nameIds = new int[shapeCount];
+        offsets = new int[shapeCount];
+        pointCounts = new int[shapeCount];
+        pointTypes = new byte[shapeCount][];
+    }
+
+    /**
+     * @param shapes the shapes of a table
+     * @return the arena of the first shape whose points are in an arena, or null if there is none
+     */
+    private static CoordinateArena arenaOf(KDFriendlyShape[] shapes) {
+        for (KDFriendlyShape shape : shapes) {
+            if (shape instanceof PolygonApprox) return ((PolygonApprox) shape).getArena();
+        }
+        return null;
+    }
+
+    /**
+     * Fills a row from its shape. The object is set last, as a row is taken to be filled once its object is set
+     */
+    private void setRow(int id, KDFriendlyShape shape) {
+        Rectangle2D rect = shape.getBounds2D();
+        bounds[4 * id] = (float) rect.getMinX();
+        bounds[4 * id + 1] = (float) rect.getMinY();
+        bounds[4 * id + 2] = (float) rect.getMaxX();
+        bounds[4 * id + 3] = (float) rect.getMaxY();
+        types[id] = (short) shape.getWayType().ordinal();
+        nameIds[id] = shape.getNameId();
+        offsets[id] = -1;
+        if (shape instanceof PolygonApprox) {
+            PolygonApprox polygon = (PolygonApprox) shape;
+            if (polygon.getArena() == arena) {
+                offsets[id] = polygon.getOffset();
+                pointCounts[id] = polygon.getPointCount();
+                pointTypes[id] = polygon.getPointTypes();
+            }
+        }
+        shapes.set(id, shape);
+    }
+
+    /**
+     * Fills a row from its shape, if it is not filled yet. Rows are loaded by the threads that render tiles at once
+     * without a lock. The loader returns the same object for a row to every thread, so if two threads fill the same
+     * row they write the same values to its columns
+     * @param id the row of the shape
+     */
+    public void load(int id) {
+        if (shapes.get(id) == null) setRow(id, shapeLoader.apply(id));
+    }
+
+    /**
+     * @param id the row of a shape
+     * @return the shape, which is loaded if its row is not filled yet
+     */
+    public KDFriendlyShape getShape(int id) {
+        load(id);
+        return shapes.get(id);
+    }
+
+    /**
+     * @return the string table that the names of the shapes are stored in
+     */
+    public StringTable getNames() {
+        return names;
+    }
+
+    /**
+     * @return the number of shapes in the table
+     */
+    public int size() {
+        return shapes.length();
+    }
+
+    /**
+     * @return the min x, min y, max x and max y of every shape, which are only set for the rows that are filled unless
+     * they were known when the table was created
+     */
+    public float[] getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the WayType ordinal of every shape, which are only set for the rows that are filled unless they were
+     * known when the table was created
+     */
+    public short[] getTypes() {
+        return types;
+    }
+
+    /**
+     * A shape that is a view of one row of the table at a time, so a renderer can draw every shape it visits through
+     * the same object. The view is only valid until it is pointed at the next row, and is only used by one thread
+     */
+    public class FlyweightShape implements KDFriendlyShape {
+        private int id;
+
+        /**
+         * Points the view at a row, which must be filled
+         * @param id the row of the shape
+         * @return this view, or the object of the shape if its points are not in the arena of the table
+         */
+        public KDFriendlyShape of(int id) {
+            if (offsets[id] < 0) return shapes.get(id);
+            this.id = id;
+            return this;
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at) {
+            return new PolygonApprox.PolygonApproxIterator(arena, offsets[id], pointCounts[id], pointTypes[id], at);
+        }
+
+        @Override
+        public PathIterator getPathIterator(AffineTransform at, double flatness) {
+            return getPathIterator(at);
+        }
+
+        @Override
+        public Rectangle getBounds() {
+            return getBounds2D().getBounds();
+        }
+
+        @Override
+        public Rectangle2D getBounds2D() {
+            return new Rectangle2D.Float(bounds[4 * id], bounds[4 * id + 1],
+                    bounds[4 * id + 2] - bounds[4 * id], bounds[4 * id + 3] - bounds[4 * id + 1]);
+        }
+
+        @Override
+        public boolean intersects(Rectangle2D r) {
+            return !(bounds[4 * id] > r.getMaxX() || bounds[4 * id + 1] > r.getMaxY()
+                    || bounds[4 * id + 2] < r.getMinX() || bounds[4 * id + 3] < r.getMinY());
+        }
+
+        @Override
+        public boolean intersects(double x, double y, double w, double h) {
+            return intersects(new Rectangle2D.Double(x, y, w, h));
+        }
+
+        //The containment tests are answered by the object of the shape
+
+        @Override
+        public boolean contains(double x, double y) {
+            return getShape(id).contains(x, y);
+        }
+
+        @Override
+        public boolean contains(Point2D p) {
+            return getShape(id).contains(p);
+        }
+
+        @Override
+        public boolean contains(double x, double y, double w, double h) {
+            return getShape(id).contains(x, y, w, h);
+        }
+
+        @Override
+        public boolean contains(Rectangle2D r) {
+            return getShape(id).contains(r);
+        }
+
+        @Override
+        public WayType getWayType() {
+            return WAY_TYPES[types[id]];
+        }
+
+        /**
+         * Sets the WayType of the row and of the object of the shape
+         */
+        @Override
+        public void setWayType(WayType type) {
+            getShape(id).setWayType(type);
+            types[id] = (short) type.ordinal();
+        }
+
+        @Override
+        public int getNameId() {
+            return nameIds[id];
+        }
+
+        //The searches by distance are answered by the object of the shape
+
+        @Override
+        public double getCenter(boolean isX) {
+            return shapes.get(id).getCenter(isX);
+        }
+
+        @Override
+        public Point2D getCenterPoint() {
+            return shapes.get(id).getCenterPoint();
+        }
+
+        @Override
+        public double distTo(Point2D point) {
+            return shapes.get(id).distTo(point);
+        }
+
+        @Override
+        public Point2D nearestPoint(Point2D p) {
+            return shapes.get(id).nearestPoint(p);
+        }
+
+        @Override
+        public List<SimpleOSMNode> getPoints() {
+            return shapes.get(id).getPoints();
+        }
+    }
+}
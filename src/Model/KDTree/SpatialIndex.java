@@ -0,0 +1,80 @@
+package Model.KDTree;
+
+import Model.Graph.TravelType;
+import Model.OSM.WayType;
+
+import java.awt.geom.Point2D;
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * A spatial index of the KDFriendlyShapes of a map, which can be searched by area and by distance.
+ * Every shape of the index has an index from 0 to getShapeCount()-1
+ */
+public interface SpatialIndex extends Serializable {
+    /**
+     * Searches for the shapes within the search rectangle
+     * @param searchRect the search rectangle
+     * @return the shapes by WayType
+     */
+    EnumMap<WayType, List<KDFriendlyShape>> search(KDSearchRect searchRect);
+
+    /**
+     * @return a new range query of this index, which can be reused for every search
+     */
+    RangeQuery newRangeQuery();
+
+    /**
+     * Finds the nearest highway that is legal for the traveltype
+     * @param queryPoint the query point
+     * @param searchRect not used, as the nearest highways are found from the query point and outwards
+     * @param travelType the traveltype
+     * @return the nearest highway, or null if the index has no legal highways
+     */
+    default KDFriendlyShape nearestWay(Point2D queryPoint, KDSearchRect searchRect, TravelType travelType) {
+        List<KDFriendlyShape> nearest = nearestWays(queryPoint, 1, Double.POSITIVE_INFINITY, travelType);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * Finds the k nearest highways that are legal for the traveltype, with a best first search from the query point
+     * @param queryPoint the query point
+     * @param k the largest number of highways to find
+     * @param maxDistance the longest distance in model coordinates to a highway that is found
+     * @param travelType the traveltype, or null for highways of every traveltype
+     * @return the highways, nearest first
+     */
+    List<KDFriendlyShape> nearestWays(Point2D queryPoint, int k, double maxDistance, TravelType travelType);
+
+    /**
+     * Finds the nearest highway with a name
+     * @param queryPoint the query point
+     * @return the nearest highway with a name, or null if there is none
+     */
+    KDFriendlyShape nearestWayWithName(Point2D queryPoint);
+
+    /**
+     * @return the number of shapes in the index
+     */
+    int getShapeCount();
+
+    /**
+     * @param id the index of a shape
+     * @return the shape, which is loaded if it has not been used before
+     */
+    KDFriendlyShape getShape(int id);
+
+    /**
+     * @return the table of the shapes of the index, where the row of a shape is its index
+     */
+    ShapeTable getShapeTable();
+
+    /**
+     * @param zoomLevel the zoom level, from 1 as the closest
+     * @return the index to draw the zoom level from, which is this index unless it has levels of detail
+     */
+    default SpatialIndex getLevelOfDetail(int zoomLevel) {
+        return this;
+    }
+}
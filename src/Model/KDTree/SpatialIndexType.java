@@ -0,0 +1,26 @@
+package Model.KDTree;
+
+import Model.StringTable;
+
+/**
+ * A enum of the spatial indexes that MapData.createKD can choose between
+ */
+public enum SpatialIndexType {
+    KD_TREE,
+    R_TREE;
+
+    /**
+     * Creates the spatial index belonging to the type
+     * @param shapes the shapes to be stored in the index
+     * @param names the string table of the map, which the names of the shapes are stored in
+     * @return the spatial index
+     */
+    public SpatialIndex build(KDFriendlyShape[] shapes, StringTable names) {
+        switch (this) {
+            case R_TREE:
+                return new STRTree(shapes, names);
+            default:
+                return new FlatKDTree(KDTree.getRoot(shapes), names);
+        }
+    }
+}
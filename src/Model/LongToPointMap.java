@@ -2,66 +2,176 @@ package Model;
 
 import Model.OSM.SimpleOSMNode;
 
-import java.awt.geom.Point2D;
+import java.util.Arrays;
 
 
 /**
- * This class contains all of the nodes that are being parsed
+ * This class contains all of the nodes that are being parsed.
+ * The ids are stored in a long array and the coordinates in a float array, so no object is created per node.
+ * As long as the ids are put in increasing order, which they are in most OSM files, the arrays are kept sorted and
+ * searched with binary search. The first time an id is put out of order, the map is turned into a hash table with
+ * open addressing, which grows when it gets too full.
+ * The id Long.MIN_VALUE is used to mark empty entries and can not be put in the map
  */
-public class LongToPointMap {
-	private int MASK;
-	public Node[] tab;
+public class LongToPointMap implements NodeStore {
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final float MAX_LOAD = 0.6f;
+
+	private long[] keys;
+	private float[] coords;     // coords[2*i] and coords[2*i+1] = x and y of keys[i]
+	private int size;
+	private boolean isSorted = true;
+	private int bits;           // the table has 1 << bits entries when it is not sorted
 
 	/**
-	 * Creates new LongToPoinMap of a fixed size, that later is being used
-	 * for creating an array. This array is created with a sized using bitshifting.
-	 * This means the size of the array will be in binary 1 shifted to left 'capacity'
-	 * times.
-	 * @param capacity
+	 * Creates an empty map with room for 1 << 16 nodes before it grows
 	 */
-	public LongToPointMap(int capacity) {
-		tab = new Node[1 << capacity];
-		MASK = tab.length - 1;
+	public LongToPointMap() {
+		this(16);
 	}
 
+	/**
+	 * Creates an empty map with room for 1 shifted to left 'capacity' times nodes before it grows
+	 * @param capacity the initial capacity as a power of two
+	 */
+	public LongToPointMap(int capacity) {
+		keys = new long[1 << capacity];
+		coords = new float[2 << capacity];
+	}
 
 	/**
-	 * This method adds a new node to a hashed position in an bitshifted array.
-	 * This makes it a lot faster to find the node that we are looking for
-	 * @param key Key to be hashed after
+	 * Adds the coordinates of a node, or replaces them if the node has already been added
+	 * @param key the id of the node
 	 * @param x x-coordinates for the node
 	 * @param y y-coordinates for the node
 	 */
+	@Override
 	public void put(long key, float x, float y) {
-		int h = Long.hashCode(key) & MASK;
-		tab[h] = new Node(key, x, y, tab[h]);
+		if (key == EMPTY) throw new IllegalArgumentException("The id " + key + " can not be put in a LongToPointMap");
+		if (isSorted) {
+			if (size == 0 || key > keys[size - 1]) {
+				if (size == keys.length) {
+					keys = Arrays.copyOf(keys, size * 2);
+					coords = Arrays.copyOf(coords, size * 4);
+				}
+				set(size++, key, x, y);
+				return;
+			}
+			int i = Arrays.binarySearch(keys, 0, size, key);
+			if (i >= 0) {
+				set(i, key, x, y);
+				return;
+			}
+			rehash(Math.max(bits, 32 - Integer.numberOfLeadingZeros(size)) + 1);
+		} else if (size + 1 > (1 << bits) * MAX_LOAD) {
+			rehash(bits + 1);
+		}
+		int i = slot(key);
+		while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & ((1 << bits) - 1);
+		if (keys[i] == EMPTY) size++;
+		set(i, key, x, y);
+	}
+
+	/**
+	 * Finds the index of a node, which can be used to get its coordinates without creating an object
+	 * @param key the id of the node
+	 * @return the index of the node, or -1 if it has not been added
+	 */
+	public int indexOf(long key) {
+		if (isSorted) {
+			int i = Arrays.binarySearch(keys, 0, size, key);
+			return i >= 0 ? i : -1;
+		}
+		if (key == EMPTY) return -1;
+		for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & ((1 << bits) - 1)) {
+			if (keys[i] == key) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index the index of a node, as returned by indexOf
+	 * @return the x-coordinate of the node
+	 */
+	public float getX(int index) {
+		return coords[2 * index];
+	}
+
+	/**
+	 * @param index the index of a node, as returned by indexOf
+	 * @return the y-coordinate of the node
+	 */
+	public float getY(int index) {
+		return coords[2 * index + 1];
 	}
 
 	/**
-	 * Method to get a Coordinates for given key. It searches through
-	 * nodes until it finds the right one
+	 * Method to get the coordinates for given key as a new point
 	 * @param key key to search after
 	 * @return returns a SimpleOSMNode that contains the coordinates
-	 * for the chosen Node
+	 * for the chosen Node, or null if it has not been added
 	 **/
+	@Override
 	public SimpleOSMNode get(long key) {
-		for (Node n = tab[Long.hashCode(key) & MASK] ; n != null ; n = n.next) {
-			if (n.key == key) return n;
+		int i = indexOf(key);
+		if (i < 0) return null;
+		return new SimpleOSMNode(getX(i), getY(i));
+	}
+
+	/**
+	 * @return the number of nodes in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void set(int i, long key, float x, float y) {
+		keys[i] = key;
+		coords[2 * i] = x;
+		coords[2 * i + 1] = y;
+	}
+
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+	}
+
+	/**
+	 * Moves every node to a new hash table
+	 * @param newBits the new table has 1 << newBits entries
+	 */
+	private void rehash(int newBits) {
+		long[] oldKeys = keys;
+		float[] oldCoords = coords;
+		int oldLength = isSorted ? size : oldKeys.length;
+		bits = newBits;
+		keys = new long[1 << bits];
+		Arrays.fill(keys, EMPTY);
+		coords = new float[2 << bits];
+		isSorted = false;
+		int mask = (1 << bits) - 1;
+		for (int j = 0; j < oldLength; j++) {
+			if (oldKeys[j] == EMPTY) continue;
+			int i = slot(oldKeys[j]);
+			while (keys[i] != EMPTY) i = (i + 1) & mask;
+			set(i, oldKeys[j], oldCoords[2 * j], oldCoords[2 * j + 1]);
 		}
-		return null;
 	}
 
 	/**
-	 * Node class that extends SimpleOSMNode, which helps us
-	 * knowing the next node
+	 * The node of the linked hash table that the map used to be. The points of the shapes of maps that were saved as
+	 * serialized MapData are of this class, so it is kept to read them, and every node is read as a SimpleOSMNode
 	 */
 	private static class Node extends SimpleOSMNode {
-		Node next;
+		private static final long serialVersionUID = 6266357675396405753L;
+		SimpleOSMNode next;
 		long key;
-		public Node(long key, float x, float y, Node next) {
+
+		private Node(float x, float y) {
 			super(x, y);
-			this.key = key;
-			this.next = next;
+		}
+
+		private Object readResolve() {
+			return new SimpleOSMNode(x, y);
 		}
 	}
 }
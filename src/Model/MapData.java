@@ -1,7 +1,9 @@
 package Model;
 
 import Model.Address.Address;
+import Model.Address.AddressIndex;
 import Model.Graph.RoadGraph;
+import Model.OSM.OSMNode;
 import Model.OSM.WayType;
 import lib.RedBlackBST;
 import lib.TST;
@@ -9,18 +11,23 @@ import Model.KDTree.*;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.List;
 
 public class MapData implements Serializable {
+    private static final long serialVersionUID = 2598099746407085680L;
     private EnumMap<WayType, List<Shape>> shapes = new EnumMap<>(WayType.class); {
         for (WayType type : WayType.values()) {
             shapes.put(type, new ArrayList<>());
         }
     }
-    private KDTreeNode kdRoot;
+    private SpatialIndex kdTree;
     private float minlat, minlon, maxlat, maxlon;
+    private CoordinateArena coordinates;
+    private StringTable strings;
     private List<KDFriendlyShape> shapesForKDTree;
 
     private List<PointOfInterest> pointsOfInterest;
@@ -29,7 +36,7 @@ public class MapData implements Serializable {
 
     private RoadGraph graph;
 
-    private RedBlackBST<Address, OnePointMapMarker> addressCoords = new RedBlackBST<>();
+    private AddressIndex addresses;
 
     /**
      * Constructs an instance of MapData
@@ -43,6 +50,9 @@ public class MapData implements Serializable {
         this.minlon = minlon;
         this.maxlat = maxlat;
         this.maxlon = maxlon;
+        coordinates = new CoordinateArena(minlon, minlat, maxlon, maxlat);
+        strings = new StringTable();
+        addresses = new AddressIndex(strings);
         shapesForKDTree = new ArrayList<>();
 
         cities = new TST<>();
@@ -52,11 +62,11 @@ public class MapData implements Serializable {
     }
 
     public OnePointMapMarker getAddressCoords(Address a) {
-        return addressCoords.get(a);
+        return addresses.get(a);
     }
 
     public void putAddress(Address a, OnePointMapMarker coords) {
-        addressCoords.put(a, coords);
+        addresses.put(a, coords.x, coords.y);
     }
 
     public float getMinlat() {
@@ -75,6 +85,29 @@ public class MapData implements Serializable {
         return maxlon;
     }
 
+    /**
+     * @return the arena that the points of the shapes of the map are stored in
+     */
+    public CoordinateArena getCoordinates() {
+        return coordinates;
+    }
+
+    /**
+     * @return the table of the names of the map, which is also the string table of its map file
+     */
+    public StringTable getStrings() {
+        return strings;
+    }
+
+    /**
+     * Replaces the string table of the map, which also replaces the addresses with an empty index of the new table
+     * @param strings the string table
+     */
+    public void setStrings(StringTable strings) {
+        this.strings = strings;
+        addresses = new AddressIndex(strings);
+    }
+
     public TST<String> getCities() {
         return cities;
     }
@@ -109,15 +142,40 @@ public class MapData implements Serializable {
 
     /***
      * Calls KDtree methods to
-     * create an KDTree and saves kdRoot
+     * create an KDTree and saves it flattened in kdTree
      */
     public void createKD() {
-        kdRoot = KDTree.getRoot(shapesForKDTree.toArray(new KDFriendlyShape[]{}));
+        createKD(SpatialIndexType.KD_TREE);
+    }
+
+    /**
+     * Creates a spatial index of the given type and saves it in kdTree
+     * @param type the type of spatial index
+     */
+    public void createKD(SpatialIndexType type) {
+        kdTree = type.build(shapesForKDTree.toArray(new KDFriendlyShape[]{}), strings);
         shapesForKDTree.clear();
     }
 
-    public KDTreeNode getKdTree() {
-        return kdRoot;
+    /**
+     * Adds an index for every band of zoom levels to the spatial index, with the shapes shown in the band
+     * @param maximumZoomLevels the highest zoom level every WayType is shown at
+     * @param pixelSizes the size of a pixel at the closest zoom of every zoom level
+     */
+    public void createLevelsOfDetail(EnumMap<WayType, Integer> maximumZoomLevels, double[] pixelSizes) {
+        kdTree = new LevelOfDetailIndex(kdTree, maximumZoomLevels, pixelSizes);
+    }
+
+    public SpatialIndex getKdTree() {
+        return kdTree;
+    }
+
+    public void setKdTree(SpatialIndex kdTree) {
+        this.kdTree = kdTree;
+    }
+
+    public AddressIndex getAddresses() {
+        return addresses;
     }
 
     public List<PointOfInterest> getPointsOfInterest(){
@@ -135,4 +193,67 @@ public class MapData implements Serializable {
     public RoadGraph getGraph() {
         return graph;
     }
+
+    /**
+     * Reads map data by the names of its fields, so the bin files that were saved as serialized MapData by earlier
+     * versions still load. The KD-tree of such files is a tree of KDNode and LeafNode objects, which is flattened
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        shapes = (EnumMap<WayType, List<Shape>>) fields.get("shapes", null);
+        minlat = fields.get("minlat", 0f);
+        minlon = fields.get("minlon", 0f);
+        maxlat = fields.get("maxlat", 0f);
+        maxlon = fields.get("maxlon", 0f);
+        coordinates = (CoordinateArena) fields.get("coordinates", null);
+        if (coordinates == null) coordinates = CoordinateArena.getShared(); //The shapes of files saved before the arena are read into it
+        shapesForKDTree = (List<KDFriendlyShape>) fields.get("shapesForKDTree", null);
+        pointsOfInterest = (List<PointOfInterest>) fields.get("pointsOfInterest", null);
+        cities = (TST<String>) fields.get("cities", null);
+        postcodes = (TST<String>) fields.get("postcodes", null);
+        streetNames = (TST<String>) fields.get("streetNames", null);
+        graph = (RoadGraph) fields.get("graph", null);
+        strings = (StringTable) fields.get("strings", null);
+        if (strings == null) strings = graph == null ? new StringTable() : graph.getStrings(); //The names of the edges of files saved before the string table
+        if (shapesForKDTree != null) internLegacyNames(shapesForKDTree);
+        if (fields.getObjectStreamClass().getField("kdRoot") != null) {
+            KDTreeNode kdRoot = (KDTreeNode) fields.get("kdRoot", null);
+            internLegacyNames(kdRoot);
+            kdTree = new FlatKDTree(kdRoot, strings);
+        } else {
+            kdTree = (SpatialIndex) fields.get("kdTree", null);
+        }
+        if (fields.getObjectStreamClass().getField("addressCoords") != null) { //Files saved before the address index keep a search tree of addresses
+            addresses = new AddressIndex(strings);
+            RedBlackBST<Address, OnePointMapMarker> addressCoords = (RedBlackBST<Address, OnePointMapMarker>) fields.get("addressCoords", null);
+            if (addressCoords != null) {
+                for (Address a : addressCoords.keys()) {
+                    OnePointMapMarker marker = addressCoords.get(a);
+                    addresses.put(a, marker.x, marker.y);
+                }
+            }
+        } else {
+            addresses = (AddressIndex) fields.get("addresses", null);
+        }
+    }
+
+    /**
+     * Adds the names of the shapes of a KD-tree read from a file saved before the string table to the string table
+     */
+    private void internLegacyNames(KDTreeNode node) {
+        if (node.getValue() == Float.MIN_VALUE) {
+            for (List<KDFriendlyShape> list : node.getShapes().values()) internLegacyNames(list);
+            return;
+        }
+        internLegacyNames(node.getLeft());
+        internLegacyNames(node.getRight());
+    }
+
+    private void internLegacyNames(List<KDFriendlyShape> shapes) {
+        for (KDFriendlyShape shape : shapes) {
+            if (shape instanceof PolygonApprox) ((PolygonApprox) shape).internLegacyName(strings);
+            else if (shape instanceof OSMNode) ((OSMNode) shape).internLegacyName(strings);
+        }
+    }
 }
@@ -0,0 +1,936 @@
+package Model;
+
+import Model.Address.Address;
+import Model.Address.AddressIndex;
+import Model.Graph.RoadGraph;
+import Model.KDTree.*;
+import Model.MapDrawStyle.ColorHex;
+import Model.OSM.*;
+import lib.TST;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A binary file format for MapData, which is much faster to load than a serialized object graph.
+ * The file starts with a magic number and a version, followed by sections of flat arrays that are read in bulk:
+ * the string table, the region of shapes, the arrays of the spatial index and of its levels of detail, the addresses, the autocompleter words,
+ * the points of interest and the road graph in compressed sparse row form.
+ * Objects are referred to by their index in their section, so a shape that is in several leaves is only stored once.
+ * The region of shapes is memory mapped instead of read, and a shape is only decoded the first time a search of the
+ * spatial index finds it, so the time before the first frame is drawn depends on the viewport and not on the size of the map
+ */
+public class MapFile {
+    private static final byte[] MAGIC = {'O', 'S', 'M', 'M', 'A', 'P'};
+    private static final int VERSION = 6;
+
+    //The kinds of shapes
+    private static final byte NODE = 0, WAY = 1, HIGHWAY = 2, RELATION = 3;
+
+    //The kinds of spatial indexes
+    private static final byte NO_INDEX = 0, KD_TREE = 1, R_TREE = 2;
+
+    //The flags of a highway
+    private static final byte ONE_WAY = 1, WALKING = 2, CYCLING = 4, DRIVING = 8, ROUNDABOUT = 16;
+
+    /**
+     * Checks if a stream starts with the magic number of a map file, without consuming it
+     * @param in the stream, which must support mark
+     * @return true if the stream is a map file
+     * @throws IOException If the stream could not be read
+     */
+    public static boolean isMapFile(InputStream in) throws IOException {
+        in.mark(MAGIC.length);
+        byte[] bytes = new byte[MAGIC.length];
+        int length = 0;
+        while (length < bytes.length) {
+            int count = in.read(bytes, length, bytes.length - length);
+            if (count < 0) break;
+            length += count;
+        }
+        in.reset();
+        return length == MAGIC.length && Arrays.equals(bytes, MAGIC);
+    }
+
+    /**
+     * Writes the map data to a channel
+     * @param mapData the map data
+     * @param channel the channel
+     * @throws IOException If the channel could not be written, or the map data contains a shape that is not supported
+     */
+    public static void write(MapData mapData, WritableByteChannel channel) throws IOException {
+        Writer out = new Writer(channel, mapData.getStrings());
+        out.putBytes(MAGIC, 0, MAGIC.length);
+        out.putInt(VERSION);
+        out.putFloat(mapData.getMinlat());
+        out.putFloat(mapData.getMinlon());
+        out.putFloat(mapData.getMaxlat());
+        out.putFloat(mapData.getMaxlon());
+
+        //The WayTypes are stored by name, so the file does not depend on the order of the enum
+        out.putInt(WayType.values().length);
+        for (WayType type : WayType.values()) out.putUTF(type.name());
+
+        SpatialIndex index = mapData.getKdTree();
+        SpatialIndex base = index instanceof LevelOfDetailIndex ? ((LevelOfDetailIndex) index).getBase() : index;
+        List<SpatialIndex> bands = bands(index);
+        List<KDFriendlyShape> shapes = collectShapes(base, bands, mapData.getGraph());
+        collectStrings(mapData, shapes, out);
+        out.putInt(out.strings.size());
+        for (int i = 1; i < out.strings.size(); i++) out.putUTF(out.strings.get(i));
+
+        writeMappedRegion(shapes, out);
+        writeSpatialIndex(base, out);
+        writeLevelsOfDetail(index, bands, out);
+        writeAddresses(mapData.getAddresses(), out);
+        writeWords(mapData.getCities(), out);
+        writeWords(mapData.getPostcodes(), out);
+        writeWords(mapData.getStreetNames(), out);
+        writePointsOfInterest(mapData.getPointsOfInterest(), out);
+        out.putBoolean(mapData.getGraph() != null);
+        if (mapData.getGraph() != null) mapData.getGraph().write(out);
+        out.flush();
+    }
+
+    /**
+     * Reads map data from a stream, which is copied to a temporary file so the shapes can be memory mapped
+     * @param stream the stream, positioned at the magic number
+     * @param model the model that the road graph belongs to
+     * @return the map data
+     * @throws IOException If the stream could not be read, or is not a map file of this version
+     */
+    public static MapData read(InputStream stream, Model model) throws IOException {
+        File file = File.createTempFile("osm-map", ".bin");
+        file.deleteOnExit();
+        Files.copy(stream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (FileInputStream copy = new FileInputStream(file)) {
+            return read(copy.getChannel(), model);
+        }
+    }
+
+    /**
+     * Reads map data from a file. The shapes stay in the file, which is memory mapped, until they are needed
+     * @param channel the channel of the file, positioned at the magic number
+     * @param model the model that the road graph belongs to
+     * @return the map data
+     * @throws IOException If the file could not be read, or is not a map file of this version
+     */
+    public static MapData read(FileChannel channel, Model model) throws IOException {
+        Reader in = new Reader(channel);
+        byte[] magic = new byte[MAGIC.length];
+        in.getBytes(magic, 0, magic.length);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a map file");
+        int version = in.getInt();
+        if (version != VERSION) throw new IOException("Unsupported map file version " + version);
+        MapData mapData = new MapData(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+
+        in.wayTypes = new WayType[in.getInt()];
+        for (int i = 0; i < in.wayTypes.length; i++) in.wayTypes[i] = WayType.valueOf(in.getUTF());
+
+        String[] strings = new String[in.getInt()];
+        for (int i = 1; i < strings.length; i++) strings[i] = in.getUTF();
+        in.strings = new StringTable(strings);
+        mapData.setStrings(in.strings);
+
+        long regionLength = in.getLong();
+        long regionStart = in.position();
+        in.skip(regionLength);
+        long[] shapeOffsets = in.getLongs(in.getInt() + 1);
+        in.shapes = new MappedShapes(channel, regionStart, regionLength, shapeOffsets, in.wayTypes, mapData.getCoordinates());
+        mapData.setKdTree(readLevelsOfDetail(readSpatialIndex(in, in.shapes::shape), in));
+        readAddresses(mapData, in);
+        mapData.setCities(readWords(in));
+        mapData.setPostcodes(readWords(in));
+        mapData.setStreetNames(readWords(in));
+        mapData.setPointsOfInterest(readPointsOfInterest(in));
+        if (in.getBoolean()) mapData.setGraph(new RoadGraph(model, in));
+        return mapData;
+    }
+
+    /**
+     * Finds the index of every band of zoom levels of a spatial index with levels of detail
+     * @param index the spatial index, may be null
+     * @return the indexes other than the full index, in the order of their zoom levels
+     */
+    private static List<SpatialIndex> bands(SpatialIndex index) {
+        List<SpatialIndex> bands = new ArrayList<>();
+        if (index instanceof LevelOfDetailIndex) {
+            LevelOfDetailIndex levelOfDetail = (LevelOfDetailIndex) index;
+            for (SpatialIndex level : levelOfDetail.getLevels()) {
+                if (level != levelOfDetail.getBase() && !bands.contains(level)) bands.add(level);
+            }
+        }
+        return bands;
+    }
+
+    /**
+     * Finds every shape in the spatial index, in the indexes of its bands and every highway of the road graph, which
+     * are not in the index if their WayType is unknown. The shapes of the index come first, so their index in the file
+     * is their index in the index
+     * @param index the full spatial index, may be null
+     * @param bands the indexes of the bands of zoom levels, whose simplified shapes come after the shapes of the index
+     * @param graph the road graph, may be null
+     * @return the shapes in the order of their index
+     */
+    private static List<KDFriendlyShape> collectShapes(SpatialIndex index, List<SpatialIndex> bands, RoadGraph graph) {
+        List<KDFriendlyShape> shapes = new ArrayList<>();
+        Set<KDFriendlyShape> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (index != null) {
+            for (int i = 0; i < index.getShapeCount(); i++) {
+                seen.add(index.getShape(i));
+                shapes.add(index.getShape(i));
+            }
+        }
+        for (SpatialIndex band : bands) {
+            for (int i = 0; i < band.getShapeCount(); i++) {
+                if (seen.add(band.getShape(i))) shapes.add(band.getShape(i));
+            }
+        }
+        if (graph != null) {
+            for (RoadGraph.Edge e : graph.edges()) {
+                if (e.getHighway() != null && seen.add(e.getHighway())) shapes.add(e.getHighway());
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Adds every string of the map data to the string table of the writer
+     */
+    private static void collectStrings(MapData mapData, List<KDFriendlyShape> shapes, Writer out) {
+        for (KDFriendlyShape shape : shapes) out.addString(out.names.get(shape.getNameId()));
+        AddressIndex addresses = mapData.getAddresses();
+        for (int i = 0; i < addresses.size(); i++) {
+            Address a = addresses.getAddress(i);
+            out.addString(a.street());
+            out.addString(a.house());
+            out.addString(a.postcode());
+            out.addString(a.city());
+        }
+        for (TST<String> words : Arrays.asList(mapData.getCities(), mapData.getPostcodes(), mapData.getStreetNames())) {
+            for (String word : words.keys()) {
+                out.addString(word);
+                out.addString(words.get(word));
+            }
+        }
+        for (PointOfInterest poi : mapData.getPointsOfInterest()) {
+            out.addString(poi.getName());
+            out.addString(poi.getColorHex() == null ? null : poi.getColorHex().getHex());
+        }
+        if (mapData.getGraph() != null) {
+            for (RoadGraph.Edge e : mapData.getGraph().edges()) out.addString(mapData.getGraph().getName(e));
+        }
+    }
+
+    /**
+     * Writes the region of the file that is memory mapped when it is read, which is a record of every shape.
+     * The offsets of the records are written after the region
+     */
+    private static void writeMappedRegion(List<KDFriendlyShape> shapes, Writer out) throws IOException {
+        int n = shapes.size();
+        for (int i = 0; i < n; i++) out.shapeIds.put(shapes.get(i), i);
+
+        long[] shapeOffsets = new long[n + 1];
+        for (int i = 0; i < n; i++) shapeOffsets[i + 1] = shapeOffsets[i] + recordSize(shapes.get(i));
+
+        out.putLong(shapeOffsets[n]);
+        for (KDFriendlyShape shape : shapes) writeShape(shape, out);
+        out.putInt(n);
+        out.putLongs(shapeOffsets, 0, n + 1);
+    }
+
+    /**
+     * @return the number of bytes of the record of a shape
+     * @throws IOException If the shape can not be written to a map file
+     */
+    private static long recordSize(KDFriendlyShape shape) throws IOException {
+        long size;
+        if (shape instanceof OSMNode) {
+            size = 13 + 4 * 2;
+        } else if (shape instanceof OSMHighway) {
+            size = 13 + 8L * ((OSMHighway) shape).getPointCount() + 5;
+        } else if (shape instanceof OSMRelation) {
+            size = 13 + 8L * ((OSMRelation) shape).getPointCount() + ((OSMRelation) shape).getPointTypes().length;
+        } else if (shape instanceof OSMWay) {
+            size = 13 + 8L * ((OSMWay) shape).getPointCount();
+        } else {
+            throw new IOException("Shapes of " + shape.getClass() + " can not be written to a map file");
+        }
+        if (size > MappedShapes.WINDOW_STRIDE) throw new IOException("A shape of " + size + " bytes is too large for a map file");
+        return size;
+    }
+
+    private static void writeShape(KDFriendlyShape shape, Writer out) throws IOException {
+        float[] coords;
+        byte kind;
+        if (shape instanceof OSMNode) {
+            kind = NODE;
+            coords = new float[]{(float) ((OSMNode) shape).getX(), (float) ((OSMNode) shape).getY()};
+        } else {
+            kind = shape instanceof OSMHighway ? HIGHWAY : shape instanceof OSMRelation ? RELATION : WAY;
+            coords = ((PolygonApprox) shape).getCoords();
+        }
+        out.putByte(kind);
+        out.putInt(shape.getWayType().ordinal());
+        out.putInt(out.stringId(out.names.get(shape.getNameId())));
+        out.putInt(coords.length);
+        out.putFloats(coords, 0, coords.length);
+        if (kind == RELATION) {
+            byte[] pointTypes = ((OSMRelation) shape).getPointTypes();
+            out.putBytes(pointTypes, 0, pointTypes.length);
+        } else if (kind == HIGHWAY) {
+            OSMHighway h = (OSMHighway) shape;
+            out.putInt(h.getSpeedLimit());
+            out.putByte((byte) ((h.isOneWay() ? ONE_WAY : 0) | (h.isWalkingAllowed() ? WALKING : 0) | (h.isCyclingAllowed() ? CYCLING : 0)
+                    | (h.isDrivingAllowed() ? DRIVING : 0) | (h.isRoundabout() ? ROUNDABOUT : 0)));
+        }
+    }
+
+    /**
+     * Writes the kind of the spatial index followed by its arrays. WayTypes are written as indices in the WayType
+     * table, and shapes are written as their indices in the mapped region
+     */
+    private static void writeSpatialIndex(SpatialIndex index, Writer out) throws IOException {
+        if (index instanceof FlatKDTree) {
+            FlatKDTree tree = (FlatKDTree) index;
+            out.putByte(KD_TREE);
+            float[] splits = tree.getSplits();
+            out.putInt(splits.length);
+            out.putFloats(splits, 0, splits.length);
+            out.putInts(tree.getLeaves(), 0, splits.length);
+            int[] leafGroups = tree.getLeafGroups();
+            out.putInt(leafGroups.length);
+            out.putInts(leafGroups, 0, leafGroups.length);
+            writeTypes(tree.getGroupTypes(), out);
+            out.putInts(tree.getGroupStarts(), 0, tree.getGroupTypes().length + 1);
+            byte[] entries = tree.getEntries();
+            out.putInt(entries.length);
+            out.putBytes(entries, 0, entries.length);
+            out.putInt(tree.getShapeCount());
+        } else if (index instanceof STRTree) {
+            STRTree tree = (STRTree) index;
+            out.putByte(R_TREE);
+            int nodes = tree.getChildStarts().length;
+            out.putInt(nodes);
+            out.putFloats(tree.getNodeBounds(), 0, 4 * nodes);
+            out.putInts(tree.getChildStarts(), 0, nodes);
+            out.putInts(tree.getChildEnds(), 0, nodes);
+            out.putInt(tree.getLeafStart());
+            writeTypes(tree.getShapeTypes(), out);
+            out.putFloats(tree.getShapeBounds(), 0, 4 * tree.getShapeCount());
+        } else if (index == null) {
+            out.putByte(NO_INDEX);
+        } else {
+            throw new IOException("Spatial indexes of " + index.getClass() + " can not be written to a map file");
+        }
+    }
+
+    /**
+     * Writes the number of zoom levels, the index of every band of zoom levels with the indices in the mapped region
+     * of its shapes, and the band of every zoom level, where band 0 is the full index. Indexes without levels of detail
+     * are written as 0 zoom levels
+     */
+    private static void writeLevelsOfDetail(SpatialIndex index, List<SpatialIndex> bands, Writer out) throws IOException {
+        if (!(index instanceof LevelOfDetailIndex)) {
+            out.putInt(0);
+            return;
+        }
+        SpatialIndex[] levels = ((LevelOfDetailIndex) index).getLevels();
+        out.putInt(levels.length);
+        out.putInt(bands.size());
+        for (SpatialIndex band : bands) {
+            int[] ids = new int[band.getShapeCount()];
+            for (int i = 0; i < ids.length; i++) ids[i] = out.shapeId(band.getShape(i));
+            out.putInt(ids.length);
+            out.putInts(ids, 0, ids.length);
+            writeSpatialIndex(band, out);
+        }
+        int[] levelBands = new int[levels.length];
+        for (int i = 0; i < levels.length; i++) levelBands[i] = bands.indexOf(levels[i]) + 1;
+        out.putInts(levelBands, 0, levelBands.length);
+    }
+
+    /**
+     * Reads the levels of detail of the spatial index, if it has any
+     * @param base the full spatial index
+     * @return the spatial index with its levels of detail, or the full index if it has none
+     */
+    private static SpatialIndex readLevelsOfDetail(SpatialIndex base, Reader in) throws IOException {
+        int zoomLevels = in.getInt();
+        if (zoomLevels == 0) return base;
+        MappedShapes shapes = in.shapes;
+        SpatialIndex[] bands = new SpatialIndex[in.getInt() + 1];
+        bands[0] = base;
+        for (int b = 1; b < bands.length; b++) {
+            int[] ids = in.getInts(in.getInt());
+            bands[b] = readSpatialIndex(in, id -> shapes.shape(ids[id]));
+        }
+        int[] levelBands = in.getInts(zoomLevels);
+        SpatialIndex[] levels = new SpatialIndex[zoomLevels];
+        for (int i = 0; i < zoomLevels; i++) levels[i] = bands[levelBands[i]];
+        return new LevelOfDetailIndex(base, levels);
+    }
+
+    /**
+     * Reads a spatial index. The shapes are not decoded until a search finds them
+     * @param shapes loads a shape of the index from its index in the index
+     */
+    private static SpatialIndex readSpatialIndex(Reader in, IntFunction<KDFriendlyShape> shapes) throws IOException {
+        byte kind = in.getByte();
+        switch (kind) {
+            case KD_TREE:
+                int nodes = in.getInt();
+                float[] splits = in.getFloats(nodes);
+                int[] leaves = in.getInts(nodes);
+                int[] leafGroups = in.getInts(in.getInt());
+                short[] groupTypes = readTypes(in);
+                int[] groupStarts = in.getInts(groupTypes.length + 1);
+                byte[] entries = in.getBytes(in.getInt());
+                return new FlatKDTree(splits, leaves, leafGroups, groupTypes, groupStarts, entries, in.getInt(), in.strings, in.shapes.arena, shapes);
+            case R_TREE:
+                nodes = in.getInt();
+                float[] nodeBounds = in.getFloats(4 * nodes);
+                int[] childStarts = in.getInts(nodes);
+                int[] childEnds = in.getInts(nodes);
+                int leafStart = in.getInt();
+                short[] shapeTypes = readTypes(in);
+                float[] shapeBounds = in.getFloats(4 * shapeTypes.length);
+                return new STRTree(nodeBounds, childStarts, childEnds, leafStart, shapeTypes, shapeBounds, in.strings, in.shapes.arena, shapes);
+            case NO_INDEX:
+                return null;
+            default:
+                throw new IOException("Unknown spatial index kind " + kind + " in map file");
+        }
+    }
+
+    /**
+     * Writes WayType ordinals, which are also the indices in the WayType table of the file
+     */
+    private static void writeTypes(short[] types, Writer out) throws IOException {
+        int[] ids = new int[types.length];
+        for (int i = 0; i < ids.length; i++) ids[i] = types[i];
+        out.putInt(ids.length);
+        out.putInts(ids, 0, ids.length);
+    }
+
+    /**
+     * Reads indices in the WayType table of the file as WayType ordinals
+     */
+    private static short[] readTypes(Reader in) throws IOException {
+        int[] ids = in.getInts(in.getInt());
+        short[] types = new short[ids.length];
+        for (int i = 0; i < ids.length; i++) types[i] = (short) in.wayTypes[ids[i]].ordinal();
+        return types;
+    }
+
+    private static void writeAddresses(AddressIndex addresses, Writer out) throws IOException {
+        int n = addresses.size();
+        int[] fields = new int[4 * n];
+        float[] coords = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            Address a = addresses.getAddress(i);
+            fields[4 * i] = out.stringId(a.street());
+            fields[4 * i + 1] = out.stringId(a.house());
+            fields[4 * i + 2] = out.stringId(a.postcode());
+            fields[4 * i + 3] = out.stringId(a.city());
+            coords[2 * i] = addresses.getX(i);
+            coords[2 * i + 1] = addresses.getY(i);
+        }
+        out.putInt(n);
+        out.putInts(fields, 0, 4 * n);
+        out.putFloats(coords, 0, 2 * n);
+    }
+
+    private static void readAddresses(MapData mapData, Reader in) throws IOException {
+        int n = in.getInt();
+        int[] fields = in.getInts(4 * n);
+        float[] coords = in.getFloats(2 * n);
+        AddressIndex addresses = mapData.getAddresses();
+        for (int i = 0; i < n; i++) {
+            addresses.put(fields[4 * i], fields[4 * i + 1], fields[4 * i + 2], fields[4 * i + 3], coords[2 * i], coords[2 * i + 1]);
+        }
+    }
+
+    private static void writeWords(TST<String> words, Writer out) throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        for (String word : words.keys()) {
+            ids.add(out.stringId(word));
+            ids.add(out.stringId(words.get(word)));
+        }
+        out.putInt(ids.size());
+        out.putInts(toArray(ids), 0, ids.size());
+    }
+
+    private static TST<String> readWords(Reader in) throws IOException {
+        int[] ids = in.getInts(in.getInt());
+        TST<String> words = new TST<>();
+        for (int i = 0; i < ids.length; i += 2) words.put(in.strings.get(ids[i]), in.strings.get(ids[i + 1]));
+        return words;
+    }
+
+    private static void writePointsOfInterest(List<PointOfInterest> pointsOfInterest, Writer out) throws IOException {
+        out.putInt(pointsOfInterest.size());
+        for (PointOfInterest poi : pointsOfInterest) {
+            out.putInt(out.stringId(poi.getName()));
+            out.putInt(out.stringId(poi.getColorHex() == null ? null : poi.getColorHex().getHex()));
+            out.putDouble(poi.getCoord().getX());
+            out.putDouble(poi.getCoord().getY());
+        }
+    }
+
+    private static List<PointOfInterest> readPointsOfInterest(Reader in) throws IOException {
+        int n = in.getInt();
+        List<PointOfInterest> pointsOfInterest = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String name = in.strings.get(in.getInt());
+            String hex = in.strings.get(in.getInt());
+            Point2D coord = new Point2D.Double(in.getDouble(), in.getDouble());
+            pointsOfInterest.add(new PointOfInterest(coord, name, hex == null ? null : new ColorHex(hex)));
+        }
+        return pointsOfInterest;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) array[i] = list.get(i);
+        return array;
+    }
+
+    /**
+     * Writes primitives and arrays of primitives to a channel through a direct buffer, and keeps the indices of the
+     * strings and shapes that have been written. The string table of the file only has the strings that are written,
+     * and is built by the writer, so writing a map never changes the string table of the map. The names of shapes are
+     * looked up in the string table of the map and written by their ids in the string table of the file
+     */
+    public static class Writer {
+        private static final int BUFFER_SIZE = 1 << 20;
+        private final WritableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final StringTable strings = new StringTable(); //The string table of the file
+        private final StringTable names;                         //The string table of the map
+        private final Map<KDFriendlyShape, Integer> shapeIds = new IdentityHashMap<>();
+
+        private Writer(WritableByteChannel channel, StringTable names) {
+            this.channel = channel;
+            this.names = names;
+        }
+
+        private void addString(String s) {
+            strings.id(s);
+        }
+
+        /**
+         * @param s a string of the map data, may be null
+         * @return the index of the string in the string table
+         */
+        public int stringId(String s) {
+            int id = strings.find(s);
+            if (id < 0) throw new IllegalStateException("The string " + s + " is not in the string table");
+            return id;
+        }
+
+        /**
+         * @param shape a shape in the map file, may be null
+         * @return the index of the shape, or -1 if it is null or not in the map file
+         */
+        public int shapeId(KDFriendlyShape shape) {
+            Integer id = shape == null ? null : shapeIds.get(shape);
+            return id == null ? -1 : id;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+
+        public void putBoolean(boolean b) throws IOException {
+            putByte((byte) (b ? 1 : 0));
+        }
+
+        public void putByte(byte b) throws IOException {
+            ensure(1);
+            buf.put(b);
+        }
+
+        public void putInt(int i) throws IOException {
+            ensure(4);
+            buf.putInt(i);
+        }
+
+        public void putFloat(float f) throws IOException {
+            ensure(4);
+            buf.putFloat(f);
+        }
+
+        public void putDouble(double d) throws IOException {
+            ensure(8);
+            buf.putDouble(d);
+        }
+
+        public void putLong(long l) throws IOException {
+            ensure(8);
+            buf.putLong(l);
+        }
+
+        public void putUTF(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        public void putBytes(byte[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (!buf.hasRemaining()) flush();
+                int count = Math.min(length, buf.remaining());
+                buf.put(a, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public void putInts(int[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(4);
+                int count = Math.min(length, buf.remaining() / 4);
+                buf.asIntBuffer().put(a, offset, count);
+                buf.position(buf.position() + 4 * count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public void putFloats(float[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(4);
+                int count = Math.min(length, buf.remaining() / 4);
+                buf.asFloatBuffer().put(a, offset, count);
+                buf.position(buf.position() + 4 * count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public void putLongs(long[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(8);
+                int count = Math.min(length, buf.remaining() / 8);
+                buf.asLongBuffer().put(a, offset, count);
+                buf.position(buf.position() + 8 * count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public void putDoubles(double[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(8);
+                int count = Math.min(length, buf.remaining() / 8);
+                buf.asDoubleBuffer().put(a, offset, count);
+                buf.position(buf.position() + 8 * count);
+                offset += count;
+                length -= count;
+            }
+        }
+    }
+
+    /**
+     * Reads primitives and arrays of primitives from a file through a direct buffer, and keeps the strings and
+     * shapes of the file
+     */
+    public static class Reader {
+        private static final int BUFFER_SIZE = 1 << 20;
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private WayType[] wayTypes;
+        private StringTable strings;
+        private MappedShapes shapes;
+
+        private Reader(FileChannel channel) {
+            this.channel = channel;
+            buf.limit(0);
+        }
+
+        /**
+         * @param id the index of a string in the string table
+         * @return the string, may be null
+         */
+        public String string(int id) {
+            return strings.get(id);
+        }
+
+        /**
+         * @return the string table of the file, which is the string table of the map data that is read
+         */
+        public StringTable getStrings() {
+            return strings;
+        }
+
+        /**
+         * @param id the index of a shape, or -1
+         * @return the shape, or null if the index is -1
+         */
+        public KDFriendlyShape shape(int id) {
+            return shapes.shape(id);
+        }
+
+        /**
+         * @return the position in the file of the next byte to be read
+         * @throws IOException If the position of the file could not be read
+         */
+        private long position() throws IOException {
+            return channel.position() - buf.remaining();
+        }
+
+        /**
+         * Skips a number of bytes without reading them
+         * @param bytes the number of bytes
+         * @throws IOException If the position of the file could not be changed
+         */
+        private void skip(long bytes) throws IOException {
+            if (bytes <= buf.remaining()) {
+                buf.position(buf.position() + (int) bytes);
+                return;
+            }
+            channel.position(channel.position() + bytes - buf.remaining());
+            buf.limit(0);
+        }
+
+        /**
+         * Makes sure the buffer holds at least a number of bytes
+         * @param bytes the number of bytes, at most the size of the buffer
+         * @throws IOException If the end of the file is reached first
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() >= bytes) return;
+            buf.compact();
+            while (buf.position() < bytes) {
+                if (channel.read(buf) < 0) throw new IOException("Unexpected end of map file");
+            }
+            buf.flip();
+        }
+
+        public boolean getBoolean() throws IOException {
+            ensure(1);
+            return buf.get() != 0;
+        }
+
+        public byte getByte() throws IOException {
+            ensure(1);
+            return buf.get();
+        }
+
+        public int getInt() throws IOException {
+            ensure(4);
+            return buf.getInt();
+        }
+
+        public float getFloat() throws IOException {
+            ensure(4);
+            return buf.getFloat();
+        }
+
+        public double getDouble() throws IOException {
+            ensure(8);
+            return buf.getDouble();
+        }
+
+        public String getUTF() throws IOException {
+            byte[] bytes = getBytes(getInt());
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public byte[] getBytes(int length) throws IOException {
+            byte[] a = new byte[length];
+            getBytes(a, 0, length);
+            return a;
+        }
+
+        private void getBytes(byte[] a, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(1);
+                int count = Math.min(length, buf.remaining());
+                buf.get(a, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        public int[] getInts(int length) throws IOException {
+            int[] a = new int[length];
+            int offset = 0;
+            while (offset < length) {
+                ensure(4);
+                int count = Math.min(length - offset, buf.remaining() / 4);
+                buf.asIntBuffer().get(a, offset, count);
+                buf.position(buf.position() + 4 * count);
+                offset += count;
+            }
+            return a;
+        }
+
+        public float[] getFloats(int length) throws IOException {
+            float[] a = new float[length];
+            int offset = 0;
+            while (offset < length) {
+                ensure(4);
+                int count = Math.min(length - offset, buf.remaining() / 4);
+                buf.asFloatBuffer().get(a, offset, count);
+                buf.position(buf.position() + 4 * count);
+                offset += count;
+            }
+            return a;
+        }
+
+        public long getLong() throws IOException {
+            ensure(8);
+            return buf.getLong();
+        }
+
+        public long[] getLongs(int length) throws IOException {
+            long[] a = new long[length];
+            int offset = 0;
+            while (offset < length) {
+                ensure(8);
+                int count = Math.min(length - offset, buf.remaining() / 8);
+                buf.asLongBuffer().get(a, offset, count);
+                buf.position(buf.position() + 8 * count);
+                offset += count;
+            }
+            return a;
+        }
+
+        public double[] getDoubles(int length) throws IOException {
+            double[] a = new double[length];
+            int offset = 0;
+            while (offset < length) {
+                ensure(8);
+                int count = Math.min(length - offset, buf.remaining() / 8);
+                buf.asDoubleBuffer().get(a, offset, count);
+                buf.position(buf.position() + 8 * count);
+                offset += count;
+            }
+            return a;
+        }
+    }
+
+    /**
+     * The shapes of a map file, in a memory mapped region of the file.
+     * The region is mapped in windows that overlap by half, so every record, which is at most half a window, lies
+     * entirely in the window of its offset. A shape is decoded the first time it is needed and then kept, so the
+     * spatial index and the road graph share the object.
+     * The threads that render tiles decode shapes at once without a lock, as every decode reads from its own duplicate
+     * of a window. The shape is published with compareAndSet, so if two threads decode the same shape, both of them
+     * use the one that was set first, and the points of the other only take up space in the arena
+     */
+    private static class MappedShapes {
+        private static final int WINDOW_BITS = 29;
+        private static final long WINDOW_STRIDE = 1L << WINDOW_BITS; // every window is twice the stride
+        private final MappedByteBuffer[] windows;
+        private final long[] shapeOffsets;
+        private final WayType[] wayTypes;
+        private final AtomicReferenceArray<KDFriendlyShape> shapes;
+        private final CoordinateArena arena;
+
+        /**
+         * Maps the region of the file
+         * @param channel the channel of the file
+         * @param start the position of the region in the file
+         * @param length the length of the region
+         * @param shapeOffsets the offset of every shape in the region, followed by the offset after the last shape
+         * @param wayTypes the WayTypes of the file
+         * @param arena the arena that the points of the decoded shapes are stored in
+         * @throws IOException If the file could not be mapped
+         */
+        MappedShapes(FileChannel channel, long start, long length, long[] shapeOffsets, WayType[] wayTypes, CoordinateArena arena) throws IOException {
+            windows = new MappedByteBuffer[(int) ((length + WINDOW_STRIDE - 1) >>> WINDOW_BITS)];
+            for (int k = 0; k < windows.length; k++) {
+                long offset = (long) k << WINDOW_BITS;
+                windows[k] = channel.map(FileChannel.MapMode.READ_ONLY, start + offset, Math.min(2 * WINDOW_STRIDE, length - offset));
+            }
+            this.shapeOffsets = shapeOffsets;
+            this.wayTypes = wayTypes;
+            this.arena = arena;
+            shapes = new AtomicReferenceArray<>(shapeOffsets.length - 1);
+        }
+
+        /**
+         * @param offset the offset of a record in the region
+         * @return a buffer of its own, positioned at the record
+         */
+        private ByteBuffer record(long offset) {
+            int k = (int) (offset >>> WINDOW_BITS);
+            ByteBuffer buf = windows[k].duplicate();
+            buf.position((int) (offset - ((long) k << WINDOW_BITS)));
+            return buf;
+        }
+
+        /**
+         * @param id the index of a shape, or -1
+         * @return the shape, or null if the index is -1
+         */
+        KDFriendlyShape shape(int id) {
+            if (id < 0) return null;
+            KDFriendlyShape shape = shapes.get(id);
+            if (shape != null) return shape;
+            shapes.compareAndSet(id, null, decodeShape(record(shapeOffsets[id])));
+            return shapes.get(id);
+        }
+
+        private KDFriendlyShape decodeShape(ByteBuffer buf) {
+            byte kind = buf.get();
+            WayType type = wayTypes[buf.getInt()];
+            int nameId = buf.getInt();
+            float[] coords = new float[buf.getInt()];
+            buf.asFloatBuffer().get(coords);
+            buf.position(buf.position() + 4 * coords.length);
+            switch (kind) {
+                case NODE:
+                    return new OSMNode(new Point2D.Float(coords[0], coords[1]), type, nameId);
+                case WAY:
+                    OSMWay way = new OSMWay(arena, coords);
+                    way.setWayType(type);
+                    way.setNameId(nameId);
+                    return way;
+                case HIGHWAY:
+                    OSMHighway h = new OSMHighway(arena, coords);
+                    h.setWayType(type);
+                    h.setNameId(nameId);
+                    h.setSpeedLimit(buf.getInt());
+                    byte flags = buf.get();
+                    if ((flags & ONE_WAY) != 0) h.setOneWay();
+                    h.setWalkingAllowed((flags & WALKING) != 0);
+                    h.setCyclingAllowed((flags & CYCLING) != 0);
+                    h.setDrivingAllowed((flags & DRIVING) != 0);
+                    h.setIsRoundabout((flags & ROUNDABOUT) != 0);
+                    return h;
+                case RELATION:
+                    byte[] pointTypes = new byte[coords.length / 2];
+                    buf.get(pointTypes);
+                    OSMRelation relation = new OSMRelation(arena, coords, pointTypes);
+                    relation.setWayType(type);
+                    relation.setNameId(nameId);
+                    return relation;
+                default:
+                    throw new IllegalStateException("Unknown shape kind " + kind + " in map file");
+            }
+        }
+    }
+}
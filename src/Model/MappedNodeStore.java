@@ -0,0 +1,250 @@
+package Model;
+
+import Model.OSM.SimpleOSMNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A store of node coordinates in a memory mapped temporary file, so the nodes of large files do not have to fit on
+ * the heap. The operating system keeps the pages that are used in memory and writes the rest to the disk.
+ * As long as the ids are put in increasing order, the nodes are stored as a dense sorted array of records, with a
+ * small index on the heap of the first id of every block of records. The first time an id is put out of order, the
+ * nodes are moved to a paged layout, where the ids are split in pages of 1024 ids. A page table on the heap maps the
+ * page of an id to a page of the file, and the pages of the file are allocated one after another the first time one of
+ * their ids is put, so the file only grows with the pages that are used. Negative ids, which are only used by editors
+ * for new nodes, and ids larger than any OSM id are kept on the heap
+ */
+public class MappedNodeStore implements NodeStore {
+    private static final int RECORD_SIZE = 16;          // long id, int x, int y
+    private static final int SLOT_SIZE = 8;             // int x, int y
+    private static final int PAGE_BITS = 10;            // every page holds the slots of 1024 consecutive ids
+    private static final int PAGE_SIZE = SLOT_SIZE << PAGE_BITS;
+    private static final int TABLE_BITS = 16;           // every part of the page table maps 65536 pages
+    private static final int WINDOW_BITS = 26;          // every mapped window is 64MB
+    private static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+    private static final int BLOCK_SIZE = 1024;         // records per entry in the index of the sorted layout
+    private static final long MAX_KEY = 1L << 40;       // larger ids than any OSM id are kept on the heap
+    private static final int TABLE_PARTS = (int) (MAX_KEY >>> (PAGE_BITS + TABLE_BITS));
+
+    private File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private List<MappedByteBuffer> windows = new ArrayList<>();
+
+    private boolean isSorted = true;
+    private long size;               // the number of records in the sorted layout
+    private long lastKey;
+    private long[] blockFirstKey = new long[64];
+    private int[][] pageTable;       // pageTable[page >>> TABLE_BITS][page & mask] = the page of the file + 1, or 0
+    private int pageCount;           // the number of pages of the file in the paged layout
+    private LongToPointMap heapKeys;
+
+    /**
+     * Creates an empty store in a new temporary file
+     * @throws IOException If the temporary file could not be created
+     */
+    public MappedNodeStore() throws IOException {
+        file = File.createTempFile("osm-nodes", ".tmp");
+        file.deleteOnExit(); //In case the store is never closed
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    @Override
+    public void put(long key, float x, float y) {
+        if (key < 0 || key >= MAX_KEY) {
+            if (heapKeys == null) heapKeys = new LongToPointMap();
+            heapKeys.put(key, x, y);
+            return;
+        }
+        if (isSorted) {
+            if (size == 0 || key > lastKey) {
+                if (size % BLOCK_SIZE == 0) {
+                    int block = (int) (size / BLOCK_SIZE);
+                    if (block == blockFirstKey.length) blockFirstKey = Arrays.copyOf(blockFirstKey, block * 2);
+                    blockFirstKey[block] = key;
+                }
+                long position = size * RECORD_SIZE;
+                MappedByteBuffer window = window(position);
+                int offset = (int) (position & (WINDOW_SIZE - 1));
+                window.putLong(offset, key);
+                window.putInt(offset + 8, Float.floatToRawIntBits(x));
+                window.putInt(offset + 12, Float.floatToRawIntBits(y));
+                size++;
+                lastKey = key;
+                return;
+            }
+            long record = find(key);
+            if (record >= 0) {
+                long position = record * RECORD_SIZE;
+                MappedByteBuffer window = window(position);
+                int offset = (int) (position & (WINDOW_SIZE - 1));
+                window.putInt(offset + 8, Float.floatToRawIntBits(x));
+                window.putInt(offset + 12, Float.floatToRawIntBits(y));
+                return;
+            }
+            makePaged();
+        }
+        putPaged(key, Float.floatToRawIntBits(x), Float.floatToRawIntBits(y));
+    }
+
+    @Override
+    public SimpleOSMNode get(long key) {
+        if (key < 0 || key >= MAX_KEY) return heapKeys == null ? null : heapKeys.get(key);
+        if (isSorted) {
+            long record = find(key);
+            if (record < 0) return null;
+            long position = record * RECORD_SIZE;
+            MappedByteBuffer window = window(position);
+            int offset = (int) (position & (WINDOW_SIZE - 1));
+            return new SimpleOSMNode(Float.intBitsToFloat(window.getInt(offset + 8)), Float.intBitsToFloat(window.getInt(offset + 12)));
+        }
+        long position = slotPosition(key, false);
+        if (position < 0) return null;
+        MappedByteBuffer window = window(position);
+        int offset = (int) (position & (WINDOW_SIZE - 1));
+        int x = window.getInt(offset);
+        if (x == 0) return null;
+        return new SimpleOSMNode(Float.intBitsToFloat(~x), Float.intBitsToFloat(~window.getInt(offset + 4)));
+    }
+
+    /**
+     * Releases the mapped windows and deletes the temporary file
+     */
+    @Override
+    public void close() {
+        release(file, randomAccessFile, windows);
+        windows = null;
+        pageTable = null;
+    }
+
+    /**
+     * Finds a record in the sorted layout with binary search, first in the index and then in a block
+     * @param key the id of the node
+     * @return the number of the record, or -1 if the node has not been added
+     */
+    private long find(long key) {
+        int blocks = (int) ((size + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        int block = Arrays.binarySearch(blockFirstKey, 0, blocks, key);
+        if (block >= 0) return (long) block * BLOCK_SIZE;
+        block = -block - 2;
+        if (block < 0) return -1;
+        long lo = (long) block * BLOCK_SIZE + 1, hi = Math.min(size, (long) (block + 1) * BLOCK_SIZE) - 1;
+        while (lo <= hi) {
+            long mid = (lo + hi) >>> 1;
+            long position = mid * RECORD_SIZE;
+            long midKey = window(position).getLong((int) (position & (WINDOW_SIZE - 1)));
+            if (midKey < key) lo = mid + 1;
+            else if (midKey > key) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the records of the sorted layout to the paged layout in a new file
+     */
+    private void makePaged() {
+        try {
+            File sortedFile = file;
+            RandomAccessFile sortedRandomAccessFile = randomAccessFile;
+            List<MappedByteBuffer> sortedWindows = windows;
+            file = File.createTempFile("osm-nodes", ".tmp");
+            file.deleteOnExit();
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+            windows = new ArrayList<>();
+            pageTable = new int[TABLE_PARTS][];
+            isSorted = false;
+            for (long record = 0; record < size; record++) {
+                long position = record * RECORD_SIZE;
+                MappedByteBuffer window = sortedWindows.get((int) (position >>> WINDOW_BITS));
+                int offset = (int) (position & (WINDOW_SIZE - 1));
+                putPaged(window.getLong(offset), window.getInt(offset + 8), window.getInt(offset + 12));
+            }
+            blockFirstKey = null;
+            release(sortedFile, sortedRandomAccessFile, sortedWindows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stores the coordinates in the slot of the id in its page. The bits are inverted, so a slot that was never written,
+     * which is all zeros, can not be mistaken for a node
+     */
+    private void putPaged(long key, int x, int y) {
+        long position = slotPosition(key, true);
+        MappedByteBuffer window = window(position);
+        int offset = (int) (position & (WINDOW_SIZE - 1));
+        window.putInt(offset, ~x);
+        window.putInt(offset + 4, ~y);
+    }
+
+    /**
+     * Finds the slot of an id in the paged layout through the page table
+     * @param key the id of the node
+     * @param allocate whether a page is allocated at the end of the file if the page of the id has none
+     * @return the position of the slot in the file, or -1 if the page of the id has none and none is allocated
+     */
+    private long slotPosition(long key, boolean allocate) {
+        long page = key >>> PAGE_BITS;
+        int part = (int) (page >>> TABLE_BITS);
+        int[] table = pageTable[part];
+        if (table == null) {
+            if (!allocate) return -1;
+            table = pageTable[part] = new int[1 << TABLE_BITS];
+        }
+        int entry = (int) (page & ((1 << TABLE_BITS) - 1));
+        if (table[entry] == 0) {
+            if (!allocate) return -1;
+            table[entry] = ++pageCount;
+        }
+        return (long) (table[entry] - 1) * PAGE_SIZE + (key & ((1 << PAGE_BITS) - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * Closes a temporary file and deletes it. The windows are dropped before the file is closed, as a file can not be
+     * deleted on some systems while it is mapped. If it can not be deleted yet, it is deleted when the program exits
+     * @param file the temporary file
+     * @param randomAccessFile the file that is open, which also closes its channel
+     * @param windows the mapped windows of the file
+     */
+    private static void release(File file, RandomAccessFile randomAccessFile, List<MappedByteBuffer> windows) {
+        windows.clear();
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            //The file is still deleted below, or when the program exits
+        }
+        if (!file.delete()) file.deleteOnExit();
+    }
+
+    /**
+     * Get the window of the file with a given position, and maps it if it has not been mapped yet
+     * @param position the position in the file
+     * @return the window that contains the position
+     */
+    private MappedByteBuffer window(long position) {
+        int index = (int) (position >>> WINDOW_BITS);
+        while (windows.size() <= index) windows.add(null);
+        MappedByteBuffer window = windows.get(index);
+        if (window == null) {
+            try {
+                window = channel.map(FileChannel.MapMode.READ_WRITE, (long) index << WINDOW_BITS, WINDOW_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            windows.set(index, window);
+        }
+        return window;
+    }
+}
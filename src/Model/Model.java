@@ -1,7 +1,7 @@
 package Model;
 
 import Controller.DrawStyleController;
-import Controller.OSMHandler;
+import Controller.OSMImportPipeline;
 import Model.Address.Address;
 import Model.Exceptions.FileExtensionNotSupportedException;
 import Model.Graph.RoadGraph;
@@ -16,7 +16,7 @@ import View.Popups.ProgressPopup;
 import lib.TST;
 import org.xml.sax.*;
 
-import Model.KDTree.KDTreeNode;
+import Model.KDTree.SpatialIndex;
 
 import javax.swing.*;
 import java.awt.geom.*;
@@ -27,8 +27,10 @@ import java.util.Timer;
 import java.util.zip.ZipInputStream;
 
 public class Model extends Observable implements Serializable {
+    private static final long serialVersionUID = -8800833490678360410L;
 
     private static final String COASTLINES_FILE_PATH = "resources/coastlines.bin";
+    private static boolean useSAXParser; //Parses osm files with SAX instead of the OSMXMLScanner
     public MapData mapData;
     private static List<Language> languageList;
     public AffineTransform transform = new AffineTransform();
@@ -85,7 +87,7 @@ public class Model extends Observable implements Serializable {
             isCoastlinesLoaded = false;
         }
 
-        load(filename, isAbsolute);
+        //The drawstyles are loaded first, as the levels of detail of a map depend on them
         try {
             mapDrawStyles = new DrawStyleParser().autoloadAllStyles(DRAW_STYLE_DIRECTORY);
             drawStyleController = new DrawStyleController(mapDrawStyles);
@@ -93,13 +95,28 @@ public class Model extends Observable implements Serializable {
             e.printStackTrace();
             languages = new HashMap<>();
         }
+        load(filename, isAbsolute);
         update();
     }
 
+    /**
+     * Creates instance of Model by importing an osm file without the load bar, the draw styles and the coastlines of
+     * the world, so a map can be built where there is no screen
+     * @param parser The parser of the file
+     * @throws IOException If the file could not be read
+     * @throws SAXException If the parsing went wrong
+     */
+    public Model(OSMImportPipeline.Parser parser) throws IOException, SAXException {
+        new OSMImportPipeline(this).run(parser);
+        mapData.createKD();
+    }
+
     private void loadCoastLines() throws IOException, ClassNotFoundException {
         AutoFileReader.ObjectReader<CoastLines> binReader;
         binReader = new AutoFileReader.ObjectReader<CoastLines>(COASTLINES_FILE_PATH, true);
         coastLines = binReader.getObject();
+        //The levels of detail are made while the map loads, so the first frame does not wait for them
+        coastLines.getLevelOfDetail(1, DrawStyleController.getZoomLevelPixelSizes());
     }
 
     public void add(KDFriendlyShape shape) {
@@ -126,10 +143,8 @@ public class Model extends Observable implements Serializable {
      * @param filename
      */
     public void save(String filename) {
-        ObjectOutputStream fileOutput;
-        try {
-            fileOutput = new ObjectOutputStream(new FileOutputStream(filename));
-            fileOutput.writeObject(mapData);
+        try (FileOutputStream fileOutput = new FileOutputStream(filename)) {
+            MapFile.write(mapData, fileOutput.getChannel());
         } catch (IOException e) {
             JOptionPane.showMessageDialog(new JFrame(), Model.getString("save-error"), Model.getString("error"), JOptionPane.ERROR_MESSAGE);
         }
@@ -181,11 +196,15 @@ public class Model extends Observable implements Serializable {
     public void load(String filename, boolean isAbsolute) {
         try {
             if (filename.endsWith(".osm")) {
-                loadOSM(new AutoFileReader.XMLReader(filename, !isAbsolute));
+                AutoFileReader.OSMReader osmReader = new AutoFileReader.OSMReader(filename, !isAbsolute, useSAXParser);
+                loadOSM(osmReader, osmReader::parse);
+            } else if (filename.endsWith(".pbf")) {
+                AutoFileReader.PBFReader pbfReader = new AutoFileReader.PBFReader(filename, !isAbsolute);
+                loadOSM(pbfReader, pbfReader::parse);
             } else if (filename.endsWith(".zip")) {
                 loadZIP(new AutoFileReader.ZipReader(filename, !isAbsolute));
             } else if (filename.endsWith(".bin")) {
-                loadBIN(new AutoFileReader.ObjectReader<MapData>(filename, !isAbsolute));
+                loadBIN(new AutoFileReader.MapFileReader(filename, !isAbsolute));
             } else {
                 throw new FileExtensionNotSupportedException();
             }
@@ -206,15 +225,17 @@ public class Model extends Observable implements Serializable {
     }
 
     /**
-     * Loads specifically osm-files
-     * @param xmlReader The xml-reader with the osm inpustream
+     * Loads specifically osm-files, either as xml or pbf
+     * @param reader The reader with the osm inpustream
+     * @param parser The parser of the file in the reader
      * @throws IOException  If the inputstream was not valid
      * @throws SAXException If the parsing went wrong
      */
-    private void loadOSM(AutoFileReader.XMLReader xmlReader) throws IOException, SAXException {
-        initiateLoadBar(xmlReader.getInputStream());
-        xmlReader.parse(new OSMHandler(this));
+    private void loadOSM(AutoFileReader reader, OSMImportPipeline.Parser parser) throws IOException, SAXException {
+        initiateLoadBar(reader.getInputStream());
+        new OSMImportPipeline(this).run(parser);
         mapData.createKD();
+        mapData.createLevelsOfDetail(drawStyleController.getMaximumZoomLevels(), DrawStyleController.getZoomLevelPixelSizes());
         stopLoadBar();
     }
 
@@ -231,22 +252,30 @@ public class Model extends Observable implements Serializable {
         int fileExtensionPosition = filePath.lastIndexOf(".")+1;
         String fileExtension = filePath.substring(fileExtensionPosition);
         if (fileExtension.equals("osm")) {
-            loadOSM(new AutoFileReader.XMLReader(firstEntry));
+            AutoFileReader.OSMReader osmReader = new AutoFileReader.OSMReader(firstEntry, useSAXParser);
+            loadOSM(osmReader, osmReader::parse);
+        } else if (fileExtension.equals("pbf")) {
+            AutoFileReader.PBFReader pbfReader = new AutoFileReader.PBFReader(firstEntry);
+            loadOSM(pbfReader, pbfReader::parse);
         } else if(fileExtension.equals("bin")) {
-            loadBIN(new AutoFileReader.ObjectReader<MapData>(firstEntry));
+            loadBIN(new AutoFileReader.MapFileReader(firstEntry));
         }
     }
 
     /**
-     * Loads specifically bin-files
-     * @param objectReader The bin-reader to be loaded
+     * Loads specifically bin-files, either map files or files of the serialized mapdata saved by older versions
+     * @param reader The bin-reader to be loaded
      * @throws IOException  If the inputstream was not valid
      * @throws ClassNotFoundException If the casting of the file to mapdata went wrong
      */
-    private void loadBIN(AutoFileReader.ObjectReader<MapData> objectReader) throws IOException, ClassNotFoundException {
-        initiateLoadBar(objectReader.getInputStream());
-        mapData = objectReader.getObject();
-        mapData.getGraph().setModel(this);
+    private void loadBIN(AutoFileReader.MapFileReader reader) throws IOException, ClassNotFoundException {
+        initiateLoadBar(reader.getInputStream());
+        if (reader.isMapFile()) {
+            mapData = reader.getMapData(this);
+        } else {
+            mapData = new AutoFileReader.ObjectReader<MapData>(reader.getInputStream()).getObject();
+        }
+        if (mapData.getGraph() != null) mapData.getGraph().setModel(this);
         stopLoadBar();
     }
 
@@ -278,6 +307,14 @@ public class Model extends Observable implements Serializable {
         return coastLines;
     }
 
+    /**
+     * @param zoomLevel the zoom level
+     * @return the coastlines simplified to the size of a pixel in the zoom level
+     */
+    public List<KDFriendlyShape> getCoastLines(int zoomLevel) {
+        return coastLines.getLevelOfDetail(zoomLevel, DrawStyleController.getZoomLevelPixelSizes());
+    }
+
     public ArrayList<MapDrawStyle> getMapDrawStyles() {
         return mapDrawStyles;
     }
@@ -363,7 +400,7 @@ public class Model extends Observable implements Serializable {
     }
 
 
-    public KDTreeNode getKdTree() {
+    public SpatialIndex getKdTree() {
         return mapData.getKdTree();
     }
 
@@ -505,6 +542,14 @@ public class Model extends Observable implements Serializable {
         setLanguage(languageList.get(0).getName());
     }
 
+    /**
+     * Static method that chooses the parser of the osm files that are loaded from now on
+     * @param useSAXParser true to parse them with SAX, false to parse them with the faster OSMXMLScanner
+     */
+    public static void setUseSAXParser(boolean useSAXParser) {
+        Model.useSAXParser = useSAXParser;
+    }
+
     /**
      * Static method to get all languages
      * @return list of all available languages
@@ -0,0 +1,28 @@
+package Model;
+
+import Model.OSM.SimpleOSMNode;
+
+/**
+ * Interface for a store of the coordinates of the nodes that are being parsed
+ */
+public interface NodeStore {
+    /**
+     * Adds the coordinates of a node, or replaces them if the node has already been added
+     * @param key the id of the node
+     * @param x x-coordinates for the node
+     * @param y y-coordinates for the node
+     */
+    void put(long key, float x, float y);
+
+    /**
+     * Get the coordinates of a node as a new point
+     * @param key the id of the node
+     * @return a SimpleOSMNode with the coordinates of the node, or null if it has not been added
+     */
+    SimpleOSMNode get(long key);
+
+    /**
+     * Releases the resources of the store, after which it can not be used
+     */
+    default void close() {}
+}
@@ -1,31 +1,39 @@
 package Model.OSM;
 
-import Model.Graph.RoadGraph;
+import Model.KDTree.CoordinateArena;
 
 import java.awt.*;
 import java.awt.geom.Point2D;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * A class to represent all roads
  */
 public class OSMHighway extends OSMWay {
+    private static final long serialVersionUID = 1082752850923355627L;
     private boolean isOneWay;
     private int speedLimit;
     private boolean drivingAllowed;
     private boolean walkingAllowed;
     private boolean cyclingAllowed;
     private boolean isRoundabout;
-    private List<OSMHighway> restrictedHighways;
-    private List<RoadGraph.Edge> associatedEdges;
 
     /**
      * A constructor that initialize it as a way
+     * @param arena the arena that the points are stored in
      * @param way to be convertesd to a way
      */
-    public OSMHighway(List<SimpleOSMNode> way) {
-        super(way);
+    public OSMHighway(CoordinateArena arena, List<SimpleOSMNode> way) {
+        super(arena, way);
+    }
+
+    /**
+     * A constructor that initialize it from the coordinates of a way
+     * @param arena the arena that the points are stored in
+     * @param coords the x and y coordinates of the points after each other
+     */
+    public OSMHighway(CoordinateArena arena, float[] coords) {
+        super(arena, coords);
     }
 
 
@@ -76,22 +84,4 @@ public class OSMHighway extends OSMWay {
     public void setIsRoundabout(boolean isRoundabout) {
         this.isRoundabout = isRoundabout;
     }
-
-    public List<OSMHighway> getRestrictedHighways() {
-        return restrictedHighways;
-    }
-
-    public void addRestrictedHighway(OSMHighway highway) {
-        if (restrictedHighways == null) restrictedHighways = new ArrayList<>();
-        restrictedHighways.add(highway);
-    }
-
-    public List<RoadGraph.Edge> getAssociatedEdges() {
-        return associatedEdges;
-    }
-
-    public void addAssociatedEdge(RoadGraph.Edge edge) {
-        if (associatedEdges == null) associatedEdges = new ArrayList<>();
-        associatedEdges.add(edge);
-    }
 }
@@ -1,6 +1,7 @@
 package Model.OSM;
 
 import Model.KDTree.KDFriendlyShape;
+import Model.StringTable;
 
 import java.awt.*;
 import java.awt.geom.*;
@@ -9,22 +10,35 @@ import java.util.*;
 import java.util.List;
 
 /**
- * A class to represent a simple point on the map
+ * A class to represent a simple point on the map.
+ * The coordinates are kept as floats, like the points of the other shapes, instead of extending Point2D.Double
  */
-public class OSMNode extends Point2D.Double implements KDFriendlyShape, Serializable {
+public class OSMNode implements KDFriendlyShape, Serializable {
+    private static final long serialVersionUID = -3632611931627957333L;
+    private float x, y;
     private WayType wayType;
-    private String name;
+    private int nameId;
+    private transient String legacyName; //The name of a node read from a file saved before the string table
 
     /**
      * A consrtuctor to initialize its fields
      * @param coords the coords of the given point
      * @param wayType which wayType the node is
-     * @param name the name of the road
+     * @param nameId the id of the name of the node in the string table of the map
      */
-    public OSMNode(Point2D coords, WayType wayType, String name) {
-        super(coords.getX(), coords.getY());
+    public OSMNode(Point2D coords, WayType wayType, int nameId) {
+        this.x = (float) coords.getX();
+        this.y = (float) coords.getY();
         this.wayType = wayType;
-        this.name = name;
+        this.nameId = nameId;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
     }
 
     @Override
@@ -44,7 +58,7 @@ public class OSMNode extends Point2D.Double implements KDFriendlyShape, Serializ
 
     @Override
     public boolean contains(Point2D p) {
-        return equals(p);
+        return contains(p.getX(), p.getY());
     }
 
     @Override
@@ -84,7 +98,7 @@ public class OSMNode extends Point2D.Double implements KDFriendlyShape, Serializ
 
     @Override
     public Point2D getCenterPoint() {
-        return this;
+        return new Point2D.Float(x, y);
     }
 
     @Override
@@ -99,7 +113,7 @@ public class OSMNode extends Point2D.Double implements KDFriendlyShape, Serializ
 
     @Override
     public Point2D nearestPoint(Point2D p) {
-        return this;
+        return getCenterPoint();
     }
 
     @Override
@@ -110,12 +124,39 @@ public class OSMNode extends Point2D.Double implements KDFriendlyShape, Serializ
     }
 
     @Override
-    public String getName() {
-        return name;
+    public int getNameId() {
+        return nameId;
+    }
+
+    /**
+     * Sets the name of a node read from a file saved before the string table, by adding it to the string table of its
+     * map
+     * @param strings the string table of the map
+     */
+    public void internLegacyName(StringTable strings) {
+        if (legacyName != null) nameId = strings.id(legacyName);
+        legacyName = null;
     }
 
     @Override
     public void setWayType(WayType type) {
         this.wayType = type;
     }
-}
\ No newline at end of file
+
+    /**
+     * The serialized form of an OSMNode from when it extended Point2D.Double, which is still found in bin files saved
+     * as serialized MapData. AutoFileReader.ObjectReader reads it in place of OSMNode, and it is replaced by an OSMNode
+     * when it has been read
+     */
+    public static class Legacy extends Point2D.Double {
+        private static final long serialVersionUID = -3637827184549135294L;
+        private WayType wayType;
+        private String name;
+
+        private Object readResolve() {
+            OSMNode node = new OSMNode(this, wayType, 0);
+            node.legacyName = name;
+            return node;
+        }
+    }
+}
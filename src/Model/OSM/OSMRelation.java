@@ -1,6 +1,8 @@
 package Model.OSM;
 
+import Model.KDTree.CoordinateArena;
 import Model.KDTree.MultiPolygonApprox;
+import Model.KDTree.PolygonApprox;
 import Model.Model;
 
 import java.awt.geom.Point2D;
@@ -10,7 +12,18 @@ import java.util.List;
  * Created by Matt on 09-05-2017.
  */
 public class OSMRelation extends MultiPolygonApprox {
-    public OSMRelation(List<? extends List<? extends Point2D>> rel) {
-        super(rel);
+    private static final long serialVersionUID = -3049552752033685404L;
+
+    public OSMRelation(CoordinateArena arena, List<? extends List<? extends Point2D>> rel) {
+        super(arena, rel);
+    }
+
+    public OSMRelation(CoordinateArena arena, float[] coords, byte[] pointtypes) {
+        super(arena, coords, pointtypes);
+    }
+
+    @Override
+    protected PolygonApprox copy(float[] coords, boolean[] kept) {
+        return new OSMRelation(getArena(), coords, keptPointTypes(kept));
     }
 }
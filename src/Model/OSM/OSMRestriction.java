@@ -0,0 +1,42 @@
+package Model.OSM;
+
+/**
+ * A class to represent a turn restriction relation
+ */
+public class OSMRestriction {
+    private OSMHighway from;
+    private OSMHighway to;
+    private SimpleOSMNode via;
+    private boolean isOnly;
+
+    /**
+     * A constructor to create a turn restriction
+     * @param from the highway the turn is made from
+     * @param to the highway the turn is made on to
+     * @param via the node where the turn is made, null if the relation has no via node
+     * @param isOnly true for only_* restrictions, where the turn on to the highway is the only one allowed,
+     *               false for no_* restrictions, where the turn is forbidden
+     */
+    public OSMRestriction(OSMHighway from, OSMHighway to, SimpleOSMNode via, boolean isOnly) {
+        this.from = from;
+        this.to = to;
+        this.via = via;
+        this.isOnly = isOnly;
+    }
+
+    public OSMHighway getFrom() {
+        return from;
+    }
+
+    public OSMHighway getTo() {
+        return to;
+    }
+
+    public SimpleOSMNode getVia() {
+        return via;
+    }
+
+    public boolean isOnly() {
+        return isOnly;
+    }
+}
@@ -1,5 +1,6 @@
 package Model.OSM;
 
+import Model.KDTree.CoordinateArena;
 import Model.KDTree.PolygonApprox;
 import Model.Model;
 
@@ -10,11 +11,31 @@ import java.util.List;
  * A class to represent a way
  */
 public class OSMWay extends PolygonApprox {
+    private static final long serialVersionUID = 3524230887350080836L;
+
     /**
      * A constructor to create a way containing a list of points2d
+     * @param arena the arena that the points are stored in
      * @param points the points that define a way
      */
-    public OSMWay(List<? extends Point2D> points) {
-        super(points);
+    public OSMWay(CoordinateArena arena, List<? extends Point2D> points) {
+        super(arena, points);
+    }
+
+    /**
+     * A constructor to create a way from its coordinates
+     * @param arena the arena that the points are stored in
+     * @param coords the x and y coordinates of the points after each other
+     */
+    public OSMWay(CoordinateArena arena, float[] coords) {
+        super(arena, coords);
+    }
+
+    /**
+     * The copy is only drawn, so highways are copied as ways without their routing information
+     */
+    @Override
+    protected PolygonApprox copy(float[] coords, boolean[] kept) {
+        return new OSMWay(getArena(), coords);
     }
 }
@@ -7,6 +7,8 @@ import java.awt.geom.Point2D;
  * not a vizual representation
  */
 public class SimpleOSMNode extends Point2D.Double {
+    private static final long serialVersionUID = 5422965488329455643L;
+
     /**
      * A constructor to create an OSMNode
      * @param x the x location
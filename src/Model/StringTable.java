@@ -0,0 +1,94 @@
+package Model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The distinct strings of a map, like the names of ways and the parts of addresses, where every string has an id.
+ * The import interns every name it keeps, so a name that is used by many ways and addresses is only one String, and
+ * the shapes, edges and addresses hold the id of their name instead of the name. A map file is written with a table
+ * of its own, so saving a map never changes its table, and a map read from a file uses the table of the file. Id 0 is
+ * null
+ */
+public class StringTable implements Serializable {
+    private static final long serialVersionUID = 1875072614714004177L;
+    private volatile String[] strings;
+    private int size;
+    private transient Map<String, Integer> ids; //Built on demand after the table is read
+
+    /**
+     * Creates an empty table
+     */
+    public StringTable() {
+        strings = new String[64];
+        size = 1;
+    }
+
+    /**
+     * Creates a table of strings that are already distinct, as they are read from a map file
+     * @param strings the strings in the order of their ids, where index 0 is null
+     */
+    public StringTable(String[] strings) {
+        this.strings = strings;
+        size = strings.length;
+    }
+
+    /**
+     * @param s a string, may be null
+     * @return the id of the string, which is added to the table if it is not there yet
+     */
+    public synchronized int id(String s) {
+        if (s == null) return 0;
+        Integer id = ids().get(s);
+        if (id == null) {
+            id = size;
+            if (size == strings.length) strings = Arrays.copyOf(strings, 2 * size);
+            strings[size++] = s;
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param s a string, may be null
+     * @return the id of the string, 0 if it is null, or -1 if it is not in the table
+     */
+    public synchronized int find(String s) {
+        if (s == null) return 0;
+        Integer id = ids().get(s);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param s a string, may be null
+     * @return the instance of the string in the table, which is added to the table if it is not there yet
+     */
+    public String intern(String s) {
+        return get(id(s));
+    }
+
+    /**
+     * @param id the id of a string
+     * @return the string, may be null
+     */
+    public String get(int id) {
+        return strings[id];
+    }
+
+    /**
+     * @return the number of ids, including id 0
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private Map<String, Integer> ids() {
+        if (ids == null) {
+            ids = new HashMap<>(2 * size);
+            for (int i = 1; i < size; i++) ids.put(strings[i], i);
+        }
+        return ids;
+    }
+}
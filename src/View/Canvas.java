@@ -3,13 +3,8 @@ package View;
 import Controller.DrawStyleController;
 import Model.*;
 import Model.Graph.RoadGraph;
-import Model.KDTree.KDFriendlyShape;
-import Model.KDTree.KDSearchRect;
-import Model.KDTree.KDTree;
-import Model.KDTree.KDTreeNode;
-import Model.MapDrawStyle.DrawStyle;
+import Model.KDTree.SpatialIndex;
 import Model.MapDrawStyle.LineType;
-import Model.MapDrawStyle.MapIcon;
 import Model.MapDrawStyle.StrokeStyle;
 import Model.OSM.WayType;
 
@@ -23,10 +18,12 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.List;
-import java.io.IOException;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Canvas extends JComponent implements Observer {
     private static final Point2D MAP_MARKER_STANDARD_DIMENSIONS = new Point2D.Double(60, 90);
@@ -34,52 +31,57 @@ public class Canvas extends JComponent implements Observer {
     private DrawStyleController dsc;
     private Graphics2D g;
     private boolean antiAlias;
-    private EnumMap<WayType, List<KDFriendlyShape>> wayTypeToShapeMap;
-    private KDTreeNode kdRoot;
-    private HashMap<KDFriendlyShape, Integer> shapeCounter;
-    private static final float ICON_ZOOM_FACTOR = 0.00001f;
+    private SpatialIndex kdTree;
+    private static final int TILE_SIZE = TileRenderer.TILE_SIZE;
+    private static final double MAX_PLACEHOLDER_SCALING = 4; //How much the tiles of another scale can be scaled to stand in for a tile
+    private final TileCache tileCache = new TileCache(Math.min(96L << 20, Runtime.getRuntime().maxMemory() / 8));
+    private Object[] tileState = {}; //What the cached tiles were drawn from, so they are cleared when it changes
+    private int tileGeneration; //Counts the times the cache has been cleared, so tiles rendered before are thrown away
+    private final Set<TileCache.Key> pendingTiles = ConcurrentHashMap.newKeySet();
+    private volatile double visibleScale; //Tiles of other scales are skipped by the workers, as they are zoomed away from
+    private final ExecutorService tileWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "Tile renderer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ThreadLocal<TileRenderer> tileRenderers = ThreadLocal.withInitial(() -> new TileRenderer(model, dsc));
     private double startZoomLevel,currentZoomLevel;
     private BufferedImage bufferedImage;
-    private Point2D botLeft,topRight;
-    private KDSearchRect searchRect;
-    private Rectangle2D waterBounds;
     private double minimumZoomLevel = 200000.0;
 
     public Canvas(Model model) {
         this.model = model;
         model.addObserver(this);
-        kdRoot = model.getKdTree();
+        kdTree = model.getKdTree();
         dsc = model.getDrawStyleController();
     }
 
     @Override
     protected void paintComponent(Graphics graphics) {
-        bufferedImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        if (bufferedImage == null || bufferedImage.getWidth() != getWidth() || bufferedImage.getHeight() != getHeight()) {
+            bufferedImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+        }
         Graphics2D g2d = bufferedImage.createGraphics();
         paintToImage(g2d);
+        g2d.dispose();
         graphics.drawImage(bufferedImage,getX(), getY(), this);
     }
 
     /**
-     * This method paints to a bufferedImage by using the bufferedImages Graphics2D
+     * This method paints to a bufferedImage by using the bufferedImages Graphics2D. The map is composed of the tiles
+     * that are visible, and the route, points of interest and markers are drawn on top of it
      * @param g2d is the graphic2D object retrieved from the bufferedImagte that is being painted upon.
      */
     private void paintToImage(Graphics2D g2d) {
-        shapeCounter = new HashMap<>();
         StrokeStyle defaultStrokeStyle = LineType.DEFAULT.strokeStyle;
         g = g2d;
+        drawTiles();
+
         g.setTransform(model.transform);
         g.setStroke(defaultStrokeStyle.createBasicStroke(1));
         if (antiAlias) g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        paintWater();
-        paintCoastLines();
-        KDRangeQuery(); //Searches KDTree for shapes via a range query based on the size of the canvas
-
-        drawWayTypes();
         drawPath();
-
-        drawIcons();
         drawPOI();
 
         drawMarkers();
@@ -89,68 +91,115 @@ public class Canvas extends JComponent implements Observer {
     }
 
     /**
-     * Draw icons from drawstyle
-     * @param drawStyle Drawstyle to be drawn from
-     * @param type Waytype that has the icon
+     * Draws the tiles that cover the canvas at the current scale. The tiles are in a grid from the origin of the model
+     * scaled to pixels, so panning only moves the grid and the tiles that were visible before are reused from the cache.
+     * Tiles that are not in the cache are rendered by the workers, and tiles of another scale stand in for them until
+     * they are ready
      */
-    private void drawIcons(DrawStyle drawStyle, WayType type) {
-        ImageIcon icon;
-        try {
-            icon = new AutoFileReader.ImageReader(drawStyle.getIcon().getPath()).getImageIcon();
-
-            for (Shape shape : wayTypeToShapeMap.get(type)) {
-                drawIcon(icon, shape);
+    private void drawTiles() {
+        Object[] state = {kdTree, model.getCurrentMapDrawStyle(), model.getCoastLines(), antiAlias};
+        if (!isSameState(state)) {
+            tileCache.clear();
+            pendingTiles.clear();
+            tileGeneration++;
+            tileState = state;
+        }
+        double scaleX = model.transform.getScaleX(), scaleY = model.transform.getScaleY();
+        visibleScale = scaleX;
+        long offsetX = Math.round(model.transform.getTranslateX()), offsetY = Math.round(model.transform.getTranslateY());
+        g = dsc.setGraphicBasedOnDrawStyle(g, dsc.getDrawStyle(WayType.WATER));
+        g.fillRect(0, 0, getWidth(), getHeight());
+        int firstColumn = (int) Math.floorDiv(-offsetX, TILE_SIZE), lastColumn = (int) Math.floorDiv(getWidth() - 1 - offsetX, TILE_SIZE);
+        int firstRow = (int) Math.floorDiv(-offsetY, TILE_SIZE), lastRow = (int) Math.floorDiv(getHeight() - 1 - offsetY, TILE_SIZE);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                TileCache.Key key = new TileCache.Key(scaleX, scaleY, column, row);
+                BufferedImage tile = tileCache.get(key);
+                int x = (int) ((long) column * TILE_SIZE + offsetX), y = (int) ((long) row * TILE_SIZE + offsetY);
+                if (tile != null) {
+                    g.drawImage(tile, x, y, this);
+                } else {
+                    requestTile(key);
+                    drawPlaceholder(key, x, y, offsetX, offsetY);
+                }
             }
-        } catch (IOException e) {
-            //Do nothing
         }
     }
 
-
     /**
-     * Draw icon
-     * @param icon The icon to be drawn
-     * @param shape The shape related to the icon
+     * Lets a worker render a tile, unless it is being rendered already. The tile is added to the cache on the event
+     * dispatch thread, and the canvas is repainted
+     * @param key the tile
      */
-    private  void drawIcon(ImageIcon icon, Shape shape) {
-        if (icon != null) {
-            AffineTransform imageTransform = new AffineTransform();
-            imageTransform.translate(shape.getBounds2D().getCenterX()-icon.getIconWidth()*ICON_ZOOM_FACTOR/2, shape.getBounds2D().getCenterY()-icon.getIconHeight()*ICON_ZOOM_FACTOR);
-            imageTransform.scale(ICON_ZOOM_FACTOR, ICON_ZOOM_FACTOR);
-            g.drawImage(icon.getImage(), imageTransform, this);
-        }
+    private void requestTile(TileCache.Key key) {
+        if (!pendingTiles.add(key)) return;
+        SpatialIndex index = kdTree;
+        boolean isAntiAliased = antiAlias;
+        int generation = tileGeneration;
+        tileWorkers.execute(() -> {
+            BufferedImage tile = null;
+            try {
+                if (key.scaleX == visibleScale) {
+                    tile = tileRenderers.get().render(index, isAntiAliased, key.scaleX, key.scaleY, key.column, key.row);
+                }
+            } finally {
+                BufferedImage rendered = tile;
+                SwingUtilities.invokeLater(() -> {
+                    if (generation != tileGeneration) return;
+                    pendingTiles.remove(key);
+                    if (rendered != null) {
+                        tileCache.put(key, rendered);
+                        repaint();
+                    }
+                });
+            }
+        });
     }
 
-
     /**
-     * Searching in kdTree with bottom left and top right coordinates and
-     * sets enum map for the current shapes
+     * Draws the cached tiles of other scales over the area of a tile that is not rendered yet, scaled to the current
+     * scale. Tiles of lower scales are preferred, as fewer of them cover the area, and they are drawn from the lowest
+     * scale up, so the sharpest tiles end on top
+     * @param key the tile that is not rendered yet
+     * @param x the left edge of the tile on the canvas
+     * @param y the top edge of the tile on the canvas
+     * @param offsetX the left edge of column 0 on the canvas
+     * @param offsetY the top edge of row 0 on the canvas
      */
-    private void KDRangeQuery() {
-        botLeft = new Point.Double(getBounds().getMinX(),getBounds().getMinY());
-        topRight = new Point.Double(getBounds().getMaxX(),getBounds().getMaxY());
-
-        botLeft = toModelCoords(botLeft);
-        topRight = toModelCoords(topRight);
-
-        searchRect = new KDSearchRect(botLeft, topRight);
-        wayTypeToShapeMap =  KDTree.searchKDTree(searchRect, kdRoot);
+    private void drawPlaceholder(TileCache.Key key, int x, int y, long offsetX, long offsetY) {
+        NavigableSet<Double> scales = tileCache.getScales().subSet(key.scaleX / MAX_PLACEHOLDER_SCALING, true, key.scaleX, false);
+        if (scales.isEmpty()) scales = tileCache.getScales().subSet(key.scaleX, false, key.scaleX * MAX_PLACEHOLDER_SCALING, true).descendingSet();
+        if (scales.isEmpty()) return;
+        Shape clip = g.getClip();
+        g.clipRect(x, y, TILE_SIZE, TILE_SIZE);
+        for (double scale : new ArrayList<>(scales)) {
+            double ratio = key.scaleX / scale;
+            double scaleY = key.scaleY == key.scaleX ? scale : key.scaleY / ratio;
+            //The columns and rows at the other scale that cover the tile
+            int firstColumn = (int) Math.floor(key.column / ratio), lastColumn = (int) Math.floor((key.column + 1) / ratio - 1e-9);
+            int firstRow = (int) Math.floor(key.row / ratio), lastRow = (int) Math.floor((key.row + 1) / ratio - 1e-9);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    BufferedImage tile = tileCache.get(new TileCache.Key(scale, scaleY, column, row));
+                    if (tile == null) continue;
+                    AffineTransform tileTransform = AffineTransform.getTranslateInstance(offsetX + column * TILE_SIZE * ratio, offsetY + row * TILE_SIZE * ratio);
+                    tileTransform.scale(ratio, ratio);
+                    g.drawImage(tile, tileTransform, this);
+                }
+            }
+        }
+        g.setClip(clip);
     }
 
     /**
-     * Paints a Rectrangle2D based on the canvas size as water to fill the ocean
+     * @return true if every part of the state is the same object as what the cached tiles were drawn from
      */
-    private void paintWater() {
-        botLeft = new Point.Double(getBounds().getMinX(),getBounds().getMinY());
-        topRight = new Point.Double(getBounds().getMaxX(),getBounds().getMaxY());
-
-        botLeft = toModelCoords(botLeft);
-        topRight = toModelCoords(topRight);
-
-        waterBounds = new Rectangle2D.Double(botLeft.getX(), botLeft.getY(),
-                topRight.getX()-botLeft.getX(), topRight.getY()-botLeft.getY());
-        g = dsc.setGraphicBasedOnDrawStyle(g,dsc.getDrawStyle(WayType.WATER));
-        g.fill(waterBounds);
+    private boolean isSameState(Object[] state) {
+        if (state.length != tileState.length) return false;
+        for (int i = 0; i < state.length; i++) {
+            if (state[i] != tileState[i]) return false;
+        }
+        return true;
     }
 
     /**
@@ -174,41 +223,6 @@ public class Canvas extends JComponent implements Observer {
         g.draw(mm);
     }
 
-    /**
-     * Paint all coastlines from model
-      */
-    private void paintCoastLines() {
-        DrawStyle drawStyle = dsc.getDrawStyle(WayType.NATURAL_COASTLINE);
-        g = dsc.setGraphicBasedOnDrawStyle(g, drawStyle);
-        for (KDFriendlyShape shape : model.getCoastLines()) {
-            g.fill(shape);
-        }
-    }
-
-    /**
-     * Draw shapes from the given drawstyle and waytype
-     * @param drawStyle Drawstyle to draw from
-     * @param type Waytype to be drawn
-     */
-    private void drawFromDrawStyle(DrawStyle drawStyle, WayType type) {
-        if (type.toString().startsWith("HIGHWAY_") || type.toString().startsWith("RAILWAY_")) {
-            g = dsc.setGraphicForHighways(g, drawStyle, getZoomLevel());
-        }
-        else {
-            g = dsc.setGraphicBasedOnDrawStyle(g, drawStyle);
-        }
-        if (getZoomLevel() <= dsc.getZoomLevel(drawStyle)){
-            if (dsc.checkIfArea(drawStyle)) {
-                fill(type);
-            }
-            else if (!dsc.checkIfArea(drawStyle)) {
-                draw(type);
-            }
-        }
-
-    }
-
-
     /**
      * Pan to a given position
      * @param dx x-coordinates
@@ -221,7 +235,9 @@ public class Canvas extends JComponent implements Observer {
 
     @Override
     public void update(Observable o, Object arg) {
-        kdRoot = model.getKdTree();
+        if (kdTree != model.getKdTree()) {
+            kdTree = model.getKdTree();
+        }
         repaint();
     }
 
@@ -303,55 +319,13 @@ public class Canvas extends JComponent implements Observer {
     }
 
     /**
-     * Toggle Antialiasing for the wayTypeToShapeMap
+     * Toggle Antialiasing for the shapes
      */
     void toggleAA() {
         antiAlias = !antiAlias;
         repaint();
     }
 
-    /**
-     * This method will draw every shape for the given WayType in the current EnumMap wayTypeToShapeMap
-     * @param type Waytype to draw
-     */
-    private void draw(WayType type) {
-        for (KDFriendlyShape shape : wayTypeToShapeMap.get(type)) {
-            shapeCounter.putIfAbsent(shape, 0);
-            int shapeDrawnCount = shapeCounter.get(shape);
-            if (shapeDrawnCount < 1) {
-                g.draw(shape);
-                shapeCounter.put(shape, shapeDrawnCount + 1);
-            }
-        }
-    }
-
-    /**
-     * This method will fill every shape for the given WayType in the current EnumMap wayTypeToShapeMap
-     * @param type Waytype to fill
-     */
-    private void fill(WayType type) {
-        for (KDFriendlyShape shape : wayTypeToShapeMap.get(type)) {
-            shapeCounter.putIfAbsent(shape, 0);
-            int shapeDrawnCount = shapeCounter.get(shape);
-            if (shapeDrawnCount < 1) {
-                g.fill(shape);
-                shapeCounter.put(shape, shapeDrawnCount + 1);
-            }
-        }
-    }
-
-    /**
-     * Draw all available waytypes
-     */
-    private void drawWayTypes(){
-        for (WayType type : WayType.values()) {
-            DrawStyle drawStyle = dsc.getDrawStyle(type);
-            if (drawStyle != null) {
-                drawFromDrawStyle(drawStyle, type);
-            }
-        }
-    }
-
     /**
      * Draws found path between destination and departure markers
      */
@@ -373,18 +347,6 @@ public class Canvas extends JComponent implements Observer {
         }
     }
 
-    /**
-     * Draws icons to all available waytypes
-     */
-    private void drawIcons(){
-        for (WayType type : WayType.values()) {
-            DrawStyle drawStyle = model.getCurrentMapDrawStyle().getDrawStyles().get(type);
-            if (drawStyle != null && drawStyle.getIcon() != MapIcon.NONE && drawStyle.getZoomLevel() >= getZoomLevel()) {
-                drawIcons(drawStyle, type);
-            }
-        }
-    }
-
     /**
      * Draws user specified points of interest
      */
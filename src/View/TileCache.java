@@ -0,0 +1,101 @@
+package View;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+/**
+ * A cache of rendered map tiles, where a tile is found by the scale it is rendered at and its column and row in the
+ * grid of tiles at that scale. When the tiles take up more memory than the budget, the tiles used the longest time ago
+ * are evicted first. The cache is only used from the event dispatch thread
+ */
+class TileCache {
+    private final long maxBytes;
+    private long bytes;
+    private final LinkedHashMap<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final TreeMap<Double, Integer> scaleCounts = new TreeMap<>(); //The number of tiles of every horizontal scale
+
+    /**
+     * @param maxBytes the largest number of bytes the pixels of the tiles can take up
+     */
+    TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the tile, or null if it is not in the cache
+     */
+    BufferedImage get(Key key) {
+        return tiles.get(key);
+    }
+
+    /**
+     * Adds a tile to the cache and evicts the least recently used tiles until the cache is within its budget
+     */
+    void put(Key key, BufferedImage tile) {
+        BufferedImage old = tiles.put(key, tile);
+        if (old != null) {
+            bytes -= bytesOf(old);
+        } else {
+            scaleCounts.merge(key.scaleX, 1, Integer::sum);
+        }
+        bytes += bytesOf(tile);
+        Iterator<Map.Entry<Key, BufferedImage>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && tiles.size() > 1) {
+            Map.Entry<Key, BufferedImage> entry = eldest.next();
+            bytes -= bytesOf(entry.getValue());
+            scaleCounts.computeIfPresent(entry.getKey().scaleX, (scale, count) -> count == 1 ? null : count - 1);
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the horizontal scales that the cache has tiles of, in increasing order
+     */
+    NavigableSet<Double> getScales() {
+        return scaleCounts.navigableKeySet();
+    }
+
+    /**
+     * Removes every tile, when the map or the way it is drawn has changed
+     */
+    void clear() {
+        tiles.clear();
+        scaleCounts.clear();
+        bytes = 0;
+    }
+
+    private static long bytesOf(BufferedImage tile) {
+        return (long) tile.getWidth() * tile.getHeight() * tile.getColorModel().getPixelSize() / 8;
+    }
+
+    /**
+     * The scale a tile is rendered at and its column and row in the grid of tiles at that scale
+     */
+    static class Key {
+        final double scaleX, scaleY;
+        final int column, row;
+
+        Key(double scaleX, double scaleY, int column, int row) {
+            this.scaleX = scaleX;
+            this.scaleY = scaleY;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return scaleX == k.scaleX && scaleY == k.scaleY && column == k.column && row == k.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * Double.hashCode(scaleX) + Double.hashCode(scaleY)) + column) + row;
+        }
+    }
+}
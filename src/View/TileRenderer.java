@@ -0,0 +1,215 @@
+package View;
+
+import Controller.DrawStyleController;
+import Model.AutoFileReader;
+import Model.KDTree.KDFriendlyShape;
+import Model.KDTree.KDSearchRect;
+import Model.KDTree.RangeQuery;
+import Model.KDTree.ShapeTable;
+import Model.KDTree.SpatialIndex;
+import Model.MapDrawStyle.DrawStyle;
+import Model.MapDrawStyle.LineType;
+import Model.MapDrawStyle.MapIcon;
+import Model.Model;
+import Model.OSM.WayType;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renders the water, coastlines, shapes and icons of map tiles. A renderer has its own range query and draws on the
+ * image of the tile with its own Graphics2D, so every thread that renders tiles has a renderer of its own
+ */
+class TileRenderer {
+    static final int TILE_SIZE = 512; //The width and height of a tile in pixels
+    private static final float ICON_ZOOM_FACTOR = 0.00001f;
+    private static final int SEARCH_MARGIN = 50; //Pixels outside a tile to search, so wide lines and icons at the edges are drawn
+    private static final Map<String, ImageIcon> icons = new ConcurrentHashMap<>();
+
+    private final Model model;
+    private final DrawStyleController dsc;
+    private Graphics2D g;
+    private SpatialIndex levelOfDetail;
+    private RangeQuery rangeQuery;
+    private ShapeTable.FlyweightShape shape; //Draws the shape of every index that the range query visits
+
+    TileRenderer(Model model, DrawStyleController dsc) {
+        this.model = model;
+        this.dsc = dsc;
+    }
+
+    /**
+     * Renders a tile
+     * @param kdTree the spatial index of the map
+     * @param antiAlias true if the shapes are drawn with anti aliasing
+     * @param scaleX the horizontal scale from model coordinates to pixels
+     * @param scaleY the vertical scale from model coordinates to pixels
+     * @param column the column of the tile
+     * @param row the row of the tile
+     * @return the tile
+     */
+    BufferedImage render(SpatialIndex kdTree, boolean antiAlias, double scaleX, double scaleY, int column, int row) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_3BYTE_BGR);
+        g = tile.createGraphics();
+        AffineTransform tileTransform = AffineTransform.getTranslateInstance(-(double) column * TILE_SIZE, -(double) row * TILE_SIZE);
+        tileTransform.scale(scaleX, scaleY);
+        g.setTransform(tileTransform);
+        g.setStroke(LineType.DEFAULT.strokeStyle.createBasicStroke(1));
+        if (antiAlias) g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Rectangle2D bounds = toModelBounds(tileTransform, 0);
+        paintWater(bounds);
+        paintCoastLines(bounds);
+        KDRangeQuery(kdTree, toModelBounds(tileTransform, SEARCH_MARGIN));
+
+        drawWayTypes();
+        drawIcons();
+
+        g.dispose();
+        g = null;
+        return tile;
+    }
+
+    /**
+     * @param tileTransform the transform from model coordinates to the pixels of a tile
+     * @param margin the pixels outside the tile to include
+     * @return the area of the tile in model coordinates
+     */
+    private Rectangle2D toModelBounds(AffineTransform tileTransform, int margin) {
+        try {
+            return tileTransform.createInverse().createTransformedShape(
+                    new Rectangle2D.Double(-margin, -margin, TILE_SIZE + 2 * margin, TILE_SIZE + 2 * margin)).getBounds2D();
+        } catch (NoninvertibleTransformException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Searching in the level of detail of kdTree for the zoom level of the tile with bottom left and top right
+     * coordinates, so the shapes within the area can be visited by the rangeQuery
+     * @param kdTree the spatial index of the map
+     * @param area the area in model coordinates
+     */
+    private void KDRangeQuery(SpatialIndex kdTree, Rectangle2D area) {
+        KDSearchRect searchRect = new KDSearchRect(new Point2D.Double(area.getMinX(), area.getMinY()), new Point2D.Double(area.getMaxX(), area.getMaxY()));
+        SpatialIndex index = kdTree.getLevelOfDetail(getZoomLevel());
+        if (rangeQuery == null || levelOfDetail != index) {
+            levelOfDetail = index;
+            rangeQuery = index.newRangeQuery();
+            shape = index.getShapeTable().new FlyweightShape();
+        }
+        rangeQuery.search(searchRect);
+    }
+
+    /**
+     * Paints a Rectrangle2D as water to fill the ocean
+     * @param waterBounds the area in model coordinates
+     */
+    private void paintWater(Rectangle2D waterBounds) {
+        g = dsc.setGraphicBasedOnDrawStyle(g,dsc.getDrawStyle(WayType.WATER));
+        g.fill(waterBounds);
+    }
+
+    /**
+     * Paint the coastlines of the zoom level from model within an area
+     * @param area the area in model coordinates
+      */
+    private void paintCoastLines(Rectangle2D area) {
+        DrawStyle drawStyle = dsc.getDrawStyle(WayType.NATURAL_COASTLINE);
+        g = dsc.setGraphicBasedOnDrawStyle(g, drawStyle);
+        for (KDFriendlyShape shape : model.getCoastLines(getZoomLevel())) {
+            if (shape.getBounds2D().intersects(area)) g.fill(shape);
+        }
+    }
+
+    /**
+     * Draw all available waytypes
+     */
+    private void drawWayTypes(){
+        for (WayType type : WayType.values()) {
+            DrawStyle drawStyle = dsc.getDrawStyle(type);
+            if (drawStyle != null) {
+                drawFromDrawStyle(drawStyle, type);
+            }
+        }
+    }
+
+    /**
+     * Draw shapes from the given drawstyle and waytype
+     * @param drawStyle Drawstyle to draw from
+     * @param type Waytype to be drawn
+     */
+    private void drawFromDrawStyle(DrawStyle drawStyle, WayType type) {
+        if (type.toString().startsWith("HIGHWAY_") || type.toString().startsWith("RAILWAY_")) {
+            g = dsc.setGraphicForHighways(g, drawStyle, getZoomLevel());
+        }
+        else {
+            g = dsc.setGraphicBasedOnDrawStyle(g, drawStyle);
+        }
+        if (getZoomLevel() <= dsc.getZoomLevel(drawStyle)){
+            if (dsc.checkIfArea(drawStyle)) {
+                rangeQuery.forEach(type, id -> g.fill(shape.of(id)));
+            }
+            else {
+                rangeQuery.forEach(type, id -> g.draw(shape.of(id)));
+            }
+        }
+    }
+
+    /**
+     * Draws icons to all available waytypes
+     */
+    private void drawIcons(){
+        for (WayType type : WayType.values()) {
+            DrawStyle drawStyle = model.getCurrentMapDrawStyle().getDrawStyles().get(type);
+            if (drawStyle != null && drawStyle.getIcon() != MapIcon.NONE && drawStyle.getZoomLevel() >= getZoomLevel()) {
+                drawIcons(drawStyle, type);
+            }
+        }
+    }
+
+    /**
+     * Draw icons from drawstyle. The icons are read once and shared by all renderers
+     * @param drawStyle Drawstyle to be drawn from
+     * @param type Waytype that has the icon
+     */
+    private void drawIcons(DrawStyle drawStyle, WayType type) {
+        ImageIcon icon = icons.get(drawStyle.getIcon().getPath());
+        try {
+            if (icon == null) {
+                icon = new AutoFileReader.ImageReader(drawStyle.getIcon().getPath()).getImageIcon();
+                icons.put(drawStyle.getIcon().getPath(), icon);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        ImageIcon loadedIcon = icon;
+        rangeQuery.forEach(type, id -> drawIcon(loadedIcon, shape.of(id)));
+    }
+
+    /**
+     * Draw icon
+     * @param icon The icon to be drawn
+     * @param shape The shape related to the icon
+     */
+    private void drawIcon(ImageIcon icon, Shape shape) {
+        if (icon != null) {
+            AffineTransform imageTransform = new AffineTransform();
+            imageTransform.translate(shape.getBounds2D().getCenterX()-icon.getIconWidth()*ICON_ZOOM_FACTOR/2, shape.getBounds2D().getCenterY()-icon.getIconHeight()*ICON_ZOOM_FACTOR);
+            imageTransform.scale(ICON_ZOOM_FACTOR, ICON_ZOOM_FACTOR);
+            g.drawImage(icon.getImage(), imageTransform, null);
+        }
+    }
+
+    private int getZoomLevel(){
+        return dsc.getCurrentZoomLevel(g.getTransform());
+    }
+}
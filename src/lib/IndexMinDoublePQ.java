@@ -0,0 +1,168 @@
+package lib;
+
+import java.util.NoSuchElementException;
+
+/**
+ *  The {@code IndexMinDoublePQ} class is an {@link IndexMinPQ} whose keys are primitive doubles.
+ *  The keys are kept in a double array, so inserting and changing a key does not box it and comparing two keys
+ *  does not follow references, which is what the shortest path searches do for every edge they relax.
+ *  The indices are the vertex ids of a graph, between {@code 0} and {@code maxN - 1}.
+ *  <p>
+ *  The <em>insert</em>, <em>delete-the-minimum</em> and <em>decrease-key</em>
+ *  operations take logarithmic time.
+ *  The <em>is-empty</em>, <em>size</em>, <em>min-key</em> and <em>contains</em>
+ *  operations take constant time.
+ *  Construction takes time proportional to the specified capacity.
+ */
+public class IndexMinDoublePQ {
+    private final int maxN;     // maximum number of elements on PQ
+    private int n;              // number of elements on PQ
+    private final int[] pq;     // binary heap using 1-based indexing
+    private final int[] qp;     // inverse of pq - qp[pq[i]] = pq[qp[i]] = i
+    private final double[] keys; // keys[i] = priority of i
+
+    /**
+     * Initializes an empty indexed priority queue with indices between {@code 0}
+     * and {@code maxN - 1}.
+     * @param  maxN the keys on this priority queue are index from {@code 0}
+     *         {@code maxN - 1}
+     * @throws IllegalArgumentException if {@code maxN < 0}
+     */
+    public IndexMinDoublePQ(int maxN) {
+        if (maxN < 0) throw new IllegalArgumentException();
+        this.maxN = maxN;
+        keys = new double[maxN + 1];
+        pq   = new int[maxN + 1];
+        qp   = new int[maxN + 1];
+        for (int i = 0; i <= maxN; i++)
+            qp[i] = -1;
+    }
+
+    /**
+     * @return {@code true} if this priority queue is empty
+     */
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * @param  i an index
+     * @return {@code true} if {@code i} is an index on this priority queue
+     * @throws IndexOutOfBoundsException unless {@code 0 <= i < maxN}
+     */
+    public boolean contains(int i) {
+        if (i < 0 || i >= maxN) throw new IndexOutOfBoundsException();
+        return qp[i] != -1;
+    }
+
+    /**
+     * @return the number of keys on this priority queue
+     */
+    public int size() {
+        return n;
+    }
+
+    /**
+     * Associates key with index {@code i}.
+     *
+     * @param  i an index
+     * @param  key the key to associate with index {@code i}
+     * @throws IndexOutOfBoundsException unless {@code 0 <= i < maxN}
+     * @throws IllegalArgumentException if there already is an item associated
+     *         with index {@code i}
+     */
+    public void insert(int i, double key) {
+        if (contains(i)) throw new IllegalArgumentException("index is already in the priority queue");
+        n++;
+        qp[i] = n;
+        pq[n] = i;
+        keys[i] = key;
+        swim(n);
+    }
+
+    /**
+     * @return a minimum key
+     * @throws NoSuchElementException if this priority queue is empty
+     */
+    public double minKey() {
+        if (n == 0) throw new NoSuchElementException("Priority queue underflow");
+        return keys[pq[1]];
+    }
+
+    /**
+     * Removes a minimum key and returns its associated index.
+     * @return an index associated with a minimum key
+     * @throws NoSuchElementException if this priority queue is empty
+     */
+    public int delMin() {
+        if (n == 0) throw new NoSuchElementException("Priority queue underflow");
+        int min = pq[1];
+        exch(1, n--);
+        sink(1);
+        qp[min] = -1;
+        return min;
+    }
+
+    /**
+     * Decrease the key associated with index {@code i} to the specified value.
+     *
+     * @param  i the index of the key to decrease
+     * @param  key decrease the key associated with index {@code i} to this key
+     * @throws IndexOutOfBoundsException unless {@code 0 <= i < maxN}
+     * @throws IllegalArgumentException if {@code key >= keyOf(i)}
+     * @throws NoSuchElementException no key is associated with index {@code i}
+     */
+    public void decreaseKey(int i, double key) {
+        if (!contains(i)) throw new NoSuchElementException("index is not in the priority queue");
+        if (keys[i] <= key)
+            throw new IllegalArgumentException("Calling decreaseKey() with given argument would not strictly decrease the key");
+        keys[i] = key;
+        swim(qp[i]);
+    }
+
+    /**
+     * Removes every key, which takes time proportional to the number of keys on the priority queue
+     */
+    public void clear() {
+        for (int k = 1; k <= n; k++) qp[pq[k]] = -1;
+        n = 0;
+    }
+
+   /***************************************************************************
+    * Heap helper functions.
+    ***************************************************************************/
+    private void swim(int k) {
+        int i = pq[k];
+        double key = keys[i];
+        while (k > 1 && keys[pq[k/2]] > key) {
+            pq[k] = pq[k/2];
+            qp[pq[k]] = k;
+            k = k/2;
+        }
+        pq[k] = i;
+        qp[i] = k;
+    }
+
+    private void sink(int k) {
+        int i = pq[k];
+        double key = keys[i];
+        while (2*k <= n) {
+            int j = 2*k;
+            if (j < n && keys[pq[j]] > keys[pq[j+1]]) j++;
+            if (!(key > keys[pq[j]])) break;
+            pq[k] = pq[j];
+            qp[pq[k]] = k;
+            k = j;
+        }
+        pq[k] = i;
+        qp[i] = k;
+    }
+
+    private void exch(int i, int j) {
+        int swap = pq[i];
+        pq[i] = pq[j];
+        pq[j] = swap;
+        qp[pq[i]] = i;
+        qp[pq[j]] = j;
+    }
+}
@@ -0,0 +1,81 @@
+package Controller;
+
+import Model.AutoFileReader;
+import Model.Exceptions.IllegalLanguageException;
+import Model.KDTree.ShapeTable;
+import Model.Model;
+import Model.OSM.WayType;
+import Model.Strings.StringHandler;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class OSMImportTests {
+    private static final String STRING_DIRECTORY = "resources/languages";
+
+    @BeforeClass
+    public static void setLanguage() throws Exception, IllegalLanguageException {
+        Model.setLanguageList(StringHandler.getLanguageList(STRING_DIRECTORY));
+    }
+
+    private static Model importOSM(String osm) throws Exception {
+        AutoFileReader.OSMReader reader = new AutoFileReader.OSMReader(new ByteArrayInputStream(osm.getBytes(StandardCharsets.UTF_8)));
+        return new Model(reader::parse);
+    }
+
+    @Test
+    public void TestTagsAreMatchedWithWayTypes() {
+        assertEquals(WayType.HIGHWAY_PEDESTRIAN, new OSMTags(new String[]{"highway", "pedestrian"}, WayType.UNKNOWN).getType());
+        assertEquals(WayType.HIGHWAY_PEDESTRIAN_AREA, new OSMTags(new String[]{"area", "yes", "highway", "pedestrian"}, WayType.UNKNOWN).getType());
+        assertEquals(WayType.UNKNOWN, new OSMTags(new String[]{"name", "Vej"}, WayType.UNKNOWN).getType());
+        assertNull(new OSMTags(new String[]{"name", "Vej"}, null).getType());
+    }
+
+    @Test
+    public void TestRoadTagsAreOnlyReadForHighways() {
+        OSMTags highway = new OSMTags(new String[]{"highway", "residential", "maxspeed", "DK:rural", "oneway", "-1", "foot", "no"}, WayType.UNKNOWN);
+        assertEquals(Integer.valueOf(80), highway.getSpeedLimit());
+        assertTrue(highway.isOneWay());
+        assertTrue(highway.isReverseOneWay());
+        assertFalse(highway.isWalkingAllowed());
+        assertTrue(highway.isDrivingAllowed());
+
+        OSMTags building = new OSMTags(new String[]{"building", "yes", "maxspeed", "30", "oneway", "yes"}, WayType.UNKNOWN);
+        assertNull(building.getSpeedLimit());
+        assertFalse(building.isOneWay());
+    }
+
+    @Test
+    public void TestRestrictionAndAddressTags() {
+        OSMTags restriction = new OSMTags(new String[]{"type", "restriction", "restriction", "only_straight_on"}, WayType.UNKNOWN);
+        assertTrue(restriction.isRestriction());
+        assertTrue(restriction.isOnlyRestriction());
+        assertFalse(new OSMTags(new String[]{"type", "restriction", "restriction", "no_left_turn"}, WayType.UNKNOWN).isOnlyRestriction());
+
+        OSMTags address = new OSMTags(new String[]{"addr:street", "Alle", "addr:housenumber", "12A", "addr:postcode", "2100"}, null);
+        assertFalse(address.hasAddress());
+        address = new OSMTags(new String[]{"addr:street", "Alle", "addr:housenumber", "12A", "addr:postcode", "2100", "addr:city", "Frederiksberg"}, null);
+        assertTrue(address.hasAddress());
+        assertEquals("Frederiksberg", address.getCity());
+    }
+
+    @Test
+    public void TestTagsDoNotCarryOverToTheNextElement() throws Exception {
+        //The name and the area tag of the node belong to the node only, so the way is an unnamed pedestrian street
+        Model model = importOSM("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\">\n" +
+                "<bounds minlat=\"55.0000\" minlon=\"12.0000\" maxlat=\"55.0100\" maxlon=\"12.0200\"/>\n" +
+                "<node id=\"1\" lat=\"55.0010\" lon=\"12.0010\">\n <tag k=\"name\" v=\"Kaffe\"/>\n <tag k=\"area\" v=\"yes\"/>\n</node>\n" +
+                "<node id=\"2\" lat=\"55.0020\" lon=\"12.0020\"/>\n" +
+                "<node id=\"3\" lat=\"55.0030\" lon=\"12.0030\"/>\n" +
+                "<way id=\"10\">\n <nd ref=\"2\"/><nd ref=\"3\"/>\n <tag k=\"highway\" v=\"pedestrian\"/>\n</way>\n" +
+                "</osm>\n");
+        ShapeTable shapes = model.getMapData().getKdTree().getShapeTable();
+        assertEquals(1, shapes.size());
+        assertEquals(WayType.HIGHWAY_PEDESTRIAN, shapes.getShape(0).getWayType());
+        assertEquals(0, shapes.getShape(0).getNameId());
+    }
+}
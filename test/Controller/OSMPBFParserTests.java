@@ -0,0 +1,70 @@
+package Controller;
+
+import Model.AutoFileReader;
+import Model.Address.Address;
+import Model.Exceptions.IllegalLanguageException;
+import Model.MapData;
+import Model.Model;
+import Model.Strings.StringHandler;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OSMPBFParserTests {
+    private static final String STRING_DIRECTORY = "resources/languages";
+    private static final String SMALL_MAP_FILE = "test/resources/small_map.osm";
+    //The same map as a PBF file, with both plain and dense nodes, and both a compressed and an uncompressed block
+    private static final String SMALL_MAP_PBF_FILE = "test/resources/small_map.pbf";
+
+    private static List<String> parse(OSMPBFParser parser) throws Exception {
+        RecordingOSMHandler handler = new RecordingOSMHandler();
+        parser.parse(handler);
+        return handler.getCalls();
+    }
+
+    @Test
+    public void TestPBFParsesLikeXML() throws Exception {
+        RecordingOSMHandler handler = new RecordingOSMHandler();
+        new AutoFileReader.OSMReader(SMALL_MAP_FILE, false, true).parse(handler);
+        List<String> expected = handler.getCalls();
+        assertEquals(expected, parse(new OSMPBFParser(new FileInputStream(SMALL_MAP_PBF_FILE))));
+        //The blocks are inflated on several threads, but the elements are passed on in the order of the file
+        assertEquals(expected, parse(new OSMPBFParser(new FileInputStream(SMALL_MAP_PBF_FILE), 1)));
+        assertEquals(expected, parse(new OSMPBFParser(new FileInputStream(SMALL_MAP_PBF_FILE), 4)));
+    }
+
+    @Test
+    public void TestPBFImportsLikeXML() throws Exception, IllegalLanguageException {
+        Model.setLanguageList(StringHandler.getLanguageList(STRING_DIRECTORY));
+        AutoFileReader.OSMReader osmReader = new AutoFileReader.OSMReader(SMALL_MAP_FILE, false);
+        MapData expected = new Model(osmReader::parse).getMapData();
+        AutoFileReader.PBFReader pbfReader = new AutoFileReader.PBFReader(SMALL_MAP_PBF_FILE, false);
+        MapData actual = new Model(pbfReader::parse).getMapData();
+        assertEquals(expected.getMinlon(), actual.getMinlon(), 0);
+        assertEquals(expected.getMaxlat(), actual.getMaxlat(), 0);
+        assertEquals(expected.getKdTree().getShapeTable().size(), actual.getKdTree().getShapeTable().size());
+        assertEquals(expected.getGraph().getVertexCount(), actual.getGraph().getVertexCount());
+        Address address = new Address("vej", "3", null, null, "2200", "københavn n");
+        assertNotNull(actual.getAddressCoords(address));
+        assertEquals(expected.getAddressCoords(address), actual.getAddressCoords(address));
+    }
+
+    @Test(expected = IOException.class)
+    public void TestDataBeforeHeaderIsRejected() throws Exception {
+        //The header blob is the first blob, after the length and the header of the blob
+        byte[] file = Files.readAllBytes(Paths.get(SMALL_MAP_PBF_FILE));
+        int headerLength = (file[0] & 0xFF) << 24 | (file[1] & 0xFF) << 16 | (file[2] & 0xFF) << 8 | (file[3] & 0xFF);
+        //The size of the blob is the last field of the blob header, and is smaller than 128 bytes
+        int blobSize = file[4 + headerLength - 1];
+        byte[] withoutHeader = Arrays.copyOfRange(file, 4 + headerLength + blobSize, file.length);
+        parse(new OSMPBFParser(new ByteArrayInputStream(withoutHeader)));
+    }
+}
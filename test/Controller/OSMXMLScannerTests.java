@@ -0,0 +1,52 @@
+package Controller;
+
+import Model.AutoFileReader;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OSMXMLScannerTests {
+    //A map of a grid of roads, some buildings and addresses, with names that are not ascii
+    private static final String SMALL_MAP_FILE = "test/resources/small_map.osm";
+
+    private static List<String> parse(AutoFileReader.OSMReader reader) throws Exception {
+        RecordingOSMHandler handler = new RecordingOSMHandler();
+        reader.parse(handler);
+        return handler.getCalls();
+    }
+
+    @Test
+    public void TestScannerParsesFileLikeSAX() throws Exception {
+        List<String> expected = parse(new AutoFileReader.OSMReader(SMALL_MAP_FILE, false, true));
+        assertTrue(expected.contains("tag addr:city=København N"));
+        assertTrue(expected.contains("member node 5 via"));
+        //A file is memory mapped by the scanner, and a stream is read into a buffer
+        assertEquals(expected, parse(new AutoFileReader.OSMReader(SMALL_MAP_FILE, false, false)));
+        assertEquals(expected, parse(new AutoFileReader.OSMReader(new FileInputStream(SMALL_MAP_FILE), false)));
+    }
+
+    @Test
+    public void TestScannerDecodesValuesLikeSAX() throws Exception {
+        String osm = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- a comment -->\n<osm version='0.6'>\n" +
+                "<bounds minlat=\"55.0000\" minlon=\"12.0000\" maxlat=\"55.0100\" maxlon=\"-12.0200\"/>\n" +
+                "<node id=\"-1\" lat=\"55.00000049\" lon=\"1.0E-3\">\n" +
+                " <tag k=\"name\" v=\"Fisk &amp; Chips &lt;&quot;&apos;&gt; &#230;&#xf8;\"/>\n" +
+                " <tag k = 'note' v='two\tlines\r\nof text'/>\n" +
+                "</node>\n" +
+                "<way id=\"123456789012\"><nd ref=\"-1\"/></way>\n" +
+                "</osm>\n";
+        byte[] bytes = osm.getBytes(StandardCharsets.UTF_8);
+        List<String> expected = parse(new AutoFileReader.OSMReader(new ByteArrayInputStream(bytes), true));
+        assertTrue(expected.contains("tag name=Fisk & Chips <\"'> æø"));
+        assertTrue(expected.contains("tag note=two lines of text"));
+        RecordingOSMHandler handler = new RecordingOSMHandler();
+        new OSMXMLScanner(Channels.newChannel(new ByteArrayInputStream(bytes))).scan(handler);
+        assertEquals(expected, handler.getCalls());
+    }
+}
@@ -0,0 +1,82 @@
+package Controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A handler that writes down every call the parser makes, instead of building a map
+ */
+class RecordingOSMHandler extends OSMHandler {
+    private final List<String> calls = new ArrayList<>();
+
+    RecordingOSMHandler() {
+        super(null, null);
+    }
+
+    @Override
+    public void endDocument() {
+        calls.add("endDocument");
+    }
+
+    @Override
+    void parseBounds(float minlat, float minlon, float maxlat, float maxlon) {
+        calls.add("bounds " + minlat + " " + minlon + " " + maxlat + " " + maxlon);
+    }
+
+    @Override
+    void parseNodes(long id, float lat, float lon) {
+        calls.add("node " + id + " " + lat + " " + lon);
+    }
+
+    @Override
+    void parseWay(long id) {
+        calls.add("way " + id);
+    }
+
+    @Override
+    void parseRelation() {
+        calls.add("relation");
+    }
+
+    @Override
+    void parseND(long ref) {
+        calls.add("nd " + ref);
+    }
+
+    @Override
+    void parseTag(String k, String v) {
+        calls.add("tag " + k + "=" + v);
+    }
+
+    @Override
+    void parseMember(String memberType, long ref, String role) {
+        calls.add("member " + memberType + " " + ref + " " + role);
+    }
+
+    @Override
+    void endWay() {
+        calls.add("endWay");
+    }
+
+    @Override
+    void endRelation() {
+        calls.add("endRelation");
+    }
+
+    @Override
+    void endOSM() {
+        calls.add("endOSM");
+    }
+
+    @Override
+    void endNode() {
+        calls.add("endNode");
+    }
+
+    /**
+     * @return the calls in the order they were made
+     */
+    List<String> getCalls() {
+        return calls;
+    }
+}
@@ -0,0 +1,28 @@
+package Model.Address;
+
+import Model.StringTable;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AddressIndexTests {
+
+    @Test
+    public void TestAddressIndexFindsAddresses() {
+        AddressIndex testIndex = new AddressIndex(new StringTable());
+        String[] testHouses = {"12", "2", "10b", "1", "10a", "21"};
+        for (int i = 0 ; i < testHouses.length ; i++) {
+            testIndex.put(new Address("alle", testHouses[i], null, null, "2100", "frederiksberg"), i, -i);
+        }
+        testIndex.put(new Address("alle", "3", null, null, "2100", "københavn"), 7, -7);
+        assertEquals(7, testIndex.size());
+        assertEquals(4, testIndex.get(new Address("alle", "10a", null, null, "2100", "frederiksberg")).x, 0);
+        assertEquals(7, testIndex.get(new Address("alle", "3", null, null, "2100", "københavn")).x, 0);
+        assertNull(testIndex.get(new Address("alle", "3", null, null, "2100", "frederiksberg")));
+        assertNull(testIndex.get(new Address("vej", "1", null, null, "2100", "frederiksberg")));
+        assertEquals(Arrays.asList("1", "10a", "10b", "12"), testIndex.getHouseNumbers("alle", "2100", "frederiksberg", "1"));
+        assertEquals(Arrays.asList("2", "10a", "10b", "12"), testIndex.getHouseNumbers("alle", "2100", "frederiksberg", 2, 12));
+    }
+}
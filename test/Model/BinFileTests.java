@@ -0,0 +1,89 @@
+package Model;
+
+import Model.Address.Address;
+import Model.Graph.RoadGraph;
+import Model.KDTree.KDFriendlyShape;
+import Model.KDTree.PolygonApprox;
+import Model.OSM.OSMNode;
+import Model.OSM.WayType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BinFileTests {
+    private static final String COASTLINES_FILE = "resources/coastlines.bin";
+    //A map of a grid of roads, some buildings and addresses, which was saved as serialized MapData by Model.save
+    //before maps were saved as map files
+    private static final String SERIALIZED_MAP_FILE = "test/resources/serialized_map.bin";
+
+    @Test
+    public void TestCoastlinesLoad() throws IOException, ClassNotFoundException {
+        CoastLines coastLines = new AutoFileReader.ObjectReader<CoastLines>(COASTLINES_FILE, false).getObject();
+        assertFalse(coastLines.isEmpty());
+        assertFalse(coastLines.get(0).getBounds2D().isEmpty());
+    }
+
+    @Test
+    public void TestCoastlinesAreSimplifiedByZoomLevel() throws IOException, ClassNotFoundException {
+        CoastLines coastLines = new AutoFileReader.ObjectReader<CoastLines>(COASTLINES_FILE, false).getObject();
+        double[] pixelSizes = {0, 0.001, 0.01, 0.1};
+        assertSame(coastLines, coastLines.getLevelOfDetail(1, pixelSizes));
+        assertSame(coastLines.getLevelOfDetail(4, pixelSizes), coastLines.getLevelOfDetail(9, pixelSizes));
+        long previousPoints = Long.MAX_VALUE;
+        for (int zoomLevel = 1 ; zoomLevel <= pixelSizes.length ; zoomLevel++) {
+            List<KDFriendlyShape> level = coastLines.getLevelOfDetail(zoomLevel, pixelSizes);
+            assertEquals(coastLines.size(), level.size());
+            long points = 0;
+            for (int i = 0 ; i < level.size() ; i++) {
+                PolygonApprox shape = (PolygonApprox) level.get(i);
+                PolygonApprox original = (PolygonApprox) coastLines.get(i);
+                points += shape.getPointCount();
+                //The ends of the line are kept, and the points that are kept are points of the original
+                assertEquals(original.getFromNode(), shape.getFromNode());
+                assertEquals(original.getToNode(), shape.getToNode());
+                assertTrue(shape.getMinX() >= original.getMinX() && shape.getMaxX() <= original.getMaxX());
+                assertTrue(shape.getMinY() >= original.getMinY() && shape.getMaxY() <= original.getMaxY());
+            }
+            assertTrue(points < previousPoints || zoomLevel == 1);
+            previousPoints = points;
+        }
+    }
+
+    @Test
+    public void TestSerializedMapDataLoads() throws IOException, ClassNotFoundException {
+        MapData mapData = new AutoFileReader.ObjectReader<MapData>(SERIALIZED_MAP_FILE, false).getObject();
+        assertEquals(6.88206f, mapData.getMinlon(), 0);
+        assertEquals(-55.01f, mapData.getMaxlat(), 0);
+        assertEquals(new OnePointMapMarker(6.8849273f, -55.0055f), mapData.getAddressCoords(new Address("alle", "12a", null, null, "2100", "frederiksberg")));
+        assertNull(mapData.getAddressCoords(new Address("alle", "13", null, null, "2100", "frederiksberg")));
+        assertTrue(mapData.getStreetNames().contains("Alle"));
+        assertNotNull(mapData.getKdTree());
+        assertSame(mapData.getStrings(), mapData.getKdTree().getShapeTable().getNames());
+        //The cafe was saved when OSMNode extended Point2D.Double, and the shapes were saved with their names
+        OSMNode cafe = null;
+        int alleShapes = 0;
+        for (int i = 0 ; i < mapData.getKdTree().getShapeCount() ; i++) {
+            if (mapData.getKdTree().getShape(i) instanceof OSMNode) cafe = (OSMNode) mapData.getKdTree().getShape(i);
+            if ("Alle".equals(mapData.getStrings().get(mapData.getKdTree().getShape(i).getNameId()))) alleShapes++;
+        }
+        assertTrue(alleShapes > 0);
+        assertNotNull(cafe);
+        assertEquals(WayType.AMENITY_CAFE, cafe.getWayType());
+        assertEquals(6.8906627f, cafe.getX(), 0);
+        assertEquals(-55.0025f, cafe.getY(), 0);
+        RoadGraph graph = mapData.getGraph();
+        int edgeCount = 0, alleCount = 0;
+        for (int v = 0 ; v < graph.getVertexCount() ; v++) {
+            for (RoadGraph.Edge e : graph.adj(v)) {
+                edgeCount++;
+                if ("Alle".equals(graph.getName(e))) alleCount++;
+            }
+        }
+        assertEquals(10, graph.getVertexCount());
+        assertEquals(26, edgeCount);
+        assertEquals(4, alleCount);
+    }
+}
@@ -0,0 +1,244 @@
+package Model.Graph;
+
+import Model.AutoFileReader;
+import Model.Exceptions.IllegalLanguageException;
+import Model.Model;
+import Model.OSM.OSMHighway;
+import Model.OSM.SimpleOSMNode;
+import Model.OSM.WayType;
+import Model.Strings.StringHandler;
+import lib.IndexMinDoublePQ;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoadGraphTests {
+    //A map of a grid of roads, some buildings and addresses, with a no_right_turn and an only_straight_on restriction
+    private static final String SMALL_MAP_FILE = "test/resources/small_map.osm";
+    private static final String STRING_DIRECTORY = "resources/languages";
+    private static final double EPSILON = 1e-9;
+
+    private static Model model;
+    private static RoadGraph grid;
+
+    @BeforeClass
+    public static void setUp() throws Exception, IllegalLanguageException {
+        Model.setLanguageList(StringHandler.getLanguageList(STRING_DIRECTORY));
+        AutoFileReader.OSMReader reader = new AutoFileReader.OSMReader(SMALL_MAP_FILE, false);
+        model = new Model(reader::parse);
+        grid = new RoadGraph(model, randomGrid(30, new Random(7)));
+        grid.buildContractionHierarchies();
+    }
+
+    /**
+     * Creates a grid of highways where some of the roads are missing, one-way or closed to some of the travel types
+     */
+    private static List<OSMHighway> randomGrid(int n, Random random) {
+        SimpleOSMNode[][] points = new SimpleOSMNode[n][n];
+        for (int i = 0 ; i < n ; i++) {
+            for (int j = 0 ; j < n ; j++) {
+                points[i][j] = new SimpleOSMNode(6.9 + i * 0.005 + random.nextDouble() * 0.001, -55 + j * 0.005 + random.nextDouble() * 0.001);
+            }
+        }
+        List<OSMHighway> highways = new ArrayList<>();
+        for (int i = 0 ; i < n ; i++) {
+            for (int j = 0 ; j < n ; j++) {
+                if (i + 1 < n && random.nextDouble() < 0.9) {
+                    highways.add(highway(random, points[i][j], points[i + 1][j]));
+                }
+                if (j + 1 < n && random.nextDouble() < 0.9) {
+                    SimpleOSMNode bend = new SimpleOSMNode(points[i][j].x + 0.0005, points[i][j].y + 0.0025);
+                    highways.add(highway(random, points[i][j], bend, points[i][j + 1]));
+                }
+            }
+        }
+        return highways;
+    }
+
+    private static OSMHighway highway(Random random, SimpleOSMNode... points) {
+        OSMHighway highway = new OSMHighway(model.getMapData().getCoordinates(), Arrays.asList(points));
+        highway.setWayType(WayType.HIGHWAY_RESIDENTIAL);
+        highway.setSpeedLimit(new int[]{30, 50, 80, 130}[random.nextInt(4)]);
+        if (random.nextDouble() < 0.2) highway.setOneWay();
+        highway.setWalkingAllowed(random.nextDouble() < 0.9);
+        highway.setCyclingAllowed(true);
+        highway.setDrivingAllowed(random.nextDouble() < 0.9);
+        return highway;
+    }
+
+    /**
+     * Finds the weights of the shortest paths from s the way the searches did before the graph had compact adjacency
+     * lists, by running dijsktra over the edge objects of the graph
+     */
+    private static double[] referenceDistances(RoadGraph G, int s, TravelType travelType) {
+        double[] distTo = new double[G.getVertexCount()];
+        RoadGraph.Edge[] edgeTo = new RoadGraph.Edge[G.getVertexCount()];
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        distTo[s] = 0;
+        IndexMinDoublePQ pq = new IndexMinDoublePQ(G.getVertexCount());
+        pq.insert(s, 0);
+        while (!pq.isEmpty()) {
+            int v = pq.delMin();
+            for (RoadGraph.Edge e : G.adj(v)) {
+                if (!RoadDijsktra.isAllowed(e, travelType)) continue;
+                int w = e.to();
+                double dist = distTo[v] + RoadDijsktra.weight(e, travelType);
+                if (distTo[w] > dist) {
+                    if (travelType == TravelType.CAR && !G.isTurnAllowed(edgeTo[v], e)) continue;
+                    distTo[w] = dist;
+                    edgeTo[w] = e;
+                    if (pq.contains(w)) pq.decreaseKey(w, dist);
+                    else                pq.insert(w, dist);
+                }
+            }
+        }
+        return distTo;
+    }
+
+    /**
+     * Finds an edge of a road that enters a vertex
+     */
+    private static RoadGraph.Edge edgeInto(RoadGraph G, int v, String name) {
+        for (RoadGraph.Edge e : G.edges()) {
+            if (e.to() == v && name.equals(G.getName(e))) return e;
+        }
+        throw new AssertionError("No edge of " + name + " enters " + v);
+    }
+
+    /**
+     * Finds an edge of a road that leaves a vertex without going back along the previous edge
+     */
+    private static RoadGraph.Edge edgeOutOf(RoadGraph G, RoadGraph.Edge prevEdge, String name) {
+        for (RoadGraph.Edge e : G.adj(prevEdge.to())) {
+            if (e.to() != prevEdge.from() && name.equals(G.getName(e))) return e;
+        }
+        throw new AssertionError("No edge of " + name + " leaves " + prevEdge.to());
+    }
+
+    /**
+     * Finds the vertex where two roads cross
+     */
+    private static int crossing(RoadGraph G, String name, String otherName) {
+        for (int v = 0 ; v < G.getVertexCount() ; v++) {
+            boolean hasName = false, hasOtherName = false;
+            for (RoadGraph.Edge e : G.adj(v)) {
+                hasName |= name.equals(G.getName(e));
+                hasOtherName |= otherName.equals(G.getName(e));
+            }
+            if (hasName && hasOtherName) return v;
+        }
+        throw new AssertionError(name + " does not cross " + otherName);
+    }
+
+    /**
+     * Checks that the path is connected from s to t, only uses edges that are allowed and returns its weight
+     */
+    private static double pathWeight(PathFinder pathFinder, int s, int t, TravelType travelType) {
+        double weight = 0;
+        int v = s;
+        for (RoadGraph.Edge e : pathFinder.pathTo(t)) {
+            assertEquals(v, e.from());
+            assertTrue(RoadDijsktra.isAllowed(e, travelType));
+            weight += RoadDijsktra.weight(e, travelType);
+            v = e.to();
+        }
+        assertEquals(t, v);
+        return weight;
+    }
+
+    /**
+     * Checks that the search finds a path of the same weight as the reference search between random vertices
+     */
+    private static void assertShortestPaths(RoadGraph G, SearchAlgorithm searchAlgorithm) {
+        Random random = new Random(1);
+        int pathCount = 0;
+        for (TravelType travelType : TravelType.values()) {
+            for (int query = 0 ; query < 50 ; query++) {
+                int s = random.nextInt(G.getVertexCount());
+                int t = random.nextInt(G.getVertexCount());
+                double expected = referenceDistances(G, s, travelType)[t];
+                PathFinder pathFinder = searchAlgorithm.search(model, G, s, t, travelType);
+                assertEquals(expected < Double.POSITIVE_INFINITY, pathFinder.hasPathTo(t));
+                if (pathFinder.hasPathTo(t)) {
+                    assertEquals(expected, pathWeight(pathFinder, s, t, travelType), EPSILON * Math.max(1, expected));
+                    pathCount++;
+                }
+            }
+        }
+        assertTrue(pathCount > 100);
+    }
+
+    @Test
+    public void TestAStarFindsShortestPaths() {
+        assertShortestPaths(grid, SearchAlgorithm.ASTAR);
+    }
+
+    @Test
+    public void TestAStarFindsShortestPathsOnImportedMap() {
+        assertShortestPaths(model.getMapData().getGraph(), SearchAlgorithm.ASTAR);
+    }
+
+    @Test
+    public void TestBidirectionalAStarFindsShortestPaths() {
+        assertShortestPaths(grid, SearchAlgorithm.BIDIRECTIONAL_ASTAR);
+    }
+
+    @Test
+    public void TestContractionHierarchyFindsTheSamePathsAsAStar() {
+        Random random = new Random(2);
+        int pathCount = 0;
+        for (TravelType travelType : TravelType.values()) {
+            ContractionHierarchy ch = grid.getContractionHierarchy(travelType);
+            //The queries share the arrays of the hierarchy, so a query must not see what the previous one reached
+            for (int query = 0 ; query < 100 ; query++) {
+                int s = random.nextInt(grid.getVertexCount());
+                int t = random.nextInt(grid.getVertexCount());
+                PathFinder expected = new RoadDijsktra(model, grid, s, t, travelType);
+                PathFinder actual = new ContractionHierarchyDijsktra(grid, ch, s, t);
+                assertEquals(expected.hasPathTo(t), actual.hasPathTo(t));
+                if (expected.hasPathTo(t)) {
+                    double weight = pathWeight(expected, s, t, travelType);
+                    assertEquals(weight, pathWeight(actual, s, t, travelType), EPSILON * Math.max(1, weight));
+                    pathCount++;
+                }
+            }
+        }
+        assertTrue(pathCount > 200);
+    }
+
+    @Test
+    public void TestNoTurnRestriction() {
+        RoadGraph G = model.getMapData().getGraph();
+        //Turning from Boulevard on to the one-way Vej is not allowed, but going on along Boulevard is
+        RoadGraph.Edge fromBoulevard = edgeInto(G, crossing(G, "Boulevard", "Vej"), "Boulevard");
+        RoadGraph.Edge onToVej = edgeOutOf(G, fromBoulevard, "Vej");
+        assertFalse(G.isTurnAllowed(fromBoulevard, onToVej));
+        assertTrue(G.isTurnAllowed(fromBoulevard, edgeOutOf(G, fromBoulevard, "Boulevard")));
+
+        //The rest of Vej can only be reached by car through the restricted turn, but it can be reached on foot
+        int s = fromBoulevard.from();
+        int t = onToVej.to();
+        assertFalse(new RoadDijsktra(model, G, s, t, TravelType.CAR).hasPathTo(t));
+        assertFalse(SearchAlgorithm.CONTRACTION_HIERARCHY.search(model, G, s, t, TravelType.CAR).hasPathTo(t));
+        assertTrue(new RoadDijsktra(model, G, s, t, TravelType.WALK).hasPathTo(t));
+    }
+
+    @Test
+    public void TestOnlyTurnRestriction() {
+        RoadGraph G = model.getMapData().getGraph();
+        //From Alle the only way on where it crosses Boulevard is straight on along Alle
+        RoadGraph.Edge fromAlle = edgeInto(G, crossing(G, "Alle", "Boulevard"), "Alle");
+        assertTrue(G.isTurnAllowed(fromAlle, edgeOutOf(G, fromAlle, "Alle")));
+        assertFalse(G.isTurnAllowed(fromAlle, edgeOutOf(G, fromAlle, "Boulevard")));
+
+        //The restriction only applies to turns from Alle
+        RoadGraph.Edge fromBoulevard = edgeInto(G, fromAlle.to(), "Boulevard");
+        assertTrue(G.isTurnAllowed(fromBoulevard, edgeOutOf(G, fromBoulevard, "Alle")));
+    }
+}
@@ -0,0 +1,84 @@
+package Model.KDTree;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CoordinateArenaTests {
+    private static final int CHUNK_BITS = 20; //The bits of an offset that are the position in its chunk
+
+    /**
+     * Checks that the points of a shape are read back as the points that the arena rounds them to
+     */
+    private static void assertStored(CoordinateArena arena, float[] coords, int offset) {
+        float[] readCoords = arena.get(offset, coords.length / 2);
+        assertEquals(coords.length, readCoords.length);
+        for (int i = 0 ; i < coords.length ; i += 2) {
+            assertEquals(arena.nearestX(coords[i]), readCoords[i], 0);
+            assertEquals(arena.nearestY(coords[i + 1]), readCoords[i + 1], 0);
+        }
+    }
+
+    private static float[] randomCoords(Random random, int npoints, float minX, float minY, float maxX, float maxY) {
+        float[] coords = new float[2 * npoints];
+        for (int i = 0 ; i < coords.length ; i += 2) {
+            coords[i] = minX + random.nextFloat() * (maxX - minX);
+            coords[i + 1] = minY + random.nextFloat() * (maxY - minY);
+        }
+        return coords;
+    }
+
+    @Test
+    public void TestCoordinateArenaStoresCoordinates() {
+        CoordinateArena testArena = new CoordinateArena(6.8f, -57.7f, 8.4f, -54.5f);
+        float[] testCoords = {8.21f, -55.12f, 8.2102f, -55.1199f, 7.2f, -54.0f, 6.5f, -58.3f};
+        float[] readCoords = new PolygonApprox(testArena, testCoords).getCoords();
+        assertEquals(testCoords[0], readCoords[0], 0);
+        assertEquals(testCoords[3], readCoords[3], 0);
+        assertEquals(testCoords[4], readCoords[4], Math.ulp(8.4f));
+        assertArrayEquals(readCoords, new PolygonApprox(testArena, readCoords).getCoords(), 0);
+    }
+
+    @Test
+    public void TestShapesAreReadAcrossChunks() {
+        CoordinateArena arena = new CoordinateArena(6.8f, -57.7f, 8.4f, -54.5f);
+        Random random = new Random(1);
+        List<float[]> shapes = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        //The chunks double in size up to 1 MiB, so the shapes fill several chunks, and a shape that does not fit in
+        //the rest of a chunk starts the next one
+        while (offsets.isEmpty() || offsets.get(offsets.size() - 1) >>> CHUNK_BITS < 4) {
+            float[] coords = randomCoords(random, 2 + random.nextInt(500), 6.8f, -57.7f, 8.4f, -54.5f);
+            shapes.add(coords);
+            offsets.add(arena.add(coords));
+        }
+        //A shape of more bytes than a chunk gets a chunk of its own, and the shape after it starts a new chunk
+        float[] largeShape = randomCoords(random, 300000, 6.8f, -57.7f, 8.4f, -54.5f);
+        int largeOffset = arena.add(largeShape);
+        float[] nextShape = randomCoords(random, 10, 6.8f, -57.7f, 8.4f, -54.5f);
+        int nextOffset = arena.add(nextShape);
+        assertEquals(0, largeOffset & ((1 << CHUNK_BITS) - 1));
+        assertEquals((largeOffset >>> CHUNK_BITS) + 1, nextOffset >>> CHUNK_BITS);
+        assertEquals(0, nextOffset & ((1 << CHUNK_BITS) - 1));
+
+        for (int i = 0 ; i < shapes.size() ; i++) assertStored(arena, shapes.get(i), offsets.get(i));
+        assertStored(arena, largeShape, largeOffset);
+        assertStored(arena, nextShape, nextOffset);
+    }
+
+    @Test
+    public void TestLargeDeltasAreStoredExactly() {
+        //The corners of the world are the furthest apart two points can be, and they are multiples of the resolution
+        CoordinateArena arena = new CoordinateArena(-180f, -90f, 180f, 90f);
+        float[] coords = {-180f, -90f, 180f, 90f, -180f, 90f, 180f, -90f, 180f, -89.99999f, -179.99998f, 90f, 0f, 0f};
+        float[] readCoords = arena.get(arena.add(coords), coords.length / 2);
+        for (int i = 0 ; i < 8 ; i++) assertEquals(coords[i], readCoords[i], 0);
+        assertStored(arena, coords, arena.add(coords));
+        //A coordinate read from the arena is stored as the same coordinate again
+        assertArrayEquals(readCoords, arena.get(arena.add(readCoords), readCoords.length / 2), 0);
+    }
+}
@@ -4,15 +4,17 @@ import Model.Exceptions.IllegalLanguageException;
 import Model.Graph.TravelType;
 import Model.Model;
 import Model.OSM.WayType;
+import Model.StringTable;
 import Model.Strings.StringHandler;
 import org.junit.Before;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.io.IOException;
-import java.util.EnumMap;
-import java.util.List;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -150,6 +152,130 @@ public class KDTreeTests {
         assertEquals(testShapes[testShapes.length/2], nearestTestShape);
     }
 
+    @Test
+    public void TestRTreeSearchRange() {
+        KDFriendlyShape[] testShapes = createTestShapes(KDTree.getLeafArraySize()*4, WayType.UNKNOWN);
+        SpatialIndex testIndex = SpatialIndexType.R_TREE.build(testShapes, new StringTable());
+        Point2D botRight = new Point2D.Double(10, 10);
+        Point2D topLeft = new Point2D.Double(19, 19);
+        EnumMap<WayType, List<KDFriendlyShape>> testMap = KDTree.searchKDTree(new KDSearchRect(botRight, topLeft), testIndex);
+        assertEquals(10, testMap.get(WayType.UNKNOWN).size());
+    }
+
+    @Test
+    public void TestRTreeNearestRoad() {
+        KDFriendlyShape[] testShapes = createTestShapes(KDTree.getLeafArraySize(), WayType.HIGHWAY_MOTORWAY);
+        SpatialIndex testIndex = SpatialIndexType.R_TREE.build(testShapes, new StringTable());
+        Point2D testSearchPoint = new Point2D.Double(((testShapes.length/2)+.8), ((testShapes.length/2)+.8));
+        KDFriendlyShape nearestTestShape = KDTree.getNearestWay(testSearchPoint, new KDSearchRect(testSearchPoint, testSearchPoint), testIndex, TravelType.CAR);
+        assertEquals(testShapes[testShapes.length/2+1], nearestTestShape);
+    }
+
+    @Test
+    public void TestRTreeNearestRoadBicycleIllegal() {
+        KDFriendlyShape[] testShapes = createTestShapes(KDTree.getLeafArraySize(), WayType.HIGHWAY_MOTORWAY);
+        SpatialIndex testIndex = SpatialIndexType.R_TREE.build(testShapes, new StringTable());
+        Point2D testSearchPoint = new Point2D.Double(testShapes.length/2, testShapes.length/2);
+        KDFriendlyShape nearestTestShape = KDTree.getNearestWay(testSearchPoint, new KDSearchRect(testSearchPoint, testSearchPoint), testIndex, TravelType.BICYCLE);
+        assertEquals(null, nearestTestShape);
+    }
+
+    @Test
+    public void TestRTreeRangeSearchMatchesKDTree() {
+        Random random = new Random(3);
+        CoordinateArena testArena = new CoordinateArena(0, 0, 100, 100);
+        WayType[] testTypes = {WayType.BUILDING_FARM, WayType.HIGHWAY_RESIDENTIAL, WayType.NATURAL_WATER};
+        KDFriendlyShape[] testShapes = new KDFriendlyShape[2000];
+        for (int i = 0 ; i < testShapes.length ; i++) {
+            //Most shapes are small, but some are long enough to be in many leaves of the KD-tree
+            float x = random.nextFloat() * 90, y = random.nextFloat() * 90;
+            float size = random.nextDouble() < 0.05 ? 10 : 0.5f;
+            testShapes[i] = new PolygonApprox(testArena, new float[]{x, y, x + size * random.nextFloat(), y, x + size, y + size * random.nextFloat()});
+            testShapes[i].setWayType(testTypes[random.nextInt(testTypes.length)]);
+        }
+        SpatialIndex kdTree = SpatialIndexType.KD_TREE.build(testShapes.clone(), new StringTable());
+        SpatialIndex rTree = SpatialIndexType.R_TREE.build(testShapes.clone(), new StringTable());
+        RangeQuery kdQuery = kdTree.newRangeQuery(), rQuery = rTree.newRangeQuery();
+        int found = 0;
+        for (int query = 0 ; query < 200 ; query++) {
+            double x = random.nextDouble() * 100, y = random.nextDouble() * 100, size = random.nextDouble() * 20;
+            KDSearchRect rect = new KDSearchRect(new Point2D.Double(x, y), new Point2D.Double(x + size, y + size));
+            kdQuery.search(rect);
+            rQuery.search(rect);
+            EnumMap<WayType, List<KDFriendlyShape>> kdShapes = kdTree.search(rect);
+            EnumMap<WayType, List<KDFriendlyShape>> rShapes = rTree.search(rect);
+            for (WayType type : testTypes) {
+                //The shapes whose bounding box intersects the rectangle
+                Set<KDFriendlyShape> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (KDFriendlyShape shape : testShapes) {
+                    if (shape.getWayType() == type && shape.getBounds2D().intersects(x, y, size, size)) expected.add(shape);
+                }
+                Set<KDFriendlyShape> kdVisited = Collections.newSetFromMap(new IdentityHashMap<>());
+                Set<KDFriendlyShape> rVisited = Collections.newSetFromMap(new IdentityHashMap<>());
+                kdQuery.forEach(type, id -> assertTrue(kdVisited.add(kdTree.getShape(id))));
+                rQuery.forEach(type, id -> assertTrue(rVisited.add(rTree.getShape(id))));
+                assertEquals(expected, kdVisited);
+                assertEquals(expected, rVisited);
+
+                //The search of the KD-tree lists every shape of the leaves it reaches, so it may list more
+                Set<KDFriendlyShape> rListed = Collections.newSetFromMap(new IdentityHashMap<>());
+                rListed.addAll(rShapes.get(type));
+                assertEquals(expected, rListed);
+                assertTrue(new HashSet<>(kdShapes.get(type)).containsAll(expected));
+                found += expected.size();
+            }
+        }
+        assertTrue(found > 1000);
+    }
+
+    @Test
+    public void TestShapeTableDrawsShapesFromRows() {
+        StringTable testNames = new StringTable();
+        CoordinateArena testArena = new CoordinateArena(0, 0, 10, 10);
+        KDFriendlyShape[] testShapes = new KDFriendlyShape[KDTree.getLeafArraySize()];
+        for (int i = 0 ; i < testShapes.length ; i++) {
+            testShapes[i] = new PolygonApprox(testArena, new float[]{i, i, i + 1, i, i + 1, i + 2});
+            testShapes[i].setWayType(WayType.BUILDING_FARM);
+        }
+        SpatialIndex testIndex = SpatialIndexType.R_TREE.build(testShapes, testNames);
+        assertSame(testNames, testIndex.getShapeTable().getNames());
+        RangeQuery testQuery = testIndex.newRangeQuery();
+        testQuery.search(new KDSearchRect(new Point2D.Double(0, 0), new Point2D.Double(2, 2)));
+        ShapeTable.FlyweightShape testFlyweight = testIndex.getShapeTable().new FlyweightShape();
+        List<Integer> testIds = new ArrayList<>();
+        testQuery.forEach(WayType.BUILDING_FARM, testIds::add);
+        assertEquals(3, testIds.size());
+        for (int id : testIds) {
+            KDFriendlyShape testShape = testFlyweight.of(id);
+            assertEquals(testIndex.getShape(id).getBounds2D(), testShape.getBounds2D());
+            assertEquals(WayType.BUILDING_FARM, testShape.getWayType());
+            PathIterator objectIterator = testIndex.getShape(id).getPathIterator(new AffineTransform());
+            PathIterator flyweightIterator = testShape.getPathIterator(new AffineTransform());
+            float[] objectCoords = new float[6], flyweightCoords = new float[6];
+            for (; !objectIterator.isDone() ; objectIterator.next(), flyweightIterator.next()) {
+                assertEquals(objectIterator.currentSegment(objectCoords), flyweightIterator.currentSegment(flyweightCoords));
+                assertArrayEquals(objectCoords, flyweightCoords, 0);
+            }
+            assertTrue(flyweightIterator.isDone());
+        }
+    }
+
+    @Test
+    public void TestFlyweightShapeSetsWayTypeOfRow() {
+        CoordinateArena testArena = new CoordinateArena(0, 0, 10, 10);
+        KDFriendlyShape[] testShapes = new KDFriendlyShape[KDTree.getLeafArraySize()];
+        for (int i = 0 ; i < testShapes.length ; i++) {
+            testShapes[i] = new PolygonApprox(testArena, new float[]{i, i, i + 1, i, i + 1, i + 2});
+            testShapes[i].setWayType(WayType.BUILDING_FARM);
+        }
+        SpatialIndex testIndex = SpatialIndexType.KD_TREE.build(testShapes, new StringTable());
+        ShapeTable testTable = testIndex.getShapeTable();
+        testTable.new FlyweightShape().of(0).setWayType(WayType.NATURAL_WATER);
+        assertEquals(WayType.NATURAL_WATER.ordinal(), testTable.getTypes()[0]);
+        assertEquals(WayType.NATURAL_WATER, testIndex.getShape(0).getWayType());
+        assertEquals(WayType.BUILDING_FARM.ordinal(), testTable.getTypes()[1]);
+    }
+
     private KDFriendlyShape[] createTestShapes(int amount, WayType type) {
         KDFriendlyShape[] testShapes = new KDFriendlyShape[amount];
         for (int i = 0 ; i < testShapes.length ; i++) {
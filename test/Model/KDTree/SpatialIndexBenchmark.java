@@ -0,0 +1,138 @@
+package Model.KDTree;
+
+import Model.AutoFileReader;
+import Model.Graph.TravelType;
+import Model.MapData;
+import Model.Model;
+import Model.OSM.WayType;
+import Model.StringTable;
+import Model.Strings.StringHandler;
+
+import java.awt.geom.Point2D;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compares the spatial indexes on the shapes of a map. It is not run with the tests, but from the root of the project:
+ * java -cp [classes of src and test] Model.KDTree.SpatialIndexBenchmark [osm file] [queries]
+ * Every index is built and measured twice, and only the second round is printed, so the JIT has compiled both.
+ * The retained heap of an index is what is still used after a full collection once it is built, minus what was used
+ * before, while the shapes themselves are kept alive by the benchmark. It includes the ShapeTable of the index, and as
+ * it is measured by the collector it varies by a few hundred kB between runs, so the bytes of the arrays of the index
+ * are counted as well
+ */
+public class SpatialIndexBenchmark {
+    private static final String DEFAULT_MAP_FILE = "test/resources/small_map.osm";
+    private static final String STRING_DIRECTORY = "resources/languages";
+    private static final double VIEWPORT_SIZE = 0.05; //The part of the map a viewport covers in each direction
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0 ; i < 5 ; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Counts the bytes of the arrays of an index and of its ShapeTable, with 16 bytes of header for every array and 4
+     * bytes for every reference. The shapes, names and points that the index refers to are not counted, as they are
+     * shared with the rest of the map
+     */
+    private static long arrayBytes(Object object) throws IllegalAccessException {
+        long bytes = 0;
+        for (Field field : object.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) continue;
+            field.setAccessible(true);
+            Object value = field.get(object);
+            if (value instanceof ShapeTable) {
+                bytes += arrayBytes(value);
+            } else if (value instanceof AtomicReferenceArray) {
+                bytes += 16 + 16 + 4L * ((AtomicReferenceArray<?>) value).length();
+            } else if (value != null && value.getClass().isArray()) {
+                Class<?> component = value.getClass().getComponentType();
+                int size = component == byte.class ? 1 : component == short.class ? 2
+                        : component == long.class || component == double.class ? 8 : 4;
+                bytes += 16 + (long) size * Array.getLength(value);
+            }
+        }
+        return bytes;
+    }
+
+    private static KDSearchRect randomViewport(MapData mapData, Random random) {
+        double width = (mapData.getMaxlon() - mapData.getMinlon()) * VIEWPORT_SIZE;
+        double height = (mapData.getMinlat() - mapData.getMaxlat()) * VIEWPORT_SIZE;
+        double x = mapData.getMinlon() + random.nextDouble() * (mapData.getMaxlon() - mapData.getMinlon() - width);
+        double y = mapData.getMaxlat() + random.nextDouble() * (mapData.getMinlat() - mapData.getMaxlat() - height);
+        return new KDSearchRect(new Point2D.Double(x, y), new Point2D.Double(x + width, y + height));
+    }
+
+    public static void main(String[] args) throws Throwable {
+        String file = args.length > 0 ? args[0] : DEFAULT_MAP_FILE;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Model.setLanguageList(StringHandler.getLanguageList(STRING_DIRECTORY));
+        Model model = new Model(new AutoFileReader.OSMReader(file, false)::parse);
+        MapData mapData = model.getMapData();
+        StringTable names = mapData.getStrings();
+        SpatialIndex imported = mapData.getKdTree();
+        KDFriendlyShape[] shapes = new KDFriendlyShape[imported.getShapeCount()];
+        for (int i = 0 ; i < shapes.length ; i++) shapes[i] = imported.getShape(i);
+        mapData.setKdTree(null);
+        imported = null;
+        System.out.println(file + ": " + shapes.length + " shapes, " + queries + " queries of every kind");
+
+        for (int round = 0 ; round < 2 ; round++) {
+            for (SpatialIndexType type : SpatialIndexType.values()) {
+                KDFriendlyShape[] copy = shapes.clone();
+                long heapBefore = usedHeap();
+                long start = System.nanoTime();
+                SpatialIndex index = type.build(copy, names);
+                long buildTime = System.nanoTime() - start;
+                long retainedHeap = usedHeap() - heapBefore;
+
+                Random random = new Random(1);
+                RangeQuery rangeQuery = index.newRangeQuery();
+                long[] visited = {0};
+                start = System.nanoTime();
+                for (int i = 0 ; i < queries ; i++) {
+                    rangeQuery.search(randomViewport(mapData, random));
+                    for (WayType wayType : WayType.values()) rangeQuery.forEach(wayType, id -> visited[0]++);
+                }
+                long rangeTime = System.nanoTime() - start;
+
+                long listed = 0;
+                start = System.nanoTime();
+                for (int i = 0 ; i < queries ; i++) {
+                    EnumMap<WayType, List<KDFriendlyShape>> result = index.search(randomViewport(mapData, random));
+                    for (List<KDFriendlyShape> list : result.values()) listed += list.size();
+                }
+                long searchTime = System.nanoTime() - start;
+
+                int found = 0;
+                start = System.nanoTime();
+                for (int i = 0 ; i < queries ; i++) {
+                    KDSearchRect point = randomViewport(mapData, random);
+                    Point2D p = point.getBotLeft();
+                    if (index.nearestWay(p, new KDSearchRect(p, p), TravelType.CAR) != null) found++;
+                }
+                long nearestTime = System.nanoTime() - start;
+
+                if (round == 1) {
+                    System.out.printf("%-8s build %8.1f ms, retained heap %7.1f MB (arrays %.1f MB), viewport query %7.3f ms (%d shapes visited), " +
+                                    "search %7.3f ms (%d shapes listed), nearest way %7.3f ms (%d found)%n",
+                            type, buildTime / 1e6, retainedHeap / 1e6, arrayBytes(index) / 1e6, rangeTime / 1e6 / queries, visited[0] / queries,
+                            searchTime / 1e6 / queries, listed / queries, nearestTime / 1e6 / queries, found);
+                }
+                //The index of the next type is measured without this one
+                index = null;
+                rangeQuery = null;
+            }
+        }
+    }
+}
@@ -57,8 +57,8 @@ public class TestShape extends SimpleOSMNode implements KDFriendlyShape {
     }
 
     @Override
-    public String getName() {
-        return null;
+    public int getNameId() {
+        return 0;
     }
 
     @Override
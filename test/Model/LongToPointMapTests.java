@@ -0,0 +1,89 @@
+package Model;
+
+import Model.OSM.SimpleOSMNode;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongToPointMapTests {
+
+    /**
+     * Checks that the map holds the same nodes as a reference map, and no others
+     */
+    private static void assertSameNodes(Map<Long, float[]> expected, LongToPointMap map, Random random) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, float[]> node : expected.entrySet()) {
+            assertEquals(new SimpleOSMNode(node.getValue()[0], node.getValue()[1]), map.get(node.getKey()));
+            int i = map.indexOf(node.getKey());
+            assertEquals(node.getValue()[0], map.getX(i), 0);
+            assertEquals(node.getValue()[1], map.getY(i), 0);
+        }
+        for (int i = 0 ; i < 1000 ; i++) {
+            long key = random.nextLong();
+            if (!expected.containsKey(key)) {
+                assertNull(map.get(key));
+                assertEquals(-1, map.indexOf(key));
+            }
+        }
+    }
+
+    @Test
+    public void TestIncreasingIdsAreKeptSorted() {
+        Random random = new Random(1);
+        Map<Long, float[]> expected = new HashMap<>();
+        LongToPointMap map = new LongToPointMap(2);
+        long key = -1000;
+        for (int i = 0 ; i < 10000 ; i++) {
+            key += 1 + random.nextInt(100);
+            float[] point = {random.nextFloat(), random.nextFloat()};
+            map.put(key, point[0], point[1]);
+            expected.put(key, point);
+        }
+        //Putting a node again replaces its coordinates without breaking the order
+        map.put(key, 1, 2);
+        expected.put(key, new float[]{1, 2});
+        long firstKey = expected.keySet().stream().min(Long::compare).get();
+        map.put(firstKey, 3, 4);
+        expected.put(firstKey, new float[]{3, 4});
+        assertSameNodes(expected, map, random);
+        assertNull(map.get(key + 1));
+        assertNull(map.get(firstKey - 1));
+    }
+
+    @Test
+    public void TestIdsOutOfOrderMoveToHashTable() {
+        Random random = new Random(2);
+        Map<Long, float[]> expected = new HashMap<>();
+        LongToPointMap map = new LongToPointMap(2);
+        //Sorted at first, and then random ids which also replace some of the nodes
+        for (long key = 0 ; key < 500 ; key++) {
+            map.put(key, key, -key);
+            expected.put(key, new float[]{key, -key});
+        }
+        for (int i = 0 ; i < 20000 ; i++) {
+            long key = random.nextBoolean() ? random.nextInt(1000) : random.nextLong();
+            if (key == Long.MIN_VALUE) continue;
+            float[] point = {random.nextFloat(), random.nextFloat()};
+            map.put(key, point[0], point[1]);
+            expected.put(key, point);
+        }
+        assertSameNodes(expected, map, random);
+    }
+
+    @Test
+    public void TestEmptyMap() {
+        LongToPointMap map = new LongToPointMap();
+        assertEquals(0, map.size());
+        assertNull(map.get(0));
+        assertEquals(-1, map.indexOf(Long.MIN_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestEmptyKeyIsRejected() {
+        new LongToPointMap().put(Long.MIN_VALUE, 1, 2);
+    }
+}
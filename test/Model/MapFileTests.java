@@ -0,0 +1,178 @@
+package Model;
+
+import Model.Address.Address;
+import Model.Address.AddressIndex;
+import Model.Exceptions.IllegalLanguageException;
+import Model.Graph.RoadGraph;
+import Model.KDTree.KDFriendlyShape;
+import Model.KDTree.KDSearchRect;
+import Model.KDTree.SpatialIndex;
+import Model.OSM.WayType;
+import Model.Strings.StringHandler;
+import lib.TST;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MapFileTests {
+    //A map of a grid of roads, some buildings and addresses, with a no_right_turn and an only_straight_on restriction
+    private static final String SMALL_MAP_FILE = "test/resources/small_map.osm";
+    private static final String STRING_DIRECTORY = "resources/languages";
+
+    private static Model model;
+    private static MapData written;
+    private static MapData read;
+    private static File file;
+    private static int stringCount; //The size of the string table of the map before it was written
+
+    @BeforeClass
+    public static void setUp() throws Exception, IllegalLanguageException {
+        Model.setLanguageList(StringHandler.getLanguageList(STRING_DIRECTORY));
+        AutoFileReader.OSMReader reader = new AutoFileReader.OSMReader(SMALL_MAP_FILE, false);
+        model = new Model(reader::parse);
+        written = model.getMapData();
+        written.getPointsOfInterest().add(new PointOfInterest(new Point2D.Double(6.885, -55.005), "Hjem", null));
+
+        stringCount = written.getStrings().size();
+        file = File.createTempFile("map-file-test", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            MapFile.write(written, out.getChannel());
+        }
+        read = read();
+    }
+
+    private static MapData read() throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return MapFile.read(in.getChannel(), model);
+        }
+    }
+
+    private static List<String> keys(TST<String> words) {
+        List<String> keys = new ArrayList<>();
+        for (String word : words.keys()) keys.add(word + "=" + words.get(word));
+        return keys;
+    }
+
+    private static List<String> edges(RoadGraph G) {
+        List<String> edges = new ArrayList<>();
+        for (int v = 0 ; v < G.getVertexCount() ; v++) {
+            for (RoadGraph.Edge e : G.adj(v)) {
+                edges.add(e.from() + " " + e.to() + " " + e.getLength() + " " + G.getName(e) + " " + e.getWayPoints());
+            }
+        }
+        return edges;
+    }
+
+    @Test
+    public void TestBoundsAndWordsAreRead() {
+        assertEquals(written.getMinlat(), read.getMinlat(), 0);
+        assertEquals(written.getMinlon(), read.getMinlon(), 0);
+        assertEquals(written.getMaxlat(), read.getMaxlat(), 0);
+        assertEquals(written.getMaxlon(), read.getMaxlon(), 0);
+        assertEquals(keys(written.getCities()), keys(read.getCities()));
+        assertEquals(keys(written.getPostcodes()), keys(read.getPostcodes()));
+        assertEquals(keys(written.getStreetNames()), keys(read.getStreetNames()));
+        assertFalse(keys(read.getStreetNames()).isEmpty());
+
+        assertEquals(1, read.getPointsOfInterest().size());
+        PointOfInterest poi = read.getPointsOfInterest().get(0);
+        assertEquals("Hjem", poi.getName());
+        assertEquals(new Point2D.Double(6.885, -55.005), poi.getCoord());
+    }
+
+    @Test
+    public void TestWritingDoesNotChangeTheStringTable() {
+        //The name of the point of interest is only in the string table of the file
+        assertEquals(stringCount, written.getStrings().size());
+        assertEquals(-1, written.getStrings().find("Hjem"));
+        assertTrue(read.getStrings().find("Hjem") > 0);
+    }
+
+    @Test
+    public void TestShapesAreRead() {
+        SpatialIndex expected = written.getKdTree();
+        SpatialIndex actual = read.getKdTree();
+        assertEquals(expected.getShapeCount(), actual.getShapeCount());
+        assertTrue(actual.getShapeCount() > 300);
+        int namedShapes = 0;
+        for (int i = 0 ; i < expected.getShapeCount() ; i++) {
+            KDFriendlyShape shape = expected.getShape(i);
+            KDFriendlyShape readShape = actual.getShape(i);
+            assertEquals(shape.getWayType(), readShape.getWayType());
+            //The names have the ids of the string table of the file
+            assertEquals(written.getStrings().get(shape.getNameId()), read.getStrings().get(readShape.getNameId()));
+            if (shape.getNameId() != 0) namedShapes++;
+            assertEquals(shape.getPoints(), readShape.getPoints());
+            assertEquals(shape.getBounds2D(), readShape.getBounds2D());
+        }
+        assertTrue(namedShapes > 0);
+
+        //A search of the whole map finds the same shapes
+        KDSearchRect all = new KDSearchRect(new Point2D.Double(-180, -180), new Point2D.Double(180, 180));
+        EnumMap<WayType, List<KDFriendlyShape>> expectedShapes = expected.search(all);
+        EnumMap<WayType, List<KDFriendlyShape>> actualShapes = actual.search(all);
+        assertEquals(expectedShapes.keySet(), actualShapes.keySet());
+        for (WayType type : expectedShapes.keySet()) {
+            assertEquals(type.name(), expectedShapes.get(type).size(), actualShapes.get(type).size());
+        }
+    }
+
+    @Test
+    public void TestAddressesAreRead() {
+        AddressIndex expected = written.getAddresses();
+        AddressIndex actual = read.getAddresses();
+        assertEquals(expected.size(), actual.size());
+        assertTrue(actual.size() > 0);
+        for (int i = 0 ; i < expected.size() ; i++) {
+            Address a = expected.getAddress(i);
+            assertEquals(a.toString(), actual.getAddress(i).toString());
+            assertEquals(written.getAddressCoords(a), read.getAddressCoords(a));
+        }
+    }
+
+    @Test
+    public void TestRoadGraphIsRead() {
+        RoadGraph expected = written.getGraph();
+        RoadGraph actual = read.getGraph();
+        assertEquals(expected.getVertexCount(), actual.getVertexCount());
+        assertEquals(edges(expected), edges(actual));
+        assertTrue(edges(actual).size() > 20);
+    }
+
+    @Test
+    public void TestShapesAreLoadedByManyThreads() throws Exception {
+        SpatialIndex index = read().getKdTree();
+        int n = index.getShapeCount();
+        //Every thread loads the shapes in its own order, and they must all get the same object for a shape
+        KDFriendlyShape[][] loaded = new KDFriendlyShape[4][n];
+        Thread[] threads = new Thread[loaded.length];
+        for (int t = 0 ; t < threads.length ; t++) {
+            KDFriendlyShape[] shapes = loaded[t];
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0 ; i < n ; i++) order.add(i);
+            Collections.shuffle(order, new Random(t));
+            threads[t] = new Thread(() -> {
+                for (int i : order) shapes[i] = index.getShape(i);
+            });
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        for (int i = 0 ; i < n ; i++) {
+            for (KDFriendlyShape[] shapes : loaded) assertSame(loaded[0][i], shapes[i]);
+            assertEquals(written.getKdTree().getShape(i).getPoints(), loaded[0][i].getPoints());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package Model;
+
+import Model.OSM.SimpleOSMNode;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MappedNodeStoreTests {
+
+    /**
+     * @return the temporary files of the node stores
+     */
+    private static Set<File> temporaryFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("osm-nodes"));
+        return new HashSet<>(Arrays.asList(files == null ? new File[0] : files));
+    }
+
+    private static void assertSameNodes(Map<Long, float[]> expected, NodeStore store) {
+        for (Map.Entry<Long, float[]> node : expected.entrySet()) {
+            assertEquals(new SimpleOSMNode(node.getValue()[0], node.getValue()[1]), store.get(node.getKey()));
+        }
+    }
+
+    @Test
+    public void TestIncreasingIdsUseTheSortedLayout() throws IOException {
+        Random random = new Random(1);
+        Map<Long, float[]> expected = new HashMap<>();
+        MappedNodeStore store = new MappedNodeStore();
+        try {
+            //Enough nodes for several blocks of the index, with gaps between the ids
+            long key = 0;
+            for (int i = 0 ; i < 5000 ; i++) {
+                key += 1 + random.nextInt(1000);
+                float[] point = {random.nextFloat(), random.nextFloat()};
+                store.put(key, point[0], point[1]);
+                expected.put(key, point);
+            }
+            //Putting a node again replaces it in the sorted layout
+            store.put(key, 1, 2);
+            expected.put(key, new float[]{1, 2});
+            assertSameNodes(expected, store);
+            assertNull(store.get(0));
+            assertNull(store.get(key + 1));
+            for (long k = 0 ; k < 10000 ; k++) {
+                if (!expected.containsKey(k)) assertNull(store.get(k));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void TestIdsOutOfOrderUseThePagedLayout() throws IOException {
+        Random random = new Random(2);
+        Map<Long, float[]> expected = new HashMap<>();
+        MappedNodeStore store = new MappedNodeStore();
+        try {
+            for (long key = 1 ; key <= 3000 ; key++) {
+                store.put(key, key, -key);
+                expected.put(key, new float[]{key, -key});
+            }
+            //Ids out of order move the nodes to pages, which are spread over the range of the OSM ids
+            for (int i = 0 ; i < 5000 ; i++) {
+                long key = random.nextBoolean() ? random.nextInt(10000) : (long) (random.nextDouble() * 12_000_000_000L);
+                float[] point = {random.nextFloat(), random.nextFloat()};
+                store.put(key, point[0], point[1]);
+                expected.put(key, point);
+            }
+            //A node at 0, 0 has all zero bits, which must not be mistaken for an empty slot
+            store.put(20000, 0, 0);
+            expected.put(20000L, new float[]{0, 0});
+            assertSameNodes(expected, store);
+            for (long k = 0 ; k < 30000 ; k++) {
+                if (!expected.containsKey(k)) assertNull(store.get(k));
+            }
+            assertNull(store.get(11_999_999_999L));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void TestIdsOutsideTheFileAreKeptOnTheHeap() throws IOException {
+        MappedNodeStore store = new MappedNodeStore();
+        try {
+            assertNull(store.get(-1));
+            store.put(5, 1, 2);
+            store.put(-5, 3, 4);
+            store.put(Long.MAX_VALUE, 5, 6);
+            store.put(6, 7, 8);
+            assertEquals(new SimpleOSMNode(1, 2), store.get(5));
+            assertEquals(new SimpleOSMNode(3, 4), store.get(-5));
+            assertEquals(new SimpleOSMNode(5, 6), store.get(Long.MAX_VALUE));
+            assertEquals(new SimpleOSMNode(7, 8), store.get(6));
+            assertNull(store.get(-6));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void TestCloseDeletesTheTemporaryFiles() throws IOException {
+        Set<File> before = temporaryFiles();
+        MappedNodeStore store = new MappedNodeStore();
+        store.put(10, 1, 2);
+        store.put(20, 3, 4);
+        Set<File> created = temporaryFiles();
+        created.removeAll(before);
+        assertEquals(1, created.size());
+
+        //Moving to the paged layout replaces the file of the sorted layout
+        store.put(15, 5, 6);
+        Set<File> paged = temporaryFiles();
+        paged.removeAll(before);
+        assertEquals(1, paged.size());
+        assertFalse(paged.equals(created));
+        assertEquals(new SimpleOSMNode(1, 2), store.get(10));
+
+        store.close();
+        Set<File> after = temporaryFiles();
+        after.removeAll(before);
+        assertTrue(after.isEmpty());
+    }
+}